@@ -16,6 +16,15 @@ import com.emr.gds.main.custom_ui.IAMProblemAction;
 import com.emr.gds.main.custom_ui.IAMTextArea;
 import com.emr.gds.main.custom_ui.IAMTextFormatUtil;
 import com.emr.gds.main.custom_ui.TextAreaControlProcessor;
+import com.emr.gds.main.db.SqliteDataSource;
+import com.emr.gds.main.encounter.EncounterArchive;
+import com.emr.gds.main.encounter.EncounterSearchStage;
+import com.emr.gds.main.encounter.EncounterSnapshot;
+import com.emr.gds.main.history.FamilyConditionStore;
+import com.emr.gds.main.template.TemplateRepository;
+import com.emr.gds.main.template.TemplateSyncClient;
+import com.emr.gds.main.template.TemplateSyncJob;
+import com.emr.gds.soap.IMSFollowUp.PlanHistoryWriter;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
@@ -49,19 +58,22 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Main JavaFX Application for GDSEMR ITTIA - EMR Prototype.
@@ -82,7 +94,6 @@ public class IttiaApp extends Application {
     private static final int SCENE_HEIGHT = 1000;
     private static final String DB_FILENAME = "abbreviations.db";
     private static final String DB_TABLE_NAME = "abbreviations";
-    private static final String DB_URL_PREFIX = "jdbc:sqlite:";
     private static final String DB_DRIVER = "org.sqlite.JDBC";
     private static final String DEFAULT_ABBREV_C = "hypercholesterolemia";
     private static final String DEFAULT_ABBREV_TO = "hypothyroidism";
@@ -94,11 +105,13 @@ public class IttiaApp extends Application {
     private IAMProblemAction problemAction;
     private IAMButtonAction buttonAction;
     private IAMTextArea textAreaManager;
-    private Connection dbConn;
+    private SqliteDataSource abbrevDataSource;
     private final Map<String, String> abbrevMap = new HashMap<>();
     private IAIFreqFrame freqStage; // Manages the vital signs window
     private IAMFunctionkey functionKeyHandler;
     private Stage mainStage;
+    private TemplateSyncJob templateSync; // null unless a template server is configured
+    private final Deque<EncounterSnapshot> unarchived = new ArrayDeque<>(); // FX thread only; retried on the next clear
 
     // ================================
     // Application Lifecycle
@@ -230,11 +243,15 @@ public class IttiaApp extends Application {
     @Override
     public void stop() throws Exception {
         super.stop();
-        // Ensure the database connection is closed
-        if (dbConn != null && !dbConn.isClosed()) {
-            dbConn.close();
-            System.out.println("Database connection closed.");
-        }
+        Optional.ofNullable(templateSync).ifPresent(TemplateSyncJob::stop);
+        // Let the problem list writer finish its queue before the pools go away
+        Optional.ofNullable(problemAction).ifPresent(IAMProblemAction::closeDatabase);
+        PlanHistoryWriter.closeShared();
+        EncounterArchive.closeShared();
+        FamilyConditionStore.closeShared();
+        // Release every pooled SQLite connection (abbreviations, problem list, templates, ...)
+        SqliteDataSource.closeAll();
+        System.out.println("Database connections closed.");
     }
 
     // ================================
@@ -248,9 +265,21 @@ public class IttiaApp extends Application {
         initAbbrevDatabase();
         problemAction = new IAMProblemAction(this);
         textAreaManager = new IAMTextArea(abbrevMap, problemAction);
-        buttonAction = new IAMButtonAction(this, dbConn, abbrevMap);
+        buttonAction = new IAMButtonAction(this, abbrevDataSource, abbrevMap);
         textAreaManager.setAssessmentDoubleClickHandler((textArea, index) -> buttonAction.openKcd9Manager());
         functionKeyHandler = new IAMFunctionkey(this);
+        startTemplateSync();
+    }
+
+    /**
+     * Starts background template sync with the server, when one is configured.
+     */
+    private void startTemplateSync() {
+        String server = TemplateSyncJob.configuredServer();
+        if (server == null) return;
+        templateSync = new TemplateSyncJob(new TemplateRepository(), new TemplateSyncClient(server));
+        templateSync.start();
+        System.out.println("[TEMPLATE SYNC] " + server);
     }
 
     /**
@@ -260,10 +289,9 @@ public class IttiaApp extends Application {
         Class.forName(DB_DRIVER);
         Path dbFile = getDbPath(DB_FILENAME);
         Files.createDirectories(dbFile.getParent()); // Ensure the directory exists
-        String url = DB_URL_PREFIX + dbFile.toAbsolutePath();
         System.out.println("[DB PATH] abbreviations -> " + dbFile.toAbsolutePath());
 
-        dbConn = DriverManager.getConnection(url);
+        abbrevDataSource = SqliteDataSource.forFile(dbFile);
         createAbbreviationTable();
         loadAbbreviations();
     }
@@ -272,7 +300,7 @@ public class IttiaApp extends Application {
      * Creates the abbreviations table if it doesn't exist and inserts default values.
      */
     private void createAbbreviationTable() throws SQLException {
-        try (Statement stmt = dbConn.createStatement()) {
+        try (Connection conn = abbrevDataSource.getWriteConnection(); Statement stmt = conn.createStatement()) {
             stmt.execute("CREATE TABLE IF NOT EXISTS " + DB_TABLE_NAME + " (short TEXT PRIMARY KEY, full TEXT)");
             // Insert default abbreviations if they don't already exist
             stmt.execute("INSERT OR IGNORE INTO " + DB_TABLE_NAME + " (short, full) VALUES ('c', '" + DEFAULT_ABBREV_C + "')");
@@ -285,7 +313,8 @@ public class IttiaApp extends Application {
      */
     private void loadAbbreviations() throws SQLException {
         abbrevMap.clear();
-        try (Statement stmt = dbConn.createStatement();
+        try (Connection conn = abbrevDataSource.getConnection();
+             Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM " + DB_TABLE_NAME)) {
             while (rs.next()) {
                 abbrevMap.put(rs.getString("short"), rs.getString("full"));
@@ -325,6 +354,9 @@ public class IttiaApp extends Application {
         Button templateButton = new Button("Load Template");
         templateButton.setOnAction(e -> openTemplateEditor());
 
+        Button noteSearchButton = new Button("Note Search");
+        noteSearchButton.setOnAction(e -> EncounterSearchStage.open());
+
         Button vitalButton = new Button("Vital BP & HbA1c");
         vitalButton.setOnAction(e -> openVitalWindow());
         
@@ -361,7 +393,7 @@ public class IttiaApp extends Application {
         
         // Add buttons to the toolbar
         topBar.getItems().addAll(
-            new Separator(), templateButton,
+            new Separator(), templateButton, noteSearchButton,
             new Separator(), vitalButton,
             new Separator(), categoryButton,
             new Separator(), 
@@ -477,8 +509,9 @@ public class IttiaApp extends Application {
      * Opens the EMR template editor.
      */
     private void openTemplateEditor() {
-        com.emr.gds.main.template.TemplateEditStage.open(templateContent ->
-            textAreaManager.parseAndAppendTemplate(templateContent)
+        com.emr.gds.main.template.TemplateEditStage.open(
+            templateContent -> textAreaManager.parseAndAppendTemplate(templateContent),
+            textAreaManager::templateBindings
         );
     }
 
@@ -594,8 +627,57 @@ public class IttiaApp extends Application {
     }
 
     public void clearAllText() {
+        EncounterSnapshot snapshot = currentEncounter();
         textAreaManager.clearAllTextAreas();
         Optional.ofNullable(problemAction).ifPresent(IAMProblemAction::clearScratchpad);
+
+        for (int pending = unarchived.size(); pending > 0; pending--) {
+            archiveEncounter(unarchived.poll(), false);
+        }
+        if (!snapshot.isEmpty()) archiveEncounter(snapshot, true);
+    }
+
+    /** The note and problem list as they stand, for the encounter archive. */
+    private EncounterSnapshot currentEncounter() {
+        return new EncounterSnapshot(
+                Optional.ofNullable(problemAction).map(IAMProblemAction::getCurrentPatientId).orElse(""),
+                LocalDate.now(), LocalDateTime.now(), textAreaManager.sectionTexts(),
+                Optional.ofNullable(problemAction)
+                        .map(pa -> pa.getProblems().stream().map(Object::toString).toList())
+                        .orElse(List.of()));
+    }
+
+    /**
+     * Archives a cleared note; compression and the database write happen on the archive thread. The snapshot is
+     * held until the write commits. If it fails, the note is put back into the editors when they are still empty
+     * (only for the note just cleared), and otherwise kept for another attempt on the next clear.
+     */
+    private void archiveEncounter(EncounterSnapshot snapshot, boolean restoreOnFailure) {
+        CompletableFuture<Long> write;
+        try {
+            write = EncounterArchive.shared().archive(snapshot);
+        } catch (IOException e) {
+            write = CompletableFuture.failedFuture(new IOException("Encounter archive unavailable: " + e.getMessage(), e));
+        }
+        write.whenComplete((id, error) -> {
+            if (error == null) {
+                System.out.println("Encounter archived (id " + id + ").");
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            System.err.println(cause.getMessage());
+            Platform.runLater(() -> {
+                String outcome;
+                if (restoreOnFailure && textAreaManager.restoreSectionTexts(snapshot.sections())) {
+                    outcome = "The note has been put back into the editor.";
+                } else {
+                    unarchived.add(snapshot);
+                    outcome = "It will be archived again the next time the note is cleared.";
+                }
+                new Alert(Alert.AlertType.ERROR,
+                        "The cleared note could not be archived:\n" + cause.getMessage() + "\n\n" + outcome).show();
+            });
+        });
     }
 
     // ================================
@@ -672,23 +754,11 @@ public class IttiaApp extends Application {
     // Utility Methods
     // ================================
 
-    /**
-     * Finds the root directory of the repository.
-     */
-    private Path getRepoRoot() {
-        Path p = Paths.get("").toAbsolutePath();
-        // Traverse up until a marker file is found
-        while (p != null && !Files.exists(p.resolve("gradlew")) && !Files.exists(p.resolve(".git"))) {
-            p = p.getParent();
-        }
-        return (p != null) ? p : Paths.get("").toAbsolutePath();
-    }
-
     /**
      * Constructs the full path to a database file within the project structure.
      */
     private Path getDbPath(String fileName) {
-        return getRepoRoot().resolve("app").resolve("db").resolve(fileName);
+        return SqliteDataSource.repoRoot().resolve("app").resolve("db").resolve(fileName);
     }
 
     /**
@@ -737,8 +807,12 @@ public class IttiaApp extends Application {
         return textAreaManager;
     }
 
-    public Connection getDbConnection() {
-        return dbConn;
+    public IAMProblemAction getProblemAction() {
+        return problemAction;
+    }
+
+    public SqliteDataSource getAbbrevDataSource() {
+        return abbrevDataSource;
     }
 
     public Map<String, String> getAbbrevMap() {
@@ -1,5 +1,6 @@
 package com.emr.gds.main.clinicalLab;
 
+import com.emr.gds.main.clinicalLab.controller.ClinicalLabController;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -12,6 +13,8 @@ public class ClinicalLabLauncher extends Application {
     public void start(Stage primaryStage) throws Exception {
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/emr/gds/main/clinicalLab/main.fxml"));
         Parent root = loader.load();
+        ClinicalLabController controller = loader.getController();
+        primaryStage.setOnHidden(e -> controller.shutdown());
         primaryStage.setTitle("Clinical Lab Items");
         primaryStage.setScene(new Scene(root));
         primaryStage.show();
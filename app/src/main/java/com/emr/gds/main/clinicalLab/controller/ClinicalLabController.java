@@ -1,9 +1,15 @@
 package com.emr.gds.main.clinicalLab.controller;
 
 import com.emr.gds.main.clinicalLab.db.ClinicalLabDatabase;
+import com.emr.gds.main.clinicalLab.db.ClinicalLabSearchIndex;
+import com.emr.gds.main.clinicalLab.db.LabResultStore;
 import com.emr.gds.main.clinicalLab.model.ClinicalLabItem;
+import com.emr.gds.main.clinicalLab.service.LabRangeClassifier;
+import com.emr.gds.main.clinicalLab.service.LabResultImporter;
+import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
@@ -11,13 +17,22 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
 import javafx.geometry.Insets;
 
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
+import java.io.File;
 import java.net.URL;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 public class ClinicalLabController implements Initializable {
@@ -55,15 +70,33 @@ public class ClinicalLabController implements Initializable {
     private final ObservableList<ClinicalLabItem> masterData = FXCollections.observableArrayList();
     private final ObservableList<String> selectedItems = FXCollections.observableArrayList();
 
+    // Search runs against an in-memory index rebuilt whenever the item list changes; only the latest
+    // load and the latest query are applied, so results from a slower, older request are dropped.
+    private static final int SEARCH_RESULT_LIMIT = 500;
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(150));
+    private volatile ClinicalLabSearchIndex searchIndex = ClinicalLabSearchIndex.build(List.of());
+    private long loadGeneration = 0;
+    private long searchGeneration = 0;
+    private LabRangeClassifier rangeClassifier;
+    private LabResultStore resultStore;
+    private Task<LabResultImporter.Result> importTask;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         setupTable();
         setupSelectionModel();
+        setupSearch();
         selectedItemsList.setItems(selectedItems);
         loadData();
         setEditable(false);
     }
 
+    private void setupSearch() {
+        searchDebounce.setOnFinished(e -> runSearch(null));
+        searchField.textProperty().addListener((obs, ov, nv) -> searchDebounce.playFromStart());
+        searchField.setOnAction(e -> handleSearch());
+    }
+
     private void setupTable() {
         colCategory.setCellValueFactory(new PropertyValueFactory<>("category"));
         colTestName.setCellValueFactory(new PropertyValueFactory<>("testName"));
@@ -86,21 +119,87 @@ public class ClinicalLabController implements Initializable {
 
     @FXML
     private void loadData() {
-        masterData.clear();
-        masterData.addAll(database.getAllItems());
-        labTable.setItems(masterData);
+        reload(database::getAllItems, null);
+    }
+
+    /**
+     * Fetches the items from {@code source} and builds the search index in the background, then swaps both
+     * into the table and re-applies the current search. {@code onLoaded} runs after the results are shown.
+     */
+    private void reload(Callable<List<ClinicalLabItem>> source, Runnable onLoaded) {
+        long generation = ++loadGeneration;
+        Task<ClinicalLabSearchIndex> task = new Task<>() {
+            @Override
+            protected ClinicalLabSearchIndex call() throws Exception {
+                return ClinicalLabSearchIndex.build(source.call());
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (generation != loadGeneration) return;
+            searchIndex = task.getValue();
+            rangeClassifier = null;
+            masterData.setAll(searchIndex.items());
+            runSearch(onLoaded);
+        });
+        task.setOnFailed(e -> {
+            showError("Database Error", "Failed to load lab items", task.getException());
+            task.getException().printStackTrace();
+        });
+        startDaemon(task, "clinical-lab-load");
     }
 
     @FXML
     private void handleSearch() {
+        runSearch(null);
+    }
+
+    private void runSearch(Runnable onApplied) {
+        searchDebounce.stop();
+        long generation = ++searchGeneration;
         String query = searchField.getText();
-        if (query == null || query.trim().isEmpty()) {
+        if (query == null || query.isBlank()) {
             labTable.setItems(masterData);
-        } else {
-            // Use database search directly
-            java.util.List<ClinicalLabItem> results = database.searchItems(query);
-            labTable.setItems(FXCollections.observableArrayList(results));
+            if (onApplied != null) onApplied.run();
+            return;
         }
+        ClinicalLabSearchIndex index = searchIndex;
+        Task<List<ClinicalLabItem>> task = new Task<>() {
+            @Override
+            protected List<ClinicalLabItem> call() {
+                return index.search(query, SEARCH_RESULT_LIMIT);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (generation != searchGeneration) return;
+            labTable.setItems(FXCollections.observableArrayList(task.getValue()));
+            if (onApplied != null) onApplied.run();
+        });
+        task.setOnFailed(e -> task.getException().printStackTrace());
+        startDaemon(task, "clinical-lab-search");
+    }
+
+    private void selectById(int id) {
+        for (ClinicalLabItem item : labTable.getItems()) {
+            if (item.getId() == id) {
+                labTable.getSelectionModel().select(item);
+                labTable.scrollTo(item);
+                return;
+            }
+        }
+    }
+
+    private void showError(String header, String message, Throwable cause) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText(header);
+        alert.setContentText(message + (cause != null ? ":\n" + cause.getMessage() : "."));
+        alert.showAndWait();
+    }
+
+    private static void startDaemon(Task<?> task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
     }
 
     private void showDetails(ClinicalLabItem item) {
@@ -148,21 +247,41 @@ public class ClinicalLabController implements Initializable {
         setEditable(true);
     }
 
+    /** Writes the detail panel back to the selected row. The row changes only after the write commits. */
     @FXML
     private void handleSave() {
         ClinicalLabItem selected = labTable.getSelectionModel().getSelectedItem();
         if (selected != null) {
-            selected.setTestName(editTestName.getText());
-            selected.setCategory(editCategory.getText());
-            selected.setCodes(editCodes.getText());
-            selected.setComments(editComments.getText());
-            database.updateItem(selected);
+            ClinicalLabItem edit = copyOf(selected);
+            edit.setTestName(editTestName.getText());
+            edit.setCategory(editCategory.getText());
+            edit.setCodes(editCodes.getText());
+            edit.setComments(editComments.getText());
+            try {
+                database.updateItems(List.of(edit));
+            } catch (SQLException e) {
+                showError("Database Error", "Failed to save " + selected.getTestName(), e);
+                return;
+            }
+            selected.setTestName(edit.getTestName());
+            selected.setCategory(edit.getCategory());
+            selected.setCodes(edit.getCodes());
+            selected.setComments(edit.getComments());
             labTable.refresh();
             showDetails(selected);
+            // The item was edited in place; re-index the current list so search sees the new text.
+            List<ClinicalLabItem> current = new ArrayList<>(masterData);
+            reload(() -> current, () -> selectById(selected.getId()));
         }
         setEditable(false);
     }
 
+    private static ClinicalLabItem copyOf(ClinicalLabItem item) {
+        return new ClinicalLabItem(item.getId(), item.getCategory(), item.getTestName(), item.getUnit(),
+                item.getMaleRangeLow(), item.getMaleRangeHigh(), item.getFemaleRangeLow(), item.getFemaleRangeHigh(),
+                item.getMaleReferenceRange(), item.getFemaleReferenceRange(), item.getCodes(), item.getComments());
+    }
+
     @FXML
     private void handleCancel() {
         ClinicalLabItem selected = labTable.getSelectionModel().getSelectedItem();
@@ -274,9 +393,13 @@ public class ClinicalLabController implements Initializable {
 
         Optional<ClinicalLabItem> result = dialog.showAndWait();
         result.ifPresent(newItem -> {
-            database.insertItem(newItem);
-            loadData(); // Refresh the table
-            labTable.getSelectionModel().select(newItem); // Select the newly added item
+            try {
+                database.insertItem(newItem);
+            } catch (SQLException e) {
+                showError("Database Error", "Failed to add " + newItem.getTestName(), e);
+                return;
+            }
+            reload(database::getAllItems, () -> selectById(newItem.getId())); // Refresh and select the new item
             showDetails(newItem); // Show details of newly added item
         });
     }
@@ -300,7 +423,12 @@ public class ClinicalLabController implements Initializable {
 
         Optional<ButtonType> result = confirmationAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            database.deleteItem(selected.getId());
+            try {
+                database.deleteItem(selected.getId());
+            } catch (SQLException e) {
+                showError("Database Error", "Failed to delete " + selected.getTestName(), e);
+                return;
+            }
             loadData(); // Refresh the table
             clearDetails(); // Clear details panel
         }
@@ -352,6 +480,159 @@ public class ClinicalLabController implements Initializable {
         com.emr.gds.input.IAIMain.getTextAreaManager().appendTextToSection(9, sb.toString());
     }
 
+    /**
+     * Opens a dialog that flags a pasted panel of results (one "test value" per line) against the
+     * reference ranges and can append the flagged lines to the EMR.
+     */
+    @FXML
+    private void handleClassifyPanel() {
+        if (rangeClassifier == null) {
+            rangeClassifier = LabRangeClassifier.build(masterData);
+        }
+        LabRangeClassifier classifier = rangeClassifier;
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Classify Lab Panel");
+        dialog.setHeaderText("Paste results, one test per line (e.g. \"TSH 5.8\").");
+        ButtonType saveButtonType = new ButtonType("Save to EMR", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(saveButtonType, ButtonType.CLOSE);
+
+        TextArea inputArea = new TextArea();
+        inputArea.setPrefRowCount(10);
+        TextArea outputArea = new TextArea();
+        outputArea.setPrefRowCount(10);
+        outputArea.setEditable(false);
+
+        ToggleGroup sexGroup = new ToggleGroup();
+        RadioButton maleButton = new RadioButton("Male");
+        RadioButton femaleButton = new RadioButton("Female");
+        maleButton.setToggleGroup(sexGroup);
+        femaleButton.setToggleGroup(sexGroup);
+        maleButton.setSelected(true);
+
+        Runnable classify = () -> {
+            LabRangeClassifier.Sex sex = femaleButton.isSelected() ? LabRangeClassifier.Sex.FEMALE : LabRangeClassifier.Sex.MALE;
+            outputArea.setText(classifier.classifyPanel(inputArea.getText(), sex).stream()
+                    .map(LabRangeClassifier.PanelResult::toEmrLine)
+                    .collect(Collectors.joining("\n")));
+        };
+        inputArea.textProperty().addListener((obs, ov, nv) -> classify.run());
+        sexGroup.selectedToggleProperty().addListener((obs, ov, nv) -> classify.run());
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 10, 10, 10));
+        grid.add(new Label("Sex:"), 0, 0);
+        grid.add(new HBox(10, maleButton, femaleButton), 1, 0);
+        grid.add(new Label("Results:"), 0, 1);
+        grid.add(inputArea, 1, 1);
+        grid.add(new Label("Flagged:"), 0, 2);
+        grid.add(outputArea, 1, 2);
+        dialog.getDialogPane().setContent(grid);
+
+        Optional<ButtonType> result = dialog.showAndWait();
+        if (result.isPresent() && result.get() == saveButtonType && !outputArea.getText().isBlank()) {
+            com.emr.gds.input.IAIMain.getTextAreaManager().appendTextToSection(9, outputArea.getText() + "\n");
+        }
+    }
+
+    /**
+     * Imports a CSV/TSV export of lab results into the result store on a background task,
+     * showing progress and allowing cancellation; batches written before a cancel are kept.
+     */
+    @FXML
+    private void handleImportResults() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import Lab Results");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Delimited text (*.csv, *.tsv, *.txt)", "*.csv", "*.tsv", "*.txt"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = chooser.showOpenDialog(labTable.getScene().getWindow());
+        if (file == null) return;
+
+        List<ClinicalLabItem> items = new ArrayList<>(masterData);
+        Task<LabResultImporter.Result> task = new Task<>() {
+            @Override
+            protected LabResultImporter.Result call() throws Exception {
+                updateMessage("Reading " + file.getName() + "...");
+                LabResultImporter importer = new LabResultImporter(resultStore(), LabRangeClassifier.build(items));
+                return importer.importFile(file.toPath(), (bytesRead, totalBytes, rowsRead) -> {
+                    updateProgress(bytesRead, totalBytes);
+                    updateMessage(rowsRead + " rows read");
+                }, this::isCancelled);
+            }
+        };
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(320);
+        progressBar.progressProperty().bind(task.progressProperty());
+        Label messageLabel = new Label();
+        messageLabel.textProperty().bind(task.messageProperty());
+
+        Dialog<Void> progressDialog = new Dialog<>();
+        progressDialog.setTitle("Import Lab Results");
+        progressDialog.setHeaderText(file.getName());
+        progressDialog.getDialogPane().setContent(new VBox(10, progressBar, messageLabel));
+        progressDialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+        progressDialog.setOnCloseRequest(e -> {
+            if (task.isRunning()) task.cancel();
+        });
+
+        task.setOnSucceeded(e -> {
+            progressDialog.close();
+            LabResultImporter.Result result = task.getValue();
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Import Complete");
+            alert.setHeaderText(result.summary());
+            if (!result.errors().isEmpty()) {
+                TextArea errors = new TextArea(String.join("\n", result.errors()));
+                errors.setEditable(false);
+                errors.setPrefRowCount(8);
+                alert.getDialogPane().setContent(errors);
+            }
+            alert.showAndWait();
+        });
+        task.setOnCancelled(e -> {
+            progressDialog.close();
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Import Cancelled");
+            alert.setHeaderText("Import cancelled");
+            alert.setContentText("Results written before cancelling were kept.");
+            alert.showAndWait();
+        });
+        task.setOnFailed(e -> {
+            progressDialog.close();
+            showError("Import Failed", "Could not import " + file.getName(), task.getException());
+            task.getException().printStackTrace();
+        });
+
+        importTask = task;
+        startDaemon(task, "clinical-lab-import");
+        progressDialog.show();
+    }
+
+    private synchronized LabResultStore resultStore() throws SQLException {
+        if (resultStore == null) {
+            resultStore = new LabResultStore();
+        }
+        return resultStore;
+    }
+
+    /**
+     * Called when the window closes: cancels a running import (its written batches are kept) and closes the
+     * result store, which waits for a batch in progress.
+     */
+    public void shutdown() {
+        if (importTask != null && importTask.isRunning()) importTask.cancel();
+        LabResultStore store;
+        synchronized (this) {
+            store = resultStore;
+            resultStore = null;
+        }
+        if (store != null) store.close();
+    }
+
     @FXML
     private void handleQuit() {
         Stage stage = (Stage) labTable.getScene().getWindow();
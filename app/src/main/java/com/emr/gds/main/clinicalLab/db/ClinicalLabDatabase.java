@@ -1,151 +1,148 @@
 package com.emr.gds.main.clinicalLab.db;
 
 import com.emr.gds.main.clinicalLab.model.ClinicalLabItem;
+import com.emr.gds.main.db.SqliteDataSource;
+import java.nio.file.Files;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.io.File;
 
+/**
+ * Access to clinical_lab_items. The database file is resolved once by {@link SqliteDataSource};
+ * statements are prepared with the single-argument {@code prepareStatement} so each pooled connection
+ * compiles them once and reuses them.
+ * <p>
+ * Writes take collections and run as one transaction (batched where no row ids are needed), so editing
+ * many rows costs one commit. Failures roll the whole batch back and are thrown to the caller.
+ */
 public class ClinicalLabDatabase {
-    
-    private String getDbUrl() {
-        String[] possiblePaths = {
-            "app/db/ClinicalLabItemsSqlite3.db",
-            "db/ClinicalLabItemsSqlite3.db",
-            "../app/db/ClinicalLabItemsSqlite3.db"
-        };
-
-        for (String path : possiblePaths) {
-            File file = new File(path);
-            if (file.exists()) {
-                // System.out.println("ClinicalLabDatabase: DB found at " + file.getAbsolutePath());
-                return "jdbc:sqlite:" + file.getAbsolutePath();
-            }
+
+    private static final String DB_FILENAME = "ClinicalLabItemsSqlite3.db";
+
+    private static final String SELECT_ALL_SQL = "SELECT * FROM clinical_lab_items";
+    private static final String UPDATE_SQL = "UPDATE clinical_lab_items SET category = ?, test_name = ?, unit = ?, male_range_low = ?, male_range_high = ?, female_range_low = ?, female_range_high = ?, male_reference_range = ?, female_reference_range = ?, codes = ?, comments = ? WHERE id = ?";
+    private static final String INSERT_SQL = "INSERT INTO clinical_lab_items (category, test_name, unit, male_range_low, male_range_high, female_range_low, female_range_high, male_reference_range, female_reference_range, codes, comments) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String LAST_ID_SQL = "SELECT last_insert_rowid()";
+    private static final String DELETE_SQL = "DELETE FROM clinical_lab_items WHERE id = ?";
+
+    private final SqliteDataSource dataSource = SqliteDataSource.forAppDb(DB_FILENAME);
+
+    public ClinicalLabDatabase() {
+        if (!Files.exists(dataSource.getPath())) {
+            System.err.println("ClinicalLabDatabase: DB file not found! Defaulting to " + dataSource.getPath());
         }
-        System.err.println("ClinicalLabDatabase: DB file not found! Defaulting to app/db/...");
-        return "jdbc:sqlite:app/db/ClinicalLabItemsSqlite3.db";
     }
 
-    public List<ClinicalLabItem> getAllItems() {
+    public List<ClinicalLabItem> getAllItems() throws SQLException {
         List<ClinicalLabItem> items = new ArrayList<>();
-        String sql = "SELECT * FROM clinical_lab_items";
-
-        try (Connection conn = DriverManager.getConnection(getDbUrl());
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SELECT_ALL_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
 
             while (rs.next()) {
                 items.add(mapResultSetToItem(rs));
             }
-        } catch (SQLException e) {
-            System.err.println("Error fetching lab items: " + e.getMessage());
         }
         return items;
     }
 
-    public List<ClinicalLabItem> searchItems(String query) {
-        List<ClinicalLabItem> items = new ArrayList<>();
-        String sql = """
-            SELECT *
-            FROM clinical_lab_items
-            WHERE COALESCE(LOWER(test_name), '') LIKE ?
-               OR COALESCE(LOWER(category), '') LIKE ?
-               OR COALESCE(LOWER(unit), '') LIKE ?
-               OR COALESCE(LOWER(male_reference_range), '') LIKE ?
-               OR COALESCE(LOWER(female_reference_range), '') LIKE ?
-               OR COALESCE(LOWER(codes), '') LIKE ?
-               OR COALESCE(LOWER(comments), '') LIKE ?
-               OR COALESCE(CAST(male_range_low AS TEXT), '') LIKE ?
-               OR COALESCE(CAST(male_range_high AS TEXT), '') LIKE ?
-               OR COALESCE(CAST(female_range_low AS TEXT), '') LIKE ?
-               OR COALESCE(CAST(female_range_high AS TEXT), '') LIKE ?
-            """;
-
-        try (Connection conn = DriverManager.getConnection(getDbUrl());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            String param = "%" + query.toLowerCase() + "%";
-            for (int i = 1; i <= 11; i++) {
-                pstmt.setString(i, param);
-            }
-            
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    items.add(mapResultSetToItem(rs));
+    public void updateItem(ClinicalLabItem item) throws SQLException {
+        updateItems(List.of(item));
+    }
+
+    /** Writes every item back by id in one batched transaction. */
+    public void updateItems(Collection<ClinicalLabItem> items) throws SQLException {
+        if (items.isEmpty()) return;
+        try (Connection conn = dataSource.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_SQL)) {
+                for (ClinicalLabItem item : items) {
+                    bindColumns(pstmt, item);
+                    pstmt.setInt(12, item.getId());
+                    pstmt.addBatch();
                 }
+                pstmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
-        } catch (SQLException e) {
-            System.err.println("Error searching lab items: " + e.getMessage());
         }
-        return items;
     }
 
-    public void updateItem(ClinicalLabItem item) {
-        String sql = "UPDATE clinical_lab_items SET category = ?, test_name = ?, unit = ?, male_range_low = ?, male_range_high = ?, female_range_low = ?, female_range_high = ?, male_reference_range = ?, female_reference_range = ?, codes = ?, comments = ? WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(getDbUrl());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, item.getCategory());
-            pstmt.setString(2, item.getTestName());
-            pstmt.setString(3, item.getUnit());
-            pstmt.setObject(4, item.getMaleRangeLow());
-            pstmt.setObject(5, item.getMaleRangeHigh());
-            pstmt.setObject(6, item.getFemaleRangeLow());
-            pstmt.setObject(7, item.getFemaleRangeHigh());
-            pstmt.setString(8, item.getMaleReferenceRange());
-            pstmt.setString(9, item.getFemaleReferenceRange());
-            pstmt.setString(10, item.getCodes());
-            pstmt.setString(11, item.getComments());
-            pstmt.setInt(12, item.getId());
-            
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error updating lab item: " + e.getMessage());
-        }
+    public void insertItem(ClinicalLabItem item) throws SQLException {
+        insertItems(List.of(item));
     }
 
-    public void insertItem(ClinicalLabItem item) {
-        String sql = "INSERT INTO clinical_lab_items (category, test_name, unit, male_range_low, male_range_high, female_range_low, female_range_high, male_reference_range, female_reference_range, codes, comments) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(getDbUrl());
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            
-            pstmt.setString(1, item.getCategory());
-            pstmt.setString(2, item.getTestName());
-            pstmt.setString(3, item.getUnit());
-            pstmt.setObject(4, item.getMaleRangeLow());
-            pstmt.setObject(5, item.getMaleRangeHigh());
-            pstmt.setObject(6, item.getFemaleRangeLow());
-            pstmt.setObject(7, item.getFemaleRangeHigh());
-            pstmt.setString(8, item.getMaleReferenceRange());
-            pstmt.setString(9, item.getFemaleReferenceRange());
-            pstmt.setString(10, item.getCodes());
-            pstmt.setString(11, item.getComments());
-            
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        item.setId(rs.getInt(1)); // Set the generated ID back to the item
+    /**
+     * Inserts the items in one transaction and sets their generated ids.
+     * Ids are assigned only after the commit succeeds; on failure the items are left untouched.
+     */
+    public void insertItems(List<ClinicalLabItem> items) throws SQLException {
+        if (items.isEmpty()) return;
+        int[] ids = new int[items.size()];
+        try (Connection conn = dataSource.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL);
+                 PreparedStatement lastId = conn.prepareStatement(LAST_ID_SQL)) {
+                for (int i = 0; i < ids.length; i++) {
+                    bindColumns(insert, items.get(i));
+                    insert.executeUpdate();
+                    try (ResultSet rs = lastId.executeQuery()) {
+                        if (!rs.next()) throw new SQLException("No generated key returned");
+                        ids[i] = rs.getInt(1);
                     }
                 }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
-        } catch (SQLException e) {
-            System.err.println("Error inserting lab item: " + e.getMessage());
         }
+        for (int i = 0; i < ids.length; i++) {
+            items.get(i).setId(ids[i]);
+        }
+    }
+
+    public void deleteItem(int id) throws SQLException {
+        deleteItems(List.of(id));
     }
 
-    public void deleteItem(int id) {
-        String sql = "DELETE FROM clinical_lab_items WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(getDbUrl());
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error deleting lab item: " + e.getMessage());
+    /** Deletes the rows with the given ids in one batched transaction. */
+    public void deleteItems(Collection<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) return;
+        try (Connection conn = dataSource.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(DELETE_SQL)) {
+                for (int id : ids) {
+                    pstmt.setInt(1, id);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         }
     }
 
+    /** Binds parameters 1-11, shared by INSERT and UPDATE. */
+    private static void bindColumns(PreparedStatement pstmt, ClinicalLabItem item) throws SQLException {
+        pstmt.setString(1, item.getCategory());
+        pstmt.setString(2, item.getTestName());
+        pstmt.setString(3, item.getUnit());
+        pstmt.setObject(4, item.getMaleRangeLow());
+        pstmt.setObject(5, item.getMaleRangeHigh());
+        pstmt.setObject(6, item.getFemaleRangeLow());
+        pstmt.setObject(7, item.getFemaleRangeHigh());
+        pstmt.setString(8, item.getMaleReferenceRange());
+        pstmt.setString(9, item.getFemaleReferenceRange());
+        pstmt.setString(10, item.getCodes());
+        pstmt.setString(11, item.getComments());
+    }
+
     private ClinicalLabItem mapResultSetToItem(ResultSet rs) throws SQLException {
         return new ClinicalLabItem(
             rs.getInt("id"),
@@ -0,0 +1,328 @@
+package com.emr.gds.main.clinicalLab.db;
+
+import com.emr.gds.main.clinicalLab.model.ClinicalLabItem;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Immutable in-memory search index over the clinical lab items, built once from
+ * {@link ClinicalLabDatabase#getAllItems()} and queried without touching the database.
+ * <p>
+ * Every text field is normalised once (NFKC, lower case) and split into tokens. The distinct tokens are kept
+ * sorted with a posting list per token recording which items contain it and in which fields, so a query token
+ * is answered by a binary search over prefixes. A token that prefixes nothing falls back to a substring scan of
+ * the pre-normalised fields, which keeps the old {@code LIKE '%q%'} behaviour for fragments inside a word.
+ * Numeric query tokens are also looked up in a range index: items with a range bound equal to the number, and
+ * items whose male or female range contains it, match as well.
+ * <p>
+ * An item must match every query token. Matches are ranked by field weight (test name first, comments last),
+ * exact tokens outrank prefixes, and ties keep the database order.
+ */
+public final class ClinicalLabSearchIndex {
+
+    /** Searchable text fields and their ranking weight. */
+    enum Field {
+        TEST_NAME(16, ClinicalLabItem::getTestName),
+        CODES(8, ClinicalLabItem::getCodes),
+        CATEGORY(6, ClinicalLabItem::getCategory),
+        UNIT(3, ClinicalLabItem::getUnit),
+        MALE_REFERENCE(2, ClinicalLabItem::getMaleReferenceRange),
+        FEMALE_REFERENCE(2, ClinicalLabItem::getFemaleReferenceRange),
+        COMMENTS(1, ClinicalLabItem::getComments);
+
+        final int weight;
+        final Function<ClinicalLabItem, String> getter;
+
+        Field(int weight, Function<ClinicalLabItem, String> getter) {
+            this.weight = weight;
+            this.getter = getter;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final int BOUND_EQUAL_SCORE = 8;
+    private static final int RANGE_CONTAINS_SCORE = 2;
+    private static final int EXACT_NAME_BONUS = 100;
+
+    private final ClinicalLabItem[] items;
+    private final String[][] normalized;   // normalized[field][item]
+    private final String[] terms;          // sorted, distinct
+    private final int[][] postings;        // postings[t] = ascending item ids containing terms[t]
+    private final byte[][] postingFields;  // parallel to postings: bit mask of the fields holding the term
+
+    // Numeric index: every non-null bound, sorted by value, and every range sorted by its low end.
+    private final double[] boundValues;
+    private final int[] boundItems;
+    private final double[] rangeLows;
+    private final double[] rangeHighs;
+    private final int[] rangeItems;
+
+    private ClinicalLabSearchIndex(ClinicalLabItem[] items, String[][] normalized, String[] terms, int[][] postings,
+                                   byte[][] postingFields, double[] boundValues, int[] boundItems,
+                                   double[] rangeLows, double[] rangeHighs, int[] rangeItems) {
+        this.items = items;
+        this.normalized = normalized;
+        this.terms = terms;
+        this.postings = postings;
+        this.postingFields = postingFields;
+        this.boundValues = boundValues;
+        this.boundItems = boundItems;
+        this.rangeLows = rangeLows;
+        this.rangeHighs = rangeHighs;
+        this.rangeItems = rangeItems;
+    }
+
+    public static ClinicalLabSearchIndex build(List<ClinicalLabItem> source) {
+        ClinicalLabItem[] items = source.toArray(new ClinicalLabItem[0]);
+        String[][] normalized = new String[FIELDS.length][items.length];
+        Map<String, Posting> termToPosting = new HashMap<>();
+        for (int id = 0; id < items.length; id++) {
+            for (Field field : FIELDS) {
+                String text = normalize(field.getter.apply(items[id]));
+                normalized[field.ordinal()][id] = text;
+                for (String token : tokenize(text)) {
+                    termToPosting.computeIfAbsent(token, k -> new Posting()).add(id, field);
+                }
+            }
+        }
+
+        String[] terms = termToPosting.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        byte[][] postingFields = new byte[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            Posting posting = termToPosting.get(terms[t]);
+            postings[t] = posting.ids();
+            postingFields[t] = posting.fields();
+        }
+
+        List<double[]> bounds = new ArrayList<>();  // {value, item}
+        List<double[]> ranges = new ArrayList<>();  // {low, high, item}
+        for (int id = 0; id < items.length; id++) {
+            ClinicalLabItem item = items[id];
+            addRange(bounds, ranges, item.getMaleRangeLow(), item.getMaleRangeHigh(), id);
+            addRange(bounds, ranges, item.getFemaleRangeLow(), item.getFemaleRangeHigh(), id);
+        }
+        bounds.sort((a, b) -> Double.compare(a[0], b[0]));
+        ranges.sort((a, b) -> Double.compare(a[0], b[0]));
+
+        double[] boundValues = new double[bounds.size()];
+        int[] boundItems = new int[bounds.size()];
+        for (int i = 0; i < boundValues.length; i++) {
+            boundValues[i] = bounds.get(i)[0];
+            boundItems[i] = (int) bounds.get(i)[1];
+        }
+        double[] rangeLows = new double[ranges.size()];
+        double[] rangeHighs = new double[ranges.size()];
+        int[] rangeItems = new int[ranges.size()];
+        for (int i = 0; i < rangeLows.length; i++) {
+            rangeLows[i] = ranges.get(i)[0];
+            rangeHighs[i] = ranges.get(i)[1];
+            rangeItems[i] = (int) ranges.get(i)[2];
+        }
+
+        return new ClinicalLabSearchIndex(items, normalized, terms, postings, postingFields,
+                boundValues, boundItems, rangeLows, rangeHighs, rangeItems);
+    }
+
+    /** The indexed items, in database order. */
+    public List<ClinicalLabItem> items() {
+        return Collections.unmodifiableList(Arrays.asList(items));
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Returns up to {@code limit} items matching every token of {@code query}, best match first.
+     * A blank query returns every item in database order.
+     */
+    public List<ClinicalLabItem> search(String query, int limit) {
+        String normalizedQuery = normalize(query).trim();
+        List<String> queryTokens = tokenize(normalizedQuery);
+        if (limit <= 0) return List.of();
+        if (queryTokens.isEmpty()) return items().subList(0, Math.min(limit, items.length));
+
+        int[] total = null;
+        int[] tokenScore = new int[items.length];
+        for (String token : queryTokens) {
+            Arrays.fill(tokenScore, 0);
+            scoreToken(token, tokenScore);
+            if (total == null) {
+                total = tokenScore.clone();
+            } else {
+                for (int id = 0; id < total.length; id++) {
+                    total[id] = tokenScore[id] == 0 ? 0 : total[id] + tokenScore[id];
+                }
+            }
+        }
+
+        List<Integer> matched = new ArrayList<>();
+        String[] names = normalized[Field.TEST_NAME.ordinal()];
+        for (int id = 0; id < total.length; id++) {
+            if (total[id] == 0) continue;
+            if (names[id].equals(normalizedQuery)) total[id] += EXACT_NAME_BONUS;
+            matched.add(id);
+        }
+        int[] scores = total;
+        matched.sort((a, b) -> scores[a] != scores[b] ? Integer.compare(scores[b], scores[a]) : Integer.compare(a, b));
+
+        List<ClinicalLabItem> out = new ArrayList<>(Math.min(limit, matched.size()));
+        for (int i = 0; i < matched.size() && out.size() < limit; i++) {
+            out.add(items[matched.get(i)]);
+        }
+        return out;
+    }
+
+    /** Adds the best per-field score of {@code token} to each matching item. */
+    private void scoreToken(String token, int[] score) {
+        boolean anyPrefix = false;
+        for (int t = lowerBound(token); t < terms.length && terms[t].startsWith(token); t++) {
+            anyPrefix = true;
+            int multiplier = terms[t].length() == token.length() ? 2 : 1;
+            int[] ids = postings[t];
+            byte[] masks = postingFields[t];
+            for (int i = 0; i < ids.length; i++) {
+                score[ids[i]] = Math.max(score[ids[i]], bestWeight(masks[i]) * multiplier);
+            }
+        }
+        if (!anyPrefix) {
+            for (Field field : FIELDS) {
+                String[] texts = normalized[field.ordinal()];
+                for (int id = 0; id < texts.length; id++) {
+                    if (texts[id].contains(token)) score[id] = Math.max(score[id], field.weight);
+                }
+            }
+        }
+        scoreNumber(token, score);
+    }
+
+    private void scoreNumber(String token, int[] score) {
+        double value;
+        try {
+            value = Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (Double.isNaN(value)) return;
+
+        for (int i = lowerBound(boundValues, value); i < boundValues.length && boundValues[i] == value; i++) {
+            score[boundItems[i]] = Math.max(score[boundItems[i]], BOUND_EQUAL_SCORE);
+        }
+        // Ranges are sorted by low end, so only those starting at or below the value can contain it.
+        int end = upperBound(rangeLows, value);
+        for (int i = 0; i < end; i++) {
+            if (rangeHighs[i] >= value) {
+                score[rangeItems[i]] = Math.max(score[rangeItems[i]], RANGE_CONTAINS_SCORE);
+            }
+        }
+    }
+
+    private static int bestWeight(byte mask) {
+        for (Field field : FIELDS) {  // declared in descending weight
+            if ((mask & (1 << field.ordinal())) != 0) return field.weight;
+        }
+        return 0;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(key) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int lowerBound(double[] values, double key) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int upperBound(double[] values, double key) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Records both bounds for exact lookups; a range missing one end is open on that side. */
+    private static void addRange(List<double[]> bounds, List<double[]> ranges, Double low, Double high, int id) {
+        if (low != null) bounds.add(new double[] {low, id});
+        if (high != null) bounds.add(new double[] {high, id});
+        if (low == null && high == null) return;
+        ranges.add(new double[] {
+                low != null ? low : Double.NEGATIVE_INFINITY,
+                high != null ? high : Double.POSITIVE_INFINITY,
+                id});
+    }
+
+    static String normalize(String text) {
+        if (text == null) return "";
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits on anything that is not a letter or digit, except that a '.' between digits stays inside the
+     * token so "13.5" or "0.7" can be matched as numbers.
+     */
+    static List<String> tokenize(String normalized) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && isWordChar(normalized, i);
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordChar(String s, int i) {
+        char c = s.charAt(i);
+        if (Character.isLetterOrDigit(c)) return true;
+        return c == '.' && i > 0 && i + 1 < s.length()
+                && Character.isDigit(s.charAt(i - 1)) && Character.isDigit(s.charAt(i + 1));
+    }
+
+    /** Growable posting list used while building. */
+    private static final class Posting {
+        private int[] ids = new int[4];
+        private byte[] fields = new byte[4];
+        private int size;
+
+        void add(int id, Field field) {
+            if (size > 0 && ids[size - 1] == id) {
+                fields[size - 1] |= (byte) (1 << field.ordinal());
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            ids[size] = id;
+            fields[size] = (byte) (1 << field.ordinal());
+            size++;
+        }
+
+        int[] ids() { return Arrays.copyOf(ids, size); }
+        byte[] fields() { return Arrays.copyOf(fields, size); }
+    }
+}
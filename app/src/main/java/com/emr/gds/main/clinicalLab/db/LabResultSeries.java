@@ -0,0 +1,312 @@
+package com.emr.gds.main.clinicalLab.db;
+
+import com.emr.gds.main.clinicalLab.model.LabFlag;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time-ordered lab values of one test for one patient, held in primitive column chunks.
+ * <p>
+ * Each chunk stores up to {@link #CHUNK_SIZE} points as parallel {@code long[]} times (epoch millis),
+ * {@code double[]} values and {@code byte[]} range flags, so appends, range lookups and latest-N reads never box.
+ * Appends in time order go to the last chunk; a back-dated value is inserted in place and splits its chunk when
+ * it is full, so only that chunk and the ones after it change. Points with equal times keep their insertion
+ * order, and a point equal in time and value to one already held is skipped, so re-importing is harmless.
+ * <p>
+ * Reads are public; mutation goes through {@link LabResultStore}, which also persists every chunk as one
+ * packed blob. Not thread-safe on its own; the store serialises access.
+ */
+public final class LabResultSeries {
+
+    static final int CHUNK_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** A copied-out run of points in time order; the arrays are the caller's to keep. */
+    public record Points(long[] times, double[] values, LabFlag[] flags) {
+        public static final Points EMPTY = new Points(new long[0], new double[0], new LabFlag[0]);
+
+        public int size() {
+            return times.length;
+        }
+    }
+
+    private static final LabFlag[] FLAGS = LabFlag.values();
+
+    static final class Chunk {
+        long[] times;
+        double[] values;
+        byte[] flags;   // LabFlag ordinals; packed as LabFlag codes, which stay fixed if the enum changes
+        int size;
+
+        Chunk(int capacity) {
+            times = new long[capacity];
+            values = new double[capacity];
+            flags = new byte[capacity];
+        }
+
+        long lastTime() {
+            return times[size - 1];
+        }
+
+        void ensureCapacity(int needed) {
+            if (needed > times.length) {
+                int capacity = Math.min(CHUNK_SIZE, Math.max(needed, times.length * 2));
+                times = Arrays.copyOf(times, capacity);
+                values = Arrays.copyOf(values, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+            }
+        }
+    }
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int size;
+
+    LabResultSeries() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long timeAt(int index) {
+        int[] at = locate(index);
+        return chunks.get(at[0]).times[at[1]];
+    }
+
+    public double valueAt(int index) {
+        int[] at = locate(index);
+        return chunks.get(at[0]).values[at[1]];
+    }
+
+    public LabFlag flagAt(int index) {
+        int[] at = locate(index);
+        return FLAGS[chunks.get(at[0]).flags[at[1]]];
+    }
+
+    /** The newest {@code n} points (fewer if the series is shorter), oldest first. */
+    public Points latest(int n) {
+        int count = Math.min(Math.max(n, 0), size);
+        return copy(size - count, size);
+    }
+
+    /** Points with {@code fromInclusive <= time < toExclusive}, oldest first. */
+    public Points range(long fromInclusive, long toExclusive) {
+        if (toExclusive <= fromInclusive) return Points.EMPTY;
+        return copy(lowerBound(fromInclusive), lowerBound(toExclusive));
+    }
+
+    /** Index of the first point with a time {@code >= time}, or {@link #size()} if there is none. */
+    public int lowerBound(long time) {
+        int base = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.lastTime() >= time) {
+                int lo = 0, hi = chunk.size;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (chunk.times[mid] < time) lo = mid + 1; else hi = mid;
+                }
+                return base + lo;
+            }
+            base += chunk.size;
+        }
+        return size;
+    }
+
+    private Points copy(int from, int to) {
+        int count = to - from;
+        if (count <= 0) return Points.EMPTY;
+        long[] times = new long[count];
+        double[] values = new double[count];
+        LabFlag[] flags = new LabFlag[count];
+        int base = 0, out = 0;
+        for (Chunk chunk : chunks) {
+            int start = Math.max(from - base, 0);
+            int end = Math.min(to - base, chunk.size);
+            if (start < end) {
+                System.arraycopy(chunk.times, start, times, out, end - start);
+                System.arraycopy(chunk.values, start, values, out, end - start);
+                for (int i = start; i < end; i++) {
+                    flags[out + i - start] = FLAGS[chunk.flags[i]];
+                }
+                out += end - start;
+            }
+            base += chunk.size;
+            if (base >= to) break;
+        }
+        return new Points(times, values, flags);
+    }
+
+    private int[] locate(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        int ci = 0;
+        while (index >= chunks.get(ci).size) {
+            index -= chunks.get(ci).size;
+            ci++;
+        }
+        return new int[] {ci, index};
+    }
+
+    // ================================
+    // Store-side mutation and packing
+    // ================================
+
+    int chunkCount() {
+        return chunks.size();
+    }
+
+    Chunk chunk(int index) {
+        return chunks.get(index);
+    }
+
+    /** Adds a chunk read back from the database; chunks must arrive in order. */
+    void addLoadedChunk(Chunk chunk) {
+        chunks.add(chunk);
+        size += chunk.size;
+    }
+
+    /** True if a point with exactly this time and value is already held. */
+    boolean contains(long time, double value) {
+        for (int i = lowerBound(time); i < size && timeAt(i) == time; i++) {
+            if (Double.compare(valueAt(i), value) == 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Inserts one point after any points with the same or an earlier time, unless {@link #contains} it already.
+     *
+     * @return the index of the first chunk whose contents or position changed, or -1 if the point was a duplicate
+     */
+    int insert(long time, double value, LabFlag flag) {
+        if (contains(time, value)) return -1;
+        if (chunks.isEmpty()) chunks.add(new Chunk(INITIAL_CAPACITY));
+
+        int ci = chunks.size() - 1;
+        Chunk chunk = chunks.get(ci);
+        if (chunk.size == 0 || chunk.lastTime() <= time) {
+            if (chunk.size == CHUNK_SIZE) {
+                chunk = new Chunk(INITIAL_CAPACITY);
+                chunks.add(chunk);
+                ci++;
+            }
+            chunk.ensureCapacity(chunk.size + 1);
+            chunk.times[chunk.size] = time;
+            chunk.values[chunk.size] = value;
+            chunk.flags[chunk.size] = (byte) flag.ordinal();
+            chunk.size++;
+            size++;
+            return ci;
+        }
+
+        // Back-dated value: the first chunk ending after it takes it.
+        ci = 0;
+        while (chunks.get(ci).lastTime() <= time) ci++;
+        int firstChanged = ci;
+        chunk = chunks.get(ci);
+        int pos = 0;
+        while (pos < chunk.size && chunk.times[pos] <= time) pos++;
+
+        if (chunk.size == CHUNK_SIZE) {
+            int half = CHUNK_SIZE / 2;
+            Chunk right = new Chunk(CHUNK_SIZE);
+            System.arraycopy(chunk.times, half, right.times, 0, CHUNK_SIZE - half);
+            System.arraycopy(chunk.values, half, right.values, 0, CHUNK_SIZE - half);
+            System.arraycopy(chunk.flags, half, right.flags, 0, CHUNK_SIZE - half);
+            right.size = CHUNK_SIZE - half;
+            chunk.size = half;
+            chunks.add(ci + 1, right);
+            if (pos > half) {
+                chunk = right;
+                pos -= half;
+            }
+        }
+
+        chunk.ensureCapacity(chunk.size + 1);
+        System.arraycopy(chunk.times, pos, chunk.times, pos + 1, chunk.size - pos);
+        System.arraycopy(chunk.values, pos, chunk.values, pos + 1, chunk.size - pos);
+        System.arraycopy(chunk.flags, pos, chunk.flags, pos + 1, chunk.size - pos);
+        chunk.times[pos] = time;
+        chunk.values[pos] = value;
+        chunk.flags[pos] = (byte) flag.ordinal();
+        chunk.size++;
+        size++;
+        return firstChanged;
+    }
+
+    /**
+     * Packs a chunk as: varint count, zig-zag varint first time, varint deltas to each following time,
+     * the values as raw 8-byte doubles, then one {@link LabFlag#code()} byte per point. Visit times are close
+     * together, so most deltas take 4-5 bytes.
+     */
+    static byte[] pack(Chunk chunk) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + chunk.size * 14);
+        writeVarLong(out, chunk.size);
+        long previous = 0;
+        for (int i = 0; i < chunk.size; i++) {
+            long t = chunk.times[i];
+            writeVarLong(out, i == 0 ? (t << 1) ^ (t >> 63) : t - previous);
+            previous = t;
+        }
+        ByteBuffer values = ByteBuffer.allocate(chunk.size * Double.BYTES);
+        for (int i = 0; i < chunk.size; i++) {
+            values.putDouble(chunk.values[i]);
+        }
+        out.writeBytes(values.array());
+        for (int i = 0; i < chunk.size; i++) {
+            out.write(FLAGS[chunk.flags[i]].code());
+        }
+        return out.toByteArray();
+    }
+
+    static Chunk unpack(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int count = (int) readVarLong(in);
+        if (count < 0 || count > CHUNK_SIZE) throw new IllegalArgumentException("Corrupt lab result chunk: " + count + " points");
+        Chunk chunk = new Chunk(Math.max(count, INITIAL_CAPACITY));
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long raw = readVarLong(in);
+            long t = i == 0 ? (raw >>> 1) ^ -(raw & 1) : previous + raw;
+            chunk.times[i] = t;
+            previous = t;
+        }
+        if (in.remaining() < count * Double.BYTES) throw new IllegalArgumentException("Corrupt lab result chunk: missing values");
+        for (int i = 0; i < count; i++) {
+            chunk.values[i] = in.getDouble();
+        }
+        if (in.remaining() < count) throw new IllegalArgumentException("Corrupt lab result chunk: missing flags");
+        for (int i = 0; i < count; i++) {
+            byte code = in.get();
+            LabFlag flag = LabFlag.fromCode(code);
+            if (flag == null) throw new IllegalArgumentException("Corrupt lab result chunk: flag " + code);
+            chunk.flags[i] = (byte) flag.ordinal();
+        }
+        chunk.size = count;
+        return chunk;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IllegalArgumentException("Corrupt lab result chunk: malformed varint");
+    }
+}
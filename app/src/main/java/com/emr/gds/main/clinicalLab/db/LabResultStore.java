@@ -0,0 +1,298 @@
+package com.emr.gds.main.clinicalLab.db;
+
+import com.emr.gds.main.clinicalLab.db.LabResultSeries.Points;
+import com.emr.gds.main.clinicalLab.model.LabFlag;
+import com.emr.gds.main.db.SqliteDataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-patient lab results, keyed by patient id and test id (the {@code clinical_lab_items.id} of the test).
+ * <p>
+ * Each (patient, test) series lives in memory as a {@link LabResultSeries} of primitive chunks and on disk as
+ * one row per chunk in {@code lab_result_chunks}, holding the packed times and values as a blob. A series is
+ * read from the database once, on first use, and stays cached while recently used. Appends write through: the
+ * changed chunks are rewritten in one transaction before the call returns, and a {@link Batch} spanning many
+ * series is still one transaction. If that fails, the touched series are dropped from the cache so the next
+ * read reloads what was actually committed. Each point carries the {@link LabFlag} it was classified with; a
+ * point whose time and value are already stored for the series is skipped.
+ * <p>
+ * All methods are synchronized; results are returned as copied {@link Points}. {@link #close()} drops the cache;
+ * the pooled connections belong to {@link SqliteDataSource} and are released by {@link SqliteDataSource#closeAll()}.
+ */
+public class LabResultStore {
+
+    private static final String DB_FILENAME = "lab_results.db";
+    private static final int MAX_CACHED_SERIES = 256;
+
+    private record Key(String patientId, int testId) {}
+
+    /** A series changed by a write and the index of its first changed chunk. */
+    private record Changed(LabResultSeries series, int fromChunk) {}
+
+    private final SqliteDataSource dataSource;
+    private boolean closed;
+    private final Map<Key, LabResultSeries> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, LabResultSeries> eldest) {
+            return size() > MAX_CACHED_SERIES;
+        }
+    };
+
+    public LabResultStore() throws SQLException {
+        this(DB_FILENAME);
+    }
+
+    public LabResultStore(String dbFileName) throws SQLException {
+        this.dataSource = SqliteDataSource.forAppDb(dbFileName);
+        createTables();
+    }
+
+    private void createTables() throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS lab_result_chunks (
+                    patient_id  TEXT    NOT NULL,
+                    test_id     INTEGER NOT NULL,
+                    chunk_no    INTEGER NOT NULL,
+                    first_time  INTEGER NOT NULL,
+                    last_time   INTEGER NOT NULL,
+                    point_count INTEGER NOT NULL,
+                    data        BLOB    NOT NULL,
+                    PRIMARY KEY (patient_id, test_id, chunk_no)
+                ) WITHOUT ROWID
+                """);
+        }
+    }
+
+    // ================================
+    // Writes
+    // ================================
+
+    /** Adds one classified point; returns false if it was already stored. */
+    public synchronized boolean append(String patientId, int testId, long time, double value, LabFlag flag) throws SQLException {
+        Batch batch = new Batch();
+        batch.add(patientId, testId, time, value, flag);
+        return write(batch) > 0;
+    }
+
+    public synchronized boolean append(String patientId, int testId, long time, double value) throws SQLException {
+        return append(patientId, testId, time, value, LabFlag.UNKNOWN);
+    }
+
+    /**
+     * Adds unclassified points to one series; {@code times} need not be sorted.
+     * @return how many of the points were new
+     */
+    public synchronized int appendAll(String patientId, int testId, long[] times, double[] values) throws SQLException {
+        if (times.length != values.length) {
+            throw new IllegalArgumentException("times and values differ in length: " + times.length + " vs " + values.length);
+        }
+        Batch batch = new Batch();
+        for (int i = 0; i < times.length; i++) {
+            batch.add(patientId, testId, times[i], values[i]);
+        }
+        return write(batch);
+    }
+
+    /**
+     * Points for any number of series, written together by {@link #write(Batch)}. Buffers are primitive and
+     * grow with the batch, so a bulk import bounds its memory by choosing how many rows go into one batch.
+     */
+    public static final class Batch {
+        private final Map<Key, PointBuffer> series = new LinkedHashMap<>();
+        private int size;
+
+        public void add(String patientId, int testId, long time, double value) {
+            add(patientId, testId, time, value, LabFlag.UNKNOWN);
+        }
+
+        public void add(String patientId, int testId, long time, double value, LabFlag flag) {
+            series.computeIfAbsent(new Key(patientId, testId), k -> new PointBuffer()).add(time, value, flag);
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    private static final class PointBuffer {
+        long[] times = new long[8];
+        double[] values = new double[8];
+        LabFlag[] flags = new LabFlag[8];
+        int size;
+
+        void add(long time, double value, LabFlag flag) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                flags = Arrays.copyOf(flags, size * 2);
+            }
+            times[size] = time;
+            values[size] = value;
+            flags[size] = flag;
+            size++;
+        }
+    }
+
+    /**
+     * Applies every new point of {@code batch} and persists all changed chunks in one transaction.
+     * @return how many points were new; the rest were already stored
+     */
+    public synchronized int write(Batch batch) throws SQLException {
+        ensureOpen();
+        if (batch.isEmpty()) return 0;
+
+        // Held here rather than looked up again: a large batch can push its own series out of the LRU.
+        Map<Key, Changed> changed = new LinkedHashMap<>();
+        int added = 0;
+        try {
+            for (Map.Entry<Key, PointBuffer> entry : batch.series.entrySet()) {
+                LabResultSeries series = load(entry.getKey());
+                PointBuffer points = entry.getValue();
+                int first = Integer.MAX_VALUE;
+                for (int i = 0; i < points.size; i++) {
+                    int chunk = series.insert(points.times[i], points.values[i], points.flags[i]);
+                    if (chunk < 0) continue;
+                    first = Math.min(first, chunk);
+                    added++;
+                }
+                if (first != Integer.MAX_VALUE) changed.put(entry.getKey(), new Changed(series, first));
+            }
+            if (!changed.isEmpty()) writeChunks(changed);
+        } catch (SQLException e) {
+            cache.keySet().removeAll(batch.series.keySet());
+            throw e;
+        }
+        return added;
+    }
+
+    /** Removes every result of one patient. */
+    public synchronized void deletePatient(String patientId) throws SQLException {
+        ensureOpen();
+        try (Connection conn = dataSource.getWriteConnection();
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM lab_result_chunks WHERE patient_id = ?")) {
+            pstmt.setString(1, patientId);
+            pstmt.executeUpdate();
+        } finally {
+            cache.keySet().removeIf(k -> k.patientId().equals(patientId));
+        }
+    }
+
+    // ================================
+    // Reads
+    // ================================
+
+    public synchronized int count(String patientId, int testId) throws SQLException {
+        return load(new Key(patientId, testId)).size();
+    }
+
+    /** The newest {@code n} results of a test, oldest first. */
+    public synchronized Points latest(String patientId, int testId, int n) throws SQLException {
+        return load(new Key(patientId, testId)).latest(n);
+    }
+
+    /** Results with {@code fromInclusive <= time < toExclusive}, oldest first. */
+    public synchronized Points range(String patientId, int testId, long fromInclusive, long toExclusive) throws SQLException {
+        return load(new Key(patientId, testId)).range(fromInclusive, toExclusive);
+    }
+
+    /** Test ids with at least one stored result for the patient, ascending. */
+    public synchronized int[] testIds(String patientId) throws SQLException {
+        ensureOpen();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT DISTINCT test_id FROM lab_result_chunks WHERE patient_id = ? ORDER BY test_id")) {
+            pstmt.setString(1, patientId);
+            int[] ids = new int[16];
+            int n = 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = rs.getInt(1);
+                }
+            }
+            return Arrays.copyOf(ids, n);
+        }
+    }
+
+    // ================================
+    // Persistence
+    // ================================
+
+    private void ensureOpen() throws SQLException {
+        if (closed) throw new SQLException("Lab result store is closed");
+    }
+
+    /** Drops the series cache; later calls fail. Waits for a write in progress to finish. */
+    public synchronized void close() {
+        closed = true;
+        cache.clear();
+    }
+
+    private LabResultSeries load(Key key) throws SQLException {
+        ensureOpen();
+        LabResultSeries series = cache.get(key);
+        if (series != null) return series;
+
+        series = new LabResultSeries();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT data FROM lab_result_chunks WHERE patient_id = ? AND test_id = ? ORDER BY chunk_no")) {
+            pstmt.setString(1, key.patientId());
+            pstmt.setInt(2, key.testId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    series.addLoadedChunk(LabResultSeries.unpack(rs.getBytes(1)));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Unreadable lab results for patient " + key.patientId() + ", test " + key.testId(), e);
+        }
+        cache.put(key, series);
+        return series;
+    }
+
+    /** Rewrites, for each series, its chunks from the first changed one to the end; earlier chunks are unchanged. */
+    private void writeChunks(Map<Key, Changed> changed) throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement upsert = conn.prepareStatement(
+                         "INSERT OR REPLACE INTO lab_result_chunks " +
+                         "(patient_id, test_id, chunk_no, first_time, last_time, point_count, data) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (Map.Entry<Key, Changed> entry : changed.entrySet()) {
+                    Key key = entry.getKey();
+                    LabResultSeries series = entry.getValue().series();
+                    for (int c = entry.getValue().fromChunk(); c < series.chunkCount(); c++) {
+                        LabResultSeries.Chunk chunk = series.chunk(c);
+                        upsert.setString(1, key.patientId());
+                        upsert.setInt(2, key.testId());
+                        upsert.setInt(3, c);
+                        upsert.setLong(4, chunk.times[0]);
+                        upsert.setLong(5, chunk.lastTime());
+                        upsert.setInt(6, chunk.size);
+                        upsert.setBytes(7, LabResultSeries.pack(chunk));
+                        upsert.addBatch();
+                    }
+                }
+                upsert.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.emr.gds.main.clinicalLab.model;
+
+/** Result of comparing a lab value with its reference range. */
+public enum LabFlag {
+    LOW("L"),
+    NORMAL("N"),
+    HIGH("H"),
+    /** No usable reference range for the test and sex. */
+    UNKNOWN("?");
+
+    private final String symbol;
+
+    LabFlag(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String symbol() {
+        return symbol;
+    }
+
+    /** One-byte code stored with each lab result: the symbol's character. Never change or reuse a code. */
+    public byte code() {
+        return (byte) symbol.charAt(0);
+    }
+
+    /** The flag stored as {@code code}, or null if no flag has that code. */
+    public static LabFlag fromCode(byte code) {
+        for (LabFlag flag : values()) {
+            if (flag.code() == code) return flag;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.emr.gds.main.clinicalLab.model;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Numeric reference interval. A missing end is infinite; each end is inclusive or exclusive.
+ * <p>
+ * {@link #parse(String)} reads the free-text forms used in clinical_lab_items:
+ * {@code "70 - 100 mg/dL"}, {@code "-2 to +2 mEq/L"}, {@code "< 5 ng/mL"}, {@code "≥ 60"},
+ * {@code "Negative (<0.9)"}, {@code "Immune (>10)"}. Titers ({@code "< 1:20"}) and purely
+ * qualitative text ({@code "Negative"}, {@code "46, XY"}) have no numeric interval.
+ */
+public record ReferenceRange(double low, boolean lowInclusive, double high, boolean highInclusive) {
+
+    private static final String NUMBER = "([-+]?\\d+(?:\\.\\d+)?)";
+    private static final Pattern BETWEEN = Pattern.compile(NUMBER + "\\s*(?:-|–|~|to)\\s*" + NUMBER + "(?!\\s*:)");
+    private static final Pattern BOUND = Pattern.compile("(<=|>=|=<|=>|≤|≥|<|>)\\s*" + NUMBER + "(?![\\d.]|\\s*:)");
+
+    public ReferenceRange {
+        if (Double.isNaN(low) || Double.isNaN(high) || low > high) {
+            throw new IllegalArgumentException("Invalid reference range: " + low + " - " + high);
+        }
+    }
+
+    public static ReferenceRange between(double low, double high) {
+        return new ReferenceRange(low, true, high, true);
+    }
+
+    /** Returns the interval described by {@code text}, or {@code null} if it holds none. */
+    public static ReferenceRange parse(String text) {
+        if (text == null || text.isBlank()) return null;
+
+        Matcher m = BETWEEN.matcher(text);
+        if (m.find()) {
+            double a = Double.parseDouble(m.group(1));
+            double b = Double.parseDouble(m.group(2));
+            return a <= b ? between(a, b) : null;
+        }
+
+        m = BOUND.matcher(text);
+        if (m.find()) {
+            double v = Double.parseDouble(m.group(2));
+            return switch (m.group(1)) {
+                case "<" -> new ReferenceRange(Double.NEGATIVE_INFINITY, false, v, false);
+                case "<=", "=<", "≤" -> new ReferenceRange(Double.NEGATIVE_INFINITY, false, v, true);
+                case ">" -> new ReferenceRange(v, false, Double.POSITIVE_INFINITY, false);
+                default -> new ReferenceRange(v, true, Double.POSITIVE_INFINITY, false);
+            };
+        }
+        return null;
+    }
+
+    public LabFlag classify(double value) {
+        if (Double.isNaN(value)) return LabFlag.UNKNOWN;
+        if (value < low || (value == low && !lowInclusive)) return LabFlag.LOW;
+        if (value > high || (value == high && !highInclusive)) return LabFlag.HIGH;
+        return LabFlag.NORMAL;
+    }
+}
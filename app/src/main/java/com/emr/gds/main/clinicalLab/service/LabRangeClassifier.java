@@ -0,0 +1,257 @@
+package com.emr.gds.main.clinicalLab.service;
+
+import com.emr.gds.main.clinicalLab.db.ClinicalLabDatabase;
+import com.emr.gds.main.clinicalLab.model.ClinicalLabItem;
+import com.emr.gds.main.clinicalLab.model.LabFlag;
+import com.emr.gds.main.clinicalLab.model.ReferenceRange;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies lab values as low, normal or high against the reference ranges of the clinical lab items.
+ * <p>
+ * The free-text ranges are parsed once, when the classifier is built, into a primitive table indexed by
+ * test id and sex ({@code clinical_lab_items} ids are small and dense). A text range that does not parse
+ * falls back to the numeric range columns when they form a real interval. A missing female range borrows
+ * the male one and vice versa. After that, classifying a value is two array reads and two comparisons.
+ * <p>
+ * Pasted panels ({@code "TSH 5.8 μIU/mL"}, {@code "HbA1c: 7.2 %"}) are matched to tests by the longest known
+ * name, abbreviation or code at the start of each line. Has no JavaFX dependency, so it also runs headless:
+ * {@code java ... LabRangeClassifier results.txt [M|F]} prints one tab-separated, flagged row per line.
+ */
+public final class LabRangeClassifier {
+
+    public enum Sex { MALE, FEMALE }
+
+    /** One classified line of a pasted panel; {@code testId} is -1 when the test was not recognised. */
+    public record PanelResult(String line, int testId, String testName, double value, String unit, LabFlag flag) {
+        public boolean recognised() {
+            return testId >= 0;
+        }
+
+        /** "TSH 5.8 μIU/mL (H)" for abnormal results; unrecognised lines are returned unchanged. */
+        public String toEmrLine() {
+            if (!recognised()) return line;
+            String text = testName + " " + formatValue(value) + (unit == null || unit.isBlank() ? "" : " " + unit);
+            return flag == LabFlag.LOW || flag == LabFlag.HIGH ? text + " (" + flag.symbol() + ")" : text;
+        }
+    }
+
+    private static final int KNOWN = 1, LOW_INCLUSIVE = 2, HIGH_INCLUSIVE = 4;
+    private static final Pattern VALUE = Pattern.compile("[-+]?\\d+(?:\\.\\d+)?");
+
+    // Slot for (test id, sex) is id * 2 + sex.ordinal().
+    private final double[] lows;
+    private final double[] highs;
+    private final byte[] bounds;
+    private final ClinicalLabItem[] itemsById;
+    private final String[] aliases;    // normalised, longest first
+    private final int[] aliasIds;
+    private final Map<String, Integer> aliasToId;
+
+    private LabRangeClassifier(double[] lows, double[] highs, byte[] bounds, ClinicalLabItem[] itemsById,
+                               String[] aliases, int[] aliasIds, Map<String, Integer> aliasToId) {
+        this.lows = lows;
+        this.highs = highs;
+        this.bounds = bounds;
+        this.itemsById = itemsById;
+        this.aliases = aliases;
+        this.aliasIds = aliasIds;
+        this.aliasToId = aliasToId;
+    }
+
+    public static LabRangeClassifier build(List<ClinicalLabItem> items) {
+        int maxId = -1;
+        for (ClinicalLabItem item : items) maxId = Math.max(maxId, item.getId());
+        int slots = (maxId + 1) * 2;
+        double[] lows = new double[slots];
+        double[] highs = new double[slots];
+        byte[] bounds = new byte[slots];
+        ClinicalLabItem[] itemsById = new ClinicalLabItem[maxId + 1];
+        Map<String, Integer> aliasToId = new HashMap<>();
+
+        for (ClinicalLabItem item : items) {
+            int id = item.getId();
+            if (id < 0) continue;
+            itemsById[id] = item;
+            ReferenceRange male = rangeOf(item.getMaleReferenceRange(), item.getMaleRangeLow(), item.getMaleRangeHigh());
+            ReferenceRange female = rangeOf(item.getFemaleReferenceRange(), item.getFemaleRangeLow(), item.getFemaleRangeHigh());
+            put(lows, highs, bounds, id * 2 + Sex.MALE.ordinal(), male != null ? male : female);
+            put(lows, highs, bounds, id * 2 + Sex.FEMALE.ordinal(), female != null ? female : male);
+            for (String alias : aliasesOf(item)) {
+                aliasToId.putIfAbsent(alias, id);
+            }
+        }
+
+        String[] aliases = aliasToId.keySet().toArray(new String[0]);
+        Arrays.sort(aliases, (a, b) -> a.length() != b.length() ? b.length() - a.length() : a.compareTo(b));
+        int[] aliasIds = new int[aliases.length];
+        for (int i = 0; i < aliases.length; i++) aliasIds[i] = aliasToId.get(aliases[i]);
+        return new LabRangeClassifier(lows, highs, bounds, itemsById, aliases, aliasIds, aliasToId);
+    }
+
+    /** Builds from the clinical lab database. */
+    public static LabRangeClassifier load(ClinicalLabDatabase database) throws SQLException {
+        return build(database.getAllItems());
+    }
+
+    // ================================
+    // Classification
+    // ================================
+
+    public LabFlag classify(int testId, Sex sex, double value) {
+        int slot = testId * 2 + sex.ordinal();
+        if (testId < 0 || slot >= bounds.length || (bounds[slot] & KNOWN) == 0 || Double.isNaN(value)) {
+            return LabFlag.UNKNOWN;
+        }
+        byte b = bounds[slot];
+        double low = lows[slot], high = highs[slot];
+        if (value < low || (value == low && (b & LOW_INCLUSIVE) == 0)) return LabFlag.LOW;
+        if (value > high || (value == high && (b & HIGH_INCLUSIVE) == 0)) return LabFlag.HIGH;
+        return LabFlag.NORMAL;
+    }
+
+    /** Classifies {@code values[i]} of test {@code testIds[i]} into {@code out[i]} in one pass. */
+    public void classify(int[] testIds, double[] values, Sex sex, LabFlag[] out) {
+        if (testIds.length != values.length || out.length < values.length) {
+            throw new IllegalArgumentException("testIds, values and out must have matching lengths");
+        }
+        for (int i = 0; i < values.length; i++) {
+            out[i] = classify(testIds[i], sex, values[i]);
+        }
+    }
+
+    /**
+     * Id of the test whose name, parenthesised abbreviation or one of whose codes equals {@code nameOrCode}
+     * (ignoring case and extra spaces), or -1.
+     */
+    public int testIdFor(String nameOrCode) {
+        Integer id = aliasToId.get(normalize(nameOrCode));
+        return id != null ? id : -1;
+    }
+
+    /** The test with the given id, or {@code null}. */
+    public ClinicalLabItem item(int testId) {
+        return testId >= 0 && testId < itemsById.length ? itemsById[testId] : null;
+    }
+
+    /** The reference range used for a test and sex, or {@code null} if there is none. */
+    public ReferenceRange rangeFor(int testId, Sex sex) {
+        int slot = testId * 2 + sex.ordinal();
+        if (testId < 0 || slot >= bounds.length || (bounds[slot] & KNOWN) == 0) return null;
+        return new ReferenceRange(lows[slot], (bounds[slot] & LOW_INCLUSIVE) != 0, highs[slot], (bounds[slot] & HIGH_INCLUSIVE) != 0);
+    }
+
+    // ================================
+    // Pasted panels
+    // ================================
+
+    /** Classifies every non-blank line of {@code text}; lines without a known test or a value come back unrecognised. */
+    public List<PanelResult> classifyPanel(String text, Sex sex) {
+        List<PanelResult> results = new ArrayList<>();
+        if (text == null) return results;
+        for (String line : text.split("\\R")) {
+            if (!line.isBlank()) results.add(classifyLine(line.strip(), sex));
+        }
+        return results;
+    }
+
+    public PanelResult classifyLine(String line, Sex sex) {
+        String normalized = normalize(line);
+        for (int a = 0; a < aliases.length; a++) {
+            String alias = aliases[a];
+            if (!normalized.startsWith(alias)) continue;
+            if (normalized.length() > alias.length() && Character.isLetterOrDigit(normalized.charAt(alias.length()))) continue;
+
+            Matcher m = VALUE.matcher(normalized);
+            if (!m.find(alias.length())) break;
+            double value = Double.parseDouble(m.group());
+            ClinicalLabItem item = itemsById[aliasIds[a]];
+            return new PanelResult(line, item.getId(), item.getTestName(), value, item.getUnit(),
+                    classify(item.getId(), sex, value));
+        }
+        return new PanelResult(line, -1, null, Double.NaN, null, LabFlag.UNKNOWN);
+    }
+
+    // ================================
+    // Build helpers
+    // ================================
+
+    private static ReferenceRange rangeOf(String text, Double low, Double high) {
+        ReferenceRange parsed = ReferenceRange.parse(text);
+        if (parsed != null) return parsed;
+        if (low != null && high != null && low < high) return ReferenceRange.between(low, high);
+        return null;
+    }
+
+    private static void put(double[] lows, double[] highs, byte[] bounds, int slot, ReferenceRange range) {
+        if (range == null) return;
+        lows[slot] = range.low();
+        highs[slot] = range.high();
+        bounds[slot] = (byte) (KNOWN | (range.lowInclusive() ? LOW_INCLUSIVE : 0) | (range.highInclusive() ? HIGH_INCLUSIVE : 0));
+    }
+
+    /** Full name, name without its parenthetical, the parenthetical abbreviation, and each code. */
+    private static List<String> aliasesOf(ClinicalLabItem item) {
+        List<String> aliases = new ArrayList<>();
+        String name = normalize(item.getTestName());
+        if (!name.isEmpty()) aliases.add(name);
+        int open = name.indexOf('(');
+        if (open > 0) {
+            aliases.add(name.substring(0, open).strip());
+            int close = name.indexOf(')', open);
+            String inner = close > open ? name.substring(open + 1, close).strip() : "";
+            if (!inner.isEmpty() && inner.length() <= 10 && !inner.contains(" ")) aliases.add(inner);
+        }
+        if (item.getCodes() != null) {
+            for (String code : item.getCodes().split("[,;/]")) {
+                String c = normalize(code);
+                if (c.length() >= 2) aliases.add(c);
+            }
+        }
+        return aliases;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) return "";
+        return text.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String formatValue(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    // ================================
+    // Headless batch
+    // ================================
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: LabRangeClassifier <results-file> [M|F]");
+            System.exit(2);
+        }
+        Sex sex = args.length > 1 && args[1].toUpperCase(Locale.ROOT).startsWith("F") ? Sex.FEMALE : Sex.MALE;
+        LabRangeClassifier classifier = load(new ClinicalLabDatabase());
+        try {
+            for (PanelResult r : classifier.classifyPanel(Files.readString(Path.of(args[0]), StandardCharsets.UTF_8), sex)) {
+                System.out.println(r.recognised()
+                        ? r.testName() + "\t" + formatValue(r.value()) + "\t" + (r.unit() == null ? "" : r.unit()) + "\t" + r.flag().symbol()
+                        : r.line() + "\t\t\t" + LabFlag.UNKNOWN.symbol());
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.emr.gds.main.clinicalLab.service;
+
+import com.emr.gds.main.clinicalLab.db.LabResultStore;
+import com.emr.gds.main.clinicalLab.model.LabFlag;
+import com.emr.gds.main.clinicalLab.service.LabRangeClassifier.Sex;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams lab results from an analyzer or hospital CSV/TSV export into the {@link LabResultStore}.
+ * <p>
+ * The first line is a header. The delimiter (tab, comma or semicolon) is taken from it, and columns are found by
+ * name: patient ({@code patient_id}, {@code patient}, {@code chart_no}, ...), test code and/or test name, value,
+ * date, and an optional sex column used for classification (male when absent). Tests are mapped to
+ * {@code clinical_lab_items} through {@link LabRangeClassifier#testIdFor(String)}, trying the code column first,
+ * so the {@code codes} field of an item is what links it to the analyzer's own codes.
+ * <p>
+ * Rows are read one at a time, validated, classified against the reference ranges, and written with their flag
+ * in batches of {@link #BATCH_SIZE} rows, each batch one transaction. Results the store already holds (same
+ * patient, test, time and value) are skipped, so importing a file twice, or an export overlapping an earlier one,
+ * adds nothing twice. Memory is bounded by one batch plus the store's series
+ * cache and the first {@link #MAX_ERRORS} error messages, whatever the file size. Quoted fields may contain
+ * delimiters but not line breaks. Has no JavaFX dependency; the lab window runs it in a background task.
+ * One instance runs one import at a time.
+ */
+public class LabResultImporter {
+
+    public static final int BATCH_SIZE = 5_000;
+    public static final int MAX_ERRORS = 100;
+
+    /** Progress callback: bytes consumed so far out of the file size, and rows read. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(long bytesRead, long totalBytes, long rowsRead);
+    }
+
+    /**
+     * Outcome of one import. The flag counts cover every valid row, whether it was new ({@code imported}) or
+     * already stored ({@code duplicates}). {@code errors} holds at most {@link #MAX_ERRORS} messages.
+     */
+    public record Result(long rowsRead, long imported, long duplicates, long rejected,
+                         long low, long normal, long high, long unclassified,
+                         boolean cancelled, List<String> errors) {
+
+        public String summary() {
+            return String.format("%d rows read, %d imported, %d already stored, %d rejected (L %d / N %d / H %d / no range %d)%s",
+                    rowsRead, imported, duplicates, rejected, low, normal, high, unclassified, cancelled ? " - cancelled" : "");
+        }
+    }
+
+    private static final String[] PATIENT_HEADERS = {"patient_id", "patientid", "patient", "pid", "chart_no", "chartno", "chart", "mrn"};
+    private static final String[] CODE_HEADERS = {"test_code", "testcode", "code", "lab_code", "item_code"};
+    private static final String[] NAME_HEADERS = {"test_name", "testname", "test", "item", "item_name", "analyte", "name"};
+    private static final String[] VALUE_HEADERS = {"value", "result", "result_value", "numeric_result"};
+    private static final String[] DATE_HEADERS = {"collected_at", "collected", "datetime", "date_time", "result_date", "date", "time"};
+    private static final String[] SEX_HEADERS = {"sex", "gender"};
+
+    private static final Pattern NUMBER = Pattern.compile("[-+]?\\d+(?:\\.\\d+)?");
+    private static final Pattern DECIMAL_COMMA = Pattern.compile("^[^,]*\\d,\\d{1,2}(?!\\d)[^,]*$");
+    // Date-time formats first; the date-only ones start at DATE_ONLY_FROM.
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("yyyy.MM.dd HH:mm[:ss]"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd"),
+            DateTimeFormatter.ofPattern("yyyy/MM/dd"),
+            DateTimeFormatter.ofPattern("yyyy.MM.dd"),
+            DateTimeFormatter.ofPattern("yyyyMMdd")};
+    private static final int DATE_ONLY_FROM = 4;
+
+    private final LabResultStore store;
+    private final LabRangeClassifier classifier;
+    private final ZoneId zone;
+    // An export uses one date format throughout, so the last one that matched is tried first.
+    private int lastDateFormat = 0;
+
+    public LabResultImporter(LabResultStore store, LabRangeClassifier classifier) {
+        this(store, classifier, ZoneId.systemDefault());
+    }
+
+    public LabResultImporter(LabResultStore store, LabRangeClassifier classifier, ZoneId zone) {
+        this.store = store;
+        this.classifier = classifier;
+        this.zone = zone;
+    }
+
+    /**
+     * Imports {@code file}. Batches already written stay written if a later one fails or the import is cancelled.
+     *
+     * @param cancelled polled between rows; return {@code true} to stop after the current batch is written
+     */
+    public Result importFile(Path file, ProgressListener listener, BooleanSupplier cancelled) throws IOException, SQLException {
+        long totalBytes = Files.size(file);
+        try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(file));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8), 1 << 16)) {
+
+            String header = reader.readLine();
+            if (header == null) throw new IOException("Empty file: " + file);
+            if (header.startsWith("\uFEFF")) header = header.substring(1);
+            char delimiter = detectDelimiter(header);
+            List<String> headers = split(header, delimiter);
+            int patientCol = find(headers, PATIENT_HEADERS);
+            int codeCol = find(headers, CODE_HEADERS);
+            int nameCol = find(headers, NAME_HEADERS);
+            int valueCol = find(headers, VALUE_HEADERS);
+            int dateCol = find(headers, DATE_HEADERS);
+            int sexCol = find(headers, SEX_HEADERS);
+            if (patientCol < 0 || valueCol < 0 || dateCol < 0 || (codeCol < 0 && nameCol < 0)) {
+                throw new IOException("Header must name patient, test code or name, value and date columns: " + header);
+            }
+
+            Counts counts = new Counts();
+            LabResultStore.Batch batch = new LabResultStore.Batch();
+            long lineNo = 1;
+            String line;
+            boolean stopped = false;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                counts.rowsRead++;
+
+                List<String> cells = split(line, delimiter);
+                String error = importRow(cells, patientCol, codeCol, nameCol, valueCol, dateCol, sexCol, batch, counts);
+                if (error != null) {
+                    counts.reject("Line " + lineNo + ": " + error);
+                }
+
+                if (batch.size() >= BATCH_SIZE) {
+                    counts.written(batch.size(), store.write(batch));
+                    batch = new LabResultStore.Batch();
+                    if (listener != null) listener.progress(counter.count, totalBytes, counts.rowsRead);
+                }
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    stopped = true;
+                    break;
+                }
+            }
+            counts.written(batch.size(), store.write(batch));
+            if (listener != null) listener.progress(stopped ? counter.count : totalBytes, totalBytes, counts.rowsRead);
+            return counts.toResult(stopped);
+        }
+    }
+
+    /** Validates, classifies and queues one row; returns why it was rejected, or {@code null}. */
+    private String importRow(List<String> cells, int patientCol, int codeCol, int nameCol, int valueCol, int dateCol,
+                             int sexCol, LabResultStore.Batch batch, Counts counts) {
+        String patientId = cell(cells, patientCol);
+        if (patientId.isEmpty()) return "missing patient id";
+
+        int testId = codeCol >= 0 ? classifier.testIdFor(cell(cells, codeCol)) : -1;
+        if (testId < 0 && nameCol >= 0) testId = classifier.testIdFor(cell(cells, nameCol));
+        if (testId < 0) {
+            return "unknown test '" + (codeCol >= 0 ? cell(cells, codeCol) : "") + (nameCol >= 0 ? " " + cell(cells, nameCol) : "") + "'";
+        }
+
+        String rawValue = cell(cells, valueCol);
+        double value = parseValue(rawValue);
+        if (Double.isNaN(value)) return "non-numeric value '" + rawValue + "'";
+
+        long time = parseTime(cell(cells, dateCol));
+        if (time == Long.MIN_VALUE) return "unreadable date '" + cell(cells, dateCol) + "'";
+
+        Sex sex = cell(cells, sexCol).toUpperCase(Locale.ROOT).startsWith("F") ? Sex.FEMALE : Sex.MALE;
+        LabFlag flag = classifier.classify(testId, sex, value);
+        counts.count(flag);
+        batch.add(patientId, testId, time, value, flag);
+        return null;
+    }
+
+    /**
+     * First number in a result cell such as {@code "7.2"}, {@code "<0.01"}, {@code "135 L"} or {@code "1,250"}.
+     * A single comma followed by one or two digits is a decimal comma ({@code "7,2"}); other commas group
+     * thousands. Returns NaN when the cell holds no number.
+     */
+    static double parseValue(String raw) {
+        String text = raw.indexOf('.') < 0 && DECIMAL_COMMA.matcher(raw).find() ? raw.replace(',', '.') : raw.replace(",", "");
+        Matcher m = NUMBER.matcher(text);
+        return m.find() ? Double.parseDouble(m.group()) : Double.NaN;
+    }
+
+    private long parseTime(String text) {
+        for (int n = 0; n < DATE_FORMATS.length; n++) {
+            int f = (lastDateFormat + n) % DATE_FORMATS.length;
+            try {
+                long millis = f < DATE_ONLY_FROM
+                        ? LocalDateTime.parse(text, DATE_FORMATS[f]).atZone(zone).toInstant().toEpochMilli()
+                        : LocalDate.parse(text, DATE_FORMATS[f]).atStartOfDay(zone).toInstant().toEpochMilli();
+                lastDateFormat = f;
+                return millis;
+            } catch (DateTimeParseException ignored) {
+                // try the next format
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    // ================================
+    // Delimited text
+    // ================================
+
+    static char detectDelimiter(String header) {
+        if (header.indexOf('\t') >= 0) return '\t';
+        int commas = 0, semicolons = 0;
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c == ',') commas++;
+            else if (c == ';') semicolons++;
+        }
+        return semicolons > commas ? ';' : ',';
+    }
+
+    /** Splits one line; double quotes group a field and {@code ""} inside quotes is a literal quote. */
+    static List<String> split(String line, char delimiter) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cell.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                cells.add(cell.toString().strip());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString().strip());
+        return cells;
+    }
+
+    private static int find(List<String> headers, String[] candidates) {
+        for (String candidate : candidates) {
+            for (int i = 0; i < headers.size(); i++) {
+                String h = headers.get(i).toLowerCase(Locale.ROOT).replace(' ', '_');
+                if (h.equals(candidate)) return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String cell(List<String> cells, int index) {
+        return index >= 0 && index < cells.size() ? cells.get(index) : "";
+    }
+
+    private static final class Counts {
+        long rowsRead, imported, duplicates, rejected, low, normal, high, unclassified;
+        final List<String> errors = new ArrayList<>();
+
+        void count(LabFlag flag) {
+            switch (flag) {
+                case LOW -> low++;
+                case NORMAL -> normal++;
+                case HIGH -> high++;
+                case UNKNOWN -> unclassified++;
+            }
+        }
+
+        void written(int queued, int added) {
+            imported += added;
+            duplicates += queued - added;
+        }
+
+        void reject(String message) {
+            rejected++;
+            if (errors.size() < MAX_ERRORS) errors.add(message);
+        }
+
+        Result toResult(boolean cancelled) {
+            return new Result(rowsRead, imported, duplicates, rejected, low, normal, high, unclassified, cancelled,
+                    Collections.unmodifiableList(errors));
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.emr.gds.main.custom_ui;
 
 import com.emr.gds.IttiaApp;
+import com.emr.gds.main.db.SqliteDataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -32,7 +33,7 @@ import javafx.stage.Stage;
  */
 public class IAMAbbdbControl {
 
-    private final Connection dbConn;
+    private final SqliteDataSource dataSource;
     private final Map<String, String> abbrevMap;
     private final Stage ownerStage;
 
@@ -46,8 +47,8 @@ public class IAMAbbdbControl {
     private final Button deleteButton = new Button("Delete");
     private final Button clearButton = new Button("Clear");
 
-    public IAMAbbdbControl(Connection dbConn, Map<String, String> abbrevMap, Stage ownerStage, IttiaApp parentApp) {
-        this.dbConn = dbConn;
+    public IAMAbbdbControl(SqliteDataSource dataSource, Map<String, String> abbrevMap, Stage ownerStage, IttiaApp parentApp) {
+        this.dataSource = dataSource;
         this.abbrevMap = abbrevMap;
         this.ownerStage = ownerStage;
     }
@@ -187,7 +188,7 @@ public class IAMAbbdbControl {
         }
 
         String sql = "INSERT INTO abbreviations (short, full) VALUES (?, ?)";
-        try (PreparedStatement pstmt = dbConn.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getWriteConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, shortText);
             pstmt.setString(2, fullText);
             pstmt.executeUpdate();
@@ -210,7 +211,7 @@ public class IAMAbbdbControl {
         }
 
         String sql = "UPDATE abbreviations SET short = ?, full = ? WHERE short = ?";
-        try (PreparedStatement pstmt = dbConn.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getWriteConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, newShort);
             pstmt.setString(2, newFull);
             pstmt.setString(3, originalShort);
@@ -230,7 +231,7 @@ public class IAMAbbdbControl {
 
         if (result.isPresent() && result.get() == ButtonType.YES) {
             String sql = "DELETE FROM abbreviations WHERE short = ?";
-            try (PreparedStatement pstmt = dbConn.prepareStatement(sql)) {
+            try (Connection conn = dataSource.getWriteConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setString(1, shortText);
                 if (pstmt.executeUpdate() > 0) {
                     abbrevMap.remove(shortText);
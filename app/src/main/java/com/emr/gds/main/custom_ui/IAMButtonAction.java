@@ -3,13 +3,13 @@ package com.emr.gds.main.custom_ui;
 import com.emr.gds.IttiaApp;
 import com.emr.gds.input.IAITextAreaManager;
 import com.emr.gds.main.glp1.Glp1SemaglutideMain;
-import java.sql.Connection;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.stream.Collectors;
 import com.emr.gds.main.db.DatabaseManager;
+import com.emr.gds.main.db.SqliteDataSource;
 import com.emr.gds.main.kcd.KCDDatabaseManagerJavaFX;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -63,7 +63,7 @@ public class IAMButtonAction {
     //================================================================================
 
     private final IttiaApp app;
-    private final Connection dbConn;
+    private final SqliteDataSource abbrevDataSource;
     private final Map<String, String> abbrevMap;
 
     // --- KCD Database Manager Fields ---
@@ -75,9 +75,9 @@ public class IAMButtonAction {
     // Constructor
     //================================================================================
 
-    public IAMButtonAction(IttiaApp app, Connection dbConn, Map<String, String> abbrevMap) {
+    public IAMButtonAction(IttiaApp app, SqliteDataSource abbrevDataSource, Map<String, String> abbrevMap) {
         this.app = app;
-        this.dbConn = dbConn;
+        this.abbrevDataSource = abbrevDataSource;
         this.abbrevMap = abbrevMap;
     }
 
@@ -227,7 +227,7 @@ public class IAMButtonAction {
         tb.getItems().addAll(
             Arrays.stream(TemplateLibrary.values())
                   .filter(TemplateLibrary::isSnippet) // Filter for snippets only
-                  .map(t -> createSnippetButton(t.displayName(), t.body()))
+                  .map(this::createSnippetButton)
                   .collect(Collectors.toList())
         );
 
@@ -256,9 +256,9 @@ public class IAMButtonAction {
     /**
      * Creates a Button that inserts a snippet of text into the focused text area.
      */
-    private Button createSnippetButton(String title, String snippet) {
-        Button b = new Button(title);
-        b.setOnAction(e -> app.insertBlockIntoFocusedArea(snippet));
+    private Button createSnippetButton(TemplateLibrary snippet) {
+        Button b = new Button(snippet.displayName());
+        b.setOnAction(e -> app.insertTemplateIntoFocusedArea(snippet));
         return b;
     }
 
@@ -296,6 +296,7 @@ public class IAMButtonAction {
         try {
             if (kcdDatabaseManager == null || kcdStage == null || !kcdStage.isShowing()) {
                 kcdDatabaseManager = new KCDDatabaseManagerJavaFX();
+                kcdDatabaseManager.setProblemListTarget(app.getProblemAction()::addCodedProblem);
                 kcdStage = new Stage();
                 kcdStage.setTitle("KCD Database Manager");
                 kcdStage.initModality(Modality.NONE);
@@ -338,7 +339,7 @@ public class IAMButtonAction {
      */
     private void showAbbreviationManagerDialog(Control ownerControl) {
         Stage ownerStage = (Stage) ownerControl.getScene().getWindow();
-        IAMAbbdbControl controller = new IAMAbbdbControl(dbConn, abbrevMap, ownerStage, app);
+        IAMAbbdbControl controller = new IAMAbbdbControl(abbrevDataSource, abbrevMap, ownerStage, app);
         controller.showDbManagerDialog();
     }
 
@@ -350,6 +351,8 @@ public class IAMButtonAction {
      * Defines a collection of reusable text templates and snippets.
      * Each entry has a display name, body content, and a flag to distinguish
      * between full templates (for the top menu) and short snippets (for the bottom bar).
+     * Bodies are rendered by {@link com.emr.gds.main.template.TemplateEngine} on insertion, so
+     * {@code {{today}}}, {@code {{bmi}}} and {@code {{#each problems}}} are filled in at that moment.
      */
     public enum TemplateLibrary {
         // --- Full Templates (isSnippet = false) ---
@@ -366,7 +369,7 @@ public class IAMButtonAction {
             "- Plan: meds / labs / imaging / follow-up\n", false),
         LETTER("Letter Template",
             "# Letter\n" +
-            "Patient: \nDOB: \nDate: " + LocalDate.now().format(DateTimeFormatter.ISO_DATE) + "\n\n" +
+            "Patient: \nDOB: \nDate: {{today}}\n\n" +
             "Findings:\n- \n\nPlan:\n- \n\nSignature:\nMigoJJ, MD\n", false),
         LAB_SUMMARY("Lab Summary",
             "# Labs\n" +
@@ -375,7 +378,8 @@ public class IAMButtonAction {
             "- HbA1c:  %\n" +
             "- TSH:  uIU/mL\n", false),
         PROBLEM_LIST("Problem List Header",
-            "# Problem List\n- \n- \n- \n", false),
+            "# Problem List\n" +
+            "{{#each problems}}\n- {{.}}\n{{else}}\n- \n- \n- \n{{/each}}\n", false),
         VACCINATION_LIST("Vaccination",
             "# Tdap ...List\n- \n- \n- \n", false),
         TFT_LIST("TFT",
@@ -383,7 +387,8 @@ public class IAMButtonAction {
 
         // --- Quick Snippets (isSnippet = true) ---
         SNIPPET_VITALS("Vitals",
-            "# Vitals\n- BP: / mmHg\n- HR: / min\n- Temp:  °C\n- RR: / min\n- SpO2:  %\n", true),
+            "# Vitals\n- BP: / mmHg\n- HR: / min\n- Temp:  °C\n- RR: / min\n- SpO2:  %\n" +
+            "{{#if bmi}}\n- BMI: {{bmi}} kg/m^2\n{{/if}}\n", true),
         SNIPPET_MEDS("Meds",
             "# Medications\n- \n", true),
         SNIPPET_ALLERGY("Allergy",
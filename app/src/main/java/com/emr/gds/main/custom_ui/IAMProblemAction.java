@@ -1,32 +1,42 @@
 package com.emr.gds.main.custom_ui;
 
 import com.emr.gds.IttiaApp;
+import com.emr.gds.main.db.SqliteDataSource;
+import com.emr.gds.main.kcd.KCDCodeIndex;
+import com.emr.gds.main.kcd.KCDRecord;
+import com.emr.gds.main.problem.ProblemEntry;
+import com.emr.gds.main.problem.ProblemListStore;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.SortedList;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.Separator;
+import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
@@ -34,8 +44,10 @@ import javafx.scene.layout.VBox;
 /**
  * Manages the Problem List and Scratchpad sections of the UI.
  * This class handles:
- * - Displaying and managing a persistent list of patient problems.
+ * - Displaying and managing a persistent problem list per patient (chart number), with status and onset date.
  * - Storing and retrieving problem data from a dedicated SQLite database.
+ * - Keeping recently opened patients' lists in memory so switching between them doesn't wait on the database.
+ * - Linking problems to KCD codes, whose names are resolved from the shared {@link KCDCodeIndex}.
  * - Providing a scratchpad area that mirrors content from the main EMR text areas.
  */
 public class IAMProblemAction {
@@ -50,15 +62,25 @@ public class IAMProblemAction {
     private static final double PROBLIST_HEIGHT_PX = PANEL_HEIGHT_PX * (1 - SCRATCHPAD_RATIO);
     private static final double SPACING_PX = 8;
     private static final double PADDING_RIGHT_PX = 8;
+    private static final int MAX_CACHED_PATIENTS = 32;
 
     // ================================ 
     // Instance Variables
     // ================================ 
     private final IttiaApp app;
-    private Connection dbConn;
-    private final ObservableList<String> problems = FXCollections.observableArrayList();
-    private final Comparator<String> problemComparator = String::compareToIgnoreCase;
-    private ListView<String> problemList;
+    private ProblemListStore store;
+    private final ObservableList<ProblemEntry> problems = FXCollections.observableArrayList();
+    private final Comparator<ProblemEntry> problemComparator = Comparator.comparing(ProblemEntry::text, String::compareToIgnoreCase);
+    private String currentPatientId = ProblemListStore.DEFAULT_PATIENT;
+    // Lists of recently opened patients other than the current one, least recently used first.
+    private final Map<String, List<ProblemEntry>> patientLists = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<ProblemEntry>> eldest) {
+            return size() > MAX_CACHED_PATIENTS;
+        }
+    };
+    private TextField patientField;
+    private ListView<ProblemEntry> problemList;
     private Button saveToEmrButton;
     private TextArea scratchpadArea;
     private final LinkedHashMap<String, String> scratchpadEntries = new LinkedHashMap<>();
@@ -77,18 +99,17 @@ public class IAMProblemAction {
     // ================================ 
 
     /**
-     * Initializes the connection to the 'prolist.db' SQLite database.
+     * Attaches to the shared data source for the 'prolist.db' SQLite database.
      * Creates the database and table if they don't exist.
      */
     private void initProblemListDatabase() {
         try {
             Class.forName("org.sqlite.JDBC");
-            Path db = dbPath();
+            Path db = SqliteDataSource.resolveAppDb("prolist.db");
             Files.createDirectories(db.getParent());
-            String url = "jdbc:sqlite:" + db.toAbsolutePath();
             System.out.println("[DB PATH] prolist -> " + db.toAbsolutePath());
-            this.dbConn = DriverManager.getConnection(url);
-            createProblemTable();
+            this.store = new ProblemListStore(SqliteDataSource.forFile(db));
+            store.setFailureListener((batch, error) -> Platform.runLater(() -> revertFailedBatch(batch, error)));
         } catch (Exception e) {
             System.err.println("FATAL: Failed to initialize Problem List database: " + e.getMessage());
             throw new RuntimeException("Failed to open prolist.db", e);
@@ -96,77 +117,157 @@ public class IAMProblemAction {
     }
 
     /**
-     * Creates the 'problems' table if it doesn't exist and populates it with default data on first run.
+     * Loads the current patient's problems off the FX thread. Problems entered before the load finishes are kept.
      */
-    private void createProblemTable() throws SQLException {
-        try (Statement stmt = dbConn.createStatement()) {
-            stmt.execute("CREATE TABLE IF NOT EXISTS problems (id INTEGER PRIMARY KEY AUTOINCREMENT, problem_text TEXT NOT NULL UNIQUE)");
-
-            // Check if the table is empty to add initial default data
-            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS count FROM problems")) {
-                if (rs.next() && rs.getInt("count") == 0) {
-                    System.out.println("Problem list database is empty. Populating with default data.");
-                    stmt.execute("INSERT INTO problems (problem_text) VALUES ('Hypercholesterolemia [F/U]')");
-                    stmt.execute("INSERT INTO problems (problem_text) VALUES ('Prediabetes (FBS 108 mg/dL)')");
-                    stmt.execute("INSERT INTO problems (problem_text) VALUES ('Thyroid nodule (small)')");
-                }
+    private void loadProblemsFromDb() {
+        if (store == null) return;
+
+        String patientId = currentPatientId;
+        store.load(patientId).whenComplete((stored, error) -> {
+            if (error != null) {
+                System.err.println("Failed to load problems for patient '" + patientId + "': " + error.getMessage());
+                return;
             }
-        }
+            Platform.runLater(() -> {
+                List<ProblemEntry> target = listFor(patientId);
+                if (target == null) {
+                    patientLists.put(patientId, new ArrayList<>(stored));
+                    return;
+                }
+                for (ProblemEntry p : stored) {
+                    if (indexOf(target, p.text()) < 0) target.add(p);
+                }
+            });
+        });
     }
 
     /**
-     * Loads all problems from the database into the UI's ObservableList.
+     * Shows another patient's problem list. Recently opened lists are swapped in from memory; others are shown
+     * empty and filled in when the load completes.
+     * @param patientId The chart number, or blank for the shared list.
      */
-    private void loadProblemsFromDb() {
-        if (dbConn == null) return;
+    public void switchPatient(String patientId) {
+        String id = patientId == null ? ProblemListStore.DEFAULT_PATIENT : patientId.trim();
+        if (id.equals(currentPatientId)) return;
+
+        patientLists.put(currentPatientId, new ArrayList<>(problems));
+        currentPatientId = id;
+        List<ProblemEntry> cached = patientLists.remove(id);
+        if (cached != null) {
+            problems.setAll(cached);
+        } else {
+            problems.clear();
+            loadProblemsFromDb();
+        }
+        if (patientField != null && !patientField.getText().trim().equals(id)) {
+            patientField.setText(id);
+        }
+    }
+
+    public String getCurrentPatientId() {
+        return currentPatientId;
+    }
 
-        problems.clear();
-        String sql = "SELECT problem_text FROM problems ORDER BY problem_text COLLATE NOCASE";
+    /** The live list for the current patient, the cached copy for another, or null if it isn't in memory. */
+    private List<ProblemEntry> listFor(String patientId) {
+        return patientId.equals(currentPatientId) ? problems : patientLists.get(patientId);
+    }
 
-        try (Statement stmt = dbConn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                problems.add(rs.getString("problem_text"));
-            }
-        } catch (SQLException e) {
-            System.err.println("Failed to load problems from database: " + e.getMessage());
+    private static int indexOf(List<ProblemEntry> list, String text) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).text().equals(text)) return i;
         }
+        return -1;
     }
 
     /**
-     * Adds a new problem to the database and updates the UI.
+     * Adds a new problem to the current patient's list and queues it for saving.
      * @param problemText The problem to add.
      */
     private void addProblem(String problemText) {
-        if (dbConn == null || problemText == null || problemText.isBlank()) return;
+        if (store == null || problemText == null || problemText.isBlank()) return;
+        if (indexOf(problems, problemText) >= 0) return;
 
-        String sql = "INSERT INTO problems(problem_text) VALUES(?)";
-        try (PreparedStatement pstmt = dbConn.prepareStatement(sql)) {
-            pstmt.setString(1, problemText);
-            if (pstmt.executeUpdate() > 0) {
-                Platform.runLater(() -> problems.add(problemText));
-            }
-        } catch (SQLException e) {
-            // This error is expected if the problem already exists due to the UNIQUE constraint.
-            System.err.println("Failed to add problem '" + problemText + "'. It might already exist. Details: " + e.getMessage());
+        ProblemEntry entry = ProblemEntry.of(problemText);
+        problems.add(entry);
+        store.add(currentPatientId, entry);
+    }
+
+    /**
+     * Removes a problem from the current patient's list and queues the deletion.
+     * @param problem The problem to remove.
+     */
+    private void removeProblem(ProblemEntry problem) {
+        if (store == null || problem == null) return;
+
+        if (problems.remove(problem)) {
+            store.remove(currentPatientId, problem);
+        }
+    }
+
+    /**
+     * Adds a KCD diagnosis to the current patient's list. A matching uncoded problem is given the code instead.
+     * @param record The KCD record chosen in the KCD manager.
+     * @return false if nothing changed (the problem is already listed with this code, or there is no list).
+     */
+    public boolean addCodedProblem(KCDRecord record) {
+        if (store == null || record == null || record.getDiseaseCode() == null || record.getDiseaseCode().isBlank()) return false;
+
+        ProblemEntry entry = ProblemEntry.of(record);
+        int i = indexOf(problems, entry.text());
+        if (i < 0) {
+            problems.add(entry);
+            store.add(currentPatientId, entry);
+            return true;
         }
+        ProblemEntry existing = problems.get(i);
+        ProblemEntry coded = existing.withKcdCode(record.getDiseaseCode());
+        if (coded.equals(existing)) return false;
+        updateProblem(existing, coded);
+        return true;
     }
 
     /**
-     * Removes a selected problem from the database and updates the UI.
-     * @param problemText The problem to remove.
+     * Replaces a problem with a copy carrying a new status, onset date or KCD code and queues the update.
      */
-    private void removeProblem(String problemText) {
-        if (dbConn == null || problemText == null) return;
-
-        String sql = "DELETE FROM problems WHERE problem_text = ?";
-        try (PreparedStatement pstmt = dbConn.prepareStatement(sql)) {
-            pstmt.setString(1, problemText);
-            if (pstmt.executeUpdate() > 0) {
-                Platform.runLater(() -> problems.remove(problemText));
+    private void updateProblem(ProblemEntry old, ProblemEntry updated) {
+        int i = problems.indexOf(old);
+        if (store == null || i < 0 || old.equals(updated)) return;
+
+        problems.set(i, updated);
+        store.update(currentPatientId, updated);
+    }
+
+    /**
+     * Undoes the in-memory effect of a batch the writer could not save, newest change first, and tells the user.
+     * Lists no longer in memory are left alone; they are reloaded from the database when next opened.
+     */
+    private void revertFailedBatch(List<ProblemListStore.Mutation> batch, SQLException error) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            ProblemListStore.Mutation m = batch.get(i);
+            List<ProblemEntry> list = listFor(m.patientId());
+            if (list == null) continue;
+            int at = indexOf(list, m.entry().text());
+            switch (m.kind()) {
+                case ADD -> {
+                    if (at >= 0) list.remove(at);
+                }
+                case REMOVE -> {
+                    if (at < 0) list.add(m.entry());
+                }
+                // The previous status isn't known here; reload the patient to show what was saved.
+                case UPDATE -> {
+                    if (at >= 0) list.remove(at);
+                    if (m.patientId().equals(currentPatientId)) loadProblemsFromDb();
+                    else patientLists.remove(m.patientId());
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("Failed to remove problem '" + problemText + "': " + e.getMessage());
         }
+        System.err.println("Failed to save problem list changes: " + error.getMessage());
+        Alert alert = new Alert(Alert.AlertType.ERROR,
+                "The last problem list change could not be saved and has been undone.\n\n" + error.getMessage());
+        alert.setHeaderText("Problem List");
+        alert.show();
     }
 
     // ================================ 
@@ -183,6 +284,10 @@ public class IAMProblemAction {
         TextField input = createProblemInputTextField();
         saveToEmrButton = createSaveToEmrButton();
         Button removeButton = createRemoveProblemButton();
+        patientField = createPatientTextField();
+        HBox patientRow = new HBox(SPACING_PX, new Label("Problem List"), patientField);
+        patientRow.setAlignment(Pos.CENTER_LEFT);
+        HBox.setHgrow(patientField, Priority.ALWAYS);
         HBox problemControls = new HBox(SPACING_PX, input, saveToEmrButton, removeButton);
         HBox.setHgrow(input, Priority.ALWAYS);
         problemList.getSelectionModel().selectedItemProperty().addListener((obs, oldV, newV) -> updateSaveButtonState(newV));
@@ -190,6 +295,12 @@ public class IAMProblemAction {
 
         // --- Scratchpad Section ---
         scratchpadArea = createScratchpadTextArea();
+        problems.addListener((ListChangeListener<ProblemEntry>) c -> redrawScratchpad());
+        // Coded problems show just the code until the index is in; redraw them once it is.
+        KCDCodeIndex.shared().whenLoaded().thenRun(() -> Platform.runLater(() -> {
+            problemList.refresh();
+            redrawScratchpad();
+        }));
 
         // --- Assemble the VBox ---
         VBox box = new VBox(
@@ -197,7 +308,7 @@ public class IAMProblemAction {
                 new Label("Scratchpad"),
                 scratchpadArea,
                 new Separator(Orientation.HORIZONTAL),
-                new Label("Problem List (Persistent)"),
+                patientRow,
                 problemList,
                 problemControls
         );
@@ -213,26 +324,69 @@ public class IAMProblemAction {
         return box;
     }
 
-    private ListView<String> createProblemListView() {
-        SortedList<String> sortedProblems = new SortedList<>(problems, problemComparator);
-        ListView<String> listView = new ListView<>(sortedProblems);
+    private TextField createPatientTextField() {
+        TextField field = new TextField(currentPatientId);
+        field.setPromptText("Patient chart no. (blank = shared list), Enter to switch");
+        field.setOnAction(e -> switchPatient(field.getText()));
+        return field;
+    }
+
+    private ListView<ProblemEntry> createProblemListView() {
+        SortedList<ProblemEntry> sortedProblems = new SortedList<>(problems, problemComparator);
+        ListView<ProblemEntry> listView = new ListView<>(sortedProblems);
         listView.setPrefHeight(PROBLIST_HEIGHT_PX);
         listView.setMinHeight(PROBLIST_HEIGHT_PX * 0.8);
         listView.setOnMouseClicked(e -> {
             if (e.getClickCount() == 2) {
-                String selectedItem = listView.getSelectionModel().getSelectedItem();
+                ProblemEntry selectedItem = listView.getSelectionModel().getSelectedItem();
                 if (selectedItem != null) {
                     app.insertLineIntoFocusedArea("- " + selectedItem);
                 }
             }
         });
+        listView.setContextMenu(createProblemContextMenu(listView));
         return listView;
     }
 
+    private ContextMenu createProblemContextMenu(ListView<ProblemEntry> listView) {
+        ContextMenu menu = new ContextMenu();
+        for (ProblemEntry.Status status : ProblemEntry.Status.values()) {
+            String label = status.dbValue();
+            MenuItem item = new MenuItem("Mark " + Character.toUpperCase(label.charAt(0)) + label.substring(1));
+            item.setOnAction(e -> {
+                ProblemEntry selected = listView.getSelectionModel().getSelectedItem();
+                if (selected != null) updateProblem(selected, selected.withStatus(status));
+            });
+            menu.getItems().add(item);
+        }
+        MenuItem onset = new MenuItem("Set Onset Date...");
+        onset.setOnAction(e -> {
+            ProblemEntry selected = listView.getSelectionModel().getSelectedItem();
+            if (selected != null) promptOnsetDate(selected);
+        });
+        menu.getItems().addAll(new SeparatorMenuItem(), onset);
+        return menu;
+    }
+
+    private void promptOnsetDate(ProblemEntry selected) {
+        TextInputDialog dialog = new TextInputDialog(selected.onset() == null ? "" : selected.onset().toString());
+        dialog.setTitle("Onset Date");
+        dialog.setHeaderText(selected.text());
+        dialog.setContentText("Onset (yyyy-MM-dd, blank to clear):");
+        dialog.showAndWait().ifPresent(value -> {
+            try {
+                LocalDate date = value.isBlank() ? null : LocalDate.parse(value.trim());
+                updateProblem(selected, selected.withOnset(date));
+            } catch (DateTimeParseException ex) {
+                new Alert(Alert.AlertType.WARNING, "Not a valid date: " + value).show();
+            }
+        });
+    }
+
     private Button createSaveToEmrButton() {
         Button b = new Button("Save to EMR");
         b.setOnAction(e -> {
-            String selectedItem = problemList.getSelectionModel().getSelectedItem();
+            ProblemEntry selectedItem = problemList.getSelectionModel().getSelectedItem();
             if (selectedItem != null) {
                 app.insertLineIntoFocusedArea("- " + selectedItem);
             }
@@ -241,7 +395,7 @@ public class IAMProblemAction {
         return b;
     }
 
-    private void updateSaveButtonState(String selectedItem) {
+    private void updateSaveButtonState(ProblemEntry selectedItem) {
         if (saveToEmrButton != null) {
             saveToEmrButton.setDisable(selectedItem == null);
         }
@@ -253,7 +407,7 @@ public class IAMProblemAction {
         input.setOnAction(e -> {
             String text = IAMTextFormatUtil.normalizeLine(input.getText());
             if (!text.isBlank()) {
-                addProblem(text); // Persist to DB and update UI
+                addProblem(text); // Update UI; saved in the background
                 input.clear();
             }
         });
@@ -263,7 +417,7 @@ public class IAMProblemAction {
     private Button createRemoveProblemButton() {
         Button remove = new Button("Remove Selected");
         remove.setOnAction(e -> {
-            String selectedProblem = problemList.getSelectionModel().getSelectedItem();
+            ProblemEntry selectedProblem = problemList.getSelectionModel().getSelectedItem();
             if (selectedProblem != null) {
                 removeProblem(selectedProblem);
             }
@@ -319,6 +473,15 @@ public class IAMProblemAction {
             }
         }
 
+        // Coded diagnoses on the problem list, resolved from the in-memory KCD index
+        StringJoiner dx = new StringJoiner(", ");
+        for (ProblemEntry p : problems) {
+            if (p.kcdCode() != null && p.status() == ProblemEntry.Status.ACTIVE) dx.add(p.kcdLabel());
+        }
+        if (dx.length() > 0) {
+            sj.add("Dx> " + dx);
+        }
+
         String newContent = sj.toString();
         if (!scratchpadArea.getText().equals(newContent)) {
             scratchpadArea.setText(newContent);
@@ -337,34 +500,19 @@ public class IAMProblemAction {
     // Public Getters and Cleanup
     // ================================ 
 
-    public ObservableList<String> getProblems() {
+    /** The current patient's problems; each entry's {@code toString()} is its EMR line. */
+    public ObservableList<ProblemEntry> getProblems() {
         return problems;
     }
 
     /**
-     * Closes the database connection when the application shuts down.
+     * Writes any queued problem list changes when the application shuts down.
      */
     public void closeDatabase() {
-        if (dbConn != null) {
-            try {
-                dbConn.close();
-                System.out.println("Problem list database connection closed.");
-            } catch (SQLException e) {
-                System.err.println("Error closing problem list database: " + e.getMessage());
-            }
+        // The pooled data source is shared; SqliteDataSource.closeAll() releases it.
+        if (store != null) {
+            store.close();
+            System.out.println("Problem list store closed.");
         }
     }
-
-    // --- DB Helpers (Repo-tracked under app/db) ---
-    private static Path repoRoot() {
-        Path p = Paths.get("").toAbsolutePath();
-        while (p != null && !Files.exists(p.resolve("gradlew")) && !Files.exists(p.resolve(".git"))) {
-            p = p.getParent();
-        }
-        return (p != null) ? p : Paths.get("").toAbsolutePath();
-    }
-    
-    private static Path dbPath() {
-        return repoRoot().resolve("app").resolve("db").resolve("prolist.db");
-    }
 }
@@ -3,17 +3,23 @@ package com.emr.gds.main.custom_ui;
 import com.emr.gds.input.IAIFxTextAreaManager;
 import com.emr.gds.input.IAIMain;
 import com.emr.gds.input.IAITextAreaManager;
+import com.emr.gds.main.template.TemplateEngine;
 import com.emr.gds.soap.ChiefComplaintEditor;
 import com.emr.gds.soap.EMRPMH;
 import com.emr.gds.soap.IMSPresentIllness;
 import com.emr.gds.soap.IMSFollowUp.PlanFollowupAction;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
@@ -87,6 +93,12 @@ public class IAMTextArea {
             "-fx-effect: dropshadow(gaussian, rgba(44,140,122,0.40), 10, 0.25, 0, 1);" +
             BASE_TEXT_TWEAKS;
 
+    // Values written into O> by the BMI calculator (IAIFreqFrame), offered to templates as {{bmi}}, {{height}}, {{weight}}.
+    private static final Pattern BMI_PATTERN = Pattern.compile("BMI:\\s*\\[\\s*([\\d.]+)\\s*\\]");
+    private static final Pattern HEIGHT_PATTERN = Pattern.compile("Height\\s*:\\s*([\\d.]+)\\s*cm");
+    private static final Pattern WEIGHT_PATTERN = Pattern.compile("Weight\\s*:\\s*([\\d.]+)\\s*kg");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
     // ================================ 
     // Instance Variables
     // ================================ 
@@ -417,7 +429,33 @@ public class IAMTextArea {
     // ================================ 
 
     public void insertTemplateIntoFocusedArea(IAMButtonAction.TemplateLibrary t) {
-        insertBlockIntoFocusedArea(t.body());
+        insertBlockIntoFocusedArea(TemplateEngine.render("library:" + t.name(), t.body(), templateBindings()));
+    }
+
+    /**
+     * Values available to templates at insertion time: {@code today}, {@code now}, the current
+     * {@code problems} list, and the latest {@code bmi}, {@code height} and {@code weight} recorded in O&gt;.
+     */
+    public Map<String, Object> templateBindings() {
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("today", LocalDate.now().format(DateTimeFormatter.ISO_DATE));
+        bindings.put("now", LocalTime.now().format(TIME_FORMAT));
+        bindings.put("problems", List.copyOf(problemAction.getProblems()));
+        if (areas.size() > IAITextAreaManager.AREA_O) {
+            String objective = areas.get(IAITextAreaManager.AREA_O).getText();
+            putLastMatch(bindings, "bmi", BMI_PATTERN, objective);
+            putLastMatch(bindings, "height", HEIGHT_PATTERN, objective);
+            putLastMatch(bindings, "weight", WEIGHT_PATTERN, objective);
+        }
+        return bindings;
+    }
+
+    private static void putLastMatch(Map<String, Object> bindings, String name, Pattern pattern, String text) {
+        if (text == null || text.isEmpty()) return;
+        Matcher m = pattern.matcher(text);
+        String last = null;
+        while (m.find()) last = m.group(1);
+        if (last != null) bindings.put(name, last);
     }
 
     public void insertLineIntoFocusedArea(String line) {
@@ -507,6 +545,29 @@ public class IAMTextArea {
         return Collections.unmodifiableList(this.areas);
     }
 
+    /** Current text of every section, keyed by its title in display order. */
+    public Map<String, String> sectionTexts() {
+        Map<String, String> texts = new LinkedHashMap<>();
+        for (int i = 0; i < areas.size() && i < TEXT_AREA_TITLES.length; i++) {
+            texts.put(TEXT_AREA_TITLES[i], areas.get(i).getText());
+        }
+        return texts;
+    }
+
+    /**
+     * Puts saved section texts back, keyed by title as from {@link #sectionTexts()}. Only done while every area is
+     * blank, so nothing typed since is overwritten.
+     * @return false if some area already holds text and nothing was restored.
+     */
+    public boolean restoreSectionTexts(Map<String, String> texts) {
+        if (areas.stream().anyMatch(ta -> ta.getText() != null && !ta.getText().isBlank())) return false;
+        for (int i = 0; i < areas.size() && i < TEXT_AREA_TITLES.length; i++) {
+            String text = texts.get(TEXT_AREA_TITLES[i]);
+            if (text != null) areas.get(i).setText(text);
+        }
+        return true;
+    }
+
     private void showErrorAlert(String title, String header, String content) {
         Platform.runLater(() -> {
             Alert errorAlert = new Alert(Alert.AlertType.ERROR);
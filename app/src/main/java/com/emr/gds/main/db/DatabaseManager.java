@@ -1,7 +1,13 @@
 package com.emr.gds.main.db;
 
-import com.emr.gds.main.kcd.KCDDatabaseManagerJavaFX;
+import com.emr.gds.main.kcd.KCDCodeIndex;
+import com.emr.gds.main.kcd.KCDColumn;
+import com.emr.gds.main.kcd.KCDQuery;
 import com.emr.gds.main.kcd.KCDRecord;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -10,8 +16,36 @@ import java.util.List;
  * A manager class for handling all database operations for KCD records.
  */
 public class DatabaseManager {
+    /** {@code app/db/kcd_database.db}, resolved against the repository root rather than the working directory. */
+    public static final Path DB_FILE = SqliteDataSource.resolveAppDb("kcd_database.db");
+    private static final String BUNDLED_DB = "/database/kcd_database.db";
+    private static final SqliteDataSource DATA_SOURCE = SqliteDataSource.forFile(seedIfMissing(DB_FILE));
+
+    /**
+     * Copies the KCD database shipped in resources to {@code dbFile} the first time it is opened, so the
+     * editable copy lives with the other app databases.
+     */
+    private static Path seedIfMissing(Path dbFile) {
+        if (Files.exists(dbFile)) return dbFile;
+        try (InputStream in = DatabaseManager.class.getResourceAsStream(BUNDLED_DB)) {
+            Files.createDirectories(dbFile.getParent());
+            if (in != null) {
+                Files.copy(in, dbFile);
+            } else {
+                System.err.println("Bundled KCD database not found; starting with an empty " + dbFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to prepare KCD database " + dbFile + ": " + e.getMessage());
+        }
+        return dbFile;
+    }
+
     private static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(KCDDatabaseManagerJavaFX.JDBC_URL);
+        return DATA_SOURCE.getConnection();
+    }
+
+    private static Connection getWriteConnection() throws SQLException {
+        return DATA_SOURCE.getWriteConnection();
     }
 
     public static List<KCDRecord> getAllRecords() throws SQLException {
@@ -19,14 +53,7 @@ public class DatabaseManager {
         String sql = "SELECT * FROM kcd_codes ORDER BY disease_code";
         try (Connection conn = getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                records.add(new KCDRecord(
-                        rs.getString("classification"),
-                        rs.getString("disease_code"),
-                        rs.getString("check_field"),
-                        rs.getString("korean_name"),
-                        rs.getString("english_name"),
-                        rs.getString("note")
-                ));
+                records.add(mapRecord(rs));
             }
         }
         return records;
@@ -34,7 +61,7 @@ public class DatabaseManager {
 
     public static void addRecord(KCDRecord record) throws SQLException {
         String sql = "INSERT INTO kcd_codes(classification, disease_code, check_field, korean_name, english_name, note) VALUES(?,?,?,?,?,?)";
-        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getWriteConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, record.getClassification());
             pstmt.setString(2, record.getDiseaseCode());
             pstmt.setString(3, record.getCheckField());
@@ -43,11 +70,12 @@ public class DatabaseManager {
             pstmt.setString(6, record.getNote());
             pstmt.executeUpdate();
         }
+        KCDCodeIndex.recordSaved(null, record);
     }
 
     public static void updateRecord(String originalDiseaseCode, KCDRecord record) throws SQLException {
         String sql = "UPDATE kcd_codes SET classification=?, disease_code=?, check_field=?, korean_name=?, english_name=?, note=? WHERE disease_code=?";
-        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getWriteConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, record.getClassification());
             pstmt.setString(2, record.getDiseaseCode());
             pstmt.setString(3, record.getCheckField());
@@ -57,13 +85,156 @@ public class DatabaseManager {
             pstmt.setString(7, originalDiseaseCode);
             pstmt.executeUpdate();
         }
+        KCDCodeIndex.recordSaved(originalDiseaseCode, record);
     }
 
     public static void deleteRecord(String diseaseCode) throws SQLException {
         String sql = "DELETE FROM kcd_codes WHERE disease_code = ?";
-        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getWriteConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, diseaseCode);
             pstmt.executeUpdate();
         }
+        KCDCodeIndex.recordDeleted(diseaseCode);
+    }
+
+    // ================================
+    // Keyset pagination
+    // ================================
+
+    /**
+     * First row of a page in keyset order. disease_code is not unique in kcd_codes,
+     * so the rowid is carried as the final tie-breaker.
+     */
+    public record PageAnchor(String sortValue, String diseaseCode, long rowId) {}
+
+    /** Row count of a query plus the anchor row of every page, in page order. */
+    public record PageIndex(int totalCount, List<PageAnchor> anchors) {}
+
+    /**
+     * Creates one index per sortable column so every ORDER BY the table can issue is an index walk.
+     * The indexes are on the same IFNULL expressions as the keys; SQLite stores the rowid in every index entry,
+     * so it does not need to be listed. The earlier plain-column indexes are dropped.
+     */
+    public static void ensureSortIndexes() throws SQLException {
+        try (Connection conn = getWriteConnection(); Statement stmt = conn.createStatement()) {
+            for (KCDColumn column : KCDColumn.values()) {
+                List<String> keys = keyColumns(column);
+                stmt.execute("DROP INDEX IF EXISTS idx_kcd_" + column.sqlName());
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_kcd_key_" + column.sqlName()
+                        + " ON kcd_codes(" + String.join(", ", keys.subList(0, keys.size() - 1)) + ")");
+            }
+        }
+    }
+
+    /**
+     * Counts the rows matching {@code query} and records the key of every {@code pageSize}-th row.
+     * Only key columns are read, so this stays small even for the full KCD.
+     */
+    public static PageIndex loadPageIndex(KCDQuery query, int pageSize) throws SQLException {
+        List<String> keys = keyColumns(query.sortColumn());
+        String sql = "SELECT sort_value, code_value, rid, total FROM ("
+                + "SELECT " + keys.get(0) + " AS sort_value, " + nonNull("disease_code") + " AS code_value, rowid AS rid, "
+                + "ROW_NUMBER() OVER (ORDER BY " + orderBy(keys, query.ascending()) + ") - 1 AS rn, "
+                + "COUNT(*) OVER () AS total "
+                + "FROM kcd_codes" + (query.hasFilter() ? " WHERE " + filterClause(query) : "")
+                + ") WHERE rn % ? = 0 ORDER BY rn";
+
+        List<PageAnchor> anchors = new ArrayList<>();
+        int total = 0;
+        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int idx = bindFilter(pstmt, 1, query);
+            pstmt.setInt(idx, pageSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    anchors.add(new PageAnchor(rs.getString("sort_value"), rs.getString("code_value"), rs.getLong("rid")));
+                    total = rs.getInt("total");
+                }
+            }
+        }
+        return new PageIndex(total, anchors);
+    }
+
+    /**
+     * Loads up to {@code limit} rows starting at {@code anchor} in the order defined by {@code query}.
+     */
+    public static List<KCDRecord> getRecordsPage(KCDQuery query, PageAnchor anchor, int limit) throws SQLException {
+        List<String> keys = keyColumns(query.sortColumn());
+        String keyTuple = "(" + String.join(", ", keys) + ")";
+        String placeholders = keys.size() == 3 ? "(?, ?, ?)" : "(?, ?)";
+        String op = query.ascending() ? " >= " : " <= ";
+        // The leading-key bound is implied by the tuple, but SQLite only seeks an expression index on a plain term.
+        String sql = "SELECT * FROM kcd_codes WHERE " + keys.get(0) + op + "? AND " + keyTuple + op + placeholders
+                + (query.hasFilter() ? " AND " + filterClause(query) : "")
+                + " ORDER BY " + orderBy(keys, query.ascending()) + " LIMIT ?";
+
+        List<KCDRecord> records = new ArrayList<>(limit);
+        try (Connection conn = getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int idx = 1;
+            pstmt.setString(idx++, keys.size() == 3 ? anchor.sortValue() : anchor.diseaseCode());
+            if (keys.size() == 3) {
+                pstmt.setString(idx++, anchor.sortValue());
+            }
+            pstmt.setString(idx++, anchor.diseaseCode());
+            pstmt.setLong(idx++, anchor.rowId());
+            idx = bindFilter(pstmt, idx, query);
+            pstmt.setInt(idx, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapRecord(rs));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Keyset order for a sort column. A row value holding NULL never compares, so NULL columns are keyed as ''
+     * (which is also where ORDER BY puts NULLs); otherwise those rows would drop out of every page.
+     */
+    private static List<String> keyColumns(KCDColumn sortColumn) {
+        return sortColumn == KCDColumn.DISEASE_CODE
+                ? List.of(nonNull("disease_code"), "rowid")
+                : List.of(nonNull(sortColumn.sqlName()), nonNull("disease_code"), "rowid");
+    }
+
+    private static String nonNull(String column) {
+        return "IFNULL(" + column + ", '')";
+    }
+
+    private static String orderBy(List<String> keys, boolean ascending) {
+        String direction = ascending ? " ASC" : " DESC";
+        return String.join(direction + ", ", keys) + direction;
+    }
+
+    private static String filterClause(KCDQuery query) {
+        if (query.filterColumn() != null) {
+            return query.filterColumn().sqlName() + " LIKE ? ESCAPE '\\'";
+        }
+        List<String> predicates = new ArrayList<>();
+        for (KCDColumn column : KCDColumn.values()) {
+            predicates.add(column.sqlName() + " LIKE ? ESCAPE '\\'");
+        }
+        return "(" + String.join(" OR ", predicates) + ")";
+    }
+
+    private static int bindFilter(PreparedStatement pstmt, int idx, KCDQuery query) throws SQLException {
+        if (!query.hasFilter()) return idx;
+        String pattern = "%" + query.filterText().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        int count = query.filterColumn() != null ? 1 : KCDColumn.values().length;
+        for (int i = 0; i < count; i++) {
+            pstmt.setString(idx++, pattern);
+        }
+        return idx;
+    }
+
+    private static KCDRecord mapRecord(ResultSet rs) throws SQLException {
+        return new KCDRecord(
+                rs.getString("classification"),
+                rs.getString("disease_code"),
+                rs.getString("check_field"),
+                rs.getString("korean_name"),
+                rs.getString("english_name"),
+                rs.getString("note")
+        );
     }
 }
@@ -0,0 +1,445 @@
+package com.emr.gds.main.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared access point for one SQLite database file.
+ * <p>
+ * There is exactly one instance per file (see {@link #forAppDb(String)} and {@link #forFile(Path)}).
+ * Each instance keeps a small pool of reader connections plus one dedicated writer connection,
+ * all opened in WAL mode with the same pragmas, so readers never wait on the writer and writes
+ * are serialized in-process instead of bouncing off SQLITE_BUSY.
+ * <p>
+ * Connections handed out are thin wrappers: {@code close()} returns them to the pool, and
+ * {@code prepareStatement(sql)} is served from a per-connection statement cache whose
+ * {@code close()} only clears parameters. Callers keep using plain try-with-resources.
+ */
+public final class SqliteDataSource {
+
+    private static final String URL_PREFIX = "jdbc:sqlite:";
+    private static final int MAX_READERS = 4;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    private static final String[] CONNECTION_PRAGMAS = {
+            "PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS,
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA cache_size = -8000",      // 8 MB page cache per connection
+            "PRAGMA mmap_size = 67108864",    // 64 MB memory-mapped I/O
+            "PRAGMA temp_store = MEMORY"
+    };
+
+    private static final Map<Path, SqliteDataSource> REGISTRY = new ConcurrentHashMap<>();
+    private static volatile Path repoRoot;
+
+    private final Path file;
+    private final String url;
+    private final Semaphore readerPermits = new Semaphore(MAX_READERS, true);
+    private final Deque<PhysicalConnection> idleReaders = new ArrayDeque<>();
+    private final List<PhysicalConnection> allReaders = new ArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private PhysicalConnection writer;
+    private volatile boolean closed;
+
+    private SqliteDataSource(Path file) {
+        this.file = file;
+        this.url = URL_PREFIX + file;
+    }
+
+    // ================================
+    // Registry
+    // ================================
+
+    /**
+     * Returns the data source for a database file under the project's {@code app/db} directory.
+     * Falls back to {@code db/} when the file only exists there, matching the historical lookup.
+     */
+    public static SqliteDataSource forAppDb(String fileName) {
+        return forFile(resolveAppDb(fileName));
+    }
+
+    /** Returns the data source for an arbitrary database file, creating it on first use. */
+    public static SqliteDataSource forFile(Path dbFile) {
+        Path key = dbFile.toAbsolutePath().normalize();
+        return REGISTRY.computeIfAbsent(key, SqliteDataSource::new);
+    }
+
+    /** Resolves {@code app/db/<fileName>} against the repository root, which is located once per process. */
+    public static Path resolveAppDb(String fileName) {
+        Path root = repoRoot();
+        Path appDb = root.resolve("app").resolve("db").resolve(fileName);
+        if (Files.exists(appDb)) return appDb;
+        Path localDb = root.resolve("db").resolve(fileName);
+        if (Files.exists(localDb)) return localDb;
+        return appDb;
+    }
+
+    /** The first directory at or above the working directory that holds {@code gradlew} or {@code .git}. */
+    public static Path repoRoot() {
+        Path root = repoRoot;
+        if (root == null) {
+            Path cwd = Paths.get("").toAbsolutePath();
+            Path p = cwd;
+            while (p != null && !Files.exists(p.resolve("gradlew")) && !Files.exists(p.resolve(".git"))) {
+                p = p.getParent();
+            }
+            root = (p != null) ? p : cwd;
+            repoRoot = root;
+        }
+        return root;
+    }
+
+    /** Closes every registered data source. Call once on application shutdown. */
+    public static void closeAll() {
+        for (SqliteDataSource ds : REGISTRY.values()) {
+            ds.close();
+        }
+        REGISTRY.clear();
+    }
+
+    // ================================
+    // Connections
+    // ================================
+
+    public Path getPath() {
+        return file;
+    }
+
+    /**
+     * Borrows a pooled connection. Intended for reads; writes made through it still work but are
+     * not serialized with {@link #getWriteConnection()}. Blocks while all readers are in use.
+     */
+    public Connection getConnection() throws SQLException {
+        ensureOpen();
+        try {
+            if (!readerPermits.tryAcquire(BUSY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a connection to " + file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection to " + file, e);
+        }
+        PhysicalConnection pc;
+        try {
+            synchronized (idleReaders) {
+                pc = idleReaders.pollFirst();
+            }
+            if (pc == null) {
+                pc = open();
+                synchronized (idleReaders) {
+                    allReaders.add(pc);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            readerPermits.release();
+            throw e;
+        }
+        PhysicalConnection borrowed = pc;
+        return borrowed.lease(() -> {
+            synchronized (idleReaders) {
+                if (borrowed.isUsable() && !closed) {
+                    idleReaders.addFirst(borrowed);
+                } else {
+                    allReaders.remove(borrowed);
+                    borrowed.closeQuietly();
+                }
+            }
+            readerPermits.release();
+        });
+    }
+
+    /**
+     * Borrows the single writer connection, holding the write lock until the returned connection
+     * is closed. Re-entrant for the owning thread; only the outermost close resets the connection.
+     */
+    public Connection getWriteConnection() throws SQLException {
+        ensureOpen();
+        writeLock.lock();
+        try {
+            if (writer == null || !writer.isUsable()) {
+                if (writer != null) writer.closeQuietly();
+                writer = open();
+            }
+        } catch (SQLException | RuntimeException e) {
+            writeLock.unlock();
+            throw e;
+        }
+        PhysicalConnection w = writer;
+        if (writeLock.getHoldCount() > 1) {
+            return w.nestedLease(writeLock::unlock);
+        }
+        return w.lease(() -> {
+            if (closed && writer != null) {
+                writer.closeQuietly();
+                writer = null;
+            }
+            writeLock.unlock();
+        });
+    }
+
+    /** Closes all physical connections. Leased connections are closed when they are returned. */
+    public void close() {
+        closed = true;
+        synchronized (idleReaders) {
+            for (PhysicalConnection pc : idleReaders) {
+                allReaders.remove(pc);
+                pc.closeQuietly();
+            }
+            idleReaders.clear();
+        }
+        if (writeLock.tryLock()) {
+            try {
+                if (writer != null) writer.closeQuietly();
+                writer = null;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        REGISTRY.remove(file, this);
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) throw new SQLException("Data source for " + file + " is closed");
+    }
+
+    private PhysicalConnection open() throws SQLException {
+        Connection raw = DriverManager.getConnection(url);
+        try (Statement st = raw.createStatement()) {
+            st.execute("PRAGMA journal_mode = WAL");
+            for (String pragma : CONNECTION_PRAGMAS) {
+                st.execute(pragma);
+            }
+        } catch (SQLException e) {
+            raw.close();
+            throw e;
+        }
+        return new PhysicalConnection(raw);
+    }
+
+    // ================================
+    // Pooled connection and statement cache
+    // ================================
+
+    /** One JDBC connection plus its statement cache. Only ever used by the thread that leased it. */
+    private static final class PhysicalConnection {
+        private final Connection raw;
+        private final Map<String, CachedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                        if (size() > STATEMENT_CACHE_SIZE && !eldest.getValue().inUse) {
+                            eldest.getValue().closeQuietly();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+
+        PhysicalConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        Connection lease(Runnable onRelease) {
+            return proxy(new LeaseHandler(this, onRelease, true));
+        }
+
+        Connection nestedLease(Runnable onRelease) {
+            return proxy(new LeaseHandler(this, onRelease, false));
+        }
+
+        private Connection proxy(LeaseHandler handler) {
+            Connection c = (Connection) Proxy.newProxyInstance(
+                    SqliteDataSource.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+            handler.self = c;
+            return c;
+        }
+
+        PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && cached.inUse) {
+                // Same SQL already open on this connection (nested use): hand out a private one.
+                return raw.prepareStatement(sql);
+            }
+            if (cached == null || cached.raw.isClosed()) {
+                cached = new CachedStatement(raw.prepareStatement(sql));
+                statements.put(sql, cached);
+            }
+            cached.inUse = true;
+            return cached.proxy(owner);
+        }
+
+        /** Restores a clean autocommit state so the next borrower never inherits a transaction. */
+        void reset() {
+            try {
+                if (!raw.getAutoCommit()) {
+                    raw.rollback();
+                    raw.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                closeQuietly();
+            }
+        }
+
+        boolean isUsable() {
+            try {
+                return !raw.isClosed();
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void closeQuietly() {
+            for (CachedStatement cs : statements.values()) {
+                cs.closeQuietly();
+            }
+            statements.clear();
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+                // Already broken; nothing left to release.
+            }
+        }
+    }
+
+    private static final class LeaseHandler implements InvocationHandler {
+        private final PhysicalConnection pc;
+        private final Runnable onRelease;
+        private final boolean resetOnClose;
+        private Connection self;
+        private boolean released;
+
+        LeaseHandler(PhysicalConnection pc, Runnable onRelease, boolean resetOnClose) {
+            this.pc = pc;
+            this.onRelease = onRelease;
+            this.resetOnClose = resetOnClose;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        if (resetOnClose) pc.reset();
+                        onRelease.run();
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SqliteDataSource lease of " + pc.raw;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            if (name.equals("prepareStatement") && args != null && args.length == 1) {
+                return pc.prepare((String) args[0], self);
+            }
+            try {
+                return method.invoke(pc.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement raw;
+        private boolean inUse;
+
+        CachedStatement(PreparedStatement raw) {
+            this.raw = raw;
+        }
+
+        PreparedStatement proxy(Connection owner) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    SqliteDataSource.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    new StatementHandler(this, owner));
+        }
+
+        void closeQuietly() {
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+                // Statement already unusable.
+            }
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection owner;
+        private boolean released;
+
+        StatementHandler(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        cached.inUse = false;
+                        if (!cached.raw.isClosed()) {
+                            // An unread ResultSet would pin a WAL read snapshot; release it with the statement.
+                            ResultSet rs = cached.raw.getResultSet();
+                            if (rs != null) rs.close();
+                            cached.raw.clearParameters();
+                            cached.raw.clearBatch();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return released || cached.raw.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Statement has been closed");
+            }
+            try {
+                return method.invoke(cached.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
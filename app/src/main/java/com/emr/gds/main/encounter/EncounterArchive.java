@@ -0,0 +1,330 @@
+package com.emr.gds.main.encounter;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archive of complete encounter notes in {@code encounter_archive.db}.
+ * <p>
+ * {@code encounters} holds one small metadata row per encounter, indexed by patient and date, so listing a
+ * patient's visits never touches note text. Section bodies live in {@code encounter_sections}, one row per
+ * non-blank section, compressed by {@link SectionCodec}. {@link #archive} compresses and writes on a single
+ * background thread and returns at once; {@link #close()} finishes pending writes.
+ */
+public class EncounterArchive {
+
+    /** Metadata for one archived encounter. */
+    public record EncounterSummary(long id, String patientId, LocalDate encounterDate, LocalDateTime savedAt,
+                                   int rawBytes, int storedBytes) {}
+
+    /** Told about each archived encounter, on the archive thread, in id order. */
+    public interface Listener {
+        void archived(long id, EncounterSnapshot snapshot);
+    }
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    private static EncounterArchive shared;
+
+    private final SqliteDataSource dataSource;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "encounter-archive");
+        t.setDaemon(true);
+        return t;
+    });
+    private final CompletableFuture<Void> tablesReady;
+
+    /** Opens the archive; its tables are created on the archive thread, ahead of any write. */
+    public EncounterArchive(SqliteDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.tablesReady = CompletableFuture.runAsync(() -> {
+            try {
+                createTables();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to create encounter archive tables: " + e.getMessage(), e);
+            }
+        }, writer);
+    }
+
+    /** The application's archive in {@code app/db/encounter_archive.db}, opened on first use. */
+    public static synchronized EncounterArchive shared() throws IOException {
+        if (shared == null) {
+            Path db = SqliteDataSource.resolveAppDb("encounter_archive.db");
+            Files.createDirectories(db.getParent());
+            shared = new EncounterArchive(SqliteDataSource.forFile(db));
+        }
+        return shared;
+    }
+
+    /** Finishes pending writes of the shared archive, if it was opened. Called on application shutdown. */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    private void createTables() throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS encounters (
+                        id             INTEGER PRIMARY KEY AUTOINCREMENT,
+                        patient_id     TEXT    NOT NULL DEFAULT '',
+                        encounter_date TEXT    NOT NULL,
+                        saved_at       TEXT    NOT NULL,
+                        raw_bytes      INTEGER NOT NULL,
+                        stored_bytes   INTEGER NOT NULL
+                    )""");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_encounters_patient_date ON encounters(patient_id, encounter_date)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_encounters_date ON encounters(encounter_date)");
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS encounter_sections (
+                        encounter_id INTEGER NOT NULL REFERENCES encounters(id) ON DELETE CASCADE,
+                        section_no   INTEGER NOT NULL,
+                        codec        INTEGER NOT NULL,
+                        raw_length   INTEGER NOT NULL,
+                        body         BLOB    NOT NULL,
+                        PRIMARY KEY (encounter_id, section_no)
+                    ) WITHOUT ROWID""");
+        }
+    }
+
+    /**
+     * Compresses and stores {@code snapshot} on the archive thread.
+     * @return the new encounter id; completes exceptionally if the write fails.
+     */
+    public CompletableFuture<Long> archive(EncounterSnapshot snapshot) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return write(snapshot);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to archive encounter: " + e.getMessage(), e);
+            }
+        }, writer);
+    }
+
+    private long write(EncounterSnapshot snapshot) throws SQLException {
+        // Compress before taking the write lock.
+        Map<Integer, SectionCodec.Encoded> bodies = new LinkedHashMap<>();
+        int rawBytes = 0;
+        int storedBytes = 0;
+        for (int i = 0; i < EncounterSnapshot.SECTIONS.size(); i++) {
+            String text = snapshot.sections().get(EncounterSnapshot.SECTIONS.get(i));
+            if (text != null) bodies.put(i, SectionCodec.encode(text));
+        }
+        if (!snapshot.problems().isEmpty()) {
+            bodies.put(EncounterSnapshot.PROBLEM_LIST_SECTION, SectionCodec.encode(String.join("\n", snapshot.problems())));
+        }
+        for (SectionCodec.Encoded e : bodies.values()) {
+            rawBytes += e.rawLength();
+            storedBytes += e.body().length;
+        }
+
+        try (Connection conn = dataSource.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long id;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO encounters (patient_id, encounter_date, saved_at, raw_bytes, stored_bytes) VALUES (?,?,?,?,?)")) {
+                    ps.setString(1, snapshot.patientId());
+                    ps.setString(2, snapshot.encounterDate().toString());
+                    ps.setString(3, snapshot.savedAt().toString());
+                    ps.setInt(4, rawBytes);
+                    ps.setInt(5, storedBytes);
+                    ps.executeUpdate();
+                }
+                try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT last_insert_rowid()")) {
+                    rs.next();
+                    id = rs.getLong(1);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO encounter_sections (encounter_id, section_no, codec, raw_length, body) VALUES (?,?,?,?,?)")) {
+                    for (Map.Entry<Integer, SectionCodec.Encoded> e : bodies.entrySet()) {
+                        ps.setLong(1, id);
+                        ps.setInt(2, e.getKey());
+                        ps.setInt(3, e.getValue().codec());
+                        ps.setInt(4, e.getValue().rawLength());
+                        ps.setBytes(5, e.getValue().body());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                conn.commit();
+                notifyListeners(id, snapshot);
+                return id;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void notifyListeners(long id, EncounterSnapshot snapshot) {
+        for (Listener listener : listeners) {
+            try {
+                listener.archived(id, snapshot);
+            } catch (RuntimeException e) {
+                System.err.println("Encounter archive listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Replays every archived encounter to {@code listener} in id order, then registers it for new ones. Both run on
+     * the archive thread, so no encounter is missed or delivered twice.
+     * @return completes once the replay is done.
+     */
+    public CompletableFuture<Void> subscribe(Listener listener) {
+        return tablesReady.thenRunAsync(() -> {
+            try {
+                replay(listener);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read encounter archive: " + e.getMessage(), e);
+            }
+            listeners.add(listener);
+        }, writer);
+    }
+
+    private void replay(Listener listener) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT e.id, e.patient_id, e.encounter_date, e.saved_at, s.section_no, s.codec, s.raw_length, s.body "
+                             + "FROM encounters e JOIN encounter_sections s ON s.encounter_id = e.id "
+                             + "ORDER BY e.id, s.section_no")) {
+            long currentId = -1;
+            String patientId = null;
+            LocalDate date = null;
+            LocalDateTime savedAt = null;
+            Map<String, String> sections = new LinkedHashMap<>();
+            List<String> problems = List.of();
+            while (rs.next()) {
+                long id = rs.getLong(1);
+                if (id != currentId) {
+                    if (currentId >= 0) {
+                        listener.archived(currentId, new EncounterSnapshot(patientId, date, savedAt, sections, problems));
+                    }
+                    currentId = id;
+                    patientId = rs.getString(2);
+                    date = LocalDate.parse(rs.getString(3));
+                    savedAt = LocalDateTime.parse(rs.getString(4));
+                    sections = new LinkedHashMap<>();
+                    problems = List.of();
+                }
+                int section = rs.getInt(5);
+                String text = SectionCodec.decode(rs.getInt(6), rs.getInt(7), rs.getBytes(8));
+                if (section == EncounterSnapshot.PROBLEM_LIST_SECTION) {
+                    problems = Arrays.asList(text.split("\n"));
+                } else if (section < EncounterSnapshot.SECTIONS.size()) {
+                    sections.put(EncounterSnapshot.SECTIONS.get(section), text);
+                }
+            }
+            if (currentId >= 0) {
+                listener.archived(currentId, new EncounterSnapshot(patientId, date, savedAt, sections, problems));
+            }
+        }
+    }
+
+    /** A patient's archived encounters, newest first. Reads only the metadata index. */
+    public List<EncounterSummary> encounters(String patientId) throws SQLException {
+        awaitTables();
+        List<EncounterSummary> result = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT id, patient_id, encounter_date, saved_at, raw_bytes, stored_bytes FROM encounters "
+                             + "WHERE patient_id = ? ORDER BY encounter_date DESC, id DESC")) {
+            ps.setString(1, patientId == null ? "" : patientId.trim());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(mapSummary(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Metadata for one encounter, or null if there is no such id. */
+    public EncounterSummary summary(long id) throws SQLException {
+        awaitTables();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT id, patient_id, encounter_date, saved_at, raw_bytes, stored_bytes FROM encounters WHERE id = ?")) {
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapSummary(rs) : null;
+            }
+        }
+    }
+
+    /** The full note of an archived encounter, decompressed, or null if there is no such id. */
+    public EncounterSnapshot load(long id) throws SQLException {
+        EncounterSummary summary = summary(id);
+        if (summary == null) return null;
+
+        Map<String, String> sections = new LinkedHashMap<>();
+        List<String> problems = List.of();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT section_no, codec, raw_length, body FROM encounter_sections WHERE encounter_id = ? ORDER BY section_no")) {
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int section = rs.getInt(1);
+                    String text = SectionCodec.decode(rs.getInt(2), rs.getInt(3), rs.getBytes(4));
+                    if (section == EncounterSnapshot.PROBLEM_LIST_SECTION) {
+                        problems = Arrays.asList(text.split("\n"));
+                    } else if (section < EncounterSnapshot.SECTIONS.size()) {
+                        sections.put(EncounterSnapshot.SECTIONS.get(section), text);
+                    }
+                }
+            }
+        }
+        return new EncounterSnapshot(summary.patientId(), summary.encounterDate(), summary.savedAt(), sections, problems);
+    }
+
+    /** Blocks a reader until table creation has run; reads are expected off the FX thread. */
+    private void awaitTables() throws SQLException {
+        try {
+            tablesReady.join();
+        } catch (CompletionException e) {
+            throw new SQLException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static EncounterSummary mapSummary(ResultSet rs) throws SQLException {
+        return new EncounterSummary(rs.getLong(1), rs.getString(2), LocalDate.parse(rs.getString(3)),
+                LocalDateTime.parse(rs.getString(4)), rs.getInt(5), rs.getInt(6));
+    }
+
+    /** Finishes queued archive writes, then stops the archive thread. */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Encounter archive did not finish writing before shutdown.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
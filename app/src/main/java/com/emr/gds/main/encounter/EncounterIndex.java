@@ -0,0 +1,224 @@
+package com.emr.gds.main.encounter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-memory inverted index over archived encounter notes.
+ * <p>
+ * Each encounter gets a dense ordinal in archive order; every term maps to a {@link PostingList} of ordinals with
+ * per-section positions, where the problem list counts as section {@link EncounterQuery#PROBLEM_LIST_SLOT}. Queries
+ * ({@link EncounterQuery}) are evaluated as bit sets over ordinals: words read one posting list, phrases intersect
+ * their words' documents and then check positions only in those, and the date range is applied last from a
+ * per-ordinal day array. The index is built by replaying the archive once and is then kept current as encounters are
+ * archived; see {@link EncounterArchive#subscribe}.
+ */
+public class EncounterIndex {
+
+    /** One matching encounter. */
+    public record EncounterHit(long encounterId, String patientId, LocalDate encounterDate) {}
+
+    private static final Comparator<EncounterHit> NEWEST_FIRST = Comparator
+            .comparing(EncounterHit::encounterDate).thenComparingLong(EncounterHit::encounterId).reversed();
+
+    private static EncounterIndex shared;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<String, String> patientIds = new HashMap<>();
+    private long[] ids = new long[256];
+    private int[] days = new int[256];
+    private String[] patients = new String[256];
+    private int docCount;
+    private final CompletableFuture<EncounterIndex> ready = new CompletableFuture<>();
+
+    /**
+     * The application's index over {@link EncounterArchive#shared()}, built in the background on first use.
+     * Searches before {@link #whenReady()} completes see only what has been indexed so far.
+     */
+    public static synchronized EncounterIndex shared() throws IOException {
+        if (shared == null) {
+            EncounterIndex index = new EncounterIndex();
+            EncounterArchive.shared().subscribe(index::add).whenComplete((v, error) -> {
+                if (error != null) {
+                    System.err.println("Failed to build encounter index: " + error.getMessage());
+                    index.ready.completeExceptionally(error);
+                } else {
+                    index.ready.complete(index);
+                }
+            });
+            shared = index;
+        }
+        return shared;
+    }
+
+    public CompletableFuture<EncounterIndex> whenReady() {
+        return ready;
+    }
+
+    public synchronized int size() {
+        return docCount;
+    }
+
+    public synchronized int termCount() {
+        return postings.size();
+    }
+
+    /** Indexes one encounter. Ids must arrive in increasing order; an id already indexed is ignored. */
+    public synchronized void add(long encounterId, EncounterSnapshot snapshot) {
+        if (docCount > 0 && encounterId <= ids[docCount - 1]) return;
+        if (docCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            days = Arrays.copyOf(days, capacity);
+            patients = Arrays.copyOf(patients, capacity);
+        }
+        int ordinal = docCount;
+        ids[ordinal] = encounterId;
+        days[ordinal] = (int) snapshot.encounterDate().toEpochDay();
+        patients[ordinal] = patientIds.computeIfAbsent(snapshot.patientId(), p -> p);
+
+        // term -> (section, position) pairs, already in section then position order
+        Map<String, int[]> pairs = new HashMap<>();
+        Map<String, Integer> lengths = new HashMap<>();
+        for (int section = 0; section <= EncounterQuery.PROBLEM_LIST_SLOT; section++) {
+            String text = section == EncounterQuery.PROBLEM_LIST_SLOT
+                    ? String.join("\n", snapshot.problems())
+                    : snapshot.sections().get(EncounterSnapshot.SECTIONS.get(section));
+            if (text == null || text.isEmpty()) continue;
+            int s = section;
+            NoteTokenizer.tokenize(text, (token, position) -> {
+                int length = lengths.getOrDefault(token, 0);
+                int[] buf = pairs.get(token);
+                if (buf == null) {
+                    buf = new int[8];
+                } else if (length + 2 > buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                buf[length] = s;
+                buf[length + 1] = position;
+                pairs.put(token, buf);
+                lengths.put(token, length + 2);
+            });
+        }
+        pairs.forEach((token, buf) ->
+                postings.computeIfAbsent(token, t -> new PostingList()).add(ordinal, buf, lengths.get(token)));
+        docCount++;
+    }
+
+    /** Matching encounters, newest first, at most {@code limit}. */
+    public synchronized List<EncounterHit> search(EncounterQuery query, int limit) {
+        EncounterQuery.Node node = query.parse();
+        if (node == null || docCount == 0) return List.of();
+
+        BitSet matches = eval(node);
+        int from = query.from() == null ? Integer.MIN_VALUE : (int) query.from().toEpochDay();
+        int to = query.to() == null ? Integer.MAX_VALUE : (int) query.to().toEpochDay();
+        List<EncounterHit> hits = new ArrayList<>();
+        for (int ord = matches.nextSetBit(0); ord >= 0; ord = matches.nextSetBit(ord + 1)) {
+            if (days[ord] < from || days[ord] > to) continue;
+            hits.add(new EncounterHit(ids[ord], patients[ord], LocalDate.ofEpochDay(days[ord])));
+        }
+        hits.sort(NEWEST_FIRST);
+        return hits.size() > limit ? List.copyOf(hits.subList(0, limit)) : hits;
+    }
+
+    private BitSet eval(EncounterQuery.Node node) {
+        return switch (node) {
+            case EncounterQuery.Terms t -> t.tokens().size() == 1 ? documents(t.tokens().get(0), t.sectionMask()) : phrase(t);
+            case EncounterQuery.And a -> {
+                // x AND NOT y is a difference; no need to build the complement of y.
+                if (a.right() instanceof EncounterQuery.Not n) {
+                    BitSet left = eval(a.left());
+                    left.andNot(eval(n.operand()));
+                    yield left;
+                }
+                if (a.left() instanceof EncounterQuery.Not n) {
+                    BitSet right = eval(a.right());
+                    right.andNot(eval(n.operand()));
+                    yield right;
+                }
+                BitSet left = eval(a.left());
+                if (!left.isEmpty()) left.and(eval(a.right()));
+                yield left;
+            }
+            case EncounterQuery.Or o -> {
+                BitSet left = eval(o.left());
+                left.or(eval(o.right()));
+                yield left;
+            }
+            case EncounterQuery.Not n -> {
+                BitSet all = new BitSet(docCount);
+                all.set(0, docCount);
+                all.andNot(eval(n.operand()));
+                yield all;
+            }
+        };
+    }
+
+    private BitSet documents(String token, int sectionMask) {
+        BitSet docs = new BitSet(docCount);
+        PostingList list = postings.get(token);
+        if (list != null) {
+            list.forEach((ordinal, section, positions, count) -> {
+                if ((sectionMask >> section & 1) != 0) docs.set(ordinal);
+            });
+        }
+        return docs;
+    }
+
+    /** Leapfrogs the words' postings to documents holding all of them, then checks for consecutive positions. */
+    private BitSet phrase(EncounterQuery.Terms terms) {
+        List<String> tokens = terms.tokens();
+        BitSet matches = new BitSet(docCount);
+        PostingList.Cursor[] cursors = new PostingList.Cursor[tokens.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            PostingList list = postings.get(tokens.get(i));
+            if (list == null) return matches;
+            cursors[i] = list.cursor();
+            if (!cursors[i].next()) return matches;
+        }
+
+        int target = 0;
+        while (true) {
+            boolean aligned = true;
+            for (PostingList.Cursor c : cursors) {
+                if (!c.advance(target)) return matches;
+                if (c.ordinal() > target) {
+                    target = c.ordinal();
+                    aligned = false;
+                }
+            }
+            if (!aligned) continue;
+            if (phraseAt(cursors, terms.sectionMask())) matches.set(target);
+            target++;
+        }
+    }
+
+    private static boolean phraseAt(PostingList.Cursor[] cursors, int sectionMask) {
+        PostingList.Cursor first = cursors[0];
+        for (int k = 0; k < first.sectionCount(); k++) {
+            int section = first.section(k);
+            if ((sectionMask >> section & 1) == 0) continue;
+            starts:
+            for (int p = first.start(k); p < first.end(k); p++) {
+                int start = first.positions()[p];
+                for (int i = 1; i < cursors.length; i++) {
+                    PostingList.Cursor c = cursors[i];
+                    int kk = c.find(section);
+                    if (kk < 0) break starts;
+                    if (Arrays.binarySearch(c.positions(), c.start(kk), c.end(kk), start + i) < 0) continue starts;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,193 @@
+package com.emr.gds.main.encounter;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A search over archived encounters.
+ * <p>
+ * {@code text} is a boolean query: words and {@code "quoted phrases"} are ANDed by default and can be combined with
+ * {@code OR}, {@code NOT} (or a leading {@code -}) and parentheses. A term can be limited to one section with a
+ * prefix such as {@code a:methimazole}, {@code p:"continue current"} or {@code o>:trab}; section prefixes are the
+ * note titles without {@code >} ({@code cc}, {@code pi}, {@code ros}, {@code pmh}, {@code s}, {@code o},
+ * {@code pe}, {@code a}, {@code p}, {@code comment}) and {@code problems}. {@code from} and {@code to} are inclusive
+ * and optional.
+ */
+public record EncounterQuery(String text, LocalDate from, LocalDate to) {
+
+    public static EncounterQuery of(String text) {
+        return new EncounterQuery(text, null, null);
+    }
+
+    /** Parsed query tree. */
+    sealed interface Node permits Terms, And, Or, Not {}
+
+    /** One word (a single token) or phrase (consecutive tokens), in the sections set in {@code sectionMask}. */
+    record Terms(List<String> tokens, int sectionMask) implements Node {}
+
+    record And(Node left, Node right) implements Node {}
+
+    record Or(Node left, Node right) implements Node {}
+
+    record Not(Node operand) implements Node {}
+
+    /**
+     * Bit of the problem list in a section mask, right after the note sections. Masks and index positions are
+     * in memory only, so unlike {@link EncounterSnapshot#PROBLEM_LIST_SECTION} this may move as sections are added.
+     */
+    static final int PROBLEM_LIST_SLOT = EncounterSnapshot.SECTIONS.size();
+
+    static final int ALL_SECTIONS = (1 << (PROBLEM_LIST_SLOT + 1)) - 1;
+
+    private static final Map<String, Integer> SECTION_ALIASES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < EncounterSnapshot.SECTIONS.size(); i++) {
+            SECTION_ALIASES.put(sectionKey(EncounterSnapshot.SECTIONS.get(i)), i);
+        }
+        int exam = EncounterSnapshot.SECTIONS.indexOf("Physical Exam>");
+        SECTION_ALIASES.put("pe", exam);
+        SECTION_ALIASES.put("exam", exam);
+        SECTION_ALIASES.put("problems", PROBLEM_LIST_SLOT);
+        SECTION_ALIASES.put("problem", PROBLEM_LIST_SLOT);
+    }
+
+    private static String sectionKey(String title) {
+        String key = title.trim().toLowerCase(Locale.ROOT);
+        if (key.endsWith(">")) key = key.substring(0, key.length() - 1);
+        return key.replace(" ", "");
+    }
+
+    /** Parses {@code text}; null if it holds no searchable terms. */
+    Node parse() {
+        if (text == null || text.isBlank()) return null;
+        Parser parser = new Parser(lex(text));
+        Node node = parser.or();
+        if (parser.pos < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.pos).text + "' in query");
+        }
+        return node;
+    }
+
+    // ================================
+    // Lexer
+    // ================================
+
+    private enum Kind { WORD, PHRASE, AND, OR, NOT, OPEN, CLOSE }
+
+    private record Token(Kind kind, String text, int sectionMask) {}
+
+    private static List<Token> lex(String s) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(c == '(' ? Kind.OPEN : Kind.CLOSE, String.valueOf(c), ALL_SECTIONS));
+                i++;
+            } else if (c == '-' && i + 1 < n && !Character.isWhitespace(s.charAt(i + 1))) {
+                tokens.add(new Token(Kind.NOT, "-", ALL_SECTIONS));
+                i++;
+            } else if (c == '"') {
+                int end = s.indexOf('"', i + 1);
+                if (end < 0) end = n;
+                tokens.add(new Token(Kind.PHRASE, s.substring(i + 1, end), ALL_SECTIONS));
+                i = Math.min(end + 1, n);
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(s.charAt(i)) && "()\"".indexOf(s.charAt(i)) < 0) i++;
+                String word = s.substring(start, i);
+                int colon = word.indexOf(':');
+                Integer section = colon > 0 ? SECTION_ALIASES.get(sectionKey(word.substring(0, colon))) : null;
+                if (section != null) {
+                    int mask = 1 << section;
+                    String rest = word.substring(colon + 1);
+                    if (rest.isEmpty() && i < n && s.charAt(i) == '"') {
+                        int end = s.indexOf('"', i + 1);
+                        if (end < 0) end = n;
+                        tokens.add(new Token(Kind.PHRASE, s.substring(i + 1, end), mask));
+                        i = Math.min(end + 1, n);
+                    } else {
+                        tokens.add(new Token(Kind.WORD, rest, mask));
+                    }
+                } else if (word.equals("AND") || word.equals("OR") || word.equals("NOT")) {
+                    tokens.add(new Token(Kind.valueOf(word), word, ALL_SECTIONS));
+                } else {
+                    tokens.add(new Token(Kind.WORD, word, ALL_SECTIONS));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    // ================================
+    // Parser
+    // ================================
+
+    private static final class Parser {
+        private final List<Token> tokens;
+        private int pos;
+
+        Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node or() {
+            Node left = and();
+            while (accept(Kind.OR)) {
+                Node right = and();
+                left = left == null ? right : right == null ? left : new Or(left, right);
+            }
+            return left;
+        }
+
+        Node and() {
+            Node left = unary();
+            while (pos < tokens.size() && peek() != Kind.OR && peek() != Kind.CLOSE) {
+                accept(Kind.AND);
+                Node right = unary();
+                left = left == null ? right : right == null ? left : new And(left, right);
+            }
+            return left;
+        }
+
+        Node unary() {
+            if (accept(Kind.NOT)) {
+                Node operand = unary();
+                return operand == null ? null : new Not(operand);
+            }
+            if (accept(Kind.OPEN)) {
+                Node inner = or();
+                if (!accept(Kind.CLOSE)) throw new IllegalArgumentException("Missing ')' in query");
+                return inner;
+            }
+            if (pos >= tokens.size()) throw new IllegalArgumentException("Query ends unexpectedly");
+            Token t = tokens.get(pos++);
+            if (t.kind() != Kind.WORD && t.kind() != Kind.PHRASE) {
+                throw new IllegalArgumentException("Unexpected '" + t.text() + "' in query");
+            }
+            List<String> words = NoteTokenizer.tokens(t.text());
+            // Punctuation-only input has nothing to match; drop it rather than fail the whole query.
+            return words.isEmpty() ? null : new Terms(words, t.sectionMask());
+        }
+
+        private Kind peek() {
+            return tokens.get(pos).kind();
+        }
+
+        private boolean accept(Kind kind) {
+            if (pos < tokens.size() && tokens.get(pos).kind() == kind) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.emr.gds.main.encounter;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full-text search over archived encounters. Queries run against {@link EncounterIndex} off the FX thread;
+ * double-clicking a hit loads that note from the archive.
+ */
+public class EncounterSearchStage {
+
+    private static final int MAX_HITS = 500;
+
+    private final TextField queryField = new TextField();
+    private final DatePicker fromPicker = new DatePicker();
+    private final DatePicker toPicker = new DatePicker();
+    private final ListView<EncounterIndex.EncounterHit> results = new ListView<>();
+    private final TextArea noteView = new TextArea();
+    private final Label statusLabel = new Label();
+
+    private EncounterIndex index;
+    private Task<List<EncounterIndex.EncounterHit>> running;
+
+    public static void open() {
+        new EncounterSearchStage().show();
+    }
+
+    private void show() {
+        try {
+            index = EncounterIndex.shared();
+        } catch (IOException e) {
+            System.err.println("Encounter archive unavailable: " + e.getMessage());
+            statusLabel.setText("Encounter archive unavailable: " + e.getMessage());
+        }
+
+        queryField.setPromptText("e.g. a:hypothyroidism \"continue current\" -metformin");
+        HBox.setHgrow(queryField, Priority.ALWAYS);
+        queryField.setOnAction(e -> search());
+        fromPicker.setPromptText("From");
+        fromPicker.setPrefWidth(130);
+        toPicker.setPromptText("To");
+        toPicker.setPrefWidth(130);
+        Button searchButton = new Button("Search");
+        searchButton.setDefaultButton(true);
+        searchButton.setOnAction(e -> search());
+
+        HBox queryRow = new HBox(6, queryField, fromPicker, toPicker, searchButton);
+        queryRow.setAlignment(Pos.CENTER_LEFT);
+
+        results.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(EncounterIndex.EncounterHit hit, boolean empty) {
+                super.updateItem(hit, empty);
+                setText(empty || hit == null ? null
+                        : hit.encounterDate() + "  " + (hit.patientId().isEmpty() ? "(no chart no.)" : hit.patientId())
+                        + "  #" + hit.encounterId());
+            }
+        });
+        results.setOnMouseClicked(e -> {
+            EncounterIndex.EncounterHit hit = results.getSelectionModel().getSelectedItem();
+            if (e.getClickCount() == 2 && hit != null) loadNote(hit.encounterId());
+        });
+
+        noteView.setEditable(false);
+        noteView.setWrapText(true);
+
+        SplitPane split = new SplitPane(results, noteView);
+        split.setDividerPositions(0.35);
+
+        BorderPane root = new BorderPane(split);
+        root.setTop(new VBox(6, queryRow, statusLabel));
+        root.setPadding(new Insets(10));
+        BorderPane.setMargin(split, new Insets(8, 0, 0, 0));
+
+        Stage stage = new Stage();
+        stage.setTitle("Note Search");
+        stage.setScene(new Scene(root, 900, 620));
+        stage.show();
+
+        if (index == null) {
+            queryRow.setDisable(true);
+            new Alert(Alert.AlertType.ERROR, statusLabel.getText()).show();
+        } else {
+            statusLabel.setText("Indexing archived notes...");
+            index.whenReady().whenComplete((ix, error) -> Platform.runLater(() -> statusLabel.setText(error == null
+                    ? ix.size() + " notes indexed."
+                    : "Indexing failed: " + error.getMessage())));
+        }
+    }
+
+    private void search() {
+        if (index == null) return;
+        if (running != null) running.cancel();
+
+        EncounterQuery query = new EncounterQuery(queryField.getText(), fromPicker.getValue(), toPicker.getValue());
+        Task<List<EncounterIndex.EncounterHit>> task = new Task<>() {
+            @Override
+            protected List<EncounterIndex.EncounterHit> call() {
+                return index.search(query, MAX_HITS);
+            }
+        };
+        long started = System.nanoTime();
+        task.setOnSucceeded(e -> {
+            List<EncounterIndex.EncounterHit> hits = task.getValue();
+            results.getItems().setAll(hits);
+            long ms = (System.nanoTime() - started) / 1_000_000;
+            statusLabel.setText((hits.size() == MAX_HITS ? "First " + MAX_HITS : String.valueOf(hits.size()))
+                    + " matching notes (" + ms + " ms).");
+        });
+        task.setOnFailed(e -> statusLabel.setText(task.getException() instanceof IllegalArgumentException
+                ? task.getException().getMessage()
+                : "Search failed: " + task.getException().getMessage()));
+        running = task;
+        Thread t = new Thread(task, "encounter-search");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void loadNote(long encounterId) {
+        Task<EncounterSnapshot> task = new Task<>() {
+            @Override
+            protected EncounterSnapshot call() throws Exception {
+                return EncounterArchive.shared().load(encounterId);
+            }
+        };
+        task.setOnSucceeded(e -> noteView.setText(format(task.getValue())));
+        task.setOnFailed(e -> noteView.setText("Failed to load note: " + task.getException().getMessage()));
+        Thread t = new Thread(task, "encounter-load");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static String format(EncounterSnapshot snapshot) {
+        if (snapshot == null) return "";
+        StringBuilder sb = new StringBuilder();
+        sb.append(snapshot.encounterDate());
+        if (!snapshot.patientId().isEmpty()) sb.append("  ").append(snapshot.patientId());
+        sb.append("\n\n");
+        for (Map.Entry<String, String> e : snapshot.sections().entrySet()) {
+            sb.append(e.getKey()).append('\n').append(e.getValue().strip()).append("\n\n");
+        }
+        if (!snapshot.problems().isEmpty()) {
+            sb.append("Problem List>\n").append(String.join("\n", snapshot.problems())).append('\n');
+        }
+        return sb.toString();
+    }
+}
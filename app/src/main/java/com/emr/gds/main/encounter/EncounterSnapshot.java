@@ -0,0 +1,46 @@
+package com.emr.gds.main.encounter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One encounter's note as archived: the ten EMR sections by title, plus the problem list lines at that moment.
+ * Blank sections are dropped.
+ */
+public record EncounterSnapshot(String patientId, LocalDate encounterDate, LocalDateTime savedAt,
+                                Map<String, String> sections, List<String> problems) {
+
+    /**
+     * Section titles in storage order; {@code encounter_sections.section_no} is the index here. Append only —
+     * reordering would change the meaning of stored rows.
+     */
+    public static final List<String> SECTIONS = List.of(
+            "CC>", "PI>", "ROS>", "PMH>", "S>",
+            "O>", "Physical Exam>", "A>", "P>", "Comment>");
+
+    /**
+     * Storage slot for the problem list. Fixed well outside the note sections so that appending a section never
+     * collides with it; like the section indexes, it must not change.
+     */
+    public static final int PROBLEM_LIST_SECTION = 100;
+
+    public EncounterSnapshot {
+        patientId = patientId == null ? "" : patientId.trim();
+        Map<String, String> kept = new LinkedHashMap<>();
+        if (sections != null) {
+            sections.forEach((title, text) -> {
+                if (text != null && !text.isBlank()) kept.put(title, text);
+            });
+        }
+        sections = Collections.unmodifiableMap(kept);
+        problems = problems == null ? List.of() : List.copyOf(problems);
+    }
+
+    public boolean isEmpty() {
+        return sections.isEmpty();
+    }
+}
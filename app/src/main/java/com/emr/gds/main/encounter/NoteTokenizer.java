@@ -0,0 +1,42 @@
+package com.emr.gds.main.encounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits note text into lower-case runs of letters and digits. Everything else separates tokens, so {@code F/U}
+ * becomes {@code f}, {@code u} and is matched as a phrase. Used for both indexing and queries.
+ */
+final class NoteTokenizer {
+
+    interface Sink {
+        void token(String token, int position);
+    }
+
+    private NoteTokenizer() {
+    }
+
+    static void tokenize(String text, Sink sink) {
+        int position = 0;
+        int start = -1;
+        int n = text.length();
+        for (int i = 0; i <= n; ) {
+            int cp = i < n ? text.codePointAt(i) : ' ';
+            boolean word = i < n && Character.isLetterOrDigit(cp);
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                sink.token(text.substring(start, i).toLowerCase(Locale.ROOT), position++);
+                start = -1;
+            }
+            i += i < n ? Character.charCount(cp) : 1;
+        }
+    }
+
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        tokenize(text, (token, position) -> tokens.add(token));
+        return tokens;
+    }
+}
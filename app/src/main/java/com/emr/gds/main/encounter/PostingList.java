@@ -0,0 +1,185 @@
+package com.emr.gds.main.encounter;
+
+import java.util.Arrays;
+
+/**
+ * Append-only compressed postings for one term.
+ * <p>
+ * Per document: varint(doc ordinal delta), varint(section count), then for each section varint(section number),
+ * varint(position count) and the positions as varint deltas. Documents must be added in increasing ordinal order,
+ * which is archive order.
+ */
+final class PostingList {
+
+    /** Receives one (document, section) entry with its ascending positions in {@code positions[0..count)}. */
+    interface Visitor {
+        void accept(int ordinal, int section, int[] positions, int count);
+    }
+
+    private byte[] buf = new byte[16];
+    private int size;
+    private int lastOrdinal = -1;
+    private int docCount;
+
+    /**
+     * Appends a document. {@code pairs[0..length)} holds (section, position) pairs sorted by section, then position.
+     */
+    void add(int ordinal, int[] pairs, int length) {
+        if (ordinal <= lastOrdinal) throw new IllegalArgumentException("Postings must be added in ordinal order");
+        writeVarint(ordinal - lastOrdinal);
+        lastOrdinal = ordinal;
+        docCount++;
+
+        int sections = 0;
+        for (int i = 0; i < length; i += 2) {
+            if (i == 0 || pairs[i] != pairs[i - 2]) sections++;
+        }
+        writeVarint(sections);
+        int i = 0;
+        while (i < length) {
+            int section = pairs[i];
+            int end = i;
+            while (end < length && pairs[end] == section) end += 2;
+            writeVarint(section);
+            writeVarint((end - i) / 2);
+            int previous = 0;
+            for (int j = i; j < end; j += 2) {
+                writeVarint(pairs[j + 1] - previous);
+                previous = pairs[j + 1];
+            }
+            i = end;
+        }
+    }
+
+    int docCount() {
+        return docCount;
+    }
+
+    int byteSize() {
+        return size;
+    }
+
+    void forEach(Visitor visitor) {
+        int[] positions = new int[8];
+        int[] cursor = {0};
+        int ordinal = -1;
+        while (cursor[0] < size) {
+            ordinal += readVarint(cursor);
+            int sections = readVarint(cursor);
+            for (int s = 0; s < sections; s++) {
+                int section = readVarint(cursor);
+                int count = readVarint(cursor);
+                if (count > positions.length) positions = new int[Math.max(count, positions.length * 2)];
+                int position = 0;
+                for (int p = 0; p < count; p++) {
+                    position += readVarint(cursor);
+                    positions[p] = position;
+                }
+                visitor.accept(ordinal, section, positions, count);
+            }
+        }
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Steps through the documents in ordinal order, decoding one document's sections at a time. Section {@code k}
+     * of the current document has number {@code section(k)} and positions {@code positions()[start(k)..end(k))}.
+     */
+    final class Cursor {
+        private final int[] offset = {0};
+        private int ordinal = -1;
+        private int sectionCount;
+        private int[] sections = new int[4];
+        private int[] starts = new int[5];
+        private int[] positions = new int[16];
+
+        /** Moves to the next document; false when the list is exhausted. */
+        boolean next() {
+            if (offset[0] >= size) return false;
+            ordinal += readVarint(offset);
+            sectionCount = readVarint(offset);
+            if (sectionCount > sections.length) {
+                sections = new int[sectionCount];
+                starts = new int[sectionCount + 1];
+            }
+            int total = 0;
+            for (int s = 0; s < sectionCount; s++) {
+                sections[s] = readVarint(offset);
+                int count = readVarint(offset);
+                starts[s] = total;
+                if (total + count > positions.length) positions = Arrays.copyOf(positions, Math.max(total + count, positions.length * 2));
+                int position = 0;
+                for (int p = 0; p < count; p++) {
+                    position += readVarint(offset);
+                    positions[total++] = position;
+                }
+            }
+            starts[sectionCount] = total;
+            return true;
+        }
+
+        /** Moves to the first document at or after {@code target}; false when the list is exhausted. */
+        boolean advance(int target) {
+            while (ordinal < target) {
+                if (!next()) return false;
+            }
+            return true;
+        }
+
+        int ordinal() {
+            return ordinal;
+        }
+
+        int sectionCount() {
+            return sectionCount;
+        }
+
+        int section(int k) {
+            return sections[k];
+        }
+
+        int start(int k) {
+            return starts[k];
+        }
+
+        int end(int k) {
+            return starts[k + 1];
+        }
+
+        int[] positions() {
+            return positions;
+        }
+
+        /** Index {@code k} of section number {@code section} in the current document, or -1. */
+        int find(int section) {
+            for (int k = 0; k < sectionCount; k++) {
+                if (sections[k] == section) return k;
+            }
+            return -1;
+        }
+    }
+
+    private void writeVarint(int value) {
+        if (size + 5 > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + 5));
+        while ((value & ~0x7F) != 0) {
+            buf[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[size++] = (byte) value;
+    }
+
+    private int readVarint(int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
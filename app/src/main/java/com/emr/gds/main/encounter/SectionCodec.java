@@ -0,0 +1,91 @@
+package com.emr.gds.main.encounter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression for archived section bodies.
+ * <p>
+ * Notes are short, so plain Deflate has little history to match against. Each body is deflated (raw, no zlib
+ * header) with a preset dictionary of phrases that recur in our notes; a body that doesn't shrink is stored as
+ * UTF-8. The codec id is stored with every row, so a future dictionary gets a new id and old rows stay readable.
+ */
+final class SectionCodec {
+
+    static final int RAW = 0;
+    static final int DEFLATE_DICT_V1 = 1;
+
+    /** Common words last: Deflate matches nearer the end of the dictionary with shorter distances. */
+    private static final byte[] DICTIONARY_V1 = String.join("\n",
+            "Problem List", "Comment>", "Physical Exam>", "ROS>", "PMH>", "CC>", "PI>", "S>", "O>", "A>", "P>",
+            "< KCD >", "[ ] ", "[x] ", "(-)", "(+)", "denied", "no history of", "history of",
+            "Hypertension", "Diabetes Mellitus", "Hypercholesterolemia", "Dyslipidemia", "Hypothyroidism",
+            "Hyperthyroidism", "Thyroid nodule", "Osteoporosis", "Prediabetes", "Obesity", "Fatty liver",
+            "TSH", "Free T4", "T3", "TRAb", "HbA1c", "FBS", "LDL-C", "HDL-C", "Triglyceride", "Cholesterol",
+            "AST", "ALT", "Creatinine", "eGFR", "mg/dL", "mmol/L", "mmHg", "bpm", "kg/m2",
+            "BP: [", "PR: [", "BT: [", "Height: [", "Weight: [", "BMI: [", "Waist: [",
+            "Continue current medication", "Start new medication", "Discontinue current medication",
+            "Increase dose of current medication", "Decrease dose of current medication",
+            "Change dose of current medication", "Observation and follow-up without medication",
+            "Conservative treatment", "F/U in", "week(s)", "month(s)", "day(s)", "F/U as needed",
+            "Lab: ", "follow-up", "medication", "controlled", "as of", "no change", "stable", "improved",
+            "Methimazole", "Levothyroxine", "Metformin", "Atorvastatin", "Rosuvastatin", "Amlodipine",
+            " - ", "\n- ", "\t", ": ", ", ", ". ", " the ", " and ", " with ", " of ", " for ", " to ", " in ")
+            .getBytes(StandardCharsets.UTF_8);
+
+    record Encoded(int codec, int rawLength, byte[] body) {}
+
+    private SectionCodec() {
+    }
+
+    static Encoded encode(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buf = new byte[1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+                if (out.size() >= raw.length) return new Encoded(RAW, raw.length, raw);
+            }
+            return new Encoded(DEFLATE_DICT_V1, raw.length, out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decode(int codec, int rawLength, byte[] body) {
+        switch (codec) {
+            case RAW:
+                return new String(body, StandardCharsets.UTF_8);
+            case DEFLATE_DICT_V1:
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setDictionary(DICTIONARY_V1);
+                    inflater.setInput(body);
+                    byte[] raw = new byte[rawLength];
+                    int off = 0;
+                    while (off < rawLength) {
+                        int n = inflater.inflate(raw, off, rawLength - off);
+                        if (n == 0 && (inflater.finished() || inflater.needsInput())) break;
+                        off += n;
+                    }
+                    if (off != rawLength) throw new IllegalStateException("Archived section is truncated");
+                    return new String(raw, StandardCharsets.UTF_8);
+                } catch (DataFormatException e) {
+                    throw new IllegalStateException("Archived section is corrupt", e);
+                } finally {
+                    inflater.end();
+                }
+            default:
+                throw new IllegalStateException("Unknown section codec " + codec);
+        }
+    }
+}
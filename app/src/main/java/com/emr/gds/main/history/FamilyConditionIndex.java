@@ -0,0 +1,257 @@
+package com.emr.gds.main.history;
+
+import com.emr.gds.main.history.FamilyConditionStore.Category;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable in-memory search index over the family-history condition lists.
+ * <p>
+ * Each query word must occur somewhere in a condition. Words of three or more characters are answered from a
+ * trigram index (intersect the word's trigram postings, then confirm with {@code contains} on the few
+ * candidates); shorter words match word prefixes by binary search over the sorted distinct words. Results keep
+ * each category's list order. Adding a condition derives a new index ({@link #with}) that shares every posting
+ * the new name does not touch, so searches never lock and large lists are not rebuilt per addition.
+ */
+public final class FamilyConditionIndex {
+
+    private static final int GRAM = 3;
+
+    private final Map<Category, List<String>> lists;
+    private final Category[] categories;  // per id
+    private final String[] names;         // per id
+    private final String[] normalized;    // per id
+    private final String[] terms;         // sorted, distinct
+    private final int[][] termPostings;   // ascending ids containing terms[t]
+    private final Map<String, int[]> gramPostings;
+
+    private FamilyConditionIndex(Map<Category, List<String>> lists, Category[] categories, String[] names,
+                                 String[] normalized, String[] terms, int[][] termPostings,
+                                 Map<String, int[]> gramPostings) {
+        this.lists = lists;
+        this.categories = categories;
+        this.names = names;
+        this.normalized = normalized;
+        this.terms = terms;
+        this.termPostings = termPostings;
+        this.gramPostings = gramPostings;
+    }
+
+    public static FamilyConditionIndex build(Map<Category, List<String>> source) {
+        Map<Category, List<String>> lists = new EnumMap<>(Category.class);
+        List<Category> categoryList = new ArrayList<>();
+        List<String> nameList = new ArrayList<>();
+        for (Category category : Category.values()) {
+            List<String> names = List.copyOf(source.getOrDefault(category, List.of()));
+            lists.put(category, names);
+            for (String name : names) {
+                categoryList.add(category);
+                nameList.add(name);
+            }
+        }
+
+        int n = nameList.size();
+        String[] normalized = new String[n];
+        Map<String, IdBuffer> termToIds = new HashMap<>();
+        Map<String, IdBuffer> gramToIds = new HashMap<>();
+        for (int id = 0; id < n; id++) {
+            String text = normalize(nameList.get(id));
+            normalized[id] = text;
+            for (String token : tokenize(text)) {
+                addPosting(termToIds, token, id);
+            }
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                addPosting(gramToIds, text.substring(i, i + GRAM), id);
+            }
+        }
+
+        String[] terms = termToIds.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] termPostings = new int[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            termPostings[t] = termToIds.get(terms[t]).toArray();
+        }
+        Map<String, int[]> gramPostings = new HashMap<>(gramToIds.size() * 2);
+        gramToIds.forEach((gram, ids) -> gramPostings.put(gram, ids.toArray()));
+
+        return new FamilyConditionIndex(Collections.unmodifiableMap(lists), categoryList.toArray(new Category[0]),
+                nameList.toArray(new String[0]), normalized, terms, termPostings, gramPostings);
+    }
+
+    /**
+     * This index plus {@code name} at the end of {@code category}'s list. The new name takes the highest id, so
+     * ids still follow list order within every category.
+     */
+    public FamilyConditionIndex with(Category category, String name) {
+        int id = names.length;
+        Map<Category, List<String>> newLists = new EnumMap<>(lists);
+        List<String> list = new ArrayList<>(lists.get(category));
+        list.add(name);
+        newLists.put(category, Collections.unmodifiableList(list));
+
+        Category[] newCategories = Arrays.copyOf(categories, id + 1);
+        newCategories[id] = category;
+        String[] newNames = Arrays.copyOf(names, id + 1);
+        newNames[id] = name;
+        String text = normalize(name);
+        String[] newNormalized = Arrays.copyOf(normalized, id + 1);
+        newNormalized[id] = text;
+
+        String[] newTerms = terms;
+        int[][] newTermPostings = termPostings.clone();
+        for (String token : tokenize(text)) {
+            int t = Arrays.binarySearch(newTerms, token);
+            if (t >= 0) {
+                newTermPostings[t] = append(newTermPostings[t], id);
+            } else {
+                int at = -t - 1;
+                newTerms = insert(newTerms, at, token);
+                int[][] grown = new int[newTermPostings.length + 1][];
+                System.arraycopy(newTermPostings, 0, grown, 0, at);
+                grown[at] = new int[] {id};
+                System.arraycopy(newTermPostings, at, grown, at + 1, newTermPostings.length - at);
+                newTermPostings = grown;
+            }
+        }
+        Map<String, int[]> newGrams = new HashMap<>(gramPostings);
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            newGrams.merge(text.substring(i, i + GRAM), new int[] {id}, (ids, one) -> append(ids, id));
+        }
+        return new FamilyConditionIndex(Collections.unmodifiableMap(newLists), newCategories, newNames,
+                newNormalized, newTerms, newTermPostings, newGrams);
+    }
+
+    private static int[] append(int[] ids, int id) {
+        if (ids[ids.length - 1] == id) return ids;
+        int[] out = Arrays.copyOf(ids, ids.length + 1);
+        out[ids.length] = id;
+        return out;
+    }
+
+    private static String[] insert(String[] array, int at, String value) {
+        String[] out = new String[array.length + 1];
+        System.arraycopy(array, 0, out, 0, at);
+        out[at] = value;
+        System.arraycopy(array, at, out, at + 1, array.length - at);
+        return out;
+    }
+
+    /** The full list for {@code category}, in stored order. */
+    public List<String> list(Category category) {
+        return lists.get(category);
+    }
+
+    public boolean contains(Category category, String name) {
+        return lists.get(category).contains(name);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /** Conditions containing every word of {@code query}, per category; a blank query returns the full lists. */
+    public Map<Category, List<String>> search(String query) {
+        List<String> words = tokenize(normalize(query));
+        if (words.isEmpty()) return lists;
+
+        BitSet result = null;
+        for (String word : words) {
+            BitSet matches = matchWord(word);
+            if (result == null) {
+                result = matches;
+            } else {
+                result.and(matches);
+            }
+            if (result.isEmpty()) break;
+        }
+
+        Map<Category, List<String>> out = new EnumMap<>(Category.class);
+        for (Category category : Category.values()) {
+            out.put(category, new ArrayList<>());
+        }
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            out.get(categories[id]).add(names[id]);
+        }
+        return out;
+    }
+
+    private BitSet matchWord(String word) {
+        BitSet bits = new BitSet(names.length);
+        if (word.length() >= GRAM) {
+            // Start from the rarest trigram; every candidate is then confirmed against the whole word.
+            int[] rarest = null;
+            for (int i = 0; i + GRAM <= word.length(); i++) {
+                int[] ids = gramPostings.get(word.substring(i, i + GRAM));
+                if (ids == null) return bits;
+                if (rarest == null || ids.length < rarest.length) rarest = ids;
+            }
+            for (int id : rarest) {
+                if (normalized[id].contains(word)) bits.set(id);
+            }
+            return bits;
+        }
+        for (int t = lowerBound(word); t < terms.length && terms[t].startsWith(word); t++) {
+            for (int id : termPostings[t]) {
+                bits.set(id);
+            }
+        }
+        return bits;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(key) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static void addPosting(Map<String, IdBuffer> postings, String key, int id) {
+        postings.computeIfAbsent(key, k -> new IdBuffer()).add(id);
+    }
+
+    /** Growable ascending id list; ids arrive in order, so a repeat is always the last one. */
+    private static final class IdBuffer {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+
+    static String normalize(String text) {
+        if (text == null) return "";
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokenize(String normalized) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
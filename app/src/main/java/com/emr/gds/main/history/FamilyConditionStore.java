@@ -0,0 +1,247 @@
+package com.emr.gds.main.history;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Family-history condition lists in {@code family_history.db}.
+ * <p>
+ * Each condition is one row, so adding a condition is a single-row insert committed on its own rather than a
+ * rewrite of every list. All database work runs on one background thread; after each change a fresh
+ * {@link FamilyConditionIndex} is published for searching. On first use the old {@code emr_fmh_data/*.txt}
+ * files are imported in one transaction (or the built-in defaults, if there are none).
+ */
+public class FamilyConditionStore {
+
+    /** The four condition lists, in display order. */
+    public enum Category {
+        ENDOCRINE("Endocrine", "endocrine.txt",
+                "Type 1 Diabetes", "Type 2 Diabetes", "Hypothyroidism", "Hyperthyroidism", "Thyroid Cancer"),
+        CANCER("Cancer", "cancer.txt",
+                "Breast Cancer", "Lung Cancer", "Prostate Cancer", "Colon Cancer", "Skin Cancer"),
+        CARDIOVASCULAR("Cardiovascular", "cardiovascular.txt",
+                "Coronary Artery Disease", "Hypertension", "Heart Attack", "Stroke", "Arrhythmia"),
+        GENETIC("Genetic", "genetic.txt",
+                "Cystic Fibrosis", "Huntington's Disease", "Down Syndrome", "Sickle Cell Anemia", "Hemophilia");
+
+        private final String title;
+        private final String legacyFile;
+        private final List<String> defaults;
+
+        Category(String title, String legacyFile, String... defaults) {
+            this.title = title;
+            this.legacyFile = legacyFile;
+            this.defaults = List.of(defaults);
+        }
+
+        public String title() {
+            return title;
+        }
+
+        String dbValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        static Category fromDb(String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final Path LEGACY_DIR = Paths.get("emr_fmh_data");
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    private static FamilyConditionStore shared;
+
+    private final SqliteDataSource dataSource;
+    private final Path legacyDir;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "family-history-store");
+        t.setDaemon(true);
+        return t;
+    });
+    private final CompletableFuture<FamilyConditionIndex> loaded;
+    private volatile FamilyConditionIndex index = FamilyConditionIndex.build(Map.of());
+
+    /** Opens the store and starts loading it on the store thread; see {@link #whenLoaded()}. */
+    public FamilyConditionStore(SqliteDataSource dataSource, Path legacyDir) {
+        this.dataSource = dataSource;
+        this.legacyDir = legacyDir;
+        this.loaded = CompletableFuture.supplyAsync(() -> {
+            try {
+                createTable();
+                importIfEmpty();
+                index = FamilyConditionIndex.build(readAll());
+                return index;
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to load family history conditions: " + e.getMessage(), e);
+            }
+        }, writer);
+    }
+
+    /** The application's store in {@code app/db/family_history.db}, opened on first use. */
+    public static synchronized FamilyConditionStore shared() throws IOException {
+        if (shared == null) {
+            Path db = SqliteDataSource.resolveAppDb("family_history.db");
+            Files.createDirectories(db.getParent());
+            shared = new FamilyConditionStore(SqliteDataSource.forFile(db), LEGACY_DIR);
+        }
+        return shared;
+    }
+
+    /** Finishes pending writes of the shared store, if it was opened. Called on application shutdown. */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /** Completes with the first index once the lists are loaded. */
+    public CompletableFuture<FamilyConditionIndex> whenLoaded() {
+        return loaded;
+    }
+
+    /** The current index; empty until loading completes. */
+    public FamilyConditionIndex index() {
+        return index;
+    }
+
+    /**
+     * Appends {@code name} to a list, unless it is already there.
+     * @return the index after the change; completes exceptionally if the insert fails.
+     */
+    public CompletableFuture<FamilyConditionIndex> add(Category category, String name) {
+        return loaded.thenApplyAsync(ignored -> {
+            try {
+                if (insert(category, name)) {
+                    index = index.with(category, name);
+                }
+                return index;
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to save condition: " + e.getMessage(), e);
+            }
+        }, writer);
+    }
+
+    /** Completes once every change submitted so far has been committed. */
+    public CompletableFuture<FamilyConditionIndex> flush() {
+        return loaded.thenApplyAsync(ignored -> index, writer);
+    }
+
+    private void createTable() throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS family_conditions (
+                        category   TEXT    NOT NULL,
+                        name       TEXT    NOT NULL,
+                        sort_order INTEGER NOT NULL,
+                        PRIMARY KEY (category, name)
+                    ) WITHOUT ROWID""");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_family_conditions_order ON family_conditions(category, sort_order)");
+        }
+    }
+
+    /** Seeds an empty table from the legacy text files or the defaults, all in one transaction. */
+    private void importIfEmpty() throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection()) {
+            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT 1 FROM family_conditions LIMIT 1")) {
+                if (rs.next()) return;
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT OR IGNORE INTO family_conditions (category, name, sort_order) VALUES (?,?,?)")) {
+                for (Category category : Category.values()) {
+                    int order = 0;
+                    for (String name : legacyOrDefaults(category)) {
+                        ps.setString(1, category.dbValue());
+                        ps.setString(2, name);
+                        ps.setInt(3, order++);
+                        ps.addBatch();
+                    }
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private List<String> legacyOrDefaults(Category category) {
+        Path file = legacyDir.resolve(category.legacyFile);
+        try {
+            if (Files.exists(file)) {
+                List<String> names = new ArrayList<>();
+                for (String line : Files.readAllLines(file)) {
+                    String name = line.trim();
+                    if (!name.isEmpty()) names.add(name);
+                }
+                return names;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + file + ", using defaults: " + e.getMessage());
+        }
+        return category.defaults;
+    }
+
+    private Map<Category, List<String>> readAll() throws SQLException {
+        Map<Category, List<String>> lists = new EnumMap<>(Category.class);
+        for (Category category : Category.values()) {
+            lists.put(category, new ArrayList<>());
+        }
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT category, name FROM family_conditions ORDER BY category, sort_order")) {
+            while (rs.next()) {
+                try {
+                    lists.get(Category.fromDb(rs.getString(1))).add(rs.getString(2));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping condition with unknown category: " + rs.getString(1));
+                }
+            }
+        }
+        return lists;
+    }
+
+    /** Inserts one row at the end of its list; false if the condition already exists. */
+    private boolean insert(Category category, String name) throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT OR IGNORE INTO family_conditions (category, name, sort_order) "
+                             + "SELECT ?, ?, COALESCE(MAX(sort_order), -1) + 1 FROM family_conditions WHERE category = ?")) {
+            ps.setString(1, category.dbValue());
+            ps.setString(2, name);
+            ps.setString(3, category.dbValue());
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    /** Finishes queued writes, then stops the store thread. */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Family history store did not finish writing before shutdown.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
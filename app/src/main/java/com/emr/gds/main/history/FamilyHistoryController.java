@@ -1,9 +1,10 @@
 package com.emr.gds.main.history;
 
 import com.emr.gds.input.IAITextAreaManager;
+import com.emr.gds.main.history.FamilyConditionStore.Category;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
+import javafx.collections.ListChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
@@ -18,13 +19,13 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class FamilyHistoryController {
 
@@ -42,16 +43,13 @@ public class FamilyHistoryController {
     private IAITextAreaManager textAreaManager;
     private Map<String, String> abbrevMap;
 
-    private ObservableList<String> endocrineData;
-    private ObservableList<String> cancerData;
-    private ObservableList<String> cardioData;
-    private ObservableList<String> geneticData;
-
-    private static final Path DATA_DIR = Paths.get("emr_fmh_data");
-    private static final Path ENDOCRINE_FILE = DATA_DIR.resolve("endocrine.txt");
-    private static final Path CANCER_FILE = DATA_DIR.resolve("cancer.txt");
-    private static final Path CARDIO_FILE = DATA_DIR.resolve("cardiovascular.txt");
-    private static final Path GENETIC_FILE = DATA_DIR.resolve("genetic.txt");
+    private final Map<Category, ListView<String>> listViews = new EnumMap<>(Category.class);
+    // Chosen names per list, kept across searches so filtering never drops a choice that is currently hidden.
+    private final Map<Category, Set<String>> selections = new EnumMap<>(Category.class);
+    private boolean refreshingLists;
+    private FamilyConditionStore store;
+    // Bumped per search so a slow result never overwrites a newer one.
+    private int searchGeneration;
 
     public void setManagers(IAITextAreaManager manager, Map<String, String> abbrevMap) {
         this.textAreaManager = manager;
@@ -66,14 +64,26 @@ public class FamilyHistoryController {
                 "Grandmother", "Grandfather", "Aunt", "Uncle", "Cousin", "Child"
         ));
 
-        // Load Data
-        loadAllConditions();
-
         // Bind Lists
-        setupListView(endocrineList, endocrineData);
-        setupListView(cancerList, cancerData);
-        setupListView(cardioList, cardioData);
-        setupListView(geneticList, geneticData);
+        listViews.put(Category.ENDOCRINE, endocrineList);
+        listViews.put(Category.CANCER, cancerList);
+        listViews.put(Category.CARDIOVASCULAR, cardioList);
+        listViews.put(Category.GENETIC, geneticList);
+        listViews.forEach(this::setupListView);
+
+        // Load Data
+        try {
+            store = FamilyConditionStore.shared();
+            store.whenLoaded().whenComplete((index, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "Load Failed", "Could not load condition lists: " + error.getMessage());
+                } else {
+                    filterLists(searchField.getText());
+                }
+            }));
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Load Failed", "Could not open condition lists: " + e.getMessage());
+        }
 
         // Search
         searchField.textProperty().addListener((obs, old, val) -> filterLists(val));
@@ -83,42 +93,43 @@ public class FamilyHistoryController {
         setupAbbreviation(historyTextArea);
     }
 
-    private void setupListView(ListView<String> listView, ObservableList<String> data) {
-        FilteredList<String> filtered = new FilteredList<>(data, p -> true);
-        listView.setItems(filtered);
+    private void setupListView(Category category, ListView<String> listView) {
         listView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        Set<String> chosen = new LinkedHashSet<>();
+        selections.put(category, chosen);
+        listView.getSelectionModel().getSelectedItems().addListener((ListChangeListener<String>) change -> {
+            if (refreshingLists) return;
+            // Only the visible names can have changed; choices hidden by the search stay.
+            chosen.removeAll(listView.getItems());
+            chosen.addAll(listView.getSelectionModel().getSelectedItems());
+        });
     }
 
-    private void loadAllConditions() {
-        endocrineData = loadConditions(ENDOCRINE_FILE, getDefaultEndocrine());
-        cancerData = loadConditions(CANCER_FILE, getDefaultCancer());
-        cardioData = loadConditions(CARDIO_FILE, getDefaultCardiovascular());
-        geneticData = loadConditions(GENETIC_FILE, getDefaultGenetic());
-    }
-
-    private ObservableList<String> loadConditions(Path file, List<String> defaults) {
+    /** Replaces a list's items with a search result and reselects the chosen names that are in it. */
+    private void showMatches(Category category, List<String> names) {
+        ListView<String> listView = listViews.get(category);
+        refreshingLists = true;
         try {
-            if (Files.exists(file)) {
-                return FXCollections.observableArrayList(Files.readAllLines(file));
+            listView.setItems(FXCollections.observableArrayList(names));
+            for (String name : selections.get(category)) {
+                int i = names.indexOf(name);
+                if (i >= 0) listView.getSelectionModel().select(i);
             }
-        } catch (IOException e) {
-            // ignore
+        } finally {
+            refreshingLists = false;
         }
-        return FXCollections.observableArrayList(defaults);
     }
 
+    /** Searches the condition index off the FX thread and shows the result if it is still the latest. */
     private void filterLists(String filter) {
-        String lower = filter.toLowerCase();
-        updateFilter(endocrineList, lower);
-        updateFilter(cancerList, lower);
-        updateFilter(cardioList, lower);
-        updateFilter(geneticList, lower);
-    }
-
-    @SuppressWarnings("unchecked")
-    private void updateFilter(ListView<String> listView, String filter) {
-        FilteredList<String> fl = (FilteredList<String>) listView.getItems();
-        fl.setPredicate(s -> s.toLowerCase().contains(filter));
+        if (store == null) return;
+        int generation = ++searchGeneration;
+        FamilyConditionIndex index = store.index();
+        CompletableFuture.supplyAsync(() -> index.search(filter == null ? "" : filter))
+                .thenAccept(matches -> Platform.runLater(() -> {
+                    if (generation != searchGeneration) return;
+                    matches.forEach(this::showMatches);
+                }));
     }
 
     @FXML
@@ -138,10 +149,9 @@ public class FamilyHistoryController {
         }
 
         boolean hasCondition = false;
-        hasCondition |= appendSelected(entry, "Endocrine", endocrineList);
-        hasCondition |= appendSelected(entry, "Cancer", cancerList);
-        hasCondition |= appendSelected(entry, "Cardiovascular", cardioList);
-        hasCondition |= appendSelected(entry, "Genetic", geneticList);
+        for (Map.Entry<Category, Set<String>> e : selections.entrySet()) {
+            hasCondition |= appendSelected(entry, e.getKey().title(), e.getValue());
+        }
 
         if (!hasCondition && notes.isEmpty()) {
             showAlert(Alert.AlertType.WARNING, "No Data", "Please select at least one condition or add notes.");
@@ -152,8 +162,7 @@ public class FamilyHistoryController {
         clearFormInputs();
     }
 
-    private boolean appendSelected(StringBuilder sb, String title, ListView<String> listView) {
-        ObservableList<String> selected = listView.getSelectionModel().getSelectedItems();
+    private boolean appendSelected(StringBuilder sb, String title, Set<String> selected) {
         if (!selected.isEmpty()) {
             sb.append("  ").append(title).append(": ")
               .append(String.join("; ", selected)).append("\n");
@@ -169,53 +178,57 @@ public class FamilyHistoryController {
         cancerList.getSelectionModel().clearSelection();
         cardioList.getSelectionModel().clearSelection();
         geneticList.getSelectionModel().clearSelection();
+        selections.values().forEach(Set::clear);
     }
 
     @FXML
     private void handleAddCondition() {
         // Find focused list view to add to
-        ListView<String> target = null;
-        if (endocrineList.isFocused()) target = endocrineList;
-        else if (cancerList.isFocused()) target = cancerList;
-        else if (cardioList.isFocused()) target = cardioList;
-        else if (geneticList.isFocused()) target = geneticList;
+        Category target = null;
+        for (Map.Entry<Category, ListView<String>> e : listViews.entrySet()) {
+            if (e.getValue().isFocused()) target = e.getKey();
+        }
 
         if (target == null) {
             showAlert(Alert.AlertType.WARNING, "No Selection", "Click on a condition list first (to give it focus).");
             return;
         }
-        
+        if (store == null) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Condition lists are not available.");
+            return;
+        }
+
         TextInputDialog dialog = new TextInputDialog();
         dialog.setTitle("Add New Condition");
-        dialog.setHeaderText("Add to selected list");
+        dialog.setHeaderText("Add to " + target.title() + " list");
         dialog.setContentText("Condition name:");
-        
-        ListView<String> finalTarget = target;
+
+        Category finalTarget = target;
         dialog.showAndWait().ifPresent(name -> {
             String trimmed = name.trim();
-            // Get source list from FilteredList
-            FilteredList<String> fl = (FilteredList<String>) finalTarget.getItems();
-            @SuppressWarnings("unchecked")
-            ObservableList<String> source = (ObservableList<String>) fl.getSource();
-            
-            if (!trimmed.isEmpty() && !source.contains(trimmed)) {
-                source.add(trimmed);
-            }
+            if (trimmed.isEmpty() || store.index().contains(finalTarget, trimmed)) return;
+            // Saved at once as a single row; the lists refresh from the new index.
+            store.add(finalTarget, trimmed).whenComplete((index, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "Save Failed", "Could not save condition: " + error.getMessage());
+                } else {
+                    filterLists(searchField.getText());
+                }
+            }));
         });
     }
 
     @FXML
     private void handleSaveLists() {
-        try {
-            Files.createDirectories(DATA_DIR);
-            Files.write(ENDOCRINE_FILE, endocrineData);
-            Files.write(CANCER_FILE, cancerData);
-            Files.write(CARDIO_FILE, cardioData);
-            Files.write(GENETIC_FILE, geneticData);
-            showAlert(Alert.AlertType.INFORMATION, "Saved", "Condition lists saved successfully.");
-        } catch (IOException ex) {
-            showAlert(Alert.AlertType.ERROR, "Save Failed", "Could not save lists: " + ex.getMessage());
-        }
+        // Each added condition is committed as it is added; this only waits for any that are still queued.
+        if (store == null) return;
+        store.flush().whenComplete((index, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Save Failed", "Could not save lists: " + error.getMessage());
+            } else {
+                showAlert(Alert.AlertType.INFORMATION, "Saved", "Condition lists saved successfully.");
+            }
+        }));
     }
 
     @FXML
@@ -279,18 +292,4 @@ public class FamilyHistoryController {
         alert.setContentText(content);
         alert.showAndWait();
     }
-    
-    // Default Data Providers
-    private List<String> getDefaultEndocrine() {
-        return Arrays.asList("Type 1 Diabetes", "Type 2 Diabetes", "Hypothyroidism", "Hyperthyroidism", "Thyroid Cancer");
-    }
-    private List<String> getDefaultCancer() {
-        return Arrays.asList("Breast Cancer", "Lung Cancer", "Prostate Cancer", "Colon Cancer", "Skin Cancer");
-    }
-    private List<String> getDefaultCardiovascular() {
-        return Arrays.asList("Coronary Artery Disease", "Hypertension", "Heart Attack", "Stroke", "Arrhythmia");
-    }
-    private List<String> getDefaultGenetic() {
-        return Arrays.asList("Cystic Fibrosis", "Huntington's Disease", "Down Syndrome", "Sickle Cell Anemia", "Hemophilia");
-    }
 }
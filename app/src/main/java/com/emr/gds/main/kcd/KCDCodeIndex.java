@@ -0,0 +1,101 @@
+package com.emr.gds.main.kcd;
+
+import com.emr.gds.main.db.DatabaseManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resident map from disease code to {@link KCDRecord}, shared by everything that shows coded problems.
+ * <p>
+ * The KCD table is read once, on a background thread, the first time {@link #shared()} is called; until then
+ * {@link #lookup} simply returns null. {@link DatabaseManager} keeps the map current as records are added,
+ * edited or deleted, so it never needs reloading. Codes are matched case-insensitively.
+ */
+public final class KCDCodeIndex {
+
+    private static final KCDCodeIndex SHARED = new KCDCodeIndex();
+
+    private final Map<String, KCDRecord> byCode = new ConcurrentHashMap<>();
+    private final CompletableFuture<KCDCodeIndex> loaded = new CompletableFuture<>();
+    private final AtomicBoolean loadStarted = new AtomicBoolean();
+
+    private KCDCodeIndex() {
+    }
+
+    /** The shared index, starting its load if this is the first call. */
+    public static KCDCodeIndex shared() {
+        SHARED.startLoading();
+        return SHARED;
+    }
+
+    private void startLoading() {
+        if (!loadStarted.compareAndSet(false, true)) return;
+        Thread loader = new Thread(() -> {
+            try {
+                List<KCDRecord> records = DatabaseManager.getAllRecords();
+                // disease_code isn't unique in kcd_codes; the first row (in code order) wins.
+                for (KCDRecord r : records) {
+                    String code = normalize(r.getDiseaseCode());
+                    if (code != null) byCode.putIfAbsent(code, r);
+                }
+                loaded.complete(this);
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Failed to load KCD code index: " + e.getMessage());
+                loaded.completeExceptionally(e);
+            }
+        }, "kcd-code-index");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /** Completes once the KCD table has been read. */
+    public CompletableFuture<KCDCodeIndex> whenLoaded() {
+        return loaded;
+    }
+
+    public boolean isLoaded() {
+        return loaded.isDone() && !loaded.isCompletedExceptionally();
+    }
+
+    /** The record for {@code code}, or null if the code is unknown or the index is still loading. */
+    public KCDRecord lookup(String code) {
+        String key = normalize(code);
+        return key == null ? null : byCode.get(key);
+    }
+
+    public int size() {
+        return byCode.size();
+    }
+
+    void put(KCDRecord record) {
+        String code = normalize(record.getDiseaseCode());
+        if (code != null) byCode.put(code, record);
+    }
+
+    void remove(String code) {
+        String key = normalize(code);
+        if (key != null) byCode.remove(key);
+    }
+
+    /** Applies an edit made through {@link DatabaseManager}. */
+    public static void recordSaved(String originalCode, KCDRecord record) {
+        if (originalCode != null) SHARED.remove(originalCode);
+        SHARED.put(record);
+    }
+
+    /** Applies a deletion made through {@link DatabaseManager}. */
+    public static void recordDeleted(String code) {
+        SHARED.remove(code);
+    }
+
+    static String normalize(String code) {
+        if (code == null) return null;
+        String trimmed = code.trim();
+        return trimmed.isEmpty() ? null : trimmed.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,33 @@
+package com.emr.gds.main.kcd;
+
+/**
+ * The kcd_codes columns shown in the KCD table, in display order.
+ * Each column can be used as the SQL sort key and as a search filter.
+ */
+public enum KCDColumn {
+    CLASSIFICATION("Classification", "classification", "classification"),
+    DISEASE_CODE("Disease Code", "disease_code", "diseaseCode"),
+    CHECK_FIELD("Check Field", "check_field", "checkField"),
+    KOREAN_NAME("Korean Name", "korean_name", "koreanName"),
+    ENGLISH_NAME("English Name", "english_name", "englishName"),
+    NOTE("Note", "note", "note");
+
+    private final String label;
+    private final String sqlName;
+    private final String propertyName;
+
+    KCDColumn(String label, String sqlName, String propertyName) {
+        this.label = label;
+        this.sqlName = sqlName;
+        this.propertyName = propertyName;
+    }
+
+    public String label() { return label; }
+    public String sqlName() { return sqlName; }
+    public String propertyName() { return propertyName; }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
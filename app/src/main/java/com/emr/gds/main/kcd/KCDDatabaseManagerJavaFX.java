@@ -2,17 +2,14 @@ package com.emr.gds.main.kcd;
 
 import com.emr.gds.input.IAIMain;
 import com.emr.gds.main.db.DatabaseManager;
+import com.emr.gds.main.db.DatabaseManager.PageIndex;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
-import javafx.collections.transformation.SortedList;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -34,26 +31,36 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 public class KCDDatabaseManagerJavaFX {
 
     private Stage stage;
     public Stage getStage() { return stage; }
 
-    private static final String DB_PATH = "src/main/resources/database/kcd_database.db";
-    public static final String JDBC_URL = "jdbc:sqlite:" + DB_PATH;
     private static final DateTimeFormatter ISO_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     private TableView<KCDRecord> table;
-    private final ObservableList<KCDRecord> tableData = FXCollections.observableArrayList();
+    private final KCDPagedList tableData = new KCDPagedList();
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(200));
+    private volatile boolean sortIndexesReady = false;
+    private long loadGeneration = 0;
     private TextField searchField;
     private ComboBox<String> searchColumnCombo;
-    private Button addButton, editButton, deleteButton, refreshButton, copyButton, saveToEmrButton, quitButton;
+    private Button addButton, editButton, deleteButton, refreshButton, copyButton, saveToEmrButton, addToProblemListButton, quitButton;
+    private Predicate<KCDRecord> problemListTarget;
     private Label statusLabel;
 
-    private final String[] columnNames = {"Classification", "Disease Code", "Check Field", "Korean Name", "English Name", "Note"};
     private final double[] columnWidths = {100, 100, 80, 250, 250, 300};
 
+    /**
+     * Where "Add to Problem List" sends the selected record; it answers whether the list changed. The button is
+     * hidden when none is set.
+     */
+    public void setProblemListTarget(Predicate<KCDRecord> target) {
+        this.problemListTarget = target;
+    }
+
     public void start(Stage primaryStage) {
         this.stage = primaryStage;
         BorderPane root = new BorderPane();
@@ -73,13 +80,24 @@ public class KCDDatabaseManagerJavaFX {
 
     private TableView<KCDRecord> createTable() {
         table = new TableView<>();
-        for (int i = 0; i < columnNames.length; i++) {
-            TableColumn<KCDRecord, String> column = new TableColumn<>(columnNames[i]);
-            column.setCellValueFactory(new PropertyValueFactory<>(toCamelCase(columnNames[i])));
+        KCDColumn[] kcdColumns = KCDColumn.values();
+        for (int i = 0; i < kcdColumns.length; i++) {
+            TableColumn<KCDRecord, String> column = new TableColumn<>(kcdColumns[i].label());
+            column.setCellValueFactory(new PropertyValueFactory<>(kcdColumns[i].propertyName()));
             column.setPrefWidth(columnWidths[i]);
+            column.setUserData(kcdColumns[i]);
             table.getColumns().add(column);
         }
         table.setItems(tableData);
+        tableData.setOnPageLoaded(table::refresh);
+        // Sorting is pushed into SQL; the paged list is re-queried instead of sorted in memory.
+        table.setSortPolicy(t -> {
+            KCDQuery requested = buildQuery();
+            if (!requested.equals(tableData.getQuery())) {
+                loadData(requested);
+            }
+            return true;
+        });
         return table;
     }
 
@@ -91,7 +109,10 @@ public class KCDDatabaseManagerJavaFX {
         searchField.setPromptText("Search...");
         searchField.setPrefWidth(300);
         searchColumnCombo = new ComboBox<>();
-        searchColumnCombo.getItems().addAll("All Columns", "Classification", "Disease Code", "Check Field", "Korean Name", "English Name", "Note");
+        searchColumnCombo.getItems().add("All Columns");
+        for (KCDColumn column : KCDColumn.values()) {
+            searchColumnCombo.getItems().add(column.label());
+        }
         searchColumnCombo.getSelectionModel().selectFirst();
         searchPanel.getChildren().addAll(new Label("Search:"), searchField, searchColumnCombo);
         return searchPanel;
@@ -108,8 +129,11 @@ public class KCDDatabaseManagerJavaFX {
         HBox bottomButtons = new HBox(10);
         copyButton = new Button("Copy to Clipboard");
         saveToEmrButton = new Button("Save to EMR");
+        addToProblemListButton = new Button("Add to Problem List");
+        addToProblemListButton.setVisible(problemListTarget != null);
+        addToProblemListButton.setManaged(problemListTarget != null);
         quitButton = new Button("Quit");
-        bottomButtons.getChildren().addAll(copyButton, saveToEmrButton, quitButton);
+        bottomButtons.getChildren().addAll(copyButton, saveToEmrButton, addToProblemListButton, quitButton);
 
         statusLabel = new Label("Ready");
         HBox statusPanel = new HBox(statusLabel);
@@ -128,15 +152,12 @@ public class KCDDatabaseManagerJavaFX {
         refreshButton.setOnAction(e -> loadInitialData());
         copyButton.setOnAction(e -> copySelectedToClipboard());
         saveToEmrButton.setOnAction(e -> saveSelectedToEMR());
+        addToProblemListButton.setOnAction(e -> addSelectedToProblemList());
         quitButton.setOnAction(e -> stage.close());
 
-        FilteredList<KCDRecord> filteredData = new FilteredList<>(tableData, p -> true);
-        searchField.textProperty().addListener((obs, ov, nv) -> filteredData.setPredicate(createPredicate(nv)));
-        searchColumnCombo.getSelectionModel().selectedItemProperty().addListener((obs, ov, nv) -> filteredData.setPredicate(createPredicate(searchField.getText())));
-
-        SortedList<KCDRecord> sortedData = new SortedList<>(filteredData);
-        sortedData.comparatorProperty().bind(table.comparatorProperty());
-        table.setItems(sortedData);
+        searchDebounce.setOnFinished(e -> loadData(buildQuery()));
+        searchField.textProperty().addListener((obs, ov, nv) -> searchDebounce.playFromStart());
+        searchColumnCombo.getSelectionModel().selectedItemProperty().addListener((obs, ov, nv) -> loadData(buildQuery()));
 
         table.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
             boolean rowSelected = newSelection != null;
@@ -144,44 +165,55 @@ public class KCDDatabaseManagerJavaFX {
             deleteButton.setDisable(!rowSelected);
             copyButton.setDisable(!rowSelected);
             saveToEmrButton.setDisable(!rowSelected);
+            addToProblemListButton.setDisable(!rowSelected);
         });
         editButton.setDisable(true);
         deleteButton.setDisable(true);
         copyButton.setDisable(true);
         saveToEmrButton.setDisable(true);
+        addToProblemListButton.setDisable(true);
     }
 
-    private java.util.function.Predicate<KCDRecord> createPredicate(String filterText) {
-        return record -> {
-            if (filterText == null || filterText.isEmpty()) return true;
-            String lowerCaseFilter = filterText.toLowerCase();
-            int selectedIndex = searchColumnCombo.getSelectionModel().getSelectedIndex();
-
-            if (selectedIndex <= 0) { // All Columns
-                return record.toString().toLowerCase().contains(lowerCaseFilter);
-            } else {
-                String property = toCamelCase(columnNames[selectedIndex - 1]);
-                try {
-                    String value = (String) record.getClass().getMethod("get" + property.substring(0, 1).toUpperCase() + property.substring(1)).invoke(record);
-                    return value != null && value.toLowerCase().contains(lowerCaseFilter);
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    return false;
-                }
-            }
-        };
+    /**
+     * Reads the current sort column and search settings from the UI.
+     */
+    private KCDQuery buildQuery() {
+        KCDColumn sortColumn = KCDColumn.DISEASE_CODE;
+        boolean ascending = true;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<KCDRecord, ?> sorted = table.getSortOrder().get(0);
+            sortColumn = (KCDColumn) sorted.getUserData();
+            ascending = sorted.getSortType() == TableColumn.SortType.ASCENDING;
+        }
+        int selectedIndex = searchColumnCombo.getSelectionModel().getSelectedIndex();
+        KCDColumn filterColumn = selectedIndex <= 0 ? null : KCDColumn.values()[selectedIndex - 1];
+        return new KCDQuery(sortColumn, ascending, filterColumn, searchField.getText());
     }
 
     private void loadInitialData() {
-        Task<List<KCDRecord>> task = new Task<>() {
+        loadData(buildQuery());
+    }
+
+    /**
+     * Computes the row count and page anchors for {@code query} in the background and swaps them into the table.
+     * Only the latest request is applied, so fast typing cannot land an older result on top of a newer one.
+     */
+    private void loadData(KCDQuery query) {
+        long generation = ++loadGeneration;
+        Task<PageIndex> task = new Task<>() {
             @Override
-            protected List<KCDRecord> call() throws Exception {
+            protected PageIndex call() throws Exception {
                 updateStatus("Loading data...");
-                return DatabaseManager.getAllRecords();
+                if (!sortIndexesReady) {
+                    DatabaseManager.ensureSortIndexes();
+                    sortIndexesReady = true;
+                }
+                return KCDPagedList.loadIndex(query);
             }
         };
         task.setOnSucceeded(e -> {
-            tableData.setAll(task.getValue());
+            if (generation != loadGeneration) return;
+            tableData.apply(query, task.getValue());
             updateStatus("Loaded " + tableData.size() + " records.");
         });
         task.setOnFailed(e -> {
@@ -189,7 +221,9 @@ public class KCDDatabaseManagerJavaFX {
             updateStatus("Error loading data.");
             task.getException().printStackTrace();
         });
-        new Thread(task).start();
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
     }
 
     private void showEditDialog(KCDRecord recordToEdit) {
@@ -262,6 +296,21 @@ public class KCDDatabaseManagerJavaFX {
         }
     }
 
+    private void addSelectedToProblemList() {
+        KCDRecord selectedRecord = table.getSelectionModel().getSelectedItem();
+        if (selectedRecord == null) {
+            updateStatus("Select a record to add to the problem list.");
+            return;
+        }
+        if (problemListTarget == null) return;
+
+        if (problemListTarget.test(selectedRecord)) {
+            updateStatus("Added " + selectedRecord.getDiseaseCode() + " to the problem list.");
+        } else {
+            updateStatus(selectedRecord.getDiseaseCode() + " is already on the problem list.");
+        }
+    }
+
     private void updateStatus(String message) {
         Platform.runLater(() -> statusLabel.setText(message));
     }
@@ -275,18 +324,4 @@ public class KCDDatabaseManagerJavaFX {
             alert.showAndWait();
         });
     }
-
-    private String toCamelCase(String s) {
-        String[] parts = s.split(" ");
-        StringBuilder camelCaseString = new StringBuilder();
-        for (String part : parts) {
-            if (!part.isEmpty()) {
-                camelCaseString.append(part.substring(0, 1).toUpperCase()).append(part.substring(1).toLowerCase());
-            }
-        }
-        if (camelCaseString.length() > 0) {
-            return camelCaseString.substring(0, 1).toLowerCase() + camelCaseString.substring(1);
-        }
-        return "";
-    }
 }
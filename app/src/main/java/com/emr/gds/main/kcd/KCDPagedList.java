@@ -0,0 +1,149 @@
+package com.emr.gds.main.kcd;
+
+import com.emr.gds.main.db.DatabaseManager;
+import com.emr.gds.main.db.DatabaseManager.PageAnchor;
+import com.emr.gds.main.db.DatabaseManager.PageIndex;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read-only, virtualized view of kcd_codes for the KCD TableView.
+ * Only the row count, one anchor key per page and a small LRU of loaded pages are kept in memory;
+ * rows are fetched page by page with keyset queries as the table scrolls to them.
+ * Pages load on a background thread: a row whose page is not cached reads as {@code null} (an empty table row)
+ * until the page arrives, and the neighbouring pages are prefetched so scrolling rarely sees one.
+ * Must be used from the FX thread.
+ */
+public class KCDPagedList extends ObservableListBase<KCDRecord> {
+
+    public static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 16;
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "kcd-page-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private KCDQuery query = KCDQuery.DEFAULT;
+    private PageIndex pageIndex = new PageIndex(0, List.of());
+    private final Map<Integer, List<KCDRecord>> pageCache = new LinkedHashMap<>(MAX_CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<KCDRecord>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>();
+    // Bumped by apply() so pages of a replaced query are dropped when they arrive.
+    private long generation;
+    private Runnable onPageLoaded = () -> {};
+
+    /**
+     * Builds the page index for {@code query}. Runs SQL, so call it off the FX thread.
+     */
+    public static PageIndex loadIndex(KCDQuery query) throws SQLException {
+        return DatabaseManager.loadPageIndex(query, PAGE_SIZE);
+    }
+
+    /**
+     * Replaces the current result with a freshly loaded one and drops all cached pages.
+     */
+    public void apply(KCDQuery newQuery, PageIndex newIndex) {
+        int oldSize = size();
+        this.query = Objects.requireNonNull(newQuery);
+        this.pageIndex = Objects.requireNonNull(newIndex);
+        pageCache.clear();
+        loading.clear();
+        generation++;
+
+        int newSize = size();
+        if (oldSize == 0 && newSize == 0) return;
+        beginChange();
+        nextReplace(0, newSize, Collections.nCopies(oldSize, (KCDRecord) null));
+        endChange();
+    }
+
+    /** Called on the FX thread after a page arrives, so the owner can redraw the rows that were blank. */
+    public void setOnPageLoaded(Runnable onPageLoaded) {
+        this.onPageLoaded = onPageLoaded == null ? () -> {} : onPageLoaded;
+    }
+
+    public KCDQuery getQuery() {
+        return query;
+    }
+
+    @Override
+    public int size() {
+        return pageIndex.totalCount();
+    }
+
+    @Override
+    public KCDRecord get(int index) {
+        Objects.checkIndex(index, size());
+        int page = index / PAGE_SIZE;
+        List<KCDRecord> rows = pageCache.get(page);
+        int offset = index % PAGE_SIZE;
+        request(page + (offset < PAGE_SIZE / 2 ? -1 : 1));
+        if (rows == null) {
+            request(page);
+            return null;
+        }
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    /**
+     * Searches loaded pages only; a record that is not cached is reported as absent
+     * rather than pulling the whole table into memory.
+     */
+    @Override
+    public int indexOf(Object o) {
+        for (Map.Entry<Integer, List<KCDRecord>> entry : pageCache.entrySet()) {
+            int offset = entry.getValue().indexOf(o);
+            if (offset >= 0) {
+                return entry.getKey() * PAGE_SIZE + offset;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /** Starts loading {@code page} in the background unless it is cached, loading or out of range. */
+    private void request(int page) {
+        List<PageAnchor> anchors = pageIndex.anchors();
+        if (page < 0 || page >= anchors.size() || pageCache.containsKey(page) || !loading.add(page)) return;
+
+        KCDQuery pageQuery = query;
+        PageAnchor anchor = anchors.get(page);
+        long requestGeneration = generation;
+        LOADER.execute(() -> {
+            List<KCDRecord> rows;
+            try {
+                rows = DatabaseManager.getRecordsPage(pageQuery, anchor, PAGE_SIZE);
+            } catch (SQLException e) {
+                System.err.println("Failed to load KCD page " + page + ": " + e.getMessage());
+                rows = null;
+            }
+            List<KCDRecord> loaded = rows;
+            Platform.runLater(() -> {
+                if (requestGeneration != generation) return;
+                loading.remove(page);
+                if (loaded == null) return;
+                pageCache.put(page, loaded);
+                onPageLoaded.run();
+            });
+        });
+    }
+}
@@ -0,0 +1,23 @@
+package com.emr.gds.main.kcd;
+
+/**
+ * Sort order and search filter for one view of the kcd_codes table.
+ *
+ * @param sortColumn   column used as the leading ORDER BY key
+ * @param ascending    sort direction
+ * @param filterColumn column searched by {@code filterText}, or {@code null} for all columns
+ * @param filterText   substring to match; blank means no filter
+ */
+public record KCDQuery(KCDColumn sortColumn, boolean ascending, KCDColumn filterColumn, String filterText) {
+
+    public static final KCDQuery DEFAULT = new KCDQuery(KCDColumn.DISEASE_CODE, true, null, "");
+
+    public KCDQuery {
+        if (sortColumn == null) sortColumn = KCDColumn.DISEASE_CODE;
+        filterText = filterText == null ? "" : filterText.trim();
+    }
+
+    public boolean hasFilter() {
+        return !filterText.isEmpty();
+    }
+}
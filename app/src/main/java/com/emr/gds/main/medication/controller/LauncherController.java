@@ -1,6 +1,6 @@
 package com.emr.gds.main.medication.controller;
 
-import com.emr.gds.main.medication.db.DatabaseManager;
+import com.emr.gds.main.medication.db.MedicationCatalogService;
 import com.emr.gds.util.StageSizing;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -17,14 +17,12 @@ public class LauncherController {
 
     @FXML private VBox categoryContainer;
 
-    private final DatabaseManager dbManager = new DatabaseManager();
+    private final MedicationCatalogService catalog = MedicationCatalogService.getInstance();
 
     @FXML
     public void initialize() {
-        dbManager.createTables();
-        dbManager.ensureSeedData();
-
-        var categories = dbManager.getOrderedCategories();
+        // The shared catalog is loaded once per process; later windows open from memory
+        var categories = catalog.snapshot().categories();
         String btnStyle = """
             -fx-background-color: linear-gradient(to bottom, #007bff, #0056b3);
             -fx-text-fill: white;
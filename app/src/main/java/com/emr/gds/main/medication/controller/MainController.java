@@ -1,6 +1,7 @@
 package com.emr.gds.main.medication.controller;
 
-import com.emr.gds.main.medication.db.DatabaseManager;
+import com.emr.gds.main.medication.db.MedicationCatalogService;
+import com.emr.gds.main.medication.db.MedicationSearchIndex;
 import com.emr.gds.main.medication.model.MedicationItem;
 import com.emr.gds.main.medication.model.MedicationGroup;
 import com.emr.gds.util.StageSizing;
@@ -13,15 +14,17 @@ import javafx.geometry.Insets;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
 import javafx.util.Pair;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class MainController {
@@ -30,29 +33,122 @@ public class MainController {
     @FXML private TabPane mainTabPane;
     @FXML private Label selectionLabel;
     @FXML private Button btnEdit, btnDelete, btnSave;
+    @FXML private TextField searchField;
+    @FXML private ListView<MedicationSearchIndex.Hit> searchResultsList;
 
-    private final DatabaseManager dbManager = new DatabaseManager();
+    private static final int SEARCH_RESULT_LIMIT = 200;
+
+    private final MedicationCatalogService catalog = MedicationCatalogService.getInstance();
+    // The service holds listeners weakly; this field keeps ours alive exactly as long as the window.
+    private final Consumer<MedicationCatalogService.Snapshot> catalogListener = this::onCatalogChanged;
     private final EmrBridgeService emrBridge = new EmrBridgeService();
 
     private MedicationItem activeItem;
-    private ListView<MedicationItem> activeListView;
+
+    private static final int MAX_LIVE_TABS = 3;
+    private static final String EXPANDED_GROUP_KEY = "medication.expandedGroup";
+    private boolean populatingTabs = false;
+    // Tabs whose content is built, least recently shown first
+    private final Map<Tab, Boolean> liveTabs = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Tab, Boolean> eldest) {
+            if (size() > MAX_LIVE_TABS) {
+                evict(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+    };
 
     public void setSelectedCategory(String categoryName) {
         loadAllTabs();
         selectTabByName(categoryName);
+        materialize(mainTabPane.getSelectionModel().getSelectedItem());
     }
 
+    /**
+     * Creates one empty tab per category. Content is built when a tab is first shown and dropped again
+     * once it falls out of the {@link #MAX_LIVE_TABS} most recently shown, so opening the window only
+     * costs the requested category.
+     */
     private void loadAllTabs() {
-        mainTabPane.getTabs().clear();
-        for (String cat : dbManager.getOrderedCategories()) {
-            Accordion accordion = new Accordion();
-            for (MedicationGroup group : dbManager.getMedicationData().getOrDefault(cat, java.util.List.of())) {
-                ListView<MedicationItem> lv = createListView(group.medications());
-                TitledPane tp = new TitledPane(group.title(), lv);
-                accordion.getPanes().add(tp);
+        populatingTabs = true;
+        try {
+            mainTabPane.getTabs().clear();
+            liveTabs.clear();
+            for (String cat : catalog.snapshot().categories()) {
+                mainTabPane.getTabs().add(new Tab(cat));
+            }
+        } finally {
+            populatingTabs = false;
+        }
+    }
+
+    private void materialize(Tab tab) {
+        if (tab == null) return;
+        liveTabs.put(tab, Boolean.TRUE);
+        if (tab.getContent() == null) {
+            tab.setContent(buildAccordion(catalog.snapshot(), tab.getText(), (String) tab.getProperties().get(EXPANDED_GROUP_KEY)));
+        }
+    }
+
+    private void evict(Tab tab) {
+        tab.getProperties().put(EXPANDED_GROUP_KEY, expandedGroupOf(tab));
+        tab.setContent(null);
+    }
+
+    private static String expandedGroupOf(Tab tab) {
+        if (tab.getContent() instanceof Accordion accordion && accordion.getExpandedPane() != null) {
+            return accordion.getExpandedPane().getText();
+        }
+        return (String) tab.getProperties().get(EXPANDED_GROUP_KEY);
+    }
+
+    /** Group panes get their ListView on first expansion; collapsed groups cost one TitledPane. */
+    private Accordion buildAccordion(MedicationCatalogService.Snapshot snapshot, String category, String expandedTitle) {
+        Accordion accordion = new Accordion();
+        for (MedicationGroup group : snapshot.groups(category)) {
+            TitledPane tp = new TitledPane();
+            tp.setText(group.title());
+            tp.expandedProperty().addListener((obs, wasExpanded, expanded) -> {
+                if (expanded && tp.getContent() == null) {
+                    tp.setContent(createListView(group.medications()));
+                }
+            });
+            accordion.getPanes().add(tp);
+            if (group.title().equals(expandedTitle)) {
+                tp.setContent(createListView(group.medications()));
+                accordion.setExpandedPane(tp);
             }
-            mainTabPane.getTabs().add(new Tab(cat, accordion));
         }
+        return accordion;
+    }
+
+    /**
+     * Applies a new catalog version, whichever window produced it. Only live tabs are rebuilt, keeping
+     * their expanded group; evicted and never-shown tabs pick up the new version when next shown.
+     */
+    private void onCatalogChanged(MedicationCatalogService.Snapshot snapshot) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> onCatalogChanged(catalog.snapshot()));
+            return;
+        }
+        List<String> tabNames = mainTabPane.getTabs().stream().map(Tab::getText).toList();
+        if (!tabNames.equals(snapshot.categories())) {
+            Tab selected = mainTabPane.getSelectionModel().getSelectedItem();
+            loadAllTabs();
+            if (selected != null) selectTabByName(selected.getText());
+            materialize(mainTabPane.getSelectionModel().getSelectedItem());
+        } else {
+            for (Tab tab : liveTabs.keySet()) {
+                tab.setContent(buildAccordion(snapshot, tab.getText(), expandedGroupOf(tab)));
+            }
+        }
+        if (activeItem != null) {
+            selectionLabel.setText(activeItem.getText());
+        }
+        refreshSaveButton();
+        refreshSearchResults();
     }
 
     private ListView<MedicationItem> createListView(List<MedicationItem> items) {
@@ -65,14 +161,13 @@ public class MainController {
                 copyToClipboard(item.getText());
             }
         });
-        lv.getSelectionModel().selectedItemProperty().addListener((obs, old, nv) -> updateSelection(lv, nv));
+        lv.getSelectionModel().selectedItemProperty().addListener((obs, old, nv) -> updateSelection(nv));
         return lv;
     }
 
-    private void updateSelection(ListView<MedicationItem> lv, MedicationItem item) {
+    private void updateSelection(MedicationItem item) {
         if (item != null && !isSeparator(item.getText())) {
             activeItem = item;
-            activeListView = lv;
             selectionLabel.setText(item.getText());
         } else {
             activeItem = null;
@@ -83,81 +178,77 @@ public class MainController {
     }
 
     private void refreshSaveButton() {
-        btnSave.setDisable(!dbManager.hasPendingChanges());
+        btnSave.setDisable(!catalog.snapshot().hasPendingChanges());
     }
 
     @FXML
-    private void findMedication() {
-        TextInputDialog searchDialog = new TextInputDialog();
-        searchDialog.setTitle("Find Medication");
-        searchDialog.setHeaderText("Search for a medication across all categories");
-        searchDialog.setContentText("Query:");
-
-        Optional<String> searchResult = searchDialog.showAndWait();
-        searchResult.ifPresent(query -> {
-            String lowerQuery = query.toLowerCase();
-            List<MedicationItem> matches = new ArrayList<>();
-            
-            for (List<MedicationGroup> groups : dbManager.getMedicationData().values()) {
-                for (MedicationGroup group : groups) {
-                    for (MedicationItem item : group.medications()) {
-                        if (item.getText().toLowerCase().contains(lowerQuery)) {
-                            matches.add(item);
-                        }
-                    }
-                }
+    private void initialize() {
+        catalog.addListener(catalogListener);
+        mainTabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
+            if (!populatingTabs) materialize(newTab);
+        });
+        searchField.textProperty().addListener((obs, oldText, newText) -> runSearch(newText));
+        searchField.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ENTER && !searchResultsList.getItems().isEmpty()) {
+                pickSearchResult(searchResultsList.getItems().get(0));
+            } else if (e.getCode() == KeyCode.DOWN && !searchResultsList.getItems().isEmpty()) {
+                searchResultsList.requestFocus();
+                searchResultsList.getSelectionModel().selectFirst();
+            } else if (e.getCode() == KeyCode.ESCAPE) {
+                searchField.clear();
             }
-
-            if (matches.isEmpty()) {
-                showAlert(Alert.AlertType.INFORMATION, "No Results", "No medications found matching: " + query);
-            } else {
-                Dialog<MedicationItem> resultsDialog = new Dialog<>();
-                resultsDialog.setTitle("Search Results");
-                resultsDialog.setHeaderText("Found " + matches.size() + " matches. Double-click to select.");
-                
-                ButtonType selectButtonType = new ButtonType("Select", ButtonBar.ButtonData.OK_DONE);
-                resultsDialog.getDialogPane().getButtonTypes().addAll(selectButtonType, ButtonType.CANCEL);
-                
-                ListView<MedicationItem> listView = new ListView<>();
-                listView.setItems(FXCollections.observableArrayList(matches));
-                listView.setPrefHeight(300);
-                listView.setPrefWidth(400);
-                
-                listView.setOnMouseClicked(event -> {
-                    if (event.getClickCount() == 2) {
-                        MedicationItem selected = listView.getSelectionModel().getSelectedItem();
-                        if (selected != null) {
-                            resultsDialog.setResult(selected);
-                            resultsDialog.close();
-                        }
-                    }
-                });
-
-                resultsDialog.getDialogPane().setContent(listView);
-                
-                resultsDialog.setResultConverter(dialogButton -> {
-                    if (dialogButton == selectButtonType) {
-                        return listView.getSelectionModel().getSelectedItem();
-                    }
-                    return null;
-                });
-
-                resultsDialog.showAndWait().ifPresent(item -> {
-                    outputTextArea.appendText(item.getText() + "\n");
-                    copyToClipboard(item.getText());
-                });
+        });
+        searchResultsList.setOnMouseClicked(e -> pickSearchResult(searchResultsList.getSelectionModel().getSelectedItem()));
+        searchResultsList.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ENTER) {
+                pickSearchResult(searchResultsList.getSelectionModel().getSelectedItem());
+            } else if (e.getCode() == KeyCode.ESCAPE) {
+                searchField.clear();
+                searchField.requestFocus();
             }
         });
     }
 
+    @FXML
+    private void findMedication() {
+        searchField.requestFocus();
+        searchField.selectAll();
+    }
+
+    /**
+     * Search-as-you-type against the catalog index; the results list covers the tabs while a query is present.
+     */
+    private void runSearch(String query) {
+        if (query == null || query.isBlank()) {
+            searchResultsList.getItems().clear();
+            searchResultsList.setVisible(false);
+            return;
+        }
+        searchResultsList.getItems().setAll(catalog.snapshot().searchIndex().search(query, SEARCH_RESULT_LIMIT));
+        searchResultsList.setVisible(true);
+    }
+
+    private void refreshSearchResults() {
+        if (searchResultsList.isVisible()) {
+            runSearch(searchField.getText());
+        }
+    }
+
+    private void pickSearchResult(MedicationSearchIndex.Hit hit) {
+        if (hit == null || isSeparator(hit.item().getText())) return;
+        outputTextArea.appendText(hit.item().getText() + "\n");
+        copyToClipboard(hit.item().getText());
+        selectTabByName(hit.category());
+    }
+
     @FXML
     private void addMedication() {
         Tab selectedTab = mainTabPane.getSelectionModel().getSelectedItem();
         if (selectedTab == null) return;
         String category = selectedTab.getText();
 
-        List<MedicationGroup> groups = dbManager.getMedicationData().get(category);
-        if (groups == null || groups.isEmpty()) return;
+        List<MedicationGroup> groups = catalog.snapshot().groups(category);
+        if (groups.isEmpty()) return;
 
         Dialog<Pair<String, String>> dialog = new Dialog<>();
         dialog.setTitle("Add Medication");
@@ -199,9 +290,7 @@ public class MainController {
         result.ifPresent(pair -> {
             if (!pair.getValue().isBlank()) {
                 MedicationItem newItem = new MedicationItem(pair.getValue());
-                dbManager.addItem(category, pair.getKey(), newItem);
-                refreshCurrentTab();
-                refreshSaveButton();
+                catalog.addItem(category, pair.getKey(), newItem);
             }
         });
     }
@@ -236,10 +325,8 @@ public class MainController {
         Optional<String> result = dialog.showAndWait();
         result.ifPresent(newText -> {
             if (!newText.equals(activeItem.getText())) {
-                activeItem.setText(newText);
-                activeListView.refresh();
-                dbManager.markDirty();
-                refreshSaveButton();
+                activeItem = catalog.updateItemText(activeItem, newText);
+                selectionLabel.setText(activeItem.getText());
             }
         });
     }
@@ -255,24 +342,24 @@ public class MainController {
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            // Remove from DB logic
-            dbManager.removeItem(activeItem);
-            // Remove from UI list
-            activeListView.getItems().remove(activeItem);
-            
+            MedicationItem removed = activeItem;
             activeItem = null;
             selectionLabel.setText("No medication selected");
             btnEdit.setDisable(true);
             btnDelete.setDisable(true);
-            refreshSaveButton();
+            // Every open window, this one included, redraws from the published snapshot
+            catalog.removeItem(removed);
         }
     }
 
     @FXML
     private void saveChanges() {
-        dbManager.commitPending();
-        refreshSaveButton();
-        showAlert(Alert.AlertType.INFORMATION, "Saved", "Changes have been saved to the current session.");
+        if (catalog.commitPending()) {
+            showAlert(Alert.AlertType.INFORMATION, "Saved", "Changes have been saved to the current session.");
+        } else {
+            showAlert(Alert.AlertType.ERROR, "Save Failed",
+                    "Changes could not be written to the medication database. They are still pending; please try again.");
+        }
     }
 
     @FXML private void copyAll() {
@@ -312,21 +399,6 @@ public class MainController {
                 .ifPresent(t -> mainTabPane.getSelectionModel().select(t));
     }
 
-    private void refreshCurrentTab() {
-        Tab selectedTab = mainTabPane.getSelectionModel().getSelectedItem();
-        if (selectedTab != null) {
-            String category = selectedTab.getText();
-            // Rebuild accordion for this tab
-            Accordion accordion = new Accordion();
-            for (MedicationGroup group : dbManager.getMedicationData().getOrDefault(category, java.util.List.of())) {
-                ListView<MedicationItem> lv = createListView(group.medications());
-                TitledPane tp = new TitledPane(group.title(), lv);
-                accordion.getPanes().add(tp);
-            }
-            selectedTab.setContent(accordion);
-        }
-    }
-
     private boolean isSeparator(String text) {
         return text.trim().matches("^-{3,}$|^---.*---$|^\\.{3,}$");
     }
@@ -1,10 +1,8 @@
 package com.emr.gds.main.medication.db;
 
+import com.emr.gds.main.db.SqliteDataSource;
 import com.emr.gds.main.medication.model.MedicationGroup;
 import com.emr.gds.main.medication.model.MedicationItem;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
 import java.util.logging.Logger;
@@ -13,46 +11,38 @@ public class DatabaseManager {
     private static final Logger LOGGER = Logger.getLogger(DatabaseManager.class.getName());
     private static final String DEFAULT_DB_FILENAME = "med_data.db";
     private final String dbFileName;
+    private final SqliteDataSource dataSource;
     
     private boolean pendingChanges = false;
     private Map<String, List<MedicationGroup>> cachedData = null;
     private List<String> cachedCategories = null;
 
+    // Row ids of the cached objects, so a save can touch exactly the rows that changed.
+    // Groups and items are keyed by identity: titles and texts are neither unique nor stable.
+    private final Map<String, Long> categoryIds = new HashMap<>();
+    private final Map<MedicationGroup, Long> groupIds = new IdentityHashMap<>();
+    private final Map<MedicationItem, Long> itemIds = new IdentityHashMap<>();
+
+    /** Edits made since the last commit, replayed in order by {@link #commitPending()}. */
+    private final List<Change> changeLog = new ArrayList<>();
+
+    private enum ChangeType { ADD_CATEGORY, ADD_GROUP, ADD_ITEM, UPDATE_ITEM, REMOVE_ITEM }
+
+    private record Change(ChangeType type, String category, MedicationGroup group, MedicationItem item) {}
+
     public DatabaseManager() {
         this(DEFAULT_DB_FILENAME);
     }
 
     public DatabaseManager(String dbFileName) {
         this.dbFileName = dbFileName;
+        // app/db/<file>, falling back to db/<file>; resolved once and shared by every manager on that file
+        this.dataSource = SqliteDataSource.forAppDb(dbFileName);
         initializeDatabase();
     }
 
-    private Path getDbPath() {
-        // Logic to find the app/db directory relative to project root
-        Path p = Paths.get("").toAbsolutePath();
-        while (p != null && !Files.exists(p.resolve("gradlew"))) {
-            p = p.getParent();
-        }
-        
-        if (p != null) {
-            Path appDb = p.resolve("app/db").resolve(dbFileName);
-            if (Files.exists(appDb)) return appDb;
-            
-            Path localDb = p.resolve("db").resolve(dbFileName);
-            if (Files.exists(localDb)) return localDb;
-
-            return appDb; // Default to app/db
-        }
-        return Paths.get("app/db").resolve(dbFileName);
-    }
-    
-    private String getConnectionString() {
-        return "jdbc:sqlite:" + getDbPath().toAbsolutePath().toString();
-    }
-
     private void initializeDatabase() {
-        String url = getConnectionString();
-        try (Connection conn = DriverManager.getConnection(url)) {
+        try (Connection conn = dataSource.getWriteConnection()) {
             if (conn != null) {
                 try (Statement stmt = conn.createStatement()) {
                     // Create tables
@@ -74,10 +64,16 @@ public class DatabaseManager {
                                  "text TEXT, " +
                                  "display_order INTEGER, " +
                                  "FOREIGN KEY(group_id) REFERENCES medication_groups(id))");
+
+                    // Cover the loadData join: each child lookup is an index range already in display order
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_medication_groups_category " +
+                                 "ON medication_groups(category_id, display_order)");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_medication_items_group " +
+                                 "ON medication_items(group_id, display_order)");
                 }
             }
         } catch (SQLException e) {
-            LOGGER.severe("Failed to initialize database at " + url + ": " + e.getMessage());
+            LOGGER.severe("Failed to initialize database at " + dataSource.getPath() + ": " + e.getMessage());
         }
     }
 
@@ -106,57 +102,67 @@ public class DatabaseManager {
         return cachedData;
     }
 
+    /**
+     * Loads every category, group and item with one ordered join, streamed into the cache in a single pass.
+     * LEFT JOINs keep empty categories and groups; rows arrive grouped, so a new group starts whenever
+     * the group id changes.
+     */
     private void loadData() {
         cachedData = new LinkedHashMap<>();
         cachedCategories = new ArrayList<>();
-        String url = getConnectionString();
-
-        try (Connection conn = DriverManager.getConnection(url)) {
-            // Load Categories
-            Map<Integer, String> catIdMap = new LinkedHashMap<>();
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT id, name FROM categories ORDER BY display_order")) {
-                while (rs.next()) {
-                    int id = rs.getInt("id");
-                    String name = rs.getString("name");
-                    cachedCategories.add(name);
-                    catIdMap.put(id, name);
+        categoryIds.clear();
+        groupIds.clear();
+        itemIds.clear();
+        changeLog.clear();
+        pendingChanges = false;
+
+        String sql = "SELECT c.id AS category_id, c.name AS category, g.id AS group_id, g.title AS title, " +
+                     "i.id AS item_id, i.text AS text " +
+                     "FROM categories c " +
+                     "LEFT JOIN medication_groups g ON g.category_id = c.id " +
+                     "LEFT JOIN medication_items i ON i.group_id = g.id " +
+                     "ORDER BY c.display_order, c.id, g.display_order, g.id, i.display_order, i.id";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            long currentCategoryId = -1;
+            List<MedicationGroup> groups = null;
+            long currentGroupId = -1;
+            List<MedicationItem> items = null;
+
+            while (rs.next()) {
+                long categoryId = rs.getLong("category_id");
+                if (categoryId != currentCategoryId) {
+                    currentCategoryId = categoryId;
+                    String catName = rs.getString("category");
+                    groups = new ArrayList<>();
+                    cachedCategories.add(catName);
+                    cachedData.put(catName, groups);
+                    categoryIds.put(catName, categoryId);
+                    currentGroupId = -1;
                 }
-            }
 
-            // Load Groups and Items
-            for (Map.Entry<Integer, String> catEntry : catIdMap.entrySet()) {
-                int catId = catEntry.getKey();
-                String catName = catEntry.getValue();
-                List<MedicationGroup> groups = new ArrayList<>();
-
-                String groupSql = "SELECT id, title FROM medication_groups WHERE category_id = ? ORDER BY display_order";
-                try (PreparedStatement pstmt = conn.prepareStatement(groupSql)) {
-                    pstmt.setInt(1, catId);
-                    try (ResultSet rsGroup = pstmt.executeQuery()) {
-                        while (rsGroup.next()) {
-                            int groupId = rsGroup.getInt("id");
-                            String groupTitle = rsGroup.getString("title");
-                            List<MedicationItem> items = new ArrayList<>();
-
-                            String itemSql = "SELECT text FROM medication_items WHERE group_id = ? ORDER BY display_order";
-                            try (PreparedStatement pstmtItem = conn.prepareStatement(itemSql)) {
-                                pstmtItem.setInt(1, groupId);
-                                try (ResultSet rsItem = pstmtItem.executeQuery()) {
-                                    while (rsItem.next()) {
-                                        items.add(new MedicationItem(rsItem.getString("text")));
-                                    }
-                                }
-                            }
-                            groups.add(new MedicationGroup(groupTitle, items));
-                        }
-                    }
+                long groupId = rs.getLong("group_id");
+                if (rs.wasNull()) continue; // category without groups
+
+                if (groupId != currentGroupId) {
+                    currentGroupId = groupId;
+                    items = new ArrayList<>();
+                    MedicationGroup group = new MedicationGroup(rs.getString("title"), items);
+                    groups.add(group);
+                    groupIds.put(group, groupId);
                 }
-                cachedData.put(catName, groups);
-            }
 
+                long itemId = rs.getLong("item_id");
+                if (!rs.wasNull()) {
+                    MedicationItem item = new MedicationItem(rs.getString("text"));
+                    items.add(item);
+                    itemIds.put(item, itemId);
+                }
+            }
         } catch (SQLException e) {
-            LOGGER.severe("Failed to load from DB (" + url + "): " + e.getMessage());
+            LOGGER.severe("Failed to load from DB (" + dataSource.getPath() + "): " + e.getMessage());
         }
     }
 
@@ -164,69 +170,73 @@ public class DatabaseManager {
         return pendingChanges;
     }
 
-    public void markDirty() {
-        this.pendingChanges = true;
-    }
-
-    public void commitPending() {
-        if (cachedCategories == null || cachedData == null) return;
-        saveToDb();
+    /**
+     * Persists the change log in one transaction.
+     * @return false if the save failed; the pending changes are then kept for another attempt.
+     */
+    public boolean commitPending() {
+        if (cachedCategories == null || cachedData == null || changeLog.isEmpty()) return true;
+        if (!saveChanges()) return false;
+        changeLog.clear();
         pendingChanges = false;
         LOGGER.info("Changes saved to database.");
+        return true;
     }
 
-    private void saveToDb() {
-        String url = getConnectionString();
-        try (Connection conn = DriverManager.getConnection(url)) {
+    /**
+     * Replays the change log in one transaction, touching only the affected rows.
+     * New rows are appended after their siblings' current maximum display_order.
+     * Ids of inserted rows are published only after the commit succeeds, so a failed save
+     * leaves the log and the id maps exactly as they were.
+     */
+    private boolean saveChanges() {
+        Map<String, Long> newCategoryIds = new HashMap<>();
+        Map<MedicationGroup, Long> newGroupIds = new IdentityHashMap<>();
+        Map<MedicationItem, Long> newItemIds = new IdentityHashMap<>();
+        Set<MedicationItem> removedItems = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        try (Connection conn = dataSource.getWriteConnection()) {
             conn.setAutoCommit(false);
-            try (Statement stmt = conn.createStatement()) {
-                // Clear existing data (Full rewrite strategy)
-                stmt.executeUpdate("DELETE FROM medication_items");
-                stmt.executeUpdate("DELETE FROM medication_groups");
-                stmt.executeUpdate("DELETE FROM categories");
-                
-                String insertCat = "INSERT INTO categories (name, display_order) VALUES (?, ?)";
-                String insertGroup = "INSERT INTO medication_groups (category_id, title, display_order) VALUES (?, ?, ?)";
-                String insertItem = "INSERT INTO medication_items (group_id, text, display_order) VALUES (?, ?, ?)";
-
-                try (PreparedStatement pstmtCat = conn.prepareStatement(insertCat, Statement.RETURN_GENERATED_KEYS);
-                     PreparedStatement pstmtGroup = conn.prepareStatement(insertGroup, Statement.RETURN_GENERATED_KEYS);
-                     PreparedStatement pstmtItem = conn.prepareStatement(insertItem)) {
-                    
-                    int catOrder = 0;
-                    for (String catName : cachedCategories) {
-                        pstmtCat.setString(1, catName);
-                        pstmtCat.setInt(2, catOrder++);
-                        pstmtCat.executeUpdate();
-                        
-                        try (ResultSet rsCat = pstmtCat.getGeneratedKeys()) {
-                            if (rsCat.next()) {
-                                int catId = rsCat.getInt(1);
-                                List<MedicationGroup> groups = cachedData.get(catName);
-                                if (groups != null) {
-                                    int groupOrder = 0;
-                                    for (MedicationGroup group : groups) {
-                                        pstmtGroup.setInt(1, catId);
-                                        pstmtGroup.setString(2, group.title());
-                                        pstmtGroup.setInt(3, groupOrder++);
-                                        pstmtGroup.executeUpdate();
-                                        
-                                        try (ResultSet rsGroup = pstmtGroup.getGeneratedKeys()) {
-                                            if (rsGroup.next()) {
-                                                int groupId = rsGroup.getInt(1);
-                                                int itemOrder = 0;
-                                                for (MedicationItem item : group.medications()) {
-                                                    pstmtItem.setInt(1, groupId);
-                                                    pstmtItem.setString(2, item.getText());
-                                                    pstmtItem.setInt(3, itemOrder++);
-                                                    pstmtItem.addBatch();
-                                                }
-                                                pstmtItem.executeBatch();
-                                            }
-                                        }
-                                    }
-                                }
-                            }
+            try (PreparedStatement insertCat = conn.prepareStatement(
+                         "INSERT INTO categories (name, display_order) " +
+                         "VALUES (?, (SELECT COALESCE(MAX(display_order), -1) + 1 FROM categories))",
+                         Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement insertGroup = conn.prepareStatement(
+                         "INSERT INTO medication_groups (category_id, title, display_order) " +
+                         "VALUES (?1, ?2, (SELECT COALESCE(MAX(display_order), -1) + 1 FROM medication_groups WHERE category_id = ?1))",
+                         Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement insertItem = conn.prepareStatement(
+                         "INSERT INTO medication_items (group_id, text, display_order) " +
+                         "VALUES (?1, ?2, (SELECT COALESCE(MAX(display_order), -1) + 1 FROM medication_items WHERE group_id = ?1))",
+                         Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement updateItem = conn.prepareStatement("UPDATE medication_items SET text = ? WHERE id = ?");
+                 PreparedStatement deleteItem = conn.prepareStatement("DELETE FROM medication_items WHERE id = ?")) {
+
+                for (Change change : changeLog) {
+                    switch (change.type()) {
+                        case ADD_CATEGORY -> {
+                            insertCat.setString(1, change.category());
+                            newCategoryIds.put(change.category(), insertAndGetId(insertCat));
+                        }
+                        case ADD_GROUP -> {
+                            insertGroup.setLong(1, requireId(categoryIds, newCategoryIds, change.category(), "category"));
+                            insertGroup.setString(2, change.group().title());
+                            newGroupIds.put(change.group(), insertAndGetId(insertGroup));
+                        }
+                        case ADD_ITEM -> {
+                            insertItem.setLong(1, requireId(groupIds, newGroupIds, change.group(), "group"));
+                            insertItem.setString(2, change.item().getText());
+                            newItemIds.put(change.item(), insertAndGetId(insertItem));
+                        }
+                        case UPDATE_ITEM -> {
+                            updateItem.setString(1, change.item().getText());
+                            updateItem.setLong(2, requireId(itemIds, newItemIds, change.item(), "item"));
+                            updateItem.executeUpdate();
+                        }
+                        case REMOVE_ITEM -> {
+                            deleteItem.setLong(1, requireId(itemIds, newItemIds, change.item(), "item"));
+                            deleteItem.executeUpdate();
+                            removedItems.add(change.item());
                         }
                     }
                 }
@@ -236,20 +246,91 @@ public class DatabaseManager {
                 throw e;
             }
         } catch (SQLException e) {
-            LOGGER.severe("Failed to save to DB: " + e.getMessage());
+            LOGGER.severe("Failed to save changes to DB: " + e.getMessage());
+            return false;
         }
+
+        categoryIds.putAll(newCategoryIds);
+        groupIds.putAll(newGroupIds);
+        itemIds.putAll(newItemIds);
+        itemIds.keySet().removeAll(removedItems);
+        return true;
     }
 
-    public void removeItem(MedicationItem item) {
-        if (cachedData == null) return;
+    private static long insertAndGetId(PreparedStatement pstmt) throws SQLException {
+        pstmt.executeUpdate();
+        try (ResultSet rs = pstmt.getGeneratedKeys()) {
+            if (!rs.next()) throw new SQLException("No generated key returned");
+            return rs.getLong(1);
+        }
+    }
+
+    private static <K> long requireId(Map<K, Long> saved, Map<K, Long> pending, K key, String kind) throws SQLException {
+        Long id = pending.containsKey(key) ? pending.get(key) : saved.get(key);
+        if (id == null) throw new SQLException("No row id for " + kind + " '" + key + "'");
+        return id;
+    }
+
+    private void record(ChangeType type, String category, MedicationGroup group, MedicationItem item) {
+        changeLog.add(new Change(type, category, group, item));
+        pendingChanges = true;
+    }
+
+    /** True if {@code item} was added in the current, not yet committed session. */
+    private boolean isPendingAdd(MedicationItem item) {
+        for (Change change : changeLog) {
+            if (change.type() == ChangeType.ADD_ITEM && change.item() == item) return true;
+        }
+        return false;
+    }
+
+    /** The working-copy group holding {@code item}, or null if it is not (or no longer) in the catalog. */
+    public MedicationGroup groupOf(MedicationItem item) {
+        if (cachedData == null || item == null) return null;
         for (List<MedicationGroup> groups : cachedData.values()) {
             for (MedicationGroup group : groups) {
-                if (group.medications().remove(item)) {
-                    markDirty();
-                    return;
-                }
+                if (group.medications().contains(item)) return group;
             }
         }
+        return null;
+    }
+
+    public void removeItem(MedicationItem item) {
+        MedicationGroup group = groupOf(item);
+        if (group == null) return;
+        group.medications().remove(item);
+        if (isPendingAdd(item)) {
+            // Never reached the database: drop its add/update entries instead of logging a delete.
+            changeLog.removeIf(c -> c.item() == item);
+            pendingChanges = !changeLog.isEmpty();
+        } else {
+            record(ChangeType.REMOVE_ITEM, null, group, item);
+        }
+    }
+
+    /**
+     * Replaces {@code item} with a copy carrying {@code newText} and logs the update for the next commit.
+     * The replacement takes over the item's row and its place in the change log.
+     * @return the replacement, or {@code item} itself if nothing changed.
+     */
+    public MedicationItem updateItemText(MedicationItem item, String newText) {
+        if (item == null || Objects.equals(item.getText(), newText)) return item;
+        MedicationGroup group = groupOf(item);
+        if (group == null) return item;
+
+        MedicationItem replacement = new MedicationItem(newText);
+        List<MedicationItem> items = group.medications();
+        items.set(items.indexOf(item), replacement);
+        Long id = itemIds.remove(item);
+        if (id != null) itemIds.put(replacement, id);
+        boolean pendingAdd = isPendingAdd(item);
+        changeLog.replaceAll(c -> c.item() == item ? new Change(c.type(), c.category(), c.group(), replacement) : c);
+        if (!pendingAdd) {
+            // A pending add inserts the current text anyway; only saved rows need an UPDATE.
+            changeLog.removeIf(c -> c.type() == ChangeType.UPDATE_ITEM && c.item() == replacement);
+            record(ChangeType.UPDATE_ITEM, null, group, replacement);
+        }
+        return replacement;
     }
 
     public void addItem(String category, String groupName, MedicationItem item) {
@@ -259,7 +340,7 @@ public class DatabaseManager {
             for (MedicationGroup group : groups) {
                 if (group.title().equals(groupName)) {
                     group.medications().add(item);
-                    markDirty();
+                    record(ChangeType.ADD_ITEM, category, group, item);
                     return;
                 }
             }
@@ -272,7 +353,7 @@ public class DatabaseManager {
             cachedCategories.add(categoryName);
             if (cachedData == null) cachedData = new LinkedHashMap<>();
             cachedData.put(categoryName, new ArrayList<>());
-            markDirty();
+            record(ChangeType.ADD_CATEGORY, categoryName, null, null);
         }
     }
 
@@ -284,8 +365,9 @@ public class DatabaseManager {
             for (MedicationGroup g : groups) {
                 if (g.title().equals(groupName)) return;
             }
-            groups.add(new MedicationGroup(groupName, new ArrayList<>()));
-            markDirty();
+            MedicationGroup group = new MedicationGroup(groupName, new ArrayList<>());
+            groups.add(group);
+            record(ChangeType.ADD_GROUP, categoryName, group, null);
         }
     }
 }
@@ -0,0 +1,209 @@
+package com.emr.gds.main.medication.db;
+
+import com.emr.gds.main.medication.model.MedicationGroup;
+import com.emr.gds.main.medication.model.MedicationItem;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide medication catalog shared by every helper window (F1–F4, the category launcher, ...).
+ * <p>
+ * Readers take {@link #snapshot()}, an immutable view published through an {@link AtomicReference}, so
+ * opening another window costs no database work. Writers go through this service: each edit is applied
+ * to the single {@link DatabaseManager} working copy under a lock, recorded in its change log, and
+ * published as a new snapshot version to the registered listeners. Because every window edits the same
+ * working copy, one window's save can no longer overwrite another's.
+ * <p>
+ * Snapshots never change. {@link MedicationItem}s are immutable, and a group's published copy is reused by
+ * later versions until that group is edited, so an edit copies one group rather than the whole catalog.
+ */
+public final class MedicationCatalogService {
+
+    private static final Logger LOGGER = Logger.getLogger(MedicationCatalogService.class.getName());
+    private static final String DEFAULT_DB_FILENAME = "med_data.db";
+    private static final Map<String, MedicationCatalogService> INSTANCES = new ConcurrentHashMap<>();
+
+    /** One published version of the catalog. */
+    public static final class Snapshot {
+        private final long version;
+        private final List<String> categories;
+        private final Map<String, List<MedicationGroup>> data;
+        private final boolean pendingChanges;
+        private volatile MedicationSearchIndex searchIndex;
+
+        private Snapshot(long version, List<String> categories, Map<String, List<MedicationGroup>> data, boolean pendingChanges) {
+            this.version = version;
+            this.categories = categories;
+            this.data = data;
+            this.pendingChanges = pendingChanges;
+        }
+
+        public long version() { return version; }
+        public List<String> categories() { return categories; }
+        public Map<String, List<MedicationGroup>> data() { return data; }
+        public boolean hasPendingChanges() { return pendingChanges; }
+
+        public List<MedicationGroup> groups(String category) {
+            return data.getOrDefault(category, List.of());
+        }
+
+        /** Search index for this version, built on first use. */
+        public MedicationSearchIndex searchIndex() {
+            MedicationSearchIndex index = searchIndex;
+            if (index == null) {
+                index = MedicationSearchIndex.build(categories, data);
+                searchIndex = index;
+            }
+            return index;
+        }
+    }
+
+    private final DatabaseManager store;
+    private final Object writeLock = new Object();
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final List<WeakReference<Consumer<Snapshot>>> listeners = new CopyOnWriteArrayList<>();
+    /** Published copy of each working-copy group, by identity; guarded by {@code writeLock}. */
+    private final Map<MedicationGroup, MedicationGroup> publishedGroups = new IdentityHashMap<>();
+
+    private MedicationCatalogService(String dbFileName) {
+        this.store = new DatabaseManager(dbFileName);
+        synchronized (writeLock) {
+            current.set(copyOf(0));
+        }
+    }
+
+    public static MedicationCatalogService getInstance() {
+        return forDatabase(DEFAULT_DB_FILENAME);
+    }
+
+    public static MedicationCatalogService forDatabase(String dbFileName) {
+        return INSTANCES.computeIfAbsent(dbFileName, MedicationCatalogService::new);
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    // ================================
+    // Listeners
+    // ================================
+
+    /**
+     * Registers a listener called with every new snapshot, on the thread that made the change.
+     * Listeners are held weakly: keep a strong reference (e.g. a controller field) for as long
+     * as updates are wanted, and a closed window's controller is collected without unregistering.
+     */
+    public void addListener(Consumer<Snapshot> listener) {
+        listeners.add(new WeakReference<>(listener));
+    }
+
+    public void removeListener(Consumer<Snapshot> listener) {
+        listeners.removeIf(ref -> {
+            Consumer<Snapshot> l = ref.get();
+            return l == null || l == listener;
+        });
+    }
+
+    // ================================
+    // Writers
+    // ================================
+
+    public void addCategory(String categoryName) {
+        synchronized (writeLock) {
+            store.addCategory(categoryName);
+            publish(null);
+        }
+    }
+
+    public void addGroup(String categoryName, String groupName) {
+        synchronized (writeLock) {
+            store.addGroup(categoryName, groupName);
+            publish(null);
+        }
+    }
+
+    public void addItem(String category, String groupName, MedicationItem item) {
+        synchronized (writeLock) {
+            store.addItem(category, groupName, item);
+            publish(store.groupOf(item));
+        }
+    }
+
+    /**
+     * Replaces {@code item} with one carrying {@code newText}.
+     * @return the replacement, which callers holding {@code item} should switch to.
+     */
+    public MedicationItem updateItemText(MedicationItem item, String newText) {
+        synchronized (writeLock) {
+            MedicationGroup group = store.groupOf(item);
+            MedicationItem replacement = store.updateItemText(item, newText);
+            publish(group);
+            return replacement;
+        }
+    }
+
+    public void removeItem(MedicationItem item) {
+        synchronized (writeLock) {
+            MedicationGroup group = store.groupOf(item);
+            store.removeItem(item);
+            publish(group);
+        }
+    }
+
+    /**
+     * Persists every pending edit, from whichever window made it, in one transaction.
+     * @return false if the save failed; the edits stay pending.
+     */
+    public boolean commitPending() {
+        synchronized (writeLock) {
+            boolean saved = store.commitPending();
+            publish(null);
+            return saved;
+        }
+    }
+
+    /** Must hold {@code writeLock}. {@code changed} is the working-copy group that was edited, if any. */
+    private void publish(MedicationGroup changed) {
+        if (changed != null) publishedGroups.remove(changed);
+        Snapshot next = copyOf(current.get().version() + 1);
+        current.set(next);
+        for (WeakReference<Consumer<Snapshot>> ref : listeners) {
+            Consumer<Snapshot> listener = ref.get();
+            if (listener == null) {
+                listeners.remove(ref);
+                continue;
+            }
+            try {
+                listener.accept(next);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Medication catalog listener failed", e);
+            }
+        }
+    }
+
+    /** Must hold {@code writeLock}. Copies groups not published yet and reuses the rest; items are shared. */
+    private Snapshot copyOf(long version) {
+        List<String> categories = Collections.unmodifiableList(new ArrayList<>(store.getOrderedCategories()));
+        Map<String, List<MedicationGroup>> data = new LinkedHashMap<>();
+        for (Map.Entry<String, List<MedicationGroup>> entry : store.getMedicationData().entrySet()) {
+            List<MedicationGroup> groups = new ArrayList<>(entry.getValue().size());
+            for (MedicationGroup group : entry.getValue()) {
+                groups.add(publishedGroups.computeIfAbsent(group,
+                        g -> new MedicationGroup(g.title(), List.copyOf(g.medications()))));
+            }
+            data.put(entry.getKey(), List.copyOf(groups));
+        }
+        return new Snapshot(version, categories, Collections.unmodifiableMap(data), store.hasPendingChanges());
+    }
+}
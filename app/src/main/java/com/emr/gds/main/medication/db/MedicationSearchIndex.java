@@ -0,0 +1,181 @@
+package com.emr.gds.main.medication.db;
+
+import com.emr.gds.main.medication.model.MedicationGroup;
+import com.emr.gds.main.medication.model.MedicationItem;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable in-memory search index over the medication catalog.
+ * <p>
+ * Item texts are normalised once (NFKC, lower case) and split into tokens. The distinct tokens are kept
+ * sorted, so every query token is answered by a binary search over prefixes and a union of posting lists.
+ * Hangul tokens are also indexed by their initial consonants, so "ㅁㅌ" finds "메트포르민" as well as
+ * "메트" does. A query token that matches no token prefix falls back to a substring scan of the
+ * pre-normalised texts, which keeps the old "contains" behaviour for fragments inside a word.
+ * <p>
+ * Results are returned in catalog order and reuse the {@link Hit} objects built with the index.
+ */
+public final class MedicationSearchIndex {
+
+    /** One searchable item together with where it lives in the catalog. */
+    public record Hit(String category, String group, MedicationItem item) {
+        @Override
+        public String toString() {
+            return item.getText() + "   (" + category + " / " + group + ")";
+        }
+    }
+
+    private static final char HANGUL_BASE = 0xAC00;
+    private static final char HANGUL_LAST = 0xD7A3;
+    // NFKC turns typed compatibility jamo (ㄱ, U+3131) into conjoining initials (U+1100), so index those.
+    private static final char CHOSEONG_BASE = 0x1100;
+
+    private final Hit[] hits;
+    private final String[] normalized;
+    private final String[] terms;       // sorted, distinct
+    private final int[][] postings;     // postings[t] = ascending hit ids containing terms[t]
+
+    private MedicationSearchIndex(Hit[] hits, String[] normalized, String[] terms, int[][] postings) {
+        this.hits = hits;
+        this.normalized = normalized;
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    public static MedicationSearchIndex build(List<String> categories, Map<String, List<MedicationGroup>> data) {
+        List<Hit> hitList = new ArrayList<>();
+        for (String category : categories) {
+            for (MedicationGroup group : data.getOrDefault(category, List.of())) {
+                for (MedicationItem item : group.medications()) {
+                    hitList.add(new Hit(category, group.title(), item));
+                }
+            }
+        }
+
+        Hit[] hits = hitList.toArray(new Hit[0]);
+        String[] normalized = new String[hits.length];
+        Map<String, List<Integer>> termToIds = new HashMap<>();
+        for (int id = 0; id < hits.length; id++) {
+            String text = normalize(hits[id].item().getText());
+            normalized[id] = text;
+            for (String token : tokenize(text)) {
+                addPosting(termToIds, token, id);
+                String initials = choseong(token);
+                if (initials != null) {
+                    addPosting(termToIds, initials, id);
+                }
+            }
+        }
+
+        String[] terms = termToIds.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            postings[t] = termToIds.get(terms[t]).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new MedicationSearchIndex(hits, normalized, terms, postings);
+    }
+
+    public int size() {
+        return hits.length;
+    }
+
+    /**
+     * Returns up to {@code limit} items matching every token of {@code query}, in catalog order.
+     * A blank query matches nothing.
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> queryTokens = tokenize(normalize(query));
+        if (queryTokens.isEmpty() || limit <= 0) return List.of();
+
+        BitSet result = null;
+        for (String token : queryTokens) {
+            BitSet matches = matchToken(token);
+            if (result == null) {
+                result = matches;
+            } else {
+                result.and(matches);
+            }
+            if (result.isEmpty()) return List.of();
+        }
+
+        List<Hit> out = new ArrayList<>(Math.min(limit, result.cardinality()));
+        for (int id = result.nextSetBit(0); id >= 0 && out.size() < limit; id = result.nextSetBit(id + 1)) {
+            out.add(hits[id]);
+        }
+        return out;
+    }
+
+    private BitSet matchToken(String token) {
+        BitSet bits = new BitSet(hits.length);
+        int from = lowerBound(token);
+        for (int t = from; t < terms.length && terms[t].startsWith(token); t++) {
+            for (int id : postings[t]) {
+                bits.set(id);
+            }
+        }
+        if (bits.isEmpty()) {
+            for (int id = 0; id < normalized.length; id++) {
+                if (normalized[id].contains(token)) bits.set(id);
+            }
+        }
+        return bits;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(key) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static void addPosting(Map<String, List<Integer>> termToIds, String term, int id) {
+        List<Integer> ids = termToIds.computeIfAbsent(term, k -> new ArrayList<>());
+        if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+            ids.add(id);
+        }
+    }
+
+    static String normalize(String text) {
+        if (text == null) return "";
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /** Splits on anything that is not a letter or digit; Hangul syllables and jamo count as letters. */
+    static List<String> tokenize(String normalized) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /** Initial consonants of the Hangul syllables in {@code token}, or {@code null} if it has none. */
+    static String choseong(String token) {
+        StringBuilder sb = null;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c >= HANGUL_BASE && c <= HANGUL_LAST) {
+                if (sb == null) sb = new StringBuilder(token.length());
+                sb.append((char) (CHOSEONG_BASE + (c - HANGUL_BASE) / (21 * 28)));
+            }
+        }
+        return sb == null ? null : sb.toString();
+    }
+}
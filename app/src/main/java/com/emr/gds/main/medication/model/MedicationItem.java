@@ -1,7 +1,11 @@
 package com.emr.gds.main.medication.model;
 
+/**
+ * One catalog entry. Immutable, so published catalog snapshots can share it; editing the text replaces
+ * the item (see {@code DatabaseManager#updateItemText}).
+ */
 public class MedicationItem {
-    private String text;
+    private final String text;
 
     public MedicationItem(String text) {
         this.text = text;
@@ -11,10 +15,6 @@ public class MedicationItem {
         return text;
     }
 
-    public void setText(String text) {
-        this.text = text;
-    }
-
     @Override
     public String toString() {
         return text;
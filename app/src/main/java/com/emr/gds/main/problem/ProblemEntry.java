@@ -0,0 +1,94 @@
+package com.emr.gds.main.problem;
+
+import com.emr.gds.main.kcd.KCDCodeIndex;
+import com.emr.gds.main.kcd.KCDRecord;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * One row of a patient's problem list. {@code onset} and {@code kcdCode} are optional; {@link #toString()} is the
+ * line shown in the list and written to the EMR, with a KCD code resolved through {@link KCDCodeIndex}.
+ */
+public record ProblemEntry(String text, Status status, LocalDate onset, String kcdCode) {
+
+    public enum Status {
+        ACTIVE, INACTIVE, RESOLVED;
+
+        /** The value stored in {@code problems.status}. */
+        public String dbValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /** Parses a stored status; unknown or missing values read as {@link #ACTIVE}. */
+        public static Status fromDb(String value) {
+            if (value != null) {
+                for (Status s : values()) {
+                    if (s.dbValue().equalsIgnoreCase(value.trim())) return s;
+                }
+            }
+            return ACTIVE;
+        }
+    }
+
+    public ProblemEntry {
+        if (text == null || text.isBlank()) throw new IllegalArgumentException("Problem text is required");
+        if (status == null) status = Status.ACTIVE;
+        if (kcdCode != null) kcdCode = kcdCode.isBlank() ? null : kcdCode.trim();
+    }
+
+    public static ProblemEntry of(String text) {
+        return new ProblemEntry(text, Status.ACTIVE, null, null);
+    }
+
+    /** A problem named after a KCD record, using its English name (or Korean name if there is none). */
+    public static ProblemEntry of(KCDRecord record) {
+        String name = record.getEnglishName();
+        if (name == null || name.isBlank()) name = record.getKoreanName();
+        if (name == null || name.isBlank()) name = record.getDiseaseCode();
+        return new ProblemEntry(name.trim(), Status.ACTIVE, null, record.getDiseaseCode());
+    }
+
+    public ProblemEntry withStatus(Status newStatus) {
+        return new ProblemEntry(text, newStatus, onset, kcdCode);
+    }
+
+    public ProblemEntry withOnset(LocalDate newOnset) {
+        return new ProblemEntry(text, status, newOnset, kcdCode);
+    }
+
+    public ProblemEntry withKcdCode(String newCode) {
+        return new ProblemEntry(text, status, onset, newCode);
+    }
+
+    /** The linked KCD record, or null if there is no code or it isn't (yet) in the index. */
+    public KCDRecord kcdRecord() {
+        return kcdCode == null ? null : KCDCodeIndex.shared().lookup(kcdCode);
+    }
+
+    /** {@code [code] Korean (English)} for a resolved code, {@code [code]} while unresolved, or null if uncoded. */
+    public String kcdLabel() {
+        if (kcdCode == null) return null;
+        KCDRecord record = kcdRecord();
+        return record == null ? "[" + kcdCode + "]" : record.toFormattedString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        KCDRecord record = kcdRecord();
+        if (record != null && (text.equals(trim(record.getEnglishName())) || text.equals(trim(record.getKoreanName())))) {
+            // Added straight from the KCD manager; the formatted record already names it.
+            sb.append(record.toFormattedString());
+        } else {
+            sb.append(text);
+            if (kcdCode != null) sb.append(' ').append(kcdLabel());
+        }
+        if (status != Status.ACTIVE) sb.append(" [").append(status.dbValue()).append(']');
+        if (onset != null) sb.append(" (onset ").append(onset).append(')');
+        return sb.toString();
+    }
+
+    private static String trim(String s) {
+        return s == null ? null : s.trim();
+    }
+}
@@ -0,0 +1,311 @@
+package com.emr.gds.main.problem;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistence for the per-patient problem lists in {@code prolist.db}.
+ * <p>
+ * The UI keeps lists in memory and only queues work here; {@link #add}, {@link #update}, {@link #remove} and
+ * {@link #load} never touch the disk on the caller's thread. A single daemon writer drains the queue, applying
+ * every pending mutation as one transaction ({@code INSERT OR IGNORE} for adds, so a duplicate is a no-op rather
+ * than an exception) and only then answering loads, so a load always sees the changes queued before it. If a
+ * batch fails it is rolled back as a whole and handed to the {@link FailureListener}, which runs on the writer
+ * thread. {@link #close()} writes whatever is still queued before returning.
+ */
+public class ProblemListStore {
+
+    /** The shared list used when no patient is selected; rows from before patient scoping live here. */
+    public static final String DEFAULT_PATIENT = "";
+
+    public enum Kind { ADD, UPDATE, REMOVE }
+
+    sealed interface Request permits Mutation, Load, Stop {}
+
+    public record Mutation(Kind kind, String patientId, ProblemEntry entry) implements Request {}
+
+    private record Load(String patientId, CompletableFuture<List<ProblemEntry>> result) implements Request {}
+
+    private record Stop() implements Request {}
+
+    @FunctionalInterface
+    public interface FailureListener {
+        /** Called on the writer thread with the mutations of a batch that was rolled back. */
+        void onFailure(List<Mutation> batch, SQLException error);
+    }
+
+    private static final int MAX_BATCH = 256;
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+    private static final Stop STOP = new Stop();
+
+    // UNIQUE (patient_id, problem_text) doubles as the patient_id index for per-patient loads.
+    private static final String CREATE_SQL = """
+            CREATE TABLE IF NOT EXISTS problems (
+                id           INTEGER PRIMARY KEY AUTOINCREMENT,
+                patient_id   TEXT NOT NULL DEFAULT '',
+                problem_text TEXT NOT NULL,
+                status       TEXT NOT NULL DEFAULT 'active',
+                onset_date   TEXT,
+                kcd_code     TEXT,
+                UNIQUE (patient_id, problem_text)
+            )""";
+    private static final String SELECT_SQL =
+            "SELECT problem_text, status, onset_date, kcd_code FROM problems WHERE patient_id = ? ORDER BY problem_text COLLATE NOCASE";
+    private static final String INSERT_SQL =
+            "INSERT OR IGNORE INTO problems(patient_id, problem_text, status, onset_date, kcd_code) VALUES(?, ?, ?, ?, ?)";
+    private static final String UPDATE_SQL =
+            "UPDATE problems SET status = ?, onset_date = ?, kcd_code = ? WHERE patient_id = ? AND problem_text = ?";
+    private static final String DELETE_SQL = "DELETE FROM problems WHERE patient_id = ? AND problem_text = ?";
+
+    private final SqliteDataSource dataSource;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile FailureListener failureListener = (batch, error) ->
+            System.err.println("Failed to save " + batch.size() + " problem list change(s): " + error.getMessage());
+
+    public ProblemListStore(SqliteDataSource dataSource) throws SQLException {
+        this.dataSource = dataSource;
+        createProblemTable();
+        writer = new Thread(this::writeLoop, "problem-list-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Creates the 'problems' table if it doesn't exist, moves a pre-patient table into the default list, and
+     * populates it with default data on first run.
+     */
+    private void createProblemTable() throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection(); Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            try {
+                if (hasLegacySchema(stmt)) {
+                    // The old table was UNIQUE on problem_text alone; SQLite can't drop that, so copy into a new one.
+                    stmt.execute("ALTER TABLE problems RENAME TO problems_legacy");
+                    stmt.execute(CREATE_SQL);
+                    stmt.execute("INSERT INTO problems (id, problem_text) SELECT id, problem_text FROM problems_legacy");
+                    stmt.execute("DROP TABLE problems_legacy");
+                    System.out.println("Problem list migrated to per-patient schema.");
+                }
+                stmt.execute(CREATE_SQL);
+                if (!hasColumn(stmt, "kcd_code")) {
+                    stmt.execute("ALTER TABLE problems ADD COLUMN kcd_code TEXT");
+                }
+
+                // Check if the table is empty to add initial default data
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS count FROM problems")) {
+                    if (rs.next() && rs.getInt("count") == 0) {
+                        System.out.println("Problem list database is empty. Populating with default data.");
+                        stmt.execute("INSERT INTO problems (problem_text) VALUES ('Hypercholesterolemia [F/U]')");
+                        stmt.execute("INSERT INTO problems (problem_text) VALUES ('Prediabetes (FBS 108 mg/dL)')");
+                        stmt.execute("INSERT INTO problems (problem_text) VALUES ('Thyroid nodule (small)')");
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static boolean hasLegacySchema(Statement stmt) throws SQLException {
+        boolean exists = false;
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(problems)")) {
+            while (rs.next()) {
+                exists = true;
+                if ("patient_id".equalsIgnoreCase(rs.getString("name"))) return false;
+            }
+        }
+        return exists;
+    }
+
+    private static boolean hasColumn(Statement stmt, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(problems)")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
+    public void setFailureListener(FailureListener listener) {
+        this.failureListener = listener;
+    }
+
+    /**
+     * A patient's stored problems, case-insensitively sorted. Completed on the writer thread once every change
+     * queued before this call has been written.
+     */
+    public CompletableFuture<List<ProblemEntry>> load(String patientId) {
+        CompletableFuture<List<ProblemEntry>> result = new CompletableFuture<>();
+        enqueue(new Load(patientId, result));
+        return result;
+    }
+
+    public void add(String patientId, ProblemEntry entry) {
+        enqueue(new Mutation(Kind.ADD, patientId, entry));
+    }
+
+    /** Saves the status, onset date and KCD code of an existing entry. */
+    public void update(String patientId, ProblemEntry entry) {
+        enqueue(new Mutation(Kind.UPDATE, patientId, entry));
+    }
+
+    public void remove(String patientId, ProblemEntry entry) {
+        enqueue(new Mutation(Kind.REMOVE, patientId, entry));
+    }
+
+    private void enqueue(Request request) {
+        if (!writer.isAlive()) {
+            throw new IllegalStateException("Problem list store is closed");
+        }
+        queue.add(request);
+    }
+
+    /** Writes all queued mutations, then stops the writer. Waits up to a few seconds. */
+    public void close() {
+        if (!writer.isAlive()) return;
+        queue.add(STOP);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            System.err.println("Problem list writer did not finish; " + queue.size() + " change(s) may be lost.");
+        }
+    }
+
+    // ================================
+    // Writer
+    // ================================
+
+    private void writeLoop() {
+        List<Request> pending = new ArrayList<>();
+        List<Mutation> batch = new ArrayList<>();
+        List<Load> loads = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                pending.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(pending, MAX_BATCH - 1);
+            for (int i = 0; i < pending.size(); i++) {
+                switch (pending.get(i)) {
+                    case Mutation m -> batch.add(m);
+                    case Load l -> loads.add(l);
+                    case Stop s -> {
+                        // Anything queued behind the stop marker still belongs to this session.
+                        stopping = true;
+                        queue.drainTo(pending);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    write(batch);
+                } catch (SQLException e) {
+                    failureListener.onFailure(List.copyOf(batch), e);
+                } catch (RuntimeException e) {
+                    failureListener.onFailure(List.copyOf(batch), new SQLException(e.getMessage(), e));
+                }
+            }
+            for (Load l : loads) {
+                try {
+                    l.result().complete(read(l.patientId()));
+                } catch (SQLException | RuntimeException e) {
+                    l.result().completeExceptionally(e);
+                }
+            }
+            pending.clear();
+            batch.clear();
+            loads.clear();
+        }
+    }
+
+    private List<ProblemEntry> read(String patientId) throws SQLException {
+        List<ProblemEntry> entries = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(SELECT_SQL)) {
+            ps.setString(1, patientId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String onset = rs.getString(3);
+                    entries.add(new ProblemEntry(rs.getString(1), ProblemEntry.Status.fromDb(rs.getString(2)),
+                            onset == null || onset.isBlank() ? null : LocalDate.parse(onset), rs.getString(4)));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /** One transaction; statements are batched per kind in queue order so add-then-remove of one text nets out. */
+    private void write(List<Mutation> batch) throws SQLException {
+        try (Connection conn = dataSource.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL);
+                 PreparedStatement update = conn.prepareStatement(UPDATE_SQL);
+                 PreparedStatement delete = conn.prepareStatement(DELETE_SQL)) {
+                PreparedStatement open = null;
+                for (Mutation m : batch) {
+                    ProblemEntry e = m.entry();
+                    PreparedStatement ps = switch (m.kind()) {
+                        case ADD -> insert;
+                        case UPDATE -> update;
+                        case REMOVE -> delete;
+                    };
+                    if (open != null && open != ps) open.executeBatch();
+                    switch (m.kind()) {
+                        case ADD -> {
+                            ps.setString(1, m.patientId());
+                            ps.setString(2, e.text());
+                            ps.setString(3, e.status().dbValue());
+                            setDate(ps, 4, e.onset());
+                            ps.setString(5, e.kcdCode());
+                        }
+                        case UPDATE -> {
+                            ps.setString(1, e.status().dbValue());
+                            setDate(ps, 2, e.onset());
+                            ps.setString(3, e.kcdCode());
+                            ps.setString(4, m.patientId());
+                            ps.setString(5, e.text());
+                        }
+                        case REMOVE -> {
+                            ps.setString(1, m.patientId());
+                            ps.setString(2, e.text());
+                        }
+                    }
+                    ps.addBatch();
+                    open = ps;
+                }
+                if (open != null) open.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void setDate(PreparedStatement ps, int index, LocalDate date) throws SQLException {
+        if (date == null) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, date.toString());
+        }
+    }
+}
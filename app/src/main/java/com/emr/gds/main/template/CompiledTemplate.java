@@ -0,0 +1,349 @@
+package com.emr.gds.main.template;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template body compiled once into a flat list of ops, rendered any number of times against a binding map.
+ * <p>
+ * Syntax:
+ * <pre>
+ *   {{today}}                          value of a binding (empty if unbound)
+ *   {{#if bmi}} ... {{else}} ... {{/if}}    {{#unless x}} ... {{/unless}}
+ *   {{#each problems}}- {{@number}}. {{.}}
+ *   {{else}}- none
+ *   {{/each}}
+ * </pre>
+ * Inside {@code #each}, {@code {{.}}} is the current item and {@code {{@number}}} its 1-based position.
+ * Falsy values are {@code null}, {@code false}, empty strings and empty collections or arrays. A block tag
+ * alone on its line takes the whole line with it, so blocks do not leave blank lines behind. Text that only
+ * looks like a tag ({@code {{ see note }}}) is kept as written; unbalanced blocks are rejected at compile time.
+ * <p>
+ * Rendering walks the op arrays with a small loop stack and appends to one pre-sized builder; a body with no
+ * tags compiles to its own text and renders without copying. Instances are immutable and thread-safe.
+ */
+public final class CompiledTemplate {
+
+    private static final byte TEXT = 0, VAR = 1, IF = 2, UNLESS = 3, JUMP = 4, EACH = 5, NEXT = 6;
+
+    private static final String ITEM = ".";
+    private static final String NUMBER = "@number";
+
+    private final String source;
+    private final byte[] ops;
+    private final int[] args;       // TEXT: literal index; VAR, IF, UNLESS, EACH: name index
+    private final int[] jumps;      // IF, UNLESS, EACH: target when falsy/empty; JUMP: target; NEXT: loop body start
+    private final String[] strings;
+    private final int maxDepth;
+    private final int literalLength;
+
+    private CompiledTemplate(String source, byte[] ops, int[] args, int[] jumps, String[] strings, int maxDepth, int literalLength) {
+        this.source = source;
+        this.ops = ops;
+        this.args = args;
+        this.jumps = jumps;
+        this.strings = strings;
+        this.maxDepth = maxDepth;
+        this.literalLength = literalLength;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    /** True when the body has no tags and renders to itself. */
+    public boolean isStatic() {
+        return ops.length == 0 || (ops.length == 1 && ops[0] == TEXT);
+    }
+
+    public String render(Map<String, ?> bindings) {
+        if (ops.length == 0) return "";
+        if (isStatic()) return strings[args[0]];
+        StringBuilder out = new StringBuilder(literalLength + 16 * ops.length);
+        render(bindings, out);
+        return out.toString();
+    }
+
+    public void render(Map<String, ?> bindings, StringBuilder out) {
+        List<?>[] loopItems = maxDepth == 0 ? null : new List<?>[maxDepth];
+        int[] loopIndex = maxDepth == 0 ? null : new int[maxDepth];
+        int depth = 0;
+
+        int pc = 0;
+        while (pc < ops.length) {
+            switch (ops[pc]) {
+                case TEXT -> out.append(strings[args[pc]]);
+                case VAR -> appendValue(out, lookup(strings[args[pc]], bindings, loopItems, loopIndex, depth));
+                case IF -> {
+                    if (!truthy(lookup(strings[args[pc]], bindings, loopItems, loopIndex, depth))) {
+                        pc = jumps[pc];
+                        continue;
+                    }
+                }
+                case UNLESS -> {
+                    if (truthy(lookup(strings[args[pc]], bindings, loopItems, loopIndex, depth))) {
+                        pc = jumps[pc];
+                        continue;
+                    }
+                }
+                case JUMP -> {
+                    pc = jumps[pc];
+                    continue;
+                }
+                case EACH -> {
+                    List<?> items = asList(lookup(strings[args[pc]], bindings, loopItems, loopIndex, depth));
+                    if (items.isEmpty()) {
+                        pc = jumps[pc];
+                        continue;
+                    }
+                    loopItems[depth] = items;
+                    loopIndex[depth] = 0;
+                    depth++;
+                }
+                case NEXT -> {
+                    int top = depth - 1;
+                    if (++loopIndex[top] < loopItems[top].size()) {
+                        pc = jumps[pc];
+                        continue;
+                    }
+                    loopItems[top] = null;
+                    depth--;
+                }
+                default -> throw new IllegalStateException("Bad op " + ops[pc] + " at " + pc);
+            }
+            pc++;
+        }
+    }
+
+    private static Object lookup(String name, Map<String, ?> bindings, List<?>[] loopItems, int[] loopIndex, int depth) {
+        if (name == ITEM) return depth == 0 ? null : loopItems[depth - 1].get(loopIndex[depth - 1]);
+        if (name == NUMBER) return depth == 0 ? null : loopIndex[depth - 1] + 1;
+        return bindings == null ? null : bindings.get(name);
+    }
+
+    private static boolean truthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean b) return b;
+        if (value instanceof CharSequence s) return !s.isEmpty();
+        if (value instanceof Collection<?> c) return !c.isEmpty();
+        if (value instanceof Object[] a) return a.length > 0;
+        return true;
+    }
+
+    private static List<?> asList(Object value) {
+        if (value == null) return List.of();
+        if (value instanceof List<?> list) return list;
+        if (value instanceof Object[] array) return Arrays.asList(array);
+        if (value instanceof Iterable<?> iterable) {
+            List<Object> list = new ArrayList<>();
+            iterable.forEach(list::add);
+            return list;
+        }
+        return List.of(value);
+    }
+
+    private static void appendValue(StringBuilder out, Object value) {
+        if (value == null) return;
+        if (value instanceof CharSequence s) {
+            out.append(s);
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) out.append((long) d); else out.append(d);
+        } else {
+            out.append(value);
+        }
+    }
+
+    // ================================
+    // Compilation
+    // ================================
+
+    /** Compiles a template body; throws {@link IllegalArgumentException} for unbalanced or misplaced blocks. */
+    public static CompiledTemplate compile(String source) {
+        return new Compiler(source == null ? "" : source).compile();
+    }
+
+    private static final class Compiler {
+        private final String src;
+        private byte[] ops = new byte[16];
+        private int[] args = new int[16];
+        private int[] jumps = new int[16];
+        private int size;
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> nameSlots = new HashMap<>();   // binding name -> its entry in strings
+        private final StringBuilder text = new StringBuilder();
+        private int literalLength;
+
+        // Open blocks: kind and the op that still needs its jump target patched.
+        private final List<String> blockKinds = new ArrayList<>();
+        private final List<Integer> blockStarts = new ArrayList<>();
+        private final List<Integer> pendingJumps = new ArrayList<>();
+        private int depth, maxDepth;
+
+        Compiler(String src) {
+            this.src = src;
+        }
+
+        CompiledTemplate compile() {
+            int pos = 0;
+            while (pos < src.length()) {
+                int open = src.indexOf("{{", pos);
+                if (open < 0) break;
+                int close = src.indexOf("}}", open + 2);
+                if (close < 0) break;
+                String tag = src.substring(open + 2, close).strip();
+                int end = close + 2;
+                Kind kind = kindOf(tag);
+                if (kind == null) {
+                    text.append(src, pos, end);
+                    pos = end;
+                    continue;
+                }
+                text.append(src, pos, open);
+                if (kind != Kind.VAR) end = stripStandalone(open, end);
+                emitTag(kind, tag, open);
+                pos = end;
+            }
+            text.append(src, Math.min(pos, src.length()), src.length());
+            flushText();
+            if (!blockKinds.isEmpty()) {
+                throw new IllegalArgumentException("Unclosed {{#" + blockKinds.get(blockKinds.size() - 1) + "}}");
+            }
+            return new CompiledTemplate(src, Arrays.copyOf(ops, size), Arrays.copyOf(args, size), Arrays.copyOf(jumps, size),
+                    strings.toArray(new String[0]), maxDepth, literalLength);
+        }
+
+        private enum Kind { VAR, OPEN_IF, OPEN_UNLESS, OPEN_EACH, ELSE, CLOSE }
+
+        private static Kind kindOf(String tag) {
+            if (tag.equals("else")) return Kind.ELSE;
+            if (tag.startsWith("/")) return isName(tag.substring(1)) ? Kind.CLOSE : null;
+            if (tag.startsWith("#if ")) return isName(tag.substring(4).strip()) ? Kind.OPEN_IF : null;
+            if (tag.startsWith("#unless ")) return isName(tag.substring(8).strip()) ? Kind.OPEN_UNLESS : null;
+            if (tag.startsWith("#each ")) return isName(tag.substring(6).strip()) ? Kind.OPEN_EACH : null;
+            return isName(tag) ? Kind.VAR : null;
+        }
+
+        private static boolean isName(String s) {
+            if (s.equals(ITEM) || s.equals(NUMBER)) return true;
+            if (s.isEmpty() || !(Character.isLetter(s.charAt(0)) || s.charAt(0) == '_')) return false;
+            for (int i = 1; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) return false;
+            }
+            return true;
+        }
+
+        /** If the block tag at [open, end) is alone on its line, drops its indentation and line break. */
+        private int stripStandalone(int open, int end) {
+            int lineStart = src.lastIndexOf('\n', open - 1) + 1;
+            for (int i = lineStart; i < open; i++) {
+                if (src.charAt(i) != ' ' && src.charAt(i) != '\t') return end;
+            }
+            int after = end;
+            while (after < src.length() && (src.charAt(after) == ' ' || src.charAt(after) == '\t')) after++;
+            if (after < src.length() && src.charAt(after) == '\r') after++;
+            if (after < src.length() && src.charAt(after) != '\n') return end;
+            text.setLength(text.length() - (open - lineStart));
+            return Math.min(after + 1, src.length());
+        }
+
+        private void emitTag(Kind kind, String tag, int at) {
+            switch (kind) {
+                case VAR -> {
+                    flushText();
+                    emit(VAR, name(tag), -1);
+                }
+                case OPEN_IF -> open("if", IF, tag.substring(4).strip());
+                case OPEN_UNLESS -> open("unless", UNLESS, tag.substring(8).strip());
+                case OPEN_EACH -> {
+                    open("each", EACH, tag.substring(6).strip());
+                    maxDepth = Math.max(maxDepth, ++depth);
+                }
+                case ELSE -> {
+                    flushText();
+                    int top = blockKinds.size() - 1;
+                    if (top < 0 || pendingJumps.get(top) < 0) throw error("Unexpected {{else}}", at);
+                    int branch = pendingJumps.get(top);
+                    if (blockKinds.get(top).equals("each")) {
+                        // The loop ends here; the else branch runs only when the list was empty.
+                        emit(NEXT, -1, blockStarts.get(top) + 1);
+                        depth--;
+                        blockKinds.set(top, "each-else");
+                    }
+                    int skip = emit(JUMP, -1, -1);
+                    jumps[branch] = size;
+                    pendingJumps.set(top, -1);
+                    blockStarts.set(top, skip);
+                }
+                case CLOSE -> {
+                    flushText();
+                    String name = tag.substring(1).strip();
+                    int top = blockKinds.size() - 1;
+                    if (top < 0) throw error("{{/" + name + "}} without an open block", at);
+                    String open = blockKinds.remove(top);
+                    int start = blockStarts.remove(top);
+                    int pending = pendingJumps.remove(top);
+                    String opened = open.equals("each-else") ? "each" : open;
+                    if (!opened.equals(name)) throw error("{{/" + name + "}} closes {{#" + opened + "}}", at);
+                    if (open.equals("each")) {
+                        emit(NEXT, -1, start + 1);
+                        depth--;
+                    }
+                    if (pending >= 0) jumps[pending] = size;   // falsy/empty with no else: skip to here
+                    else jumps[start] = size;                  // end of the true branch jumps over the else
+                }
+            }
+        }
+
+        private void open(String kind, byte op, String name) {
+            flushText();
+            int at = emit(op, name(name), -1);
+            blockKinds.add(kind);
+            blockStarts.add(at);
+            pendingJumps.add(at);
+        }
+
+        /**
+         * One string slot per distinct binding name. The loop pseudo-variables are stored as the {@link #ITEM} and
+         * {@link #NUMBER} constants themselves, so the renderer can compare them by reference.
+         */
+        private int name(String name) {
+            String stored = name.equals(ITEM) ? ITEM : name.equals(NUMBER) ? NUMBER : name;
+            return nameSlots.computeIfAbsent(stored, n -> {
+                strings.add(n);
+                return strings.size() - 1;
+            });
+        }
+
+        private void flushText() {
+            if (text.isEmpty()) return;
+            literalLength += text.length();
+            strings.add(text.toString());
+            emit(TEXT, strings.size() - 1, -1);
+            text.setLength(0);
+        }
+
+        private int emit(byte op, int arg, int jump) {
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                args = Arrays.copyOf(args, size * 2);
+                jumps = Arrays.copyOf(jumps, size * 2);
+            }
+            ops[size] = op;
+            args[size] = arg;
+            jumps[size] = jump;
+            return size++;
+        }
+
+        private IllegalArgumentException error(String message, int at) {
+            int line = 1;
+            for (int i = 0; i < at; i++) if (src.charAt(i) == '\n') line++;
+            return new IllegalArgumentException(message + " at line " + line);
+        }
+    }
+}
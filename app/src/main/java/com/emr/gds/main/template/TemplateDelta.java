@@ -0,0 +1,22 @@
+package com.emr.gds.main.template;
+
+import java.util.List;
+
+/**
+ * Changes fetched from the template server since the last synced version (see {@link TemplateSyncClient}).
+ * When {@code full} is set, {@code changed} is the server's whole template set.
+ */
+public record TemplateDelta(String storeId, long version, boolean full, List<Remote> changed, List<String> deleted) {
+
+    /** A template as the server holds it; {@code id} is the server's id, not a local row id. */
+    public record Remote(String id, String name, String body) {}
+
+    public TemplateDelta {
+        changed = List.copyOf(changed);
+        deleted = List.copyOf(deleted);
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && deleted.isEmpty();
+    }
+}
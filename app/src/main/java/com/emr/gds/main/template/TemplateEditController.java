@@ -1,7 +1,10 @@
 package com.emr.gds.main.template;
 
+import javafx.animation.PauseTransition;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
@@ -9,16 +12,19 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,14 +39,24 @@ public class TemplateEditController {
             "^\\s*(CC>|PI>|ROS>|PMH>|S>|O>|Physical Exam>|A>|P>|Comment>)\\s*(.*)$"
     );
 
-    @FXML private TableView<TemplateModel> templateTable;
-    @FXML private TableColumn<TemplateModel, String> nameColumn;
+    private static final int SEARCH_RESULT_LIMIT = 200;
+
+    @FXML private TextField searchField;
+    @FXML private TableView<TemplateSummary> templateTable;
+    @FXML private TableColumn<TemplateSummary, String> nameColumn;
+    @FXML private TableColumn<TemplateSummary, String> matchColumn;
     @FXML private TextField nameField;
     @FXML private TextArea contentArea;
 
     private TemplateRepository repository;
     private Consumer<String> onUseCallback;
-    private TemplateModel selectedTemplate;
+    private Supplier<Map<String, ?>> bindings = Map::of;
+    private TemplateSummary selectedTemplate;
+
+    // Search-as-you-type: queries run on a daemon thread once typing pauses; only the newest result is shown.
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(150));
+    private final Map<Integer, String> snippets = new HashMap<>();
+    private long searchGeneration;
 
     public void setRepository(TemplateRepository repository) {
         this.repository = repository;
@@ -51,10 +67,19 @@ public class TemplateEditController {
         this.onUseCallback = callback;
     }
 
+    /** Supplies the values ({@code today}, {@code problems}, ...) that placeholders are filled with on "Use Template". */
+    public void setBindings(Supplier<Map<String, ?>> bindings) {
+        this.bindings = bindings != null ? bindings : Map::of;
+    }
+
     @FXML
     public void initialize() {
-        nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
-        
+        nameColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().name()));
+        matchColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(snippets.getOrDefault(cell.getValue().id(), "")));
+
+        searchDebounce.setOnFinished(e -> loadTemplates());
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> searchDebounce.playFromStart());
+
         templateTable.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null) {
                 selectTemplate(newVal);
@@ -62,17 +87,54 @@ public class TemplateEditController {
         });
     }
 
+    /**
+     * Fills the table off the FX thread: every template name when the search box is blank, otherwise the
+     * full-text matches for its text, best first, with a highlighted excerpt in the Match column.
+     */
     private void loadTemplates() {
         if (repository == null) return;
-        List<TemplateModel> templates = repository.getAllTemplates();
-        ObservableList<TemplateModel> data = FXCollections.observableArrayList(templates);
-        templateTable.setItems(data);
+        TemplateRepository repo = repository;
+        String query = searchField.getText() == null ? "" : searchField.getText().strip();
+        long generation = ++searchGeneration;
+
+        Task<List<TemplateSearchHit>> task = new Task<>() {
+            @Override
+            protected List<TemplateSearchHit> call() {
+                if (!query.isEmpty()) return repo.search(query, SEARCH_RESULT_LIMIT);
+                // Names only; a body is read when its template is selected.
+                List<TemplateSearchHit> all = new ArrayList<>();
+                for (TemplateSummary summary : repo.listTemplateSummaries()) {
+                    all.add(new TemplateSearchHit(summary, ""));
+                }
+                return all;
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (generation != searchGeneration) return;
+            snippets.clear();
+            ObservableList<TemplateSummary> data = FXCollections.observableArrayList();
+            for (TemplateSearchHit hit : task.getValue()) {
+                data.add(hit.template());
+                snippets.put(hit.template().id(), hit.snippet().replaceAll("\\s+", " ").strip());
+            }
+            templateTable.setItems(data);
+        });
+        task.setOnFailed(e -> {
+            if (generation != searchGeneration) return;
+            Throwable ex = task.getException();
+            System.err.println("Template search failed: " + (ex != null ? ex.getMessage() : "unknown error"));
+        });
+
+        Thread thread = new Thread(task, "template-search");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private void selectTemplate(TemplateModel template) {
+    private void selectTemplate(TemplateSummary template) {
         this.selectedTemplate = template;
-        nameField.setText(template.getName());
-        contentArea.setText(template.getContent());
+        nameField.setText(template.name());
+        String content = repository != null ? repository.loadContent(template.id()) : null;
+        contentArea.setText(content != null ? content : "");
     }
 
     @FXML
@@ -99,7 +161,7 @@ public class TemplateEditController {
         if (selectedTemplate == null) {
             repository.createTemplate(name, content);
         } else {
-            repository.updateTemplate(selectedTemplate.getId(), name, content);
+            repository.updateTemplate(selectedTemplate.id(), name, content);
         }
         
         loadTemplates();
@@ -120,7 +182,7 @@ public class TemplateEditController {
         
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            repository.deleteTemplate(selectedTemplate.getId());
+            repository.deleteTemplate(selectedTemplate.id());
             loadTemplates();
             handleNew();
         }
@@ -128,8 +190,10 @@ public class TemplateEditController {
 
     @FXML
     private void handleUse() {
-        String rawContent = contentArea.getText();
-        if (rawContent.isEmpty()) return;
+        String source = contentArea.getText();
+        if (source.isEmpty()) return;
+        Object key = selectedTemplate != null ? "db:" + selectedTemplate.id() : "editor";
+        String rawContent = TemplateEngine.render(key, source, bindings.get());
 
         LinkedHashMap<String, List<String>> sections = parseSections(rawContent);
         String finalOutput = buildOrderedOutput(sections);
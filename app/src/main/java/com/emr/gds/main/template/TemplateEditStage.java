@@ -7,11 +7,18 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class TemplateEditStage {
 
     public static void open(Consumer<String> onTemplateSelected) {
+        open(onTemplateSelected, Map::of);
+    }
+
+    /** Opens the editor; "Use Template" renders the body with {@code bindings} before handing it over. */
+    public static void open(Consumer<String> onTemplateSelected, Supplier<Map<String, ?>> bindings) {
         try {
             FXMLLoader loader = new FXMLLoader(TemplateEditStage.class.getResource("/fxml/template_editor.fxml"));
             Parent root = loader.load();
@@ -20,6 +27,7 @@ public class TemplateEditStage {
             // Initialize repository and callback
             controller.setRepository(new TemplateRepository());
             controller.setOnUseCallback(onTemplateSelected);
+            controller.setBindings(bindings);
 
             Stage stage = new Stage();
             stage.setTitle("EMR Template Editor (JavaFX)");
@@ -0,0 +1,50 @@
+package com.emr.gds.main.template;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiles template bodies once and keeps them by template key ({@code "db:12"}, {@code "library:LETTER"}, ...),
+ * so applying a personalised template costs a cache lookup and one render pass.
+ * <p>
+ * A cached entry is reused only while the body it was compiled from is unchanged; an edited template is
+ * recompiled on its next use. Bodies that do not compile are inserted as written, with the error logged.
+ */
+public final class TemplateEngine {
+
+    private static final int MAX_CACHED_TEMPLATES = 128;
+
+    private static final Map<Object, CompiledTemplate> CACHE = new LinkedHashMap<>(MAX_CACHED_TEMPLATES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, CompiledTemplate> eldest) {
+            return size() > MAX_CACHED_TEMPLATES;
+        }
+    };
+
+    private TemplateEngine() {
+    }
+
+    /** The compiled form of {@code source}, from the cache when {@code key} was last compiled from the same text. */
+    public static CompiledTemplate compile(Object key, String source) {
+        String body = source == null ? "" : source;
+        synchronized (CACHE) {
+            CompiledTemplate cached = CACHE.get(key);
+            if (cached != null && (cached.source() == body || cached.source().equals(body))) return cached;
+        }
+        CompiledTemplate compiled = CompiledTemplate.compile(body);
+        synchronized (CACHE) {
+            CACHE.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /** Renders {@code source} with {@code bindings}; a body with a syntax error is returned unchanged. */
+    public static String render(Object key, String source, Map<String, ?> bindings) {
+        try {
+            return compile(key, source).render(bindings);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Template " + key + " not rendered: " + e.getMessage());
+            return source == null ? "" : source;
+        }
+    }
+}
@@ -1,38 +1,77 @@
 package com.emr.gds.main.template;
 
+import com.emr.gds.main.db.SqliteDataSource;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TemplateRepository {
+    /** Markers placed around matched terms in {@link TemplateSearchHit#snippet()}. */
+    public static final String HIGHLIGHT_OPEN = "«";
+    public static final String HIGHLIGHT_CLOSE = "»";
+
     private static final String DB_FILENAME = "emr_templates.db";
-    
-    // Using a method to get connection to avoid keeping it open unnecessarily, 
-    // or we could manage a connection pool. For this scale, opening/closing or a single persistent connection is fine.
-    // Here we'll implement a simple persistent connection pattern similar to the original code.
-    
-    private Connection conn;
+    private static final int MAX_CACHED_CONTENTS = 64;
+
+    private static final String LIST_SQL = "SELECT id, name FROM templates ORDER BY name;";
+    private static final String CONTENT_SQL = "SELECT content FROM templates WHERE id = ?;";
+    private static final String INSERT_SQL = "INSERT INTO templates (name, content) VALUES (?, ?);";
+    private static final String LAST_ID_SQL = "SELECT last_insert_rowid();";
+    private static final String UPDATE_SQL = "UPDATE templates SET name = ?, content = ? WHERE id = ?;";
+    private static final String DELETE_SQL = "DELETE FROM templates WHERE id = ?;";
+    // Name matches weigh ten times more than body matches; bm25() is lower for better matches.
+    private static final String SEARCH_SQL =
+            "SELECT t.id, t.name, snippet(templates_fts, -1, '" + HIGHLIGHT_OPEN + "', '" + HIGHLIGHT_CLOSE + "', '…', 12) " +
+            "FROM templates_fts JOIN templates t ON t.id = templates_fts.rowid " +
+            "WHERE templates_fts MATCH ? ORDER BY bm25(templates_fts, 10.0, 1.0) LIMIT ?;";
+    private static final String SYNC_STATE_SQL = "SELECT store_id, version FROM template_sync WHERE id = 1;";
+    private static final String SAVE_SYNC_STATE_SQL = "INSERT OR REPLACE INTO template_sync (id, store_id, version) VALUES (1, ?, ?);";
+    private static final String REMOTE_IDS_SQL = "SELECT remote_id FROM templates WHERE remote_id IS NOT NULL;";
+    private static final String UPDATE_REMOTE_SQL = "UPDATE templates SET name = ?, content = ? WHERE remote_id = ?;";
+    private static final String INSERT_REMOTE_SQL = "INSERT INTO templates (name, content, remote_id) VALUES (?, ?, ?);";
+    private static final String DELETE_REMOTE_SQL = "DELETE FROM templates WHERE remote_id = ?;";
+    private static final String SEARCH_FALLBACK_SQL =
+            "SELECT id, name FROM templates WHERE name LIKE ? ESCAPE '\\' OR content LIKE ? ESCAPE '\\' ORDER BY name LIMIT ?;";
+
+    // Connections are borrowed per operation from the shared pool for emr_templates.db,
+    // so any number of repositories can be open without holding a connection each.
+    // Statements use constant SQL, so each pooled connection compiles them once.
+
+    // Template bodies by id, one cache per database file: repositories on the same file (editor windows, the
+    // sync job) share it, so a write through one is seen by all, while repositories on other files stay apart.
+    private static final Map<Path, ContentCache> CONTENT_CACHES = new ConcurrentHashMap<>();
+
+    private SqliteDataSource dataSource;
+    private ContentCache contentCache;
+    private boolean ftsAvailable;
 
     public TemplateRepository() {
+        this(null);
+    }
+
+    /** Repository over another template database file (tests, import tools). */
+    public TemplateRepository(Path dbFile) {
         try {
-            initConnection();
+            initConnection(dbFile != null ? dbFile : getDbPath());
             createTableIfNotExists();
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize template database", e);
         }
     }
 
-    private void initConnection() throws ClassNotFoundException, SQLException {
+    private void initConnection(Path dbPath) throws ClassNotFoundException, SQLException {
         Class.forName("org.sqlite.JDBC");
-        Path dbPath = getDbPath();
         try {
             if (!Files.exists(dbPath.getParent())) {
                 Files.createDirectories(dbPath.getParent());
@@ -40,39 +79,84 @@ public class TemplateRepository {
         } catch (Exception e) {
             System.err.println("Failed to create DB directory: " + e.getMessage());
         }
-        
-        String url = "jdbc:sqlite:" + dbPath.toAbsolutePath();
-        this.conn = DriverManager.getConnection(url);
+
+        this.dataSource = SqliteDataSource.forFile(dbPath);
+        this.contentCache = CONTENT_CACHES.computeIfAbsent(dbPath.toAbsolutePath().normalize(), p -> new ContentCache());
     }
 
     private Path getDbPath() {
-        Path p = Paths.get("").toAbsolutePath();
-        while (p != null && !Files.exists(p.resolve("gradlew")) && !Files.exists(p.resolve(".git"))) {
-            p = p.getParent();
-        }
-        if (p == null) p = Paths.get("").toAbsolutePath();
-        return p.resolve("app").resolve("db").resolve(DB_FILENAME);
+        return SqliteDataSource.repoRoot().resolve("app").resolve("db").resolve(DB_FILENAME);
     }
 
     private void createTableIfNotExists() {
         String sql = "CREATE TABLE IF NOT EXISTS templates (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, content TEXT);";
-        try (Statement stmt = conn.createStatement()) {
+        // Ordered listing reads (name, rowid) straight from this index without touching the bodies.
+        String indexSql = "CREATE INDEX IF NOT EXISTS idx_templates_name ON templates(name);";
+        try (Connection conn = dataSource.getWriteConnection(); Statement stmt = conn.createStatement()) {
             stmt.execute(sql);
+            stmt.execute(indexSql);
+            // Server id of templates that came from the template server; NULL for templates made here.
+            boolean hasRemoteId = false;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(templates);")) {
+                while (rs.next()) {
+                    if ("remote_id".equals(rs.getString("name"))) hasRemoteId = true;
+                }
+            }
+            if (!hasRemoteId) {
+                stmt.execute("ALTER TABLE templates ADD COLUMN remote_id TEXT;");
+            }
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_templates_remote_id ON templates(remote_id);");
+            stmt.execute("CREATE TABLE IF NOT EXISTS template_sync (id INTEGER PRIMARY KEY CHECK (id = 1), store_id TEXT, version INTEGER NOT NULL);");
         } catch (SQLException e) {
             System.err.println("Failed to create templates table: " + e.getMessage());
         }
+        ftsAvailable = createFullTextIndex();
+    }
+
+    /**
+     * Creates the FTS5 index over (name, content) as an external-content table kept in step with
+     * {@code templates} by triggers, and fills it once from the existing rows when it is first created.
+     * Returns {@code false} if the SQLite build has no FTS5, in which case search falls back to LIKE.
+     */
+    private boolean createFullTextIndex() {
+        try (Connection conn = dataSource.getWriteConnection(); Statement stmt = conn.createStatement()) {
+            boolean exists;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'templates_fts';")) {
+                exists = rs.next();
+            }
+            conn.setAutoCommit(false);
+            try {
+                stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS templates_fts USING fts5(" +
+                        "name, content, content='templates', content_rowid='id', " +
+                        "tokenize='unicode61 remove_diacritics 2', prefix='2 3');");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS templates_fts_ai AFTER INSERT ON templates BEGIN " +
+                        "INSERT INTO templates_fts(rowid, name, content) VALUES (new.id, new.name, new.content); END;");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS templates_fts_ad AFTER DELETE ON templates BEGIN " +
+                        "INSERT INTO templates_fts(templates_fts, rowid, name, content) VALUES ('delete', old.id, old.name, old.content); END;");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS templates_fts_au AFTER UPDATE ON templates BEGIN " +
+                        "INSERT INTO templates_fts(templates_fts, rowid, name, content) VALUES ('delete', old.id, old.name, old.content); " +
+                        "INSERT INTO templates_fts(rowid, name, content) VALUES (new.id, new.name, new.content); END;");
+                if (!exists) {
+                    stmt.execute("INSERT INTO templates_fts(templates_fts) VALUES ('rebuild');");
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Full-text template search unavailable, using LIKE: " + e.getMessage());
+            return false;
+        }
     }
 
-    public List<TemplateModel> getAllTemplates() {
-        List<TemplateModel> list = new ArrayList<>();
-        String sql = "SELECT id, name, content FROM templates ORDER BY name;";
-        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+    /** Ids and names of all templates, ordered by name. Bodies are not read. */
+    public List<TemplateSummary> listTemplateSummaries() {
+        List<TemplateSummary> list = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(LIST_SQL); ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                list.add(new TemplateModel(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("content")
-                ));
+                list.add(new TemplateSummary(rs.getInt(1), rs.getString(2)));
             }
         } catch (SQLException e) {
             System.err.println("Failed to load templates: " + e.getMessage());
@@ -80,46 +164,238 @@ public class TemplateRepository {
         return list;
     }
 
-    public void createTemplate(String name, String content) {
-        String sql = "INSERT INTO templates (name, content) VALUES (?, ?);";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    /** Body of one template, from the cache when possible; {@code null} if it does not exist. */
+    public String loadContent(int id) {
+        ContentCache.Lookup cached = contentCache.get(id);
+        if (cached.content() != null) return cached.content();
+        try (Connection conn = dataSource.getConnection(); PreparedStatement ps = conn.prepareStatement(CONTENT_SQL)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                String content = rs.getString(1) != null ? rs.getString(1) : "";
+                contentCache.putIfUnchanged(id, content, cached.generation());
+                return content;
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to load template " + id + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Templates matching every word of {@code query} as a prefix, best first (BM25, name weighted over body),
+     * each with a highlighted snippet. A blank query returns nothing.
+     */
+    public List<TemplateSearchHit> search(String query, int limit) {
+        List<String> words = searchWords(query);
+        List<TemplateSearchHit> hits = new ArrayList<>();
+        if (words.isEmpty() || limit <= 0) return hits;
+
+        try (Connection conn = dataSource.getConnection()) {
+            if (ftsAvailable) {
+                StringBuilder match = new StringBuilder();
+                for (String word : words) {
+                    if (match.length() > 0) match.append(' ');
+                    match.append('"').append(word.replace("\"", "\"\"")).append("\"*");
+                }
+                try (PreparedStatement ps = conn.prepareStatement(SEARCH_SQL)) {
+                    ps.setString(1, match.toString());
+                    ps.setInt(2, limit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            hits.add(new TemplateSearchHit(new TemplateSummary(rs.getInt(1), rs.getString(2)), rs.getString(3)));
+                        }
+                    }
+                }
+            } else {
+                String pattern = "%" + String.join(" ", words).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+                try (PreparedStatement ps = conn.prepareStatement(SEARCH_FALLBACK_SQL)) {
+                    ps.setString(1, pattern);
+                    ps.setString(2, pattern);
+                    ps.setInt(3, limit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            hits.add(new TemplateSearchHit(new TemplateSummary(rs.getInt(1), rs.getString(2)), ""));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to search templates: " + e.getMessage());
+        }
+        return hits;
+    }
+
+    /** Letter/digit runs of the query; FTS syntax characters typed by the user are treated as separators. */
+    private static List<String> searchWords(String query) {
+        List<String> words = new ArrayList<>();
+        if (query == null) return words;
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    /** Full template, with its body loaded through {@link #loadContent(int)}. */
+    public TemplateModel loadTemplate(TemplateSummary summary) {
+        String content = loadContent(summary.id());
+        return content == null ? null : new TemplateModel(summary.id(), summary.name(), content);
+    }
+
+    /** Inserts a template and returns its id, or -1 if it could not be saved. */
+    public int createTemplate(String name, String content) {
+        try (Connection conn = dataSource.getWriteConnection();
+             PreparedStatement ps = conn.prepareStatement(INSERT_SQL);
+             PreparedStatement lastId = conn.prepareStatement(LAST_ID_SQL)) {
             ps.setString(1, name);
             ps.setString(2, content);
             ps.executeUpdate();
+            try (ResultSet rs = lastId.executeQuery()) {
+                int id = rs.next() ? rs.getInt(1) : -1;
+                if (id >= 0) contentCache.put(id, content);
+                return id;
+            }
         } catch (SQLException e) {
             System.err.println("Failed to create template: " + e.getMessage());
+            return -1;
         }
     }
 
     public void updateTemplate(int id, String name, String content) {
-        String sql = "UPDATE templates SET name = ?, content = ? WHERE id = ?;";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getWriteConnection(); PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
             ps.setString(1, name);
             ps.setString(2, content);
             ps.setInt(3, id);
             ps.executeUpdate();
+            contentCache.put(id, content);
         } catch (SQLException e) {
+            contentCache.remove(id);
             System.err.println("Failed to update template: " + e.getMessage());
         }
     }
 
     public void deleteTemplate(int id) {
-        String sql = "DELETE FROM templates WHERE id = ?;";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getWriteConnection(); PreparedStatement ps = conn.prepareStatement(DELETE_SQL)) {
             ps.setInt(1, id);
             ps.executeUpdate();
         } catch (SQLException e) {
             System.err.println("Failed to delete template: " + e.getMessage());
+        } finally {
+            contentCache.remove(id);
         }
     }
 
-    public void close() {
-        if (conn != null) {
-            try {
-                conn.close();
+    // ================================
+    // Server sync
+    // ================================
+
+    /** Server store id and version of the last applied delta; version 0 if never synced. */
+    public record SyncState(String storeId, long version) {}
+
+    public SyncState syncState() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SYNC_STATE_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? new SyncState(rs.getString(1), rs.getLong(2)) : new SyncState(null, 0);
+        }
+    }
+
+    /**
+     * Applies a server delta in one transaction: changed templates are updated in place or inserted,
+     * deleted ones removed, and the synced version saved with them, so a failed sync leaves the previous
+     * state and is simply retried from the same version. A full delta also removes server templates that
+     * are no longer listed. Templates created locally (no server id) are never touched; local edits to a
+     * server template are overwritten when the server copy next changes.
+     *
+     * @return the number of templates inserted, updated or deleted
+     */
+    public int applyDelta(TemplateDelta delta) throws SQLException {
+        int applied = 0;
+        try (Connection conn = dataSource.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement update = conn.prepareStatement(UPDATE_REMOTE_SQL);
+                 PreparedStatement insert = conn.prepareStatement(INSERT_REMOTE_SQL);
+                 PreparedStatement delete = conn.prepareStatement(DELETE_REMOTE_SQL);
+                 PreparedStatement saveState = conn.prepareStatement(SAVE_SYNC_STATE_SQL)) {
+                List<String> removed = new ArrayList<>(delta.deleted());
+                if (delta.full()) {
+                    Set<String> listed = new HashSet<>();
+                    for (TemplateDelta.Remote t : delta.changed()) listed.add(t.id());
+                    try (PreparedStatement ps = conn.prepareStatement(REMOTE_IDS_SQL); ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            if (!listed.contains(rs.getString(1))) removed.add(rs.getString(1));
+                        }
+                    }
+                }
+                for (String remoteId : removed) {
+                    delete.setString(1, remoteId);
+                    delete.addBatch();
+                }
+                for (int n : delete.executeBatch()) applied += Math.max(n, 0);
+
+                for (TemplateDelta.Remote t : delta.changed()) {
+                    update.setString(1, t.name());
+                    update.setString(2, t.body());
+                    update.setString(3, t.id());
+                    if (update.executeUpdate() == 0) {
+                        insert.setString(1, t.name());
+                        insert.setString(2, t.body());
+                        insert.setString(3, t.id());
+                        insert.executeUpdate();
+                    }
+                    applied++;
+                }
+
+                saveState.setString(1, delta.storeId());
+                saveState.setLong(2, delta.version());
+                saveState.executeUpdate();
+                conn.commit();
             } catch (SQLException e) {
-                System.err.println("Error closing template database: " + e.getMessage());
+                conn.rollback();
+                throw e;
             }
+        } finally {
+            contentCache.clear();
+        }
+        return applied;
+    }
+
+    /**
+     * LRU of template bodies for one database file. Every write bumps the generation, so a read that raced a
+     * write does not cache the body it read before the write.
+     */
+    private static final class ContentCache {
+        record Lookup(String content, long generation) {}
+
+        private final Map<Integer, String> bodies = new LinkedHashMap<>(MAX_CACHED_CONTENTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > MAX_CACHED_CONTENTS;
+            }
+        };
+        private long generation;
+
+        synchronized Lookup get(int id) {
+            return new Lookup(bodies.get(id), generation);
+        }
+
+        synchronized void putIfUnchanged(int id, String content, long seenGeneration) {
+            if (seenGeneration == generation) bodies.put(id, content);
+        }
+
+        synchronized void put(int id, String content) {
+            generation++;
+            bodies.put(id, content != null ? content : "");
+        }
+
+        synchronized void remove(int id) {
+            generation++;
+            bodies.remove(id);
+        }
+
+        synchronized void clear() {
+            generation++;
+            bodies.clear();
         }
     }
 }
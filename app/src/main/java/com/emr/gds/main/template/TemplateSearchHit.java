@@ -0,0 +1,8 @@
+package com.emr.gds.main.template;
+
+/**
+ * One full-text search result: the matching template and a short excerpt around the match,
+ * with matched terms wrapped in {@link TemplateRepository#HIGHLIGHT_OPEN} / {@link TemplateRepository#HIGHLIGHT_CLOSE}.
+ */
+public record TemplateSearchHit(TemplateSummary template, String snippet) {
+}
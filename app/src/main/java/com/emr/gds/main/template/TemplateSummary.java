@@ -0,0 +1,9 @@
+package com.emr.gds.main.template;
+
+/** Id and name of a template, enough to list it; the body is fetched with {@link TemplateRepository#loadContent(int)}. */
+public record TemplateSummary(int id, String name) {
+    @Override
+    public String toString() {
+        return name;
+    }
+}
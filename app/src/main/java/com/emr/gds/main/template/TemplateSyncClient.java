@@ -0,0 +1,68 @@
+package com.emr.gds.main.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads template deltas from the server's {@code GET /api/v1/templates/changes?since=<version>}.
+ * Only templates written or deleted after {@code since} come back, so a workstation that is up to date
+ * downloads an empty list.
+ */
+public class TemplateSyncClient {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+
+    private final URI changesUri;
+    private final HttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** @param serverUrl base URL of the server, e.g. {@code http://emr-server:8080} */
+    public TemplateSyncClient(String serverUrl) {
+        String base = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        this.changesUri = URI.create(base + "/api/v1/templates/changes");
+        this.http = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+    }
+
+    public TemplateDelta fetchChanges(long since) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(changesUri + "?since=" + Math.max(since, 0)))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Template server answered " + response.statusCode() + " for " + request.uri());
+            }
+            return parse(mapper.readTree(body));
+        }
+    }
+
+    static TemplateDelta parse(JsonNode json) throws IOException {
+        if (json == null || !json.hasNonNull("storeId") || !json.has("version")) {
+            throw new IOException("Malformed template changes: missing storeId or version");
+        }
+        List<TemplateDelta.Remote> changed = new ArrayList<>();
+        for (JsonNode t : json.path("changed")) {
+            String id = t.path("id").asText(null);
+            if (id == null) throw new IOException("Malformed template changes: template without id");
+            changed.add(new TemplateDelta.Remote(id, t.path("name").asText(id), t.path("body").asText("")));
+        }
+        List<String> deleted = new ArrayList<>();
+        for (JsonNode id : json.path("deleted")) {
+            deleted.add(id.asText());
+        }
+        return new TemplateDelta(json.get("storeId").asText(), json.get("version").asLong(),
+                json.path("full").asBoolean(false), changed, deleted);
+    }
+}
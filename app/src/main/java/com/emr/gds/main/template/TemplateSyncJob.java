@@ -0,0 +1,93 @@
+package com.emr.gds.main.template;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@code emr_templates.db} in step with the template server by polling for deltas on a daemon thread.
+ * <p>
+ * Each run asks for changes since the locally saved version and applies them in one transaction through
+ * {@link TemplateRepository#applyDelta(TemplateDelta)}. If the server reports a different store id than last
+ * time (it was restarted or replaced), versions are not comparable and the run fetches the full set instead.
+ * Failures are logged and retried on the next run; the desktop keeps working with what it has.
+ * <p>
+ * Enabled by setting the server URL in the {@code gds.template.server} system property or the
+ * {@code GDS_TEMPLATE_SERVER} environment variable.
+ */
+public class TemplateSyncJob {
+
+    public static final String SERVER_PROPERTY = "gds.template.server";
+    public static final String SERVER_ENV = "GDS_TEMPLATE_SERVER";
+    private static final long DEFAULT_INTERVAL_SECONDS = 300;
+
+    private final TemplateRepository repository;
+    private final TemplateSyncClient client;
+    private ScheduledExecutorService scheduler;
+
+    public TemplateSyncJob(TemplateRepository repository, TemplateSyncClient client) {
+        this.repository = repository;
+        this.client = client;
+    }
+
+    /** The configured server URL, or {@code null} if sync is not enabled. */
+    public static String configuredServer() {
+        String url = System.getProperty(SERVER_PROPERTY);
+        if (url == null || url.isBlank()) url = System.getenv(SERVER_ENV);
+        return url == null || url.isBlank() ? null : url.strip();
+    }
+
+    /** Starts polling now and then every {@code intervalSeconds}; does nothing if already started. */
+    public synchronized void start(long intervalSeconds) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "template-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runQuietly, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void start() {
+        start(DEFAULT_INTERVAL_SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Fetches and applies one delta.
+     *
+     * @return the number of templates inserted, updated or deleted
+     */
+    public int syncOnce() throws IOException, InterruptedException, SQLException {
+        TemplateRepository.SyncState state = repository.syncState();
+        TemplateDelta delta = client.fetchChanges(state.version());
+        if (!delta.full() && !delta.storeId().equals(state.storeId())) {
+            delta = client.fetchChanges(0);
+        }
+        if (delta.isEmpty() && !delta.full() && delta.version() == state.version()) {
+            return 0;
+        }
+        return repository.applyDelta(delta);
+    }
+
+    private void runQuietly() {
+        try {
+            int applied = syncOnce();
+            if (applied > 0) {
+                System.out.println("Template sync: " + applied + " template(s) updated from server.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | SQLException | RuntimeException e) {
+            System.err.println("Template sync failed: " + e.getMessage());
+        }
+    }
+}
@@ -2,21 +2,18 @@ package com.emr.gds.soap.IMSFollowUp;
 
 import com.emr.gds.input.IAITextAreaManager;
 import com.emr.gds.main.custom_ui.IAMProblemAction;
+import com.emr.gds.main.db.SqliteDataSource;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -24,6 +21,8 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
@@ -43,8 +42,12 @@ public class PlanFollowupAction {
     private Stage editorStage;
     private TextArea editorTextArea;
     private TextField fuField, medsCodeField;
+    private ListView<PlanSuggestions.Suggestion> frequentPlansList;
+    private Button lastPlanButton;
     private final Map<String, String> abbrevMap = new HashMap<>();
-    private final PlanRepository planRepo;
+    private PlanHistoryWriter planHistory;
+
+    private static final int SUGGESTION_COUNT = 8;
 
     private static final String[] PLAN_TEMPLATES = {
             "1w", "2w", "4w", "1d", "3d", "7d", "1m", "3m", "6m", ":cd",
@@ -54,9 +57,9 @@ public class PlanFollowupAction {
     public PlanFollowupAction(IAITextAreaManager textAreaManager, IAMProblemAction problemAction) {
         this.textAreaManager = textAreaManager;
         this.problemAction = problemAction;
-        this.planRepo = new PlanRepository(getDbPath("plan_history.db"));
         initDatabases();
         createEditorWindow();
+        showSuggestions();
     }
 
     public void showAndWait() {
@@ -67,7 +70,7 @@ public class PlanFollowupAction {
         try {
             Class.forName("org.sqlite.JDBC");
             initAbbrevDatabase();
-            planRepo.init();
+            planHistory = PlanHistoryWriter.shared();
         } catch (Exception e) {
             showError("Failed to initialize databases: " + e.getMessage());
         }
@@ -76,8 +79,7 @@ public class PlanFollowupAction {
     private void initAbbrevDatabase() throws Exception {
         Path dbFile = getDbPath("abbreviations.db");
         if (!Files.exists(dbFile.getParent())) Files.createDirectories(dbFile.getParent());
-        String url = "jdbc:sqlite:" + dbFile.toAbsolutePath();
-        try (Connection conn = DriverManager.getConnection(url); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT * FROM abbreviations")) {
+        try (Connection conn = SqliteDataSource.forFile(dbFile).getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT * FROM abbreviations")) {
             while (rs.next()) {
                 abbrevMap.put(rs.getString("short"), rs.getString("full"));
             }
@@ -95,7 +97,7 @@ public class PlanFollowupAction {
         root.setCenter(createCenterSection());
         root.setBottom(createBottomSection());
 
-        editorStage.setScene(new Scene(root, 400, 600));
+        editorStage.setScene(new Scene(root, 400, 760));
     }
 
     private VBox createTopSection() {
@@ -117,6 +119,7 @@ public class PlanFollowupAction {
 
         return new VBox(10,
                 createQuickPlanPanel(),
+                createSuggestionPanel(),
                 new Label("Plan Text:"), editorTextArea,
                 new Label("Preview:"), previewArea
         );
@@ -150,6 +153,55 @@ public class PlanFollowupAction {
         return grid;
     }
 
+    private VBox createSuggestionPanel() {
+        frequentPlansList = new ListView<>();
+        frequentPlansList.setPrefHeight(120);
+        frequentPlansList.setPlaceholder(new Label("No saved plans yet"));
+        frequentPlansList.setCellFactory(lv -> new ListCell<>() {
+            @Override
+            protected void updateItem(PlanSuggestions.Suggestion item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : item.text() + "  (" + item.count() + ")");
+            }
+        });
+        frequentPlansList.setOnMouseClicked(e -> {
+            PlanSuggestions.Suggestion selected = frequentPlansList.getSelectionModel().getSelectedItem();
+            if (e.getClickCount() == 2 && selected != null) {
+                editorTextArea.appendText("\n- " + selected.text());
+            }
+        });
+
+        lastPlanButton = new Button("Insert Last Plan");
+        lastPlanButton.setDisable(true);
+        return new VBox(5, new Label("Frequent Plans (double-click to add):"), frequentPlansList, lastPlanButton);
+    }
+
+    /** Fills the suggestion panel from the in-memory model, again once the saved history has been read. */
+    private void showSuggestions() {
+        if (planHistory == null) return;
+        PlanSuggestions suggestions = planHistory.suggestions();
+        fillSuggestions(suggestions);
+        if (!suggestions.whenLoaded().isDone()) {
+            suggestions.whenLoaded().thenRun(() -> Platform.runLater(() -> fillSuggestions(suggestions)));
+        }
+    }
+
+    private void fillSuggestions(PlanSuggestions suggestions) {
+        List<PlanSuggestions.Suggestion> top = suggestions.top(SUGGESTION_COUNT);
+        frequentPlansList.getItems().setAll(top);
+
+        String lastPlan = suggestions.lastPlan(currentPatientId());
+        lastPlanButton.setDisable(lastPlan == null);
+        lastPlanButton.setOnAction(e -> {
+            if (lastPlan != null) editorTextArea.appendText("\n" + lastPlan);
+        });
+    }
+
+    private String currentPatientId() {
+        String patientId = problemAction == null ? null : problemAction.getCurrentPatientId();
+        return patientId == null || patientId.isBlank() ? null : patientId;
+    }
+
     private HBox createBottomSection() {
         Button applyButton = new Button("Apply Changes");
         applyButton.setOnAction(e -> applyChanges());
@@ -187,13 +239,7 @@ public class PlanFollowupAction {
                 if (problemAction != null) {
                     problemAction.updateAndRedrawScratchpad("P>", expandedText);
                 }
-                new Thread(() -> {
-                    try {
-                        planRepo.savePlan("P>", expandedText, null, LocalDate.now().toString());
-                    } catch (Exception ex) {
-                        System.err.println("Failed to save plan history: " + ex.getMessage());
-                    }
-                }).start();
+                savePlanHistory(expandedText);
                 editorStage.close();
             } catch (Exception ex) {
                 showError("Failed to apply changes: " + ex.getMessage());
@@ -203,6 +249,17 @@ public class PlanFollowupAction {
         Platform.runLater(appendAction);
     }
 
+    private void savePlanHistory(String planText) {
+        if (planHistory == null) return;
+        // submit() never blocks the FX thread; when it refuses, say so rather than lose the plan silently.
+        if (!planHistory.submit("P>", planText, currentPatientId(), LocalDate.now().toString())) {
+            System.err.println("Plan history is unavailable or backed up; this plan was not recorded.");
+            Platform.runLater(() -> new Alert(Alert.AlertType.WARNING,
+                    "The plan was added to the note, but it could not be saved to plan history "
+                            + "(the history is unavailable or still writing earlier plans).").show());
+        }
+    }
+
     private String expandAbbreviations(String text) {
         return Arrays.stream(text.split("((?<= )|(?= ))"))
                 .map(word -> {
@@ -239,11 +296,7 @@ public class PlanFollowupAction {
     }
 
     private Path getDbPath(String fileName) {
-        Path p = Paths.get("").toAbsolutePath();
-        while (p != null && !Files.exists(p.resolve("gradlew"))) {
-            p = p.getParent();
-        }
-        return (p != null) ? p.resolve("app/db/").resolve(fileName) : Paths.get("app/db").resolve(fileName);
+        return SqliteDataSource.repoRoot().resolve("app").resolve("db").resolve(fileName);
     }
 
     private Label createStyledLabel(String text, String style) {
@@ -255,30 +308,4 @@ public class PlanFollowupAction {
     private void showError(String message) {
         Platform.runLater(() -> new Alert(Alert.AlertType.ERROR, message).showAndWait());
     }
-
-    static final class PlanRepository {
-        private final Path dbFile;
-
-        PlanRepository(Path dbFile) {
-            this.dbFile = Objects.requireNonNull(dbFile);
-        }
-
-        void init() throws Exception {
-            Files.createDirectories(dbFile.getParent());
-            try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + dbFile.toAbsolutePath()); Statement st = c.createStatement()) {
-                st.executeUpdate("CREATE TABLE IF NOT EXISTS plan_history (id INTEGER PRIMARY KEY, created_at TEXT NOT NULL, section TEXT, content TEXT, patient_id TEXT, encounter_date TEXT);");
-            }
-        }
-
-        void savePlan(String section, String content, String patientId, String encounterDate) throws Exception {
-            try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + dbFile.toAbsolutePath()); PreparedStatement ps = c.prepareStatement("INSERT INTO plan_history (created_at, section, content, patient_id, encounter_date) VALUES (?,?,?,?,?)")) {
-                ps.setString(1, LocalDateTime.now().toString());
-                ps.setString(2, section);
-                ps.setString(3, content);
-                ps.setString(4, patientId);
-                ps.setString(5, encounterDate);
-                ps.executeUpdate();
-            }
-        }
-    }
 }
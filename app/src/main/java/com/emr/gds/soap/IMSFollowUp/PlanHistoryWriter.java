@@ -0,0 +1,179 @@
+package com.emr.gds.soap.IMSFollowUp;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived writer for {@code plan_history.db}.
+ * <p>
+ * Saved plans go onto a bounded queue and one daemon thread writes them, draining everything pending into a
+ * single transaction on the data source's write connection (whose cached insert statement is reused from batch
+ * to batch). {@link #submit} is called on the FX thread, so it never waits: when the disk falls behind and the
+ * queue fills, the entry is refused and the caller is told. {@link #close()} flushes the queue.
+ * <p>
+ * The writer also owns the {@link PlanSuggestions} model: it reads the existing history into it before writing
+ * its first batch, and records each batch there only once it has been committed, so the model never holds a
+ * plan the database lost.
+ */
+public final class PlanHistoryWriter {
+
+    /** One row of {@code plan_history}. */
+    public record PlanEntry(LocalDateTime createdAt, String section, String content, String patientId, String encounterDate) {}
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_BATCH = 128;
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+    private static final PlanEntry STOP = new PlanEntry(null, null, null, null, null);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO plan_history (created_at, section, content, patient_id, encounter_date) VALUES (?,?,?,?,?)";
+
+    private static PlanHistoryWriter shared;
+
+    private final SqliteDataSource dataSource;
+    private final BlockingQueue<PlanEntry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private final PlanSuggestions suggestions = new PlanSuggestions();
+    private volatile boolean closing;
+
+    PlanHistoryWriter(Path dbFile) throws IOException, SQLException {
+        Files.createDirectories(dbFile.getParent());
+        this.dataSource = SqliteDataSource.forFile(dbFile);
+        try (Connection c = dataSource.getWriteConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS plan_history (id INTEGER PRIMARY KEY, created_at TEXT NOT NULL, section TEXT, content TEXT, patient_id TEXT, encounter_date TEXT);");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_plan_history_patient_date ON plan_history(patient_id, encounter_date)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_plan_history_section ON plan_history(section)");
+        }
+        writer = new Thread(this::writeLoop, "plan-history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** The application's writer for {@code app/db/plan_history.db}, created (with its table) on first use. */
+    public static synchronized PlanHistoryWriter shared() throws IOException, SQLException {
+        if (shared == null) {
+            shared = new PlanHistoryWriter(SqliteDataSource.repoRoot().resolve("app").resolve("db").resolve("plan_history.db"));
+        }
+        return shared;
+    }
+
+    /** Flushes and stops the shared writer if it was ever started. Called on application shutdown. */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /** Frequency-ranked plan lines and each patient's last plan, kept current as plans are saved. */
+    public PlanSuggestions suggestions() {
+        return suggestions;
+    }
+
+    /**
+     * Queues a plan for saving without blocking.
+     * @return false if the entry was not queued (writer closed or stopped, or the queue is full).
+     */
+    public boolean submit(String section, String content, String patientId, String encounterDate) {
+        if (closing || !writer.isAlive()) return false;
+        return queue.offer(new PlanEntry(LocalDateTime.now(), section, content, patientId, encounterDate));
+    }
+
+    /** Writes everything queued, then stops the writer. Waits up to a few seconds in all. */
+    public void close() {
+        if (closing) return;
+        closing = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CLOSE_TIMEOUT_SECONDS);
+        try {
+            // A dead writer never frees queue space, so neither the offer nor the join may wait unbounded.
+            if (writer.isAlive() && queue.offer(STOP, CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                writer.join(Math.max(1, remaining));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive() || !queue.isEmpty()) {
+            System.err.println("Plan history writer did not finish; " + queue.size() + " plan(s) may be lost.");
+        }
+    }
+
+    private void writeLoop() {
+        loadSuggestions();
+        List<PlanEntry> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            if (batch.remove(STOP)) {
+                stopping = true;
+                queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    write(batch);
+                    for (PlanEntry e : batch) {
+                        suggestions.record(e.patientId(), e.content());
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Failed to save " + batch.size() + " plan history entries: " + e.getMessage());
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /** Reads the saved history into the model. Runs before the first batch, so queued plans aren't counted twice. */
+    private void loadSuggestions() {
+        List<PlanSuggestions.HistoryRow> rows = new ArrayList<>();
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT patient_id, content FROM plan_history ORDER BY id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new PlanSuggestions.HistoryRow(rs.getString(1), rs.getString(2)));
+            }
+            suggestions.loadHistory(rows);
+        } catch (SQLException e) {
+            System.err.println("Failed to load plan history suggestions: " + e.getMessage());
+            suggestions.markLoadFailed(e);
+        }
+    }
+
+    private void write(List<PlanEntry> batch) throws SQLException {
+        try (Connection c = dataSource.getWriteConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(INSERT_SQL)) {
+                for (PlanEntry e : batch) {
+                    ps.setString(1, e.createdAt().toString());
+                    ps.setString(2, e.section());
+                    ps.setString(3, e.content());
+                    ps.setString(4, e.patientId());
+                    ps.setString(5, e.encounterDate());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+}
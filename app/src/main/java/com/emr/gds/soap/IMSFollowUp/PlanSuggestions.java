@@ -0,0 +1,129 @@
+package com.emr.gds.soap.IMSFollowUp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory frequency model of saved plan lines, plus each patient's most recent plan.
+ * <p>
+ * Each line of a saved plan is normalised (bullet stripped, whitespace collapsed, case folded) and counted under
+ * a 64-bit hash of that form, keeping the most recent original wording for display. The model is filled once
+ * from {@code plan_history} and then updated by every {@link #record} as plans are saved, so {@link #top} and
+ * {@link #lastPlan} never go back to the database.
+ */
+public final class PlanSuggestions {
+
+    /** A plan line with how often and how recently it was used. */
+    public record Suggestion(String text, int count, long lastUsed) {}
+
+    private static final Pattern BULLET = Pattern.compile("^\\s*(?:[-*•]|\\d+[.)])\\s*");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Comparator<Suggestion> BY_USE =
+            Comparator.comparingInt(Suggestion::count).thenComparingLong(Suggestion::lastUsed);
+
+    private final Map<Long, Suggestion> lines = new HashMap<>();
+    private final Map<String, String> lastPlanByPatient = new HashMap<>();
+    private final CompletableFuture<PlanSuggestions> loaded = new CompletableFuture<>();
+    private long sequence;
+
+    /** A saved {@code plan_history} row, oldest first when passed to {@link #loadHistory}. */
+    record HistoryRow(String patientId, String content) {}
+
+    /** Counts every line of {@code content} and makes it the patient's last plan. */
+    public synchronized void record(String patientId, String content) {
+        if (content == null || content.isBlank()) return;
+        count(content, ++sequence);
+        lastPlanByPatient.put(patientKey(patientId), content.strip());
+    }
+
+    /**
+     * Adds the saved history underneath anything already recorded this session: history counts toward the
+     * totals, but a plan recorded while the history was loading stays the newer one.
+     */
+    synchronized void loadHistory(List<HistoryRow> rows) {
+        long seq = -rows.size();
+        Map<String, String> lastSaved = new HashMap<>();
+        for (HistoryRow row : rows) {
+            seq++;
+            if (row.content() == null || row.content().isBlank()) continue;
+            count(row.content(), seq);
+            lastSaved.put(patientKey(row.patientId()), row.content().strip());
+        }
+        lastSaved.forEach(lastPlanByPatient::putIfAbsent);
+        loaded.complete(this);
+    }
+
+    private void count(String content, long seq) {
+        for (String line : content.split("\\R")) {
+            String display = displayForm(line);
+            if (display.isEmpty()) continue;
+            lines.merge(hash(normalize(display)), new Suggestion(display, 1, seq), (a, b) -> {
+                Suggestion newer = a.lastUsed() >= b.lastUsed() ? a : b;
+                return new Suggestion(newer.text(), a.count() + b.count(), newer.lastUsed());
+            });
+        }
+    }
+
+    /** The {@code k} most used plan lines, most used first; ties go to the more recently used. */
+    public synchronized List<Suggestion> top(int k) {
+        if (k <= 0) return List.of();
+        PriorityQueue<Suggestion> heap = new PriorityQueue<>(k + 1, BY_USE);
+        for (Suggestion s : lines.values()) {
+            heap.add(s);
+            if (heap.size() > k) heap.poll();
+        }
+        List<Suggestion> result = new ArrayList<>(heap);
+        result.sort(BY_USE.reversed());
+        return result;
+    }
+
+    /** The patient's most recently saved plan, or null if none is known. Blank ids share one entry. */
+    public synchronized String lastPlan(String patientId) {
+        return lastPlanByPatient.get(patientKey(patientId));
+    }
+
+    public synchronized int size() {
+        return lines.size();
+    }
+
+    /** Completes once the saved history has been read in; until then the model only holds this session's plans. */
+    public CompletableFuture<PlanSuggestions> whenLoaded() {
+        return loaded;
+    }
+
+    void markLoadFailed(Throwable error) {
+        loaded.completeExceptionally(error);
+    }
+
+    static String displayForm(String line) {
+        return SPACES.matcher(BULLET.matcher(line).replaceFirst("")).replaceAll(" ").strip();
+    }
+
+    static String normalize(String displayForm) {
+        String s = displayForm.toLowerCase(Locale.ROOT);
+        int end = s.length();
+        while (end > 0 && ".,;:".indexOf(s.charAt(end - 1)) >= 0) end--;
+        return s.substring(0, end);
+    }
+
+    /** 64-bit FNV-1a; collisions at this width are not a practical concern for a personal plan vocabulary. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static String patientKey(String patientId) {
+        return patientId == null ? "" : patientId.trim();
+    }
+}
@@ -0,0 +1,53 @@
+package com.emr.gds.main.clinicalLab.db;
+
+import com.emr.gds.main.clinicalLab.model.LabFlag;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabResultSeriesTest {
+
+    private static LabResultSeries.Chunk chunkOf(LabFlag... flags) {
+        LabResultSeries series = new LabResultSeries();
+        for (int i = 0; i < flags.length; i++) {
+            series.insert(1_700_000_000_000L + i * 60_000L, 1.5 + i, flags[i]);
+        }
+        return series.chunk(0);
+    }
+
+    @Test
+    void testFlagsArePackedAsStableCodes() {
+        byte[] packed = LabResultSeries.pack(chunkOf(LabFlag.LOW, LabFlag.NORMAL, LabFlag.HIGH, LabFlag.UNKNOWN));
+        // The codes are part of the stored format; they must not follow the enum's declaration order.
+        assertArrayEquals(new byte[] {'L', 'N', 'H', '?'}, Arrays.copyOfRange(packed, packed.length - 4, packed.length));
+
+        LabResultSeries.Chunk chunk = LabResultSeries.unpack(packed);
+        LabResultSeries series = new LabResultSeries();
+        series.addLoadedChunk(chunk);
+        assertEquals(4, series.size());
+        assertEquals(LabFlag.LOW, series.flagAt(0));
+        assertEquals(LabFlag.NORMAL, series.flagAt(1));
+        assertEquals(LabFlag.HIGH, series.flagAt(2));
+        assertEquals(LabFlag.UNKNOWN, series.flagAt(3));
+        assertEquals(4.5, series.valueAt(3));
+    }
+
+    @Test
+    void testTruncatedOrUnknownFlagsAreRejected() {
+        byte[] packed = LabResultSeries.pack(chunkOf(LabFlag.HIGH, LabFlag.LOW));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> LabResultSeries.unpack(Arrays.copyOf(packed, packed.length - 1)));
+        assertEquals("Corrupt lab result chunk: missing flags", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class,
+                () -> LabResultSeries.unpack(Arrays.copyOf(packed, packed.length - 2 - Double.BYTES)));
+        assertEquals("Corrupt lab result chunk: missing values", e.getMessage());
+
+        byte[] badFlag = packed.clone();
+        badFlag[badFlag.length - 1] = 3;
+        e = assertThrows(IllegalArgumentException.class, () -> LabResultSeries.unpack(badFlag));
+        assertEquals("Corrupt lab result chunk: flag 3", e.getMessage());
+    }
+}
@@ -0,0 +1,76 @@
+package com.emr.gds.main.clinicalLab.db;
+
+import com.emr.gds.main.clinicalLab.db.LabResultSeries.Points;
+import com.emr.gds.main.db.SqliteDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabResultStoreTest {
+
+    private static final String TEST_DB_FILE = "test_lab_results.db";
+    private static final int HBA1C = 37;
+    private static final int TSH = 28;
+
+    @AfterEach
+    void tearDown() {
+        SqliteDataSource.closeAll();
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            File file = new File("app/db/" + TEST_DB_FILE + suffix);
+            if (file.exists()) file.delete();
+            File fileLocal = new File("db/" + TEST_DB_FILE + suffix);
+            if (fileLocal.exists()) fileLocal.delete();
+        }
+    }
+
+    @Test
+    void testAppendReloadAndQuery() throws Exception {
+        LabResultStore store = new LabResultStore(TEST_DB_FILE);
+        store.append("P001", HBA1C, 3000L, 7.1);
+        store.append("P001", HBA1C, 1000L, 8.2);   // back-dated
+        store.appendAll("P001", HBA1C, new long[]{4000L, 2000L}, new double[]{6.8, 7.6});
+        store.append("P001", TSH, 1500L, 2.3);
+        store.append("P002", HBA1C, 1000L, 5.4);
+
+        SqliteDataSource.closeAll();
+        LabResultStore reopened = new LabResultStore(TEST_DB_FILE);
+
+        assertEquals(4, reopened.count("P001", HBA1C));
+        Points all = reopened.range("P001", HBA1C, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertArrayEquals(new long[]{1000L, 2000L, 3000L, 4000L}, all.times());
+        assertArrayEquals(new double[]{8.2, 7.6, 7.1, 6.8}, all.values());
+
+        Points latest = reopened.latest("P001", HBA1C, 2);
+        assertArrayEquals(new long[]{3000L, 4000L}, latest.times());
+
+        Points window = reopened.range("P001", HBA1C, 2000L, 4000L);
+        assertArrayEquals(new double[]{7.6, 7.1}, window.values());
+
+        assertArrayEquals(new int[]{TSH, HBA1C}, reopened.testIds("P001"));
+        assertEquals(1, reopened.count("P002", HBA1C));
+        assertEquals(0, reopened.count("P003", HBA1C));
+    }
+
+    @Test
+    void testManyPointsSpanSeveralChunks() throws Exception {
+        LabResultStore store = new LabResultStore(TEST_DB_FILE);
+        int n = LabResultSeries.CHUNK_SIZE * 3 + 17;
+        long[] times = new long[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = (n - i) * 86_400_000L;   // newest first, so every chunk is split at least once
+            values[i] = n - i;
+        }
+        store.appendAll("P001", TSH, times, values);
+
+        SqliteDataSource.closeAll();
+        Points all = new LabResultStore(TEST_DB_FILE).latest("P001", TSH, Integer.MAX_VALUE);
+        assertEquals(n, all.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals((i + 1) * 86_400_000L, all.times()[i]);
+            assertEquals(i + 1, all.values()[i]);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.emr.gds.main.clinicalLab.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceRangeTest {
+
+    @Test
+    void testClosedRanges() {
+        assertEquals(ReferenceRange.between(70, 100), ReferenceRange.parse("70 - 100 mg/dL"));
+        assertEquals(ReferenceRange.between(-2, 2), ReferenceRange.parse("-2 to +2 mEq/L"));
+        assertEquals(ReferenceRange.between(0.4, 4.5), ReferenceRange.parse("0.4~4.5"));
+        assertNull(ReferenceRange.parse("100 - 70"), "Reversed bounds are not a range");
+
+        ReferenceRange range = ReferenceRange.parse("70 - 100 mg/dL");
+        assertEquals(LabFlag.LOW, range.classify(69.9));
+        assertEquals(LabFlag.NORMAL, range.classify(70));
+        assertEquals(LabFlag.NORMAL, range.classify(100));
+        assertEquals(LabFlag.HIGH, range.classify(100.1));
+        assertEquals(LabFlag.UNKNOWN, range.classify(Double.NaN));
+    }
+
+    @Test
+    void testOpenEndedRanges() {
+        ReferenceRange below = ReferenceRange.parse("<5");
+        assertEquals(new ReferenceRange(Double.NEGATIVE_INFINITY, false, 5, false), below);
+        assertEquals(LabFlag.NORMAL, below.classify(-1000));
+        assertEquals(LabFlag.NORMAL, below.classify(4.99));
+        assertEquals(LabFlag.HIGH, below.classify(5), "Upper bound of '<' is exclusive");
+
+        ReferenceRange above = ReferenceRange.parse(">10");
+        assertEquals(new ReferenceRange(10, false, Double.POSITIVE_INFINITY, false), above);
+        assertEquals(LabFlag.LOW, above.classify(10), "Lower bound of '>' is exclusive");
+        assertEquals(LabFlag.NORMAL, above.classify(1e9));
+
+        assertEquals(LabFlag.NORMAL, ReferenceRange.parse("≤ 5.7 %").classify(5.7));
+        assertEquals(LabFlag.NORMAL, ReferenceRange.parse("≥ 60").classify(60));
+        assertEquals(LabFlag.LOW, ReferenceRange.parse(">= 60").classify(59.9));
+
+        // A bound inside qualitative text
+        assertEquals(new ReferenceRange(Double.NEGATIVE_INFINITY, false, 0.9, false), ReferenceRange.parse("Negative (<0.9)"));
+        assertEquals(new ReferenceRange(10, false, Double.POSITIVE_INFINITY, false), ReferenceRange.parse("Immune (>10)"));
+    }
+
+    @Test
+    void testUnparsableText() {
+        assertNull(ReferenceRange.parse(null));
+        assertNull(ReferenceRange.parse("   "));
+        assertNull(ReferenceRange.parse("Negative"));
+        assertNull(ReferenceRange.parse("46, XY"));
+        assertNull(ReferenceRange.parse("< 1:20"), "Titers have no numeric interval");
+        assertNull(ReferenceRange.parse("1:40 - 1:80"));
+        assertThrows(IllegalArgumentException.class, () -> ReferenceRange.between(5, 1));
+    }
+}
@@ -0,0 +1,98 @@
+package com.emr.gds.main.clinicalLab.service;
+
+import com.emr.gds.main.clinicalLab.model.ClinicalLabItem;
+import com.emr.gds.main.clinicalLab.model.LabFlag;
+import com.emr.gds.main.clinicalLab.model.ReferenceRange;
+import com.emr.gds.main.clinicalLab.service.LabRangeClassifier.PanelResult;
+import com.emr.gds.main.clinicalLab.service.LabRangeClassifier.Sex;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabRangeClassifierTest {
+
+    private static final int HEMOGLOBIN = 3;
+    private static final int TSH = 5;
+    private static final int PSA = 8;
+    private static final int FERRITIN = 9;
+    private static final int KARYOTYPE = 12;
+
+    private static ClinicalLabItem item(int id, String name, String unit, Double low, Double high,
+                                        String maleRef, String femaleRef, String codes) {
+        return new ClinicalLabItem(id, "Test", name, unit, low, high, low, high, maleRef, femaleRef, codes, null);
+    }
+
+    private static LabRangeClassifier classifier() {
+        return LabRangeClassifier.build(List.of(
+                item(HEMOGLOBIN, "Hemoglobin (Hb)", "g/dL", null, null, "13.5 - 17.5 g/dL", "12.0 - 15.5 g/dL", "HGB"),
+                item(TSH, "Thyroid Stimulating Hormone (TSH)", "μIU/mL", null, null, "0.4 - 4.5", null, null),
+                item(PSA, "Prostate Specific Antigen", "ng/mL", null, null, "< 4.0 ng/mL", null, "PSA"),
+                item(FERRITIN, "Ferritin", "ng/mL", 30.0, 400.0, "see comment", "see comment", null),
+                item(KARYOTYPE, "Karyotype", null, null, null, "46, XY", "46, XX", null)));
+    }
+
+    @Test
+    void testSexSpecificRanges() {
+        LabRangeClassifier c = classifier();
+        assertEquals(LabFlag.LOW, c.classify(HEMOGLOBIN, Sex.MALE, 13.0));
+        assertEquals(LabFlag.NORMAL, c.classify(HEMOGLOBIN, Sex.FEMALE, 13.0));
+        assertEquals(LabFlag.NORMAL, c.classify(HEMOGLOBIN, Sex.MALE, 16.0));
+        assertEquals(LabFlag.HIGH, c.classify(HEMOGLOBIN, Sex.FEMALE, 16.0));
+        assertEquals(ReferenceRange.between(12.0, 15.5), c.rangeFor(HEMOGLOBIN, Sex.FEMALE));
+
+        // No female range: the male one is borrowed
+        assertEquals(c.rangeFor(TSH, Sex.MALE), c.rangeFor(TSH, Sex.FEMALE));
+        assertEquals(LabFlag.HIGH, c.classify(TSH, Sex.FEMALE, 5.8));
+    }
+
+    @Test
+    void testOpenEndedRange() {
+        LabRangeClassifier c = classifier();
+        assertEquals(LabFlag.NORMAL, c.classify(PSA, Sex.MALE, 0.0));
+        assertEquals(LabFlag.NORMAL, c.classify(PSA, Sex.MALE, 3.99));
+        assertEquals(LabFlag.HIGH, c.classify(PSA, Sex.MALE, 4.0));
+    }
+
+    @Test
+    void testUnparsableRanges() {
+        LabRangeClassifier c = classifier();
+        // Text does not parse, but the numeric columns form an interval
+        assertEquals(ReferenceRange.between(30, 400), c.rangeFor(FERRITIN, Sex.MALE));
+        assertEquals(LabFlag.LOW, c.classify(FERRITIN, Sex.FEMALE, 12));
+
+        // Neither text nor columns: nothing to compare against
+        assertNull(c.rangeFor(KARYOTYPE, Sex.MALE));
+        assertEquals(LabFlag.UNKNOWN, c.classify(KARYOTYPE, Sex.MALE, 46));
+        assertEquals(LabFlag.UNKNOWN, c.classify(999, Sex.MALE, 1.0), "Unknown test id");
+        assertEquals(LabFlag.UNKNOWN, c.classify(-1, Sex.MALE, 1.0));
+        assertEquals(LabFlag.UNKNOWN, c.classify(TSH, Sex.MALE, Double.NaN));
+    }
+
+    @Test
+    void testClassifyPanel() {
+        LabRangeClassifier c = classifier();
+        List<PanelResult> results = c.classifyPanel("TSH 5.8\n\nhgb: 11.2 g/dL\nPSA 1.1\nSodium 140\n", Sex.FEMALE);
+        assertEquals(4, results.size());
+
+        assertEquals(TSH, results.get(0).testId());
+        assertEquals("Thyroid Stimulating Hormone (TSH) 5.8 μIU/mL (H)", results.get(0).toEmrLine());
+        assertEquals(LabFlag.LOW, results.get(1).flag());
+        assertEquals(11.2, results.get(1).value());
+        assertEquals("Prostate Specific Antigen 1.1 ng/mL", results.get(2).toEmrLine());
+        assertFalse(results.get(3).recognised());
+        assertEquals("Sodium 140", results.get(3).toEmrLine());
+
+        assertEquals(HEMOGLOBIN, c.testIdFor("  hemoglobin "));
+        assertEquals(-1, c.testIdFor("Sodium"));
+    }
+
+    @Test
+    void testBatchClassify() {
+        LabRangeClassifier c = classifier();
+        LabFlag[] out = new LabFlag[3];
+        c.classify(new int[]{HEMOGLOBIN, PSA, KARYOTYPE}, new double[]{18, 2, 46}, Sex.MALE, out);
+        assertArrayEquals(new LabFlag[]{LabFlag.HIGH, LabFlag.NORMAL, LabFlag.UNKNOWN}, out);
+        assertThrows(IllegalArgumentException.class, () -> c.classify(new int[1], new double[2], Sex.MALE, new LabFlag[2]));
+    }
+}
@@ -0,0 +1,146 @@
+package com.emr.gds.main.clinicalLab.service;
+
+import com.emr.gds.main.clinicalLab.db.LabResultSeries.Points;
+import com.emr.gds.main.clinicalLab.db.LabResultStore;
+import com.emr.gds.main.clinicalLab.model.ClinicalLabItem;
+import com.emr.gds.main.clinicalLab.model.LabFlag;
+import com.emr.gds.main.db.SqliteDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabResultImporterTest {
+
+    private static final String TEST_DB_FILE = "test_lab_import.db";
+    private static final int HEMOGLOBIN = 3;
+    private static final int TSH = 5;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        SqliteDataSource.closeAll();
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            File file = new File("app/db/" + TEST_DB_FILE + suffix);
+            if (file.exists()) file.delete();
+            File fileLocal = new File("db/" + TEST_DB_FILE + suffix);
+            if (fileLocal.exists()) fileLocal.delete();
+        }
+    }
+
+    private static LabRangeClassifier classifier() {
+        return LabRangeClassifier.build(List.of(
+                new ClinicalLabItem(HEMOGLOBIN, "CBC", "Hemoglobin (Hb)", "g/dL", null, null, null, null,
+                        "13.5 - 17.5", "12.0 - 15.5", "HGB", null),
+                new ClinicalLabItem(TSH, "Thyroid", "TSH", "μIU/mL", null, null, null, null,
+                        "0.4 - 4.5", "0.4 - 4.5", "T001", null)));
+    }
+
+    private static long day(String date) {
+        return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private LabResultImporter.Result importText(LabResultStore store, String text) throws Exception {
+        Path file = tempDir.resolve("results.csv");
+        Files.writeString(file, text);
+        return new LabResultImporter(store, classifier(), ZoneOffset.UTC).importFile(file, null, null);
+    }
+
+    @Test
+    void testImportClassifiesAndStoresFlags() throws Exception {
+        String csv = """
+                patient_id,test_code,test_name,value,date,sex
+                P001,HGB,,13.0,2024-01-10,M
+                P001,HGB,,13.0,2024-02-10,F
+                P001,,TSH,"7,2",2024-01-10,M
+                P001,T001,,<0.01,2024-03-01,M
+                P002,XYZ,Sodium,140,2024-01-10,M
+                P002,HGB,,n/a,2024-01-10,M
+                P002,HGB,,14.0,yesterday,M
+                ,HGB,,14.0,2024-01-10,M
+                """;
+        LabResultStore store = new LabResultStore(TEST_DB_FILE);
+        LabResultImporter.Result result = importText(store, csv);
+
+        assertEquals(8, result.rowsRead());
+        assertEquals(4, result.imported());
+        assertEquals(0, result.duplicates());
+        assertEquals(4, result.rejected());
+        assertEquals(2, result.low());
+        assertEquals(1, result.normal());
+        assertEquals(1, result.high());
+        assertEquals(4, result.errors().size());
+        assertTrue(result.errors().get(0).startsWith("Line 6: unknown test"), result.errors().get(0));
+
+        // Flags are persisted with the points and survive a reopen
+        SqliteDataSource.closeAll();
+        LabResultStore reopened = new LabResultStore(TEST_DB_FILE);
+        Points hb = reopened.range("P001", HEMOGLOBIN, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertArrayEquals(new long[]{day("2024-01-10"), day("2024-02-10")}, hb.times());
+        assertArrayEquals(new LabFlag[]{LabFlag.LOW, LabFlag.NORMAL}, hb.flags(), "Male, then female range");
+        Points tsh = reopened.range("P001", TSH, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertArrayEquals(new double[]{7.2, 0.01}, tsh.values());
+        assertArrayEquals(new LabFlag[]{LabFlag.HIGH, LabFlag.LOW}, tsh.flags());
+    }
+
+    @Test
+    void testReimportingTheSameFileAddsNothing() throws Exception {
+        String tsv = "chart_no\tcode\tresult\tcollected_at\n"
+                + "P001\tHGB\t15.1\t2024-01-10 08:30\n"
+                + "P001\tHGB\t15.1\t2024-01-10 08:30\n"     // repeated within the file
+                + "P001\tHGB\t15.4\t2024-01-10 08:30\n"     // same time, different value: a separate result
+                + "P001\tT001\t2.0\t2024-01-11 09:00\n";
+        LabResultStore store = new LabResultStore(TEST_DB_FILE);
+
+        LabResultImporter.Result first = importText(store, tsv);
+        assertEquals(3, first.imported());
+        assertEquals(1, first.duplicates());
+
+        LabResultImporter.Result second = importText(store, tsv);
+        assertEquals(4, second.rowsRead());
+        assertEquals(0, second.imported());
+        assertEquals(4, second.duplicates());
+        assertEquals(0, second.rejected());
+
+        SqliteDataSource.closeAll();
+        LabResultStore reopened = new LabResultStore(TEST_DB_FILE);
+        assertEquals(2, reopened.count("P001", HEMOGLOBIN));
+        assertEquals(1, reopened.count("P001", TSH));
+
+        // An overlapping export only adds the rows that are new
+        LabResultImporter.Result overlap = importText(reopened, tsv + "P001\tT001\t2.6\t2024-02-11 09:00\n");
+        assertEquals(1, overlap.imported());
+        assertEquals(4, overlap.duplicates());
+        assertEquals(2, reopened.count("P001", TSH));
+    }
+
+    @Test
+    void testClosedStoreRejectsWrites() throws Exception {
+        LabResultStore store = new LabResultStore(TEST_DB_FILE);
+        assertTrue(store.append("P001", TSH, 1000L, 2.0, LabFlag.NORMAL));
+        assertFalse(store.append("P001", TSH, 1000L, 2.0, LabFlag.NORMAL));
+        store.close();
+        assertThrows(SQLException.class, () -> store.append("P001", TSH, 2000L, 2.1));
+    }
+
+    @Test
+    void testValueParsing() {
+        assertEquals(7.2, LabResultImporter.parseValue("7,2"));
+        assertEquals(1250, LabResultImporter.parseValue("1,250"));
+        assertEquals(135, LabResultImporter.parseValue("135 L"));
+        assertEquals(0.01, LabResultImporter.parseValue("<0.01"));
+        assertTrue(Double.isNaN(LabResultImporter.parseValue("Negative")));
+        assertEquals(';', LabResultImporter.detectDelimiter("patient;code;value;date"));
+        assertEquals(List.of("a", "b,c", "say \"hi\""), LabResultImporter.split("a,\"b,c\",\"say \"\"hi\"\"\"", ','));
+    }
+}
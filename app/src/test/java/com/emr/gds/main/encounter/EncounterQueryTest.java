@@ -0,0 +1,84 @@
+package com.emr.gds.main.encounter;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncounterQueryTest {
+
+    private static final int ALL = EncounterQuery.ALL_SECTIONS;
+
+    private static EncounterQuery.Node parse(String text) {
+        return EncounterQuery.of(text).parse();
+    }
+
+    private static EncounterQuery.Terms word(String token) {
+        return new EncounterQuery.Terms(List.of(token), ALL);
+    }
+
+    private static int section(String title) {
+        return 1 << EncounterSnapshot.SECTIONS.indexOf(title);
+    }
+
+    @Test
+    void testWordsAreAndedByDefault() {
+        assertEquals(new EncounterQuery.And(word("tsh"), word("levothyroxine")), parse("TSH levothyroxine"));
+        assertEquals(new EncounterQuery.And(word("tsh"), word("levothyroxine")), parse("tsh AND levothyroxine"));
+        assertEquals(new EncounterQuery.And(new EncounterQuery.And(word("a1"), word("b2")), word("c3")), parse("a1 b2 c3"));
+    }
+
+    @Test
+    void testOrBindsLooserThanAnd() {
+        assertEquals(new EncounterQuery.Or(new EncounterQuery.And(word("graves"), word("trab")), word("goiter")),
+                parse("graves trab OR goiter"));
+        assertEquals(new EncounterQuery.And(word("graves"), new EncounterQuery.Or(word("trab"), word("goiter"))),
+                parse("graves (trab OR goiter)"));
+    }
+
+    @Test
+    void testNegation() {
+        assertEquals(new EncounterQuery.And(word("thyroid"), new EncounterQuery.Not(word("metformin"))),
+                parse("thyroid -metformin"));
+        assertEquals(new EncounterQuery.And(word("thyroid"), new EncounterQuery.Not(word("metformin"))),
+                parse("thyroid NOT metformin"));
+        assertEquals(new EncounterQuery.Not(new EncounterQuery.Or(word("x1"), word("y2"))), parse("-(x1 OR y2)"));
+        assertEquals(new EncounterQuery.And(word("follow"), word("up")), parse("follow - up"), "A lone '-' is not a negation");
+    }
+
+    @Test
+    void testPhrasesAndSectionPrefixes() {
+        assertEquals(new EncounterQuery.Terms(List.of("continue", "current"), ALL), parse("\"Continue current\""));
+        assertEquals(new EncounterQuery.Terms(List.of("methimazole"), section("A>")), parse("a:methimazole"));
+        assertEquals(new EncounterQuery.Terms(List.of("continue", "current"), section("P>")), parse("p:\"continue current\""));
+        assertEquals(new EncounterQuery.Terms(List.of("trab"), section("O>")), parse("o>:trab"));
+        assertEquals(new EncounterQuery.Terms(List.of("goiter"), section("Physical Exam>")), parse("pe:goiter"));
+        assertEquals(new EncounterQuery.Terms(List.of("goiter"), 1 << EncounterQuery.PROBLEM_LIST_SLOT),
+                parse("problems:goiter"));
+        assertEquals(new EncounterQuery.Terms(List.of("f", "u"), ALL), parse("F/U"), "Split words match as a phrase");
+        assertEquals(new EncounterQuery.Terms(List.of("xyz", "abc"), ALL), parse("xyz:abc"), "Unknown prefixes are text");
+    }
+
+    @Test
+    void testEmptyQueries() {
+        assertNull(parse(null));
+        assertNull(parse("   "));
+        assertNull(parse("// --"));
+        assertEquals(word("tsh"), parse("tsh ///"), "Punctuation-only terms are dropped");
+        assertEquals(new EncounterQuery.Terms(List.of("unclosed", "phrase"), ALL), parse("\"unclosed phrase"));
+    }
+
+    @Test
+    void testMalformedQueriesAreRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parse("(tsh OR t4"));
+        assertEquals("Missing ')' in query", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class, () -> parse("tsh)"));
+        assertEquals("Unexpected ')' in query", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class, () -> parse("tsh OR"));
+        assertEquals("Query ends unexpectedly", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class, () -> parse("OR tsh"));
+        assertEquals("Unexpected 'OR' in query", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class, () -> parse("tsh NOT"));
+        assertEquals("Query ends unexpectedly", e.getMessage());
+    }
+}
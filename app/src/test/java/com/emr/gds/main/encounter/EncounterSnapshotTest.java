@@ -0,0 +1,74 @@
+package com.emr.gds.main.encounter;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncounterSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        SqliteDataSource.closeAll();
+    }
+
+    /** These numbers are stored in encounter_sections.section_no; changing one misreads every archived note. */
+    @Test
+    void testStoredSlotNumbersArePinned() {
+        assertEquals(List.of("CC>", "PI>", "ROS>", "PMH>", "S>", "O>", "Physical Exam>", "A>", "P>", "Comment>"),
+                EncounterSnapshot.SECTIONS.subList(0, 10));
+        assertEquals(100, EncounterSnapshot.PROBLEM_LIST_SECTION);
+        assertTrue(EncounterSnapshot.SECTIONS.size() < EncounterSnapshot.PROBLEM_LIST_SECTION);
+    }
+
+    @Test
+    void testProblemListIsStoredAtItsSlot() throws Exception {
+        SqliteDataSource dataSource = SqliteDataSource.forFile(tempDir.resolve("encounter_archive.db"));
+        EncounterArchive archive = new EncounterArchive(dataSource);
+        EncounterSnapshot snapshot = new EncounterSnapshot("P1", LocalDate.of(2026, 10, 1), LocalDateTime.of(2026, 10, 1, 9, 30),
+                Map.of("CC>", "fatigue", "Comment>", "call with results"), List.of("Hypothyroidism", "Osteopenia"));
+        long id = archive.archive(snapshot).get(5, TimeUnit.SECONDS);
+
+        List<Integer> slots = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT section_no FROM encounter_sections ORDER BY section_no")) {
+            while (rs.next()) slots.add(rs.getInt(1));
+        }
+        assertEquals(List.of(0, 9, 100), slots);
+
+        EncounterSnapshot loaded = archive.load(id);
+        assertEquals(snapshot.sections(), loaded.sections());
+        assertEquals(snapshot.problems(), loaded.problems());
+        archive.close();
+    }
+
+    @Test
+    void testProblemListIsSearchableBySectionPrefix() {
+        EncounterIndex index = new EncounterIndex();
+        index.add(1, new EncounterSnapshot("P1", LocalDate.of(2026, 10, 1), LocalDateTime.now(),
+                Map.of("A>", "thyroid nodule"), List.of("Hypothyroidism")));
+        index.add(2, new EncounterSnapshot("P2", LocalDate.of(2026, 10, 2), LocalDateTime.now(),
+                Map.of("A>", "hypothyroidism"), List.of()));
+
+        assertEquals(List.of(1L), index.search(EncounterQuery.of("problems:hypothyroidism"), 10).stream()
+                .map(EncounterIndex.EncounterHit::encounterId).toList());
+        assertEquals(List.of(2L), index.search(EncounterQuery.of("a:hypothyroidism"), 10).stream()
+                .map(EncounterIndex.EncounterHit::encounterId).toList());
+        assertEquals(2, index.search(EncounterQuery.of("hypothyroidism"), 10).size());
+    }
+}
@@ -0,0 +1,91 @@
+package com.emr.gds.main.encounter;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListTest {
+
+    /** One visited (document, section) entry, with its positions copied out of the visitor's reused buffer. */
+    private record Entry(int ordinal, int section, List<Integer> positions) {}
+
+    private static List<Entry> entries(PostingList list) {
+        List<Entry> out = new ArrayList<>();
+        list.forEach((ordinal, section, positions, count) ->
+                out.add(new Entry(ordinal, section, Arrays.stream(positions, 0, count).boxed().toList())));
+        return out;
+    }
+
+    private static int[] pairs(int... sectionPositionPairs) {
+        return sectionPositionPairs;
+    }
+
+    @Test
+    void testVarintRoundTripAcrossByteWidths() {
+        // Deltas straddling the 1-, 2-, 3-, 4- and 5-byte varint boundaries.
+        int[] values = {0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, 268_435_455, 268_435_456, Integer.MAX_VALUE - 1};
+        PostingList list = new PostingList();
+        List<Entry> expected = new ArrayList<>();
+        int ordinal = -1;
+        for (int v : values) {
+            ordinal = v == 0 ? 0 : Math.max(ordinal + 1, v);
+            int section = v % 1000;
+            list.add(ordinal, pairs(section, v), 2);
+            expected.add(new Entry(ordinal, section, List.of(v)));
+        }
+        assertEquals(expected, entries(list));
+        assertEquals(values.length, list.docCount());
+    }
+
+    @Test
+    void testSectionsAndPositionsRoundTrip() {
+        PostingList list = new PostingList();
+        list.add(3, pairs(0, 1, 0, 5, 0, 300, 7, 2, 100, 0, 100, 40_000), 12);
+        list.add(4, pairs(8, 9), 2);
+        list.add(1_000, pairs(2, 0, 2, 1), 4);
+
+        assertEquals(List.of(
+                new Entry(3, 0, List.of(1, 5, 300)),
+                new Entry(3, 7, List.of(2)),
+                new Entry(3, 100, List.of(0, 40_000)),
+                new Entry(4, 8, List.of(9)),
+                new Entry(1_000, 2, List.of(0, 1))), entries(list));
+    }
+
+    @Test
+    void testCursorStepsAndAdvances() {
+        PostingList list = new PostingList();
+        list.add(2, pairs(0, 4, 7, 1, 7, 2), 6);
+        list.add(5, pairs(3, 10), 2);
+        list.add(9, pairs(1, 0, 1, 200, 1, 70_000), 6);
+
+        PostingList.Cursor c = list.cursor();
+        assertTrue(c.next());
+        assertEquals(2, c.ordinal());
+        assertEquals(2, c.sectionCount());
+        int k = c.find(7);
+        assertEquals(1, k);
+        assertArrayEquals(new int[] {1, 2}, Arrays.copyOfRange(c.positions(), c.start(k), c.end(k)));
+        assertEquals(-1, c.find(3));
+
+        assertTrue(c.advance(6), "Advancing past a gap lands on the next document");
+        assertEquals(9, c.ordinal());
+        assertEquals(1, c.section(0));
+        assertArrayEquals(new int[] {0, 200, 70_000}, Arrays.copyOfRange(c.positions(), c.start(0), c.end(0)));
+        assertTrue(c.advance(9), "Already there");
+        assertFalse(c.advance(10));
+        assertFalse(c.next());
+    }
+
+    @Test
+    void testOrdinalsMustIncrease() {
+        PostingList list = new PostingList();
+        list.add(5, pairs(0, 0), 2);
+        assertThrows(IllegalArgumentException.class, () -> list.add(5, pairs(0, 1), 2));
+        assertThrows(IllegalArgumentException.class, () -> list.add(4, pairs(0, 1), 2));
+        assertEquals(1, list.docCount());
+    }
+}
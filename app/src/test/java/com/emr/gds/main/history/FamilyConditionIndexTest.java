@@ -0,0 +1,89 @@
+package com.emr.gds.main.history;
+
+import com.emr.gds.main.history.FamilyConditionStore.Category;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FamilyConditionIndexTest {
+
+    private static FamilyConditionIndex sample() {
+        return FamilyConditionIndex.build(Map.of(
+                Category.ENDOCRINE, List.of("Type 2 Diabetes", "Hypothyroidism", "Type 1 Diabetes", "Thyroid Cancer"),
+                Category.CANCER, List.of("Breast Cancer", "Colon Cancer"),
+                Category.CARDIOVASCULAR, List.of("Hypertension", "Stroke")));
+    }
+
+    @Test
+    void testBlankQueryReturnsFullLists() {
+        FamilyConditionIndex index = sample();
+        assertEquals(index.list(Category.ENDOCRINE), index.search("  ").get(Category.ENDOCRINE));
+        assertEquals(List.of(), index.search("").get(Category.GENETIC));
+        assertEquals(8, index.size());
+    }
+
+    @Test
+    void testTrigramSearchMatchesInsideWordsInListOrder() {
+        Map<Category, List<String>> result = sample().search("THYRO");
+        assertEquals(List.of("Hypothyroidism", "Thyroid Cancer"), result.get(Category.ENDOCRINE));
+        assertEquals(List.of(), result.get(Category.CANCER));
+
+        assertEquals(List.of("Hypertension"), sample().search("tens").get(Category.CARDIOVASCULAR));
+        assertEquals(List.of(), sample().search("xyz").get(Category.ENDOCRINE));
+    }
+
+    @Test
+    void testShortWordsMatchWordPrefixes() {
+        Map<Category, List<String>> result = sample().search("ty 2");
+        assertEquals(List.of("Type 2 Diabetes"), result.get(Category.ENDOCRINE));
+        assertEquals(List.of("Hypertension"), sample().search("hy").get(Category.CARDIOVASCULAR));
+        assertEquals(List.of(), sample().search("pe").get(Category.ENDOCRINE), "Not a word prefix");
+    }
+
+    @Test
+    void testEveryWordMustMatch() {
+        Map<Category, List<String>> result = sample().search("cancer thyroid");
+        assertEquals(List.of("Thyroid Cancer"), result.get(Category.ENDOCRINE));
+        assertEquals(List.of(), result.get(Category.CANCER));
+        assertEquals(List.of("Breast Cancer", "Colon Cancer"), sample().search("cancer").get(Category.CANCER));
+    }
+
+    @Test
+    void testWithAddsToTheEndAndLeavesTheOriginal() {
+        FamilyConditionIndex before = sample();
+        FamilyConditionIndex after = before.with(Category.CANCER, "Thyroid Lymphoma").with(Category.GENETIC, "MEN2");
+
+        assertEquals(List.of("Breast Cancer", "Colon Cancer", "Thyroid Lymphoma"), after.list(Category.CANCER));
+        assertTrue(after.contains(Category.GENETIC, "MEN2"));
+        assertEquals(List.of("Thyroid Lymphoma"), after.search("thyroid").get(Category.CANCER));
+        assertEquals(List.of("Thyroid Lymphoma"), after.search("ly").get(Category.CANCER));
+        assertEquals(List.of("MEN2"), after.search("men").get(Category.GENETIC));
+        assertEquals(10, after.size());
+
+        assertFalse(before.contains(Category.GENETIC, "MEN2"));
+        assertEquals(List.of(), before.search("thyroid").get(Category.CANCER));
+        assertEquals(8, before.size());
+    }
+
+    @Test
+    void testIndexMatchesARebuild() {
+        FamilyConditionIndex grown = FamilyConditionIndex.build(Map.of());
+        for (String name : List.of("Type 2 Diabetes", "Type 1 Diabetes", "Diabetes Insipidus", "Addison's Disease")) {
+            grown = grown.with(Category.ENDOCRINE, name);
+        }
+        FamilyConditionIndex built = FamilyConditionIndex.build(Map.of(Category.ENDOCRINE, grown.list(Category.ENDOCRINE)));
+        for (String query : List.of("diab", "ty", "t 1", "add", "s", "insip diab", "disease")) {
+            assertEquals(built.search(query), grown.search(query), query);
+        }
+    }
+
+    @Test
+    void testNormalizeAndTokenize() {
+        assertEquals("type 2 diabetes", FamilyConditionIndex.normalize("ＴＹＰＥ ２ Diabetes"));
+        assertEquals("", FamilyConditionIndex.normalize(null));
+        assertEquals(List.of("huntington", "s", "disease"), FamilyConditionIndex.tokenize("huntington's disease"));
+        assertEquals(List.of(), FamilyConditionIndex.tokenize(" -- "));
+    }
+}
@@ -0,0 +1,78 @@
+package com.emr.gds.main.history;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import com.emr.gds.main.history.FamilyConditionStore.Category;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FamilyConditionStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FamilyConditionStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) store.close();
+        SqliteDataSource.closeAll();
+    }
+
+    private FamilyConditionIndex open(Path legacyDir) throws Exception {
+        store = new FamilyConditionStore(SqliteDataSource.forFile(tempDir.resolve("family_history.db")), legacyDir);
+        return store.whenLoaded().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testEmptyDatabaseGetsDefaults() throws Exception {
+        FamilyConditionIndex index = open(tempDir.resolve("missing"));
+        assertEquals(List.of("Type 1 Diabetes", "Type 2 Diabetes", "Hypothyroidism", "Hyperthyroidism", "Thyroid Cancer"),
+                index.list(Category.ENDOCRINE));
+        assertEquals(20, index.size());
+        assertSame(index, store.index());
+    }
+
+    @Test
+    void testLegacyFilesAreImportedOnce() throws Exception {
+        Path legacy = Files.createDirectories(tempDir.resolve("emr_fmh_data"));
+        Files.writeString(legacy.resolve("endocrine.txt"), "Graves Disease\n\n  MODY  \nGraves Disease\n");
+        Files.writeString(legacy.resolve("genetic.txt"), "");
+
+        FamilyConditionIndex index = open(legacy);
+        assertEquals(List.of("Graves Disease", "MODY"), index.list(Category.ENDOCRINE));
+        assertEquals(List.of(), index.list(Category.GENETIC));
+        assertEquals(5, index.list(Category.CANCER).size(), "Missing files fall back to the defaults");
+
+        // A non-empty table is never re-seeded, even if the files change.
+        store.close();
+        Files.writeString(legacy.resolve("endocrine.txt"), "Something Else\n");
+        assertEquals(List.of("Graves Disease", "MODY"), open(legacy).list(Category.ENDOCRINE));
+    }
+
+    @Test
+    void testAddAppendsOnceAndPersists() throws Exception {
+        open(tempDir.resolve("missing"));
+        FamilyConditionIndex added = store.add(Category.GENETIC, "MEN2").get(5, TimeUnit.SECONDS);
+        FamilyConditionIndex again = store.add(Category.GENETIC, "MEN2").get(5, TimeUnit.SECONDS);
+        assertSame(added, again, "A duplicate add leaves the index as it was");
+        assertEquals("MEN2", added.list(Category.GENETIC).get(added.list(Category.GENETIC).size() - 1));
+        assertEquals(List.of("MEN2"), store.index().search("men2").get(Category.GENETIC));
+
+        store.add(Category.CANCER, "Thyroid Lymphoma");
+        store.flush().get(5, TimeUnit.SECONDS);
+        store.close();
+
+        FamilyConditionIndex reopened = open(tempDir.resolve("missing"));
+        assertEquals(6, reopened.list(Category.GENETIC).size());
+        assertEquals("MEN2", reopened.list(Category.GENETIC).get(5));
+        assertEquals("Thyroid Lymphoma", reopened.list(Category.CANCER).get(5));
+        assertEquals(22, reopened.size());
+    }
+}
@@ -1,5 +1,6 @@
 package com.emr.gds.main.medication.db;
 
+import com.emr.gds.main.db.SqliteDataSource;
 import com.emr.gds.main.medication.model.MedicationGroup;
 import com.emr.gds.main.medication.model.MedicationItem;
 import org.junit.jupiter.api.AfterEach;
@@ -7,6 +8,12 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,9 +22,13 @@ import static org.junit.jupiter.api.Assertions.*;
 class DatabaseManagerTest {
 
     private static final String TEST_DB_FILE = "test_med_data.db";
+    private static final String BENCH_DB_FILE = "test_med_bench.db";
 
     @AfterEach
     void tearDown() {
+        // Release pooled connections first so the files are really gone for the next test
+        SqliteDataSource.closeAll();
+
         // Best effort cleanup
         File file = new File("app/db/" + TEST_DB_FILE);
         if (file.exists()) file.delete();
@@ -27,6 +38,13 @@ class DatabaseManagerTest {
 
         File fileRoot = new File(TEST_DB_FILE);
         if (fileRoot.exists()) fileRoot.delete();
+
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            File bench = new File("app/db/" + BENCH_DB_FILE + suffix);
+            if (bench.exists()) bench.delete();
+            File benchLocal = new File("db/" + BENCH_DB_FILE + suffix);
+            if (benchLocal.exists()) benchLocal.delete();
+        }
     }
 
     @Test
@@ -56,7 +74,7 @@ class DatabaseManagerTest {
         assertTrue(db1.hasPendingChanges(), "Should have pending changes");
         
         // 3. Commit
-        db1.commitPending();
+        assertTrue(db1.commitPending(), "Commit should succeed");
         assertFalse(db1.hasPendingChanges(), "Should not have pending changes after commit");
         
         // 4. Reload (Simulate App Restart)
@@ -81,4 +99,129 @@ class DatabaseManagerTest {
         
         assertTrue(found, "New item should be persisted and reloaded");
     }
+
+    @Test
+    void testIncrementalSaveTouchesOnlyEditedRows() {
+        DatabaseManager db1 = new DatabaseManager(TEST_DB_FILE);
+        db1.addCategory("Cat");
+        db1.addGroup("Cat", "Group");
+        MedicationItem keep = new MedicationItem("keep");
+        MedicationItem edit = new MedicationItem("before");
+        MedicationItem drop = new MedicationItem("drop");
+        db1.addItem("Cat", "Group", keep);
+        db1.addItem("Cat", "Group", edit);
+        db1.addItem("Cat", "Group", drop);
+        assertTrue(db1.commitPending());
+        Map<String, Long> idsBefore = itemIdsByText();
+
+        // Second session: edit one row, delete another, add a new one
+        DatabaseManager db2 = new DatabaseManager(TEST_DB_FILE);
+        List<MedicationItem> loaded = db2.getMedicationData().get("Cat").get(0).medications();
+        assertEquals(List.of("keep", "before", "drop"), loaded.stream().map(MedicationItem::getText).toList());
+        db2.updateItemText(loaded.get(1), "after");
+        db2.removeItem(loaded.get(2));
+        db2.addItem("Cat", "Group", new MedicationItem("new"));
+
+        MedicationItem transientItem = new MedicationItem("never saved");
+        db2.addItem("Cat", "Group", transientItem);
+        db2.removeItem(transientItem);
+        assertTrue(db2.hasPendingChanges());
+        assertTrue(db2.commitPending());
+        assertFalse(db2.hasPendingChanges());
+
+        // Untouched and edited rows are updated in place; only the new row gets a fresh id
+        Map<String, Long> idsAfter = itemIdsByText();
+        assertEquals(idsBefore.get("keep"), idsAfter.get("keep"), "Unedited row keeps its rowid");
+        assertEquals(idsBefore.get("before"), idsAfter.get("after"), "Edited row keeps its rowid");
+        assertFalse(idsAfter.containsKey("drop"));
+        assertFalse(idsAfter.containsKey("never saved"));
+        assertTrue(idsAfter.get("new") > idsBefore.get("drop"));
+
+        DatabaseManager db3 = new DatabaseManager(TEST_DB_FILE);
+        List<MedicationItem> reloaded = db3.getMedicationData().get("Cat").get(0).medications();
+        assertEquals(List.of("keep", "after", "new"), reloaded.stream().map(MedicationItem::getText).toList());
+    }
+
+    private static Map<String, Long> itemIdsByText() {
+        Map<String, Long> ids = new HashMap<>();
+        try (Connection conn = SqliteDataSource.forAppDb(TEST_DB_FILE).getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, text FROM medication_items")) {
+            while (rs.next()) {
+                ids.put(rs.getString("text"), rs.getLong("id"));
+            }
+        } catch (SQLException e) {
+            fail(e);
+        }
+        return ids;
+    }
+
+    @Test
+    void testLoadLargeCatalogInOrder() throws Exception {
+        final int categories = 10, groupsPerCategory = 30, itemsPerGroup = 10;
+
+        DatabaseManager init = new DatabaseManager(BENCH_DB_FILE);
+        init.createTables();
+
+        // Seed ~3000 items directly, with display_order deliberately reversed against insertion order
+        SqliteDataSource ds = SqliteDataSource.forAppDb(BENCH_DB_FILE);
+        try (Connection conn = ds.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement cat = conn.prepareStatement("INSERT INTO categories (name, display_order) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement grp = conn.prepareStatement("INSERT INTO medication_groups (category_id, title, display_order) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement item = conn.prepareStatement("INSERT INTO medication_items (group_id, text, display_order) VALUES (?, ?, ?)")) {
+                for (int c = 0; c < categories; c++) {
+                    cat.setString(1, "Category " + c);
+                    cat.setInt(2, categories - c);
+                    cat.executeUpdate();
+                    long catId;
+                    try (ResultSet rs = cat.getGeneratedKeys()) { rs.next(); catId = rs.getLong(1); }
+                    for (int g = 0; g < groupsPerCategory; g++) {
+                        grp.setLong(1, catId);
+                        grp.setString(2, "Group " + c + "-" + g);
+                        grp.setInt(3, groupsPerCategory - g);
+                        grp.executeUpdate();
+                        long groupId;
+                        try (ResultSet rs = grp.getGeneratedKeys()) { rs.next(); groupId = rs.getLong(1); }
+                        for (int i = 0; i < itemsPerGroup; i++) {
+                            item.setLong(1, groupId);
+                            item.setString(2, "Item " + c + "-" + g + "-" + i);
+                            item.setInt(3, itemsPerGroup - i);
+                            item.addBatch();
+                        }
+                        item.executeBatch();
+                    }
+                }
+            }
+            conn.commit();
+        }
+
+        DatabaseManager db = new DatabaseManager(BENCH_DB_FILE);
+        Map<String, List<MedicationGroup>> data = db.getMedicationData();
+
+        // display_order was seeded in reverse, so every level must come back highest index first
+        List<String> ordered = db.getOrderedCategories();
+        assertEquals(categories, ordered.size());
+        for (int c = 0; c < categories; c++) {
+            int catNo = categories - 1 - c;
+            assertEquals("Category " + catNo, ordered.get(c), "Categories follow display_order");
+
+            List<MedicationGroup> groups = data.get(ordered.get(c));
+            assertEquals(groupsPerCategory, groups.size());
+            for (int g = 0; g < groupsPerCategory; g++) {
+                int groupNo = groupsPerCategory - 1 - g;
+                assertEquals("Group " + catNo + "-" + groupNo, groups.get(g).title(), "Groups follow display_order");
+
+                List<MedicationItem> items = groups.get(g).medications();
+                assertEquals(itemsPerGroup, items.size());
+                for (int i = 0; i < itemsPerGroup; i++) {
+                    assertEquals("Item " + catNo + "-" + groupNo + "-" + (itemsPerGroup - 1 - i), items.get(i).getText(),
+                            "Items follow display_order");
+                }
+            }
+        }
+
+        int total = data.values().stream().flatMap(List::stream).mapToInt(g -> g.medications().size()).sum();
+        assertEquals(categories * groupsPerCategory * itemsPerGroup, total);
+    }
 }
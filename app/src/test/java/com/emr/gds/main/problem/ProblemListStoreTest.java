@@ -0,0 +1,125 @@
+package com.emr.gds.main.problem;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProblemListStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ProblemListStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) store.close();
+        SqliteDataSource.closeAll();
+    }
+
+    private static List<String> texts(List<ProblemEntry> entries) {
+        return entries.stream().map(ProblemEntry::text).toList();
+    }
+
+    private List<ProblemEntry> load(String patientId) throws Exception {
+        return store.load(patientId).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testNewDatabaseGetsDefaultList() throws Exception {
+        store = new ProblemListStore(SqliteDataSource.forFile(tempDir.resolve("prolist.db")));
+        assertEquals(List.of("Hypercholesterolemia [F/U]", "Prediabetes (FBS 108 mg/dL)", "Thyroid nodule (small)"),
+                texts(load(ProblemListStore.DEFAULT_PATIENT)));
+        assertTrue(load("P1").isEmpty());
+    }
+
+    @Test
+    void testLegacyListMovesToDefaultPatient() throws Exception {
+        SqliteDataSource dataSource = SqliteDataSource.forFile(tempDir.resolve("prolist.db"));
+        try (Connection conn = dataSource.getWriteConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE problems (id INTEGER PRIMARY KEY AUTOINCREMENT, problem_text TEXT NOT NULL UNIQUE)");
+            st.execute("INSERT INTO problems (problem_text) VALUES ('Graves disease'), ('asthma')");
+        }
+
+        store = new ProblemListStore(dataSource);
+        List<ProblemEntry> entries = load(ProblemListStore.DEFAULT_PATIENT);
+        assertEquals(List.of("asthma", "Graves disease"), texts(entries), "Legacy rows kept, no defaults added");
+        assertEquals(ProblemEntry.Status.ACTIVE, entries.get(0).status());
+        assertNull(entries.get(0).kcdCode());
+
+        // The old table was unique on the text alone; another patient may now hold the same problem.
+        store.add("P1", ProblemEntry.of("asthma"));
+        assertEquals(List.of("asthma"), texts(load("P1")));
+        assertEquals(2, load(ProblemListStore.DEFAULT_PATIENT).size());
+    }
+
+    @Test
+    void testDuplicateAddIsIgnored() throws Exception {
+        store = new ProblemListStore(SqliteDataSource.forFile(tempDir.resolve("prolist.db")));
+        LocalDate onset = LocalDate.of(2024, 3, 1);
+        store.add("P1", new ProblemEntry("Hypothyroidism", ProblemEntry.Status.ACTIVE, onset, "E03.9"));
+        store.add("P1", ProblemEntry.of("Hypothyroidism"));
+        store.add("P1", ProblemEntry.of("Osteopenia"));
+
+        List<ProblemEntry> entries = load("P1");
+        assertEquals(List.of("Hypothyroidism", "Osteopenia"), texts(entries));
+        assertEquals(onset, entries.get(0).onset(), "The first add wins");
+        assertEquals("E03.9", entries.get(0).kcdCode());
+
+        store.update("P1", entries.get(0).withStatus(ProblemEntry.Status.RESOLVED));
+        store.remove("P1", entries.get(1));
+        entries = load("P1");
+        assertEquals(List.of("Hypothyroidism"), texts(entries));
+        assertEquals(ProblemEntry.Status.RESOLVED, entries.get(0).status());
+    }
+
+    @Test
+    void testFailedBatchIsRolledBackAndReported() throws Exception {
+        SqliteDataSource dataSource = SqliteDataSource.forFile(tempDir.resolve("prolist.db"));
+        store = new ProblemListStore(dataSource);
+        try (Connection conn = dataSource.getWriteConnection(); Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TRIGGER reject_problem BEFORE INSERT ON problems WHEN NEW.problem_text = 'rejected'
+                    BEGIN SELECT RAISE(ABORT, 'rejected by test'); END""");
+        }
+        CompletableFuture<List<ProblemListStore.Mutation>> failed = new CompletableFuture<>();
+        store.setFailureListener((batch, error) -> failed.complete(batch));
+
+        store.add("P1", ProblemEntry.of("accepted"));
+        store.add("P1", ProblemEntry.of("rejected"));
+        List<ProblemEntry> entries = load("P1");
+
+        List<ProblemListStore.Mutation> batch = failed.get(5, TimeUnit.SECONDS);
+        assertTrue(texts(batch.stream().map(ProblemListStore.Mutation::entry).toList()).contains("rejected"));
+        for (ProblemListStore.Mutation m : batch) {
+            assertFalse(texts(entries).contains(m.entry().text()), m.entry().text() + " belongs to the failed batch");
+        }
+        assertFalse(texts(entries).contains("rejected"));
+
+        // The writer keeps going after a failure.
+        store.add("P1", ProblemEntry.of("later"));
+        assertTrue(texts(load("P1")).contains("later"));
+    }
+
+    @Test
+    void testCloseWritesQueuedChanges() throws Exception {
+        Path db = tempDir.resolve("prolist.db");
+        store = new ProblemListStore(SqliteDataSource.forFile(db));
+        store.add("P1", ProblemEntry.of("Gout"));
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.add("P1", ProblemEntry.of("After close")));
+
+        store = new ProblemListStore(SqliteDataSource.forFile(db));
+        assertEquals(List.of("Gout"), texts(load("P1")));
+    }
+}
@@ -0,0 +1,115 @@
+package com.emr.gds.main.template;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledTemplateTest {
+
+    private static String render(String template, Map<String, ?> bindings) {
+        return CompiledTemplate.compile(template).render(bindings);
+    }
+
+    @Test
+    void testVariablesAndPlainText() {
+        assertEquals("Hello Ann!", render("Hello {{name}}!", Map.of("name", "Ann")));
+        assertEquals("Hello !", render("Hello {{ name }}!", Map.of()), "Unbound renders empty");
+        assertEquals("BMI 24 / 24.5", render("BMI {{a}} / {{b}}", Map.of("a", 24.0, "b", 24.5)));
+        assertEquals("Keep {{ see note }} and {{unclosed", render("Keep {{ see note }} and {{unclosed", Map.of()));
+
+        CompiledTemplate plain = CompiledTemplate.compile("No tags here.");
+        assertTrue(plain.isStatic());
+        assertEquals("No tags here.", plain.render(null));
+        assertFalse(CompiledTemplate.compile("{{x}}").isStatic());
+        assertEquals("", CompiledTemplate.compile(null).render(Map.of()));
+    }
+
+    @Test
+    void testIfElse() {
+        String t = "{{#if bmi}}BMI {{bmi}}{{else}}BMI not measured{{/if}}";
+        assertEquals("BMI 27", render(t, Map.of("bmi", 27)));
+        assertEquals("BMI not measured", render(t, Map.of()));
+        assertEquals("BMI not measured", render(t, Map.of("bmi", "")));
+        assertEquals("BMI not measured", render(t, Map.of("bmi", false)));
+        assertEquals("BMI not measured", render(t, Map.of("bmi", List.of())));
+        assertEquals("BMI not measured", render(t, Map.of("bmi", new Object[0])));
+        assertEquals("[yes]", render("[{{#if flag}}yes{{/if}}]", Map.of("flag", true)));
+        assertEquals("[]", render("[{{#if flag}}yes{{/if}}]", Map.of()));
+    }
+
+    @Test
+    void testUnless() {
+        String t = "{{#unless allergies}}NKDA{{else}}Allergies: {{allergies}}{{/unless}}";
+        assertEquals("NKDA", render(t, Map.of()));
+        assertEquals("Allergies: penicillin", render(t, Map.of("allergies", "penicillin")));
+        assertEquals("<>", render("<{{#unless x}}no x{{/unless}}>", Map.of("x", 1)));
+    }
+
+    @Test
+    void testEach() {
+        String t = """
+                Problems:
+                {{#each problems}}
+                - {{@number}}. {{.}}
+                {{else}}
+                - none
+                {{/each}}
+                End""";
+        assertEquals("Problems:\n- 1. Hypertension\n- 2. Diabetes\nEnd",
+                render(t, Map.of("problems", List.of("Hypertension", "Diabetes"))));
+        assertEquals("Problems:\n- none\nEnd", render(t, Map.of("problems", List.of())));
+        assertEquals("Problems:\n- none\nEnd", render(t, Map.of()));
+        assertEquals("a,b,", render("{{#each xs}}{{.}},{{/each}}", Map.of("xs", new String[]{"a", "b"})));
+        assertEquals("solo;", render("{{#each x}}{{.}};{{/each}}", Map.of("x", "solo")), "A single value is a one-item list");
+        assertEquals("", render("{{@number}}{{.}}", Map.of()), "Loop variables are empty outside a loop");
+        assertEquals(". a.a @number 1,", render(".{{#each xs}} {{.}}.{{.}} @number {{@number}},{{/each}}", Map.of("xs", List.of("a"))),
+                "Literal text equal to a loop variable's name stays text");
+        assertEquals("x=1 x=1 x=1", render("x={{x}} x={{ x }} x={{x}}", Map.of("x", 1)), "A repeated name shares one binding");
+    }
+
+    @Test
+    void testNesting() {
+        Map<String, Object> bindings = Map.of(
+                "visits", List.of(List.of("BP", "HR"), List.of(), List.of("A1c")),
+                "flagged", true);
+        String t = "{{#each visits}}{{@number}}:{{#each .}}{{@number}}={{.}} {{else}}empty {{/each}}|{{/each}}";
+        assertEquals("1:1=BP 2=HR |2:empty |3:1=A1c |", render(t, bindings));
+
+        String mixed = "{{#if flagged}}{{#each visits}}{{#if .}}+{{else}}-{{/if}}{{/each}}{{else}}off{{/if}}";
+        assertEquals("+-+", render(mixed, bindings));
+        assertEquals("off", render(mixed, Map.of("visits", List.of(1))));
+
+        String inUnless = "{{#unless off}}{{#each xs}}{{#unless .}}0{{else}}{{.}}{{/unless}}{{/each}}{{/unless}}";
+        assertEquals("a0b", render(inUnless, Map.of("xs", List.of("a", "", "b"))));
+    }
+
+    @Test
+    void testUnclosedBlocks() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CompiledTemplate.compile("{{#if a}}text"));
+        assertEquals("Unclosed {{#if}}", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("{{#each xs}}{{#if .}}{{/each}}"));
+        e = assertThrows(IllegalArgumentException.class,
+                () -> CompiledTemplate.compile("{{#if a}}{{#unless b}}x{{/if}}"));
+        assertTrue(e.getMessage().contains("{{/if}} closes {{#unless}}"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("{{#each xs}}x{{else}}y"));
+    }
+
+    @Test
+    void testStrayTags() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CompiledTemplate.compile("line one\nline two {{/if}}"));
+        assertEquals("{{/if}} without an open block at line 2", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("a\nb\n{{else}}"));
+        assertEquals("Unexpected {{else}} at line 3", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class,
+                () -> CompiledTemplate.compile("{{#if a}}x{{else}}y{{else}}z{{/if}}"));
+        assertTrue(e.getMessage().startsWith("Unexpected {{else}}"), e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("{{#if a}}{{/each}}"));
+    }
+}
@@ -0,0 +1,47 @@
+package com.emr.gds.main.template;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        SqliteDataSource.closeAll();
+    }
+
+    @Test
+    void testBodyCacheIsPerDatabaseFile() {
+        TemplateRepository first = new TemplateRepository(tempDir.resolve("first.db"));
+        TemplateRepository second = new TemplateRepository(tempDir.resolve("second.db"));
+        int a = first.createTemplate("Visit", "CC> first file");
+        int b = second.createTemplate("Visit", "CC> second file");
+        assertEquals(a, b, "Both files start numbering at the same id");
+
+        assertEquals("CC> first file", first.loadContent(a));
+        assertEquals("CC> second file", second.loadContent(b));
+    }
+
+    @Test
+    void testRepositoriesOnOneFileShareWrites() {
+        Path db = tempDir.resolve("shared.db");
+        TemplateRepository editor = new TemplateRepository(db);
+        TemplateRepository other = new TemplateRepository(db);
+        int id = editor.createTemplate("Visit", "CC> v1");
+        assertEquals("CC> v1", other.loadContent(id));
+
+        editor.updateTemplate(id, "Visit", "CC> v2");
+        assertEquals("CC> v2", other.loadContent(id));
+
+        other.deleteTemplate(id);
+        assertNull(editor.loadContent(id));
+    }
+}
@@ -0,0 +1,128 @@
+package com.emr.gds.main.template;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateSyncJobTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Stand-in for the server's /changes endpoint: canned JSON by "since" value.
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private TemplateRepository repository;
+    private TemplateSyncJob job;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/templates/changes", exchange -> {
+            String since = exchange.getRequestURI().getQuery().replace("since=", "");
+            String json = responses.get(since);
+            byte[] body = (json != null ? json : "").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(json != null ? 200 : 404, body.length == 0 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        repository = new TemplateRepository(tempDir.resolve("templates.db"));
+        job = new TemplateSyncJob(repository, new TemplateSyncClient("http://127.0.0.1:" + server.getAddress().getPort() + "/"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        SqliteDataSource.closeAll();
+    }
+
+    @Test
+    void testDeltasApplyAndLocalTemplatesSurvive() throws Exception {
+        int local = repository.createTemplate("Local note", "CC> local");
+
+        responses.put("0", """
+                {"storeId":"s1","version":2,"full":true,
+                 "changed":[{"id":"demo-visit","name":"Demo Visit","body":"CC> Cough"},
+                            {"id":"abdominal-pain","name":"Abdominal Pain","body":"CC> Abd pain"}],
+                 "deleted":[]}""");
+        assertEquals(2, job.syncOnce());
+        assertEquals(List.of("Abdominal Pain", "Demo Visit", "Local note"), names());
+
+        responses.put("2", """
+                {"storeId":"s1","version":4,"full":false,
+                 "changed":[{"id":"demo-visit","name":"Demo Visit","body":"CC> Cough x3d"}],
+                 "deleted":["abdominal-pain"]}""");
+        assertEquals(2, job.syncOnce());
+        assertEquals(List.of("Demo Visit", "Local note"), names());
+        assertEquals("CC> Cough x3d", repository.loadContent(idOf("Demo Visit")));
+        assertEquals(new TemplateRepository.SyncState("s1", 4), repository.syncState());
+
+        responses.put("4", """
+                {"storeId":"s1","version":4,"full":false,"changed":[],"deleted":[]}""");
+        assertEquals(0, job.syncOnce());
+
+        // Server restarted: its versions mean something else now, so the job resyncs from 0.
+        responses.put("4", """
+                {"storeId":"s2","version":5,"full":false,"changed":[],"deleted":[]}""");
+        responses.put("0", """
+                {"storeId":"s2","version":5,"full":true,
+                 "changed":[{"id":"thyroid","name":"Thyroid F/U","body":"CC> TFT"}],
+                 "deleted":[]}""");
+        job.syncOnce();
+        assertEquals(List.of("Local note", "Thyroid F/U"), names());
+        assertEquals("CC> local", repository.loadContent(local));
+        assertEquals(new TemplateRepository.SyncState("s2", 5), repository.syncState());
+    }
+
+    @Test
+    void testEditorRepositorySeesSyncedBodies() throws Exception {
+        // The editor window opens its own repository on the same file; its cached bodies must not go stale.
+        TemplateRepository editor = new TemplateRepository(tempDir.resolve("templates.db"));
+        responses.put("0", """
+                {"storeId":"s1","version":1,"full":true,
+                 "changed":[{"id":"demo-visit","name":"Demo Visit","body":"CC> Cough"}],
+                 "deleted":[]}""");
+        job.syncOnce();
+        int id = idOf("Demo Visit");
+        assertEquals("CC> Cough", editor.loadContent(id));
+
+        responses.put("1", """
+                {"storeId":"s1","version":2,"full":false,
+                 "changed":[{"id":"demo-visit","name":"Demo Visit","body":"CC> Cough x1w"}],
+                 "deleted":[]}""");
+        assertEquals(1, job.syncOnce());
+        assertEquals("CC> Cough x1w", editor.loadContent(id));
+    }
+
+    @Test
+    void testFailedFetchLeavesStateUnchanged() throws Exception {
+        assertThrows(IOException.class, () -> job.syncOnce());
+        assertEquals(new TemplateRepository.SyncState(null, 0), repository.syncState());
+        assertTrue(repository.listTemplateSummaries().isEmpty());
+    }
+
+    private List<String> names() {
+        return repository.listTemplateSummaries().stream().map(TemplateSummary::name).toList();
+    }
+
+    private int idOf(String name) {
+        return repository.listTemplateSummaries().stream()
+                .filter(t -> t.name().equals(name)).findFirst().orElseThrow().id();
+    }
+}
@@ -0,0 +1,66 @@
+package com.emr.gds.soap.IMSFollowUp;
+
+import com.emr.gds.main.db.SqliteDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanHistoryWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        SqliteDataSource.closeAll();
+    }
+
+    private static int rowCount(Path db) throws Exception {
+        try (Connection c = SqliteDataSource.forFile(db).getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM plan_history")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Test
+    void testSubmittedPlansAreWrittenAndLoadedBack() throws Exception {
+        Path db = tempDir.resolve("plan_history.db");
+        PlanHistoryWriter writer = new PlanHistoryWriter(db);
+        assertTrue(writer.submit("P>", "- Recheck TSH in 6 weeks", "P1", "2026-10-01"));
+        assertTrue(writer.submit("P>", "- recheck TSH in 6 weeks.\n- Continue levothyroxine", "P1", "2026-10-02"));
+        writer.close();
+        assertFalse(writer.submit("P>", "- After close", "P1", "2026-10-03"), "A closed writer refuses plans");
+        assertEquals(2, rowCount(db));
+
+        PlanHistoryWriter reopened = new PlanHistoryWriter(db);
+        PlanSuggestions suggestions = reopened.suggestions().whenLoaded().get(5, TimeUnit.SECONDS);
+        assertEquals(2, suggestions.top(1).get(0).count());
+        assertEquals("- recheck TSH in 6 weeks.\n- Continue levothyroxine", suggestions.lastPlan("P1"));
+        reopened.close();
+    }
+
+    @Test
+    void testFailedBatchIsNotRecorded() throws Exception {
+        Path db = tempDir.resolve("plan_history.db");
+        PlanHistoryWriter writer = new PlanHistoryWriter(db);
+        writer.suggestions().whenLoaded().get(5, TimeUnit.SECONDS);
+        try (Connection c = SqliteDataSource.forFile(db).getWriteConnection(); Statement st = c.createStatement()) {
+            st.execute("""
+                    CREATE TRIGGER reject_plan BEFORE INSERT ON plan_history WHEN NEW.patient_id = 'rejected'
+                    BEGIN SELECT RAISE(ABORT, 'rejected by test'); END""");
+        }
+
+        assertTrue(writer.submit("P>", "- Lost plan", "rejected", "2026-10-01"));
+        writer.close();
+        assertEquals(0, rowCount(db));
+        assertEquals(0, writer.suggestions().size());
+        assertNull(writer.suggestions().lastPlan("rejected"));
+    }
+}
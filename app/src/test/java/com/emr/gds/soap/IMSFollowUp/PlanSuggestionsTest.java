@@ -0,0 +1,79 @@
+package com.emr.gds.soap.IMSFollowUp;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanSuggestionsTest {
+
+    private static List<String> texts(List<PlanSuggestions.Suggestion> suggestions) {
+        return suggestions.stream().map(PlanSuggestions.Suggestion::text).toList();
+    }
+
+    @Test
+    void testLinesAreRankedByCountThenRecency() {
+        PlanSuggestions model = new PlanSuggestions();
+        model.record("P1", "- Recheck TSH in 6 weeks\n- Continue levothyroxine");
+        model.record("P2", "* recheck  TSH in 6 weeks.\n- Low salt diet");
+        model.record("P3", "1) Continue levothyroxine\n- Recheck TSH in 6 weeks");
+        model.record("P4", "- Exercise");
+
+        List<PlanSuggestions.Suggestion> top = model.top(10);
+        assertEquals(List.of("Recheck TSH in 6 weeks", "Continue levothyroxine", "Exercise", "Low salt diet"), texts(top));
+        assertEquals(List.of(3, 2, 1, 1), top.stream().map(PlanSuggestions.Suggestion::count).toList());
+        assertEquals(List.of("Recheck TSH in 6 weeks", "Continue levothyroxine"), texts(model.top(2)));
+        assertTrue(model.top(0).isEmpty());
+        assertEquals(4, model.size());
+    }
+
+    @Test
+    void testVariantsShareOneCountAndShowLatestWording() {
+        PlanSuggestions model = new PlanSuggestions();
+        model.record(null, "- F/U 3 months");
+        model.record(null, "  -   f/u 3 MONTHS;  ");
+        List<PlanSuggestions.Suggestion> top = model.top(5);
+        assertEquals(1, top.size());
+        assertEquals("f/u 3 MONTHS;", top.get(0).text());
+        assertEquals(2, top.get(0).count());
+    }
+
+    @Test
+    void testLastPlanPerPatient() {
+        PlanSuggestions model = new PlanSuggestions();
+        model.record("P1", "- First plan\n");
+        model.record("P2", "- Other patient");
+        model.record(" P1 ", "- Second plan");
+        model.record("P1", "   ");
+        model.record(null, "- Unassigned");
+
+        assertEquals("- Second plan", model.lastPlan("P1"));
+        assertEquals("- Other patient", model.lastPlan("P2"));
+        assertEquals("- Unassigned", model.lastPlan(""), "Blank ids share one entry");
+        assertNull(model.lastPlan("P9"));
+    }
+
+    @Test
+    void testHistoryCountsButSessionPlansStayNewer() {
+        PlanSuggestions model = new PlanSuggestions();
+        model.record("P1", "- Session plan");
+        model.loadHistory(List.of(
+                new PlanSuggestions.HistoryRow("P1", "- Saved plan\n- Session plan"),
+                new PlanSuggestions.HistoryRow("P2", "- Saved plan"),
+                new PlanSuggestions.HistoryRow("P2", null)));
+
+        assertTrue(model.whenLoaded().isDone());
+        assertEquals("- Session plan", model.lastPlan("P1"));
+        assertEquals("- Saved plan", model.lastPlan("P2"));
+        List<PlanSuggestions.Suggestion> top = model.top(2);
+        assertEquals(List.of(2, 2), top.stream().map(PlanSuggestions.Suggestion::count).toList());
+        assertEquals("Session plan", top.get(0).text(), "Ties go to the line recorded this session");
+    }
+
+    @Test
+    void testFailedLoadCompletesExceptionally() {
+        PlanSuggestions model = new PlanSuggestions();
+        model.markLoadFailed(new IllegalStateException("disk"));
+        assertTrue(model.whenLoaded().isCompletedExceptionally());
+    }
+}
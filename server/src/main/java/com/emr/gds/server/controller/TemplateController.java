@@ -1,18 +1,31 @@
 package com.emr.gds.server.controller;
 
+import com.emr.gds.server.model.TemplateChanges;
 import com.emr.gds.server.model.TemplateDto;
+import com.emr.gds.server.model.TemplateSnapshot;
 import com.emr.gds.server.service.TemplateService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.net.URI;
 import java.util.List;
 
+/**
+ * Template API. GET responses carry an ETag (the store or template version) and Last-Modified;
+ * Spring answers a matching If-None-Match / If-Modified-Since with 304 and no body,
+ * so clients polling for changes only download templates when something was written.
+ * {@code GET /changes?since=<version>} returns only what changed after a client's last sync.
+ */
 @RestController
 @RequestMapping("/api/v1/templates")
 public class TemplateController {
@@ -23,19 +36,53 @@ public class TemplateController {
     }
 
     @GetMapping
-    public List<TemplateDto> list() {
-        return service.findAll();
+    public ResponseEntity<List<TemplateDto>> list() {
+        TemplateSnapshot snapshot = service.snapshot();
+        return ResponseEntity.ok()
+                .eTag(etag(snapshot.version()))
+                .lastModified(snapshot.lastModified())
+                .body(snapshot.templates());
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<TemplateChanges> changes(@RequestParam(defaultValue = "0") long since) {
+        TemplateChanges changes = service.changesSince(since);
+        return ResponseEntity.ok().eTag(etag(changes.version())).body(changes);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<TemplateDto> get(@PathVariable String id) {
-        return ResponseEntity.of(service.findById(id));
+        return service.findById(id)
+                .map(t -> ResponseEntity.ok()
+                        .eTag(etag(t.version()))
+                        .lastModified(t.updatedAt())
+                        .body(t))
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @PostMapping
     public ResponseEntity<TemplateDto> create(@RequestBody TemplateRequest request) {
         TemplateDto created = service.create(request.name(), request.body());
-        return ResponseEntity.created(URI.create("/api/v1/templates/" + created.id())).body(created);
+        return ResponseEntity.created(URI.create("/api/v1/templates/" + created.id()))
+                .eTag(etag(created.version()))
+                .body(created);
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<TemplateDto> update(@PathVariable String id, @RequestBody TemplateRequest request) {
+        TemplateDto updated = service.update(id, request.name(), request.body());
+        return ResponseEntity.ok().eTag(etag(updated.version())).body(updated);
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void delete(@PathVariable String id) {
+        service.delete(id);
+    }
+
+    // Versions restart with the in-memory store, so tags carry the store id too.
+    private String etag(long version) {
+        return "\"" + service.storeId() + "-" + version + "\"";
     }
 
     public record TemplateRequest(String name, String body) {
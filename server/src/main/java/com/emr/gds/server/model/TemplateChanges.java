@@ -0,0 +1,16 @@
+package com.emr.gds.server.model;
+
+import java.util.List;
+
+/**
+ * Templates written and ids deleted after a client's last synced version.
+ * {@code storeId} identifies this store instance; versions are only comparable within one store, so a client
+ * that sees a different {@code storeId} than last time must resync from 0. When {@code full} is set,
+ * {@code changed} is every template and the client should drop remote templates not listed.
+ */
+public record TemplateChanges(String storeId, long version, boolean full, List<TemplateDto> changed, List<String> deleted) {
+    public TemplateChanges {
+        changed = List.copyOf(changed);
+        deleted = List.copyOf(deleted);
+    }
+}
@@ -1,7 +1,10 @@
 package com.emr.gds.server.model;
 
+import java.time.Instant;
+
 /**
  * Simple DTO representing a reusable EMR template.
+ * {@code version} is the store version at which the template was last written; versions only increase.
  */
-public record TemplateDto(String id, String name, String body) {
+public record TemplateDto(String id, String name, String body, long version, Instant updatedAt) {
 }
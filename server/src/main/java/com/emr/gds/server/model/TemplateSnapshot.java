@@ -0,0 +1,20 @@
+package com.emr.gds.server.model;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of the whole template store at one version.
+ * Listing hands out {@code templates} as is; nothing is copied per request.
+ * {@code deleted} maps the id of each removed template to the version that removed it,
+ * so clients can be told about deletions since their last sync.
+ */
+public record TemplateSnapshot(long version, Instant lastModified, List<TemplateDto> templates,
+                               Map<String, TemplateDto> byId, Map<String, Long> deleted) {
+    public TemplateSnapshot {
+        templates = List.copyOf(templates);
+        byId = Map.copyOf(byId);
+        deleted = Map.copyOf(deleted);
+    }
+}
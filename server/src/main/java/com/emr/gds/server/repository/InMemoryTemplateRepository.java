@@ -0,0 +1,100 @@
+package com.emr.gds.server.repository;
+
+import com.emr.gds.server.model.TemplateDto;
+import com.emr.gds.server.model.TemplateSnapshot;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Copy-on-write template store. Readers take the current {@link TemplateSnapshot} from a volatile field
+ * without locking; writers are serialised, so choosing a free id and storing under it is one atomic step,
+ * and each write publishes a new snapshot with the next version. Templates are few and rarely edited,
+ * so rebuilding the snapshot on write is cheaper than coordinating every read.
+ * <p>
+ * Deletions leave a tombstone (id and deleting version) so delta sync can report them; recreating
+ * an id clears its tombstone.
+ */
+@Repository
+public class InMemoryTemplateRepository implements TemplateRepository {
+
+    private final String storeId = UUID.randomUUID().toString();
+    private volatile TemplateSnapshot current = new TemplateSnapshot(0, Instant.EPOCH, List.of(), Map.of(), Map.of());
+
+    @Override
+    public String storeId() {
+        return storeId;
+    }
+
+    @Override
+    public TemplateSnapshot snapshot() {
+        return current;
+    }
+
+    @Override
+    public Optional<TemplateDto> findById(String id) {
+        return Optional.ofNullable(current.byId().get(id));
+    }
+
+    @Override
+    public synchronized TemplateDto create(String baseId, String name, String body) {
+        Map<String, TemplateDto> byId = current.byId();
+        String id = baseId;
+        int suffix = 1;
+        while (byId.containsKey(id)) {
+            id = "%s-%d".formatted(baseId, suffix++);
+        }
+        return publish(id, name, body);
+    }
+
+    @Override
+    public synchronized Optional<TemplateDto> update(String id, String name, String body) {
+        if (!current.byId().containsKey(id)) {
+            return Optional.empty();
+        }
+        return Optional.of(publish(id, name, body));
+    }
+
+    @Override
+    public synchronized boolean deleteById(String id) {
+        TemplateSnapshot previous = current;
+        if (!previous.byId().containsKey(id)) {
+            return false;
+        }
+        long version = previous.version() + 1;
+        Map<String, TemplateDto> byId = new LinkedHashMap<>();
+        for (TemplateDto t : previous.templates()) {
+            if (!t.id().equals(id)) byId.put(t.id(), t);
+        }
+        Map<String, Long> deleted = new LinkedHashMap<>(previous.deleted());
+        deleted.put(id, version);
+        current = new TemplateSnapshot(version, Instant.now(), List.copyOf(byId.values()), byId, deleted);
+        return true;
+    }
+
+    /** Caller holds the lock. */
+    private TemplateDto publish(String id, String name, String body) {
+        TemplateSnapshot previous = current;
+        long version = previous.version() + 1;
+        Instant now = Instant.now();
+        TemplateDto dto = new TemplateDto(id, name, body, version, now);
+
+        Map<String, TemplateDto> byId = new LinkedHashMap<>();
+        for (TemplateDto t : previous.templates()) {
+            byId.put(t.id(), t);
+        }
+        byId.put(id, dto);
+        Map<String, Long> deleted = previous.deleted();
+        if (deleted.containsKey(id)) {
+            deleted = new LinkedHashMap<>(deleted);
+            deleted.remove(id);
+        }
+        current = new TemplateSnapshot(version, now, List.copyOf(byId.values()), byId, deleted);
+        return dto;
+    }
+}
@@ -0,0 +1,24 @@
+package com.emr.gds.server.repository;
+
+import com.emr.gds.server.model.TemplateDto;
+import com.emr.gds.server.model.TemplateSnapshot;
+
+import java.util.Optional;
+
+public interface TemplateRepository {
+    /** The current state of the store; later writes never change a snapshot already returned. */
+    TemplateSnapshot snapshot();
+
+    Optional<TemplateDto> findById(String id);
+
+    /** Stores a new template under {@code baseId}, or {@code baseId-1}, {@code baseId-2}, ... if that is taken. */
+    TemplateDto create(String baseId, String name, String body);
+
+    Optional<TemplateDto> update(String id, String name, String body);
+
+    /** Removes a template, leaving a tombstone at the new version; false if there was none. */
+    boolean deleteById(String id);
+
+    /** Identifies this store instance; versions from different instances are unrelated. */
+    String storeId();
+}
@@ -1,58 +1,94 @@
 package com.emr.gds.server.service;
 
+import com.emr.gds.server.model.TemplateChanges;
 import com.emr.gds.server.model.TemplateDto;
+import com.emr.gds.server.model.TemplateSnapshot;
+import com.emr.gds.server.repository.TemplateRepository;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 /**
- * In-memory stub for managing EMR templates.
- * Replace the storage layer with a database or repository when ready.
+ * Manages EMR templates on top of a versioned {@link TemplateRepository}.
+ * Every write bumps the store version, which the API exposes as ETags for conditional GETs.
  */
 @Service
 public class TemplateService {
-    private final Map<String, TemplateDto> templates = new LinkedHashMap<>();
+    private final TemplateRepository repository;
 
-    public TemplateService() {
+    public TemplateService(TemplateRepository repository) {
+        this.repository = repository;
         // Seed a couple of templates so the API has data right away.
-        save(new TemplateDto("demo-visit", "Demo Visit",
-                "CC> Cough x3d\nPI> 38C fever, no dyspnea\nA> Viral URI\nP> Rest, PO hydration, f/u PRN"));
-        save(new TemplateDto("abdominal-pain", "Abdominal Pain",
-                "CC> Abdominal pain\nROS> -N/V/D, +bloating\nA> R/O IBS vs dyspepsia\nP> H. pylori test, bland diet"));
+        if (repository.snapshot().templates().isEmpty()) {
+            create("Demo Visit",
+                    "CC> Cough x3d\nPI> 38C fever, no dyspnea\nA> Viral URI\nP> Rest, PO hydration, f/u PRN");
+            create("Abdominal Pain",
+                    "CC> Abdominal pain\nROS> -N/V/D, +bloating\nA> R/O IBS vs dyspepsia\nP> H. pylori test, bland diet");
+        }
+    }
+
+    public String storeId() {
+        return repository.storeId();
+    }
+
+    public TemplateSnapshot snapshot() {
+        return repository.snapshot();
     }
 
     public List<TemplateDto> findAll() {
-        return List.copyOf(templates.values());
+        return repository.snapshot().templates();
     }
 
     public Optional<TemplateDto> findById(String id) {
-        return Optional.ofNullable(templates.get(id));
+        return repository.findById(id);
     }
 
     public TemplateDto create(String name, String body) {
-        String id = slugify(name);
-        TemplateDto dto = new TemplateDto(id, name, body == null ? "" : body);
-        return save(dto);
+        return repository.create(slugify(name), name, body == null ? "" : body);
+    }
+
+    public TemplateDto update(String id, String name, String body) {
+        return repository.update(id, name, body == null ? "" : body)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Template not found"));
     }
 
-    private TemplateDto save(TemplateDto dto) {
-        templates.put(dto.id(), dto);
-        return dto;
+    public void delete(String id) {
+        if (!repository.deleteById(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Template not found");
+        }
+    }
+
+    /**
+     * Everything written or deleted after version {@code since}, read from one snapshot.
+     * A {@code since} of 0, or one ahead of this store (a client that last synced with an earlier
+     * server instance), gets the full set instead.
+     */
+    public TemplateChanges changesSince(long since) {
+        TemplateSnapshot snapshot = repository.snapshot();
+        if (since <= 0 || since > snapshot.version()) {
+            return new TemplateChanges(repository.storeId(), snapshot.version(), true, snapshot.templates(), List.of());
+        }
+        List<TemplateDto> changed = new ArrayList<>();
+        for (TemplateDto t : snapshot.templates()) {
+            if (t.version() > since) changed.add(t);
+        }
+        List<String> deleted = new ArrayList<>();
+        for (Map.Entry<String, Long> tombstone : snapshot.deleted().entrySet()) {
+            if (tombstone.getValue() > since) deleted.add(tombstone.getKey());
+        }
+        return new TemplateChanges(repository.storeId(), snapshot.version(), false, changed, deleted);
     }
 
     private String slugify(String name) {
         String base = (name == null || name.isBlank())
-                ? UUID.randomUUID().toString()
+                ? ""
                 : name.trim().toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("(^-|-$)", "");
-        String candidate = base.isBlank() ? UUID.randomUUID().toString() : base;
-        int suffix = 1;
-        while (templates.containsKey(candidate)) {
-            candidate = "%s-%d".formatted(base, suffix++);
-        }
-        return candidate;
+        return base.isBlank() ? UUID.randomUUID().toString() : base;
     }
 }
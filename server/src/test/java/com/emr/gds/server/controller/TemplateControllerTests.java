@@ -0,0 +1,121 @@
+package com.emr.gds.server.controller;
+
+import com.emr.gds.server.service.TemplateService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class TemplateControllerTests {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private TemplateService service;
+
+    @Test
+    void conditionalGetReturns304UntilTemplatesChange() throws Exception {
+        String etag = mvc.perform(get("/api/v1/templates"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mvc.perform(get("/api/v1/templates").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        String itemEtag = mvc.perform(get("/api/v1/templates/demo-visit"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(get("/api/v1/templates/demo-visit").header(HttpHeaders.IF_NONE_MATCH, itemEtag))
+                .andExpect(status().isNotModified());
+
+        mvc.perform(post("/api/v1/templates")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Thyroid F/U\",\"body\":\"CC> TFT\"}"))
+                .andExpect(status().isCreated());
+
+        String newEtag = mvc.perform(get("/api/v1/templates").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, newEtag);
+
+        // An unrelated write leaves the unchanged template's ETag valid.
+        mvc.perform(get("/api/v1/templates/demo-visit").header(HttpHeaders.IF_NONE_MATCH, itemEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void changesSinceReturnsOnlyLaterWritesAndDeletions() throws Exception {
+        long since = service.snapshot().version();
+        String id = service.create("Delta Sync", "CC> one").id();
+        service.update(id, "Delta Sync", "CC> two");
+        String doomed = service.create("Short Lived", "x").id();
+        mvc.perform(delete("/api/v1/templates/" + doomed)).andExpect(status().isNoContent());
+
+        mvc.perform(get("/api/v1/templates/changes").param("since", String.valueOf(since)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.full").value(false))
+                .andExpect(jsonPath("$.version").value(since + 4))
+                .andExpect(jsonPath("$.storeId").value(service.storeId()))
+                .andExpect(jsonPath("$.changed.length()").value(1))
+                .andExpect(jsonPath("$.changed[0].id").value(id))
+                .andExpect(jsonPath("$.changed[0].body").value("CC> two"))
+                .andExpect(jsonPath("$.deleted[0]").value(doomed));
+
+        mvc.perform(get("/api/v1/templates/changes").param("since", String.valueOf(since + 4)))
+                .andExpect(jsonPath("$.changed.length()").value(0))
+                .andExpect(jsonPath("$.deleted.length()").value(0));
+
+        // A version this store never reached means the client synced with another instance: send everything.
+        mvc.perform(get("/api/v1/templates/changes").param("since", String.valueOf(since + 1000)))
+                .andExpect(jsonPath("$.full").value(true))
+                .andExpect(jsonPath("$.changed.length()").value(service.findAll().size()));
+    }
+
+    @Test
+    void concurrentCreatesWithTheSameNameGetDistinctIds() throws Exception {
+        int writers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                tasks.add(() -> service.create("Same Name", "body").id());
+            }
+            Set<String> ids = new HashSet<>();
+            for (Future<String> f : pool.invokeAll(tasks)) {
+                ids.add(f.get());
+            }
+            assertEquals(writers, ids.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}